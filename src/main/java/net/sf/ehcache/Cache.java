@@ -55,6 +55,7 @@ import net.sf.ehcache.pool.PoolEvictor;
 import net.sf.ehcache.pool.PoolableStore;
 import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.impl.BoundedPool;
+import net.sf.ehcache.pool.impl.FromLargestCacheOffHeapPoolEvictor;
 import net.sf.ehcache.pool.impl.FromLargestCacheOnDiskPoolEvictor;
 import net.sf.ehcache.pool.impl.FromLargestCacheOnHeapPoolEvictor;
 import net.sf.ehcache.pool.impl.UnboundedPool;
@@ -64,6 +65,7 @@ import net.sf.ehcache.search.Results;
 import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.attribute.AttributeExtractor;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
+import net.sf.ehcache.statistics.CacheOperationLatency;
 import net.sf.ehcache.statistics.CacheUsageListener;
 import net.sf.ehcache.statistics.LiveCacheStatistics;
 import net.sf.ehcache.statistics.LiveCacheStatisticsWrapper;
@@ -75,6 +77,7 @@ import net.sf.ehcache.store.ElementValueComparator;
 import net.sf.ehcache.store.LegacyStoreWrapper;
 import net.sf.ehcache.store.LruMemoryStore;
 import net.sf.ehcache.store.MemoryOnlyStore;
+import net.sf.ehcache.store.OffHeapBackedMemoryStore;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.Policy;
 import net.sf.ehcache.store.Store;
@@ -127,11 +130,15 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -205,7 +212,6 @@ public class Cache implements InternalEhcache, StoreListener {
 
     private static final int EXECUTOR_KEEP_ALIVE_TIME = 60000;
     private static final int EXECUTOR_MAXIMUM_POOL_SIZE = Math.min(10, Runtime.getRuntime().availableProcessors());
-    private static final int EXECUTOR_CORE_POOL_SIZE = 1;
     private static final String EHCACHE_CLUSTERREDSTORE_MAX_CONCURRENCY_PROP = "ehcache.clusteredStore.maxConcurrency";
     private static final int DEFAULT_EHCACHE_CLUSTERREDSTORE_MAX_CONCURRENCY = 4096;
 
@@ -271,6 +277,13 @@ public class Cache implements InternalEhcache, StoreListener {
      */
     private volatile ExecutorService executorService;
 
+    /**
+     * The loads of {@link #getAsync(Object, CacheLoader, Object)} in progress, by key.
+     */
+    private volatile ConcurrentMap<Object, InFlightLoad> inFlightLoads = new ConcurrentHashMap<Object, InFlightLoad>();
+
+    private volatile CacheBulkLoader bulkLoader = new CacheBulkLoader(this);
+
     private volatile LiveCacheStatisticsWrapper liveCacheStatisticsData;
 
     private volatile SampledCacheStatisticsWrapper sampledCacheStatistics;
@@ -1077,10 +1090,9 @@ public class Cache implements InternalEhcache, StoreListener {
             } else {
                 FeaturesManager featuresManager = cacheManager.getFeaturesManager();
                 if (featuresManager == null) {
-                    if (configuration.isOverflowToOffHeap()) {
+                    if (configuration.isOverflowToOffHeap() && configuration.isOverflowToDisk()) {
                         throw new CacheException("Cache " + configuration.getName()
-                                + " cannot be configured because the enterprise features manager could not be found. "
-                                + "You must use an enterprise version of Ehcache to successfully enable overflowToOffHeap.");
+                                + " cannot be configured to overflow both off-heap and to disk without the enterprise features manager.");
                     }
                     PersistenceConfiguration persistence = configuration.getPersistenceConfiguration();
                     if (persistence != null && Strategy.LOCALRESTARTABLE.equals(persistence.getStrategy())) {
@@ -1093,7 +1105,9 @@ public class Cache implements InternalEhcache, StoreListener {
                         Store disk = createDiskStore();
                         store = new LegacyStoreWrapper(new LruMemoryStore(this, disk), disk, registeredEventListeners, configuration);
                     } else {
-                        if (configuration.isOverflowToDisk()) {
+                        if (configuration.isOverflowToOffHeap()) {
+                            store = OffHeapBackedMemoryStore.create(this, onHeapPool, createOffHeapPool());
+                        } else if (configuration.isOverflowToDisk()) {
                             store = DiskBackedMemoryStore.create(this, onHeapPool, onDiskPool);
                         } else {
                             store = MemoryOnlyStore.create(this, onHeapPool);
@@ -1292,6 +1306,23 @@ public class Cache implements InternalEhcache, StoreListener {
         }
     }
 
+    /**
+     * Creates the pool bounding the off-heap store, from either the cache or the cache manager configuration.
+     *
+     * @return the off-heap pool
+     */
+    private Pool createOffHeapPool() {
+        if (configuration.getMaxBytesLocalOffHeap() > 0) {
+            PoolEvictor<PoolableStore> evictor = new FromLargestCacheOffHeapPoolEvictor();
+            return new BoundedPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
+        } else if (getCacheManager() != null && getCacheManager().getConfiguration().isMaxBytesLocalOffHeapSet()) {
+            return getCacheManager().getOffHeapPool();
+        } else {
+            throw new CacheException("Cache " + configuration.getName()
+                    + " overflows to off-heap but neither it nor its cache manager sets maxBytesLocalOffHeap");
+        }
+    }
+
     /**
      * Whether this cache uses a disk store
      *
@@ -1384,9 +1415,16 @@ public class Cache implements InternalEhcache, StoreListener {
     }
 
     /**
-     * {@inheritDoc}
+     * Puts a collection of elements in to the cache.
+     * <p/>
+     * This is the bulk equivalent of {@link #put(Element, boolean)}.
+     *
+     * @param elements                    the elements to put
+     * @param doNotNotifyCacheReplicators whether the put is coming from a doNotNotifyCacheReplicators cache peer, in which case this put should not initiate a
+     *                                    further notification to doNotNotifyCacheReplicators cache peers
+     * @throws IllegalStateException    if the cache is not {@link Status#STATUS_ALIVE}
      */
-    private void putAll(Collection<Element> elements, boolean doNotNotifyCacheReplicators) throws IllegalArgumentException,
+    public void putAll(Collection<Element> elements, boolean doNotNotifyCacheReplicators) throws IllegalArgumentException,
             IllegalStateException, CacheException {
         putAllInternal(elements, doNotNotifyCacheReplicators);
     }
@@ -1427,6 +1465,19 @@ public class Cache implements InternalEhcache, StoreListener {
             return;
         }
 
+        if (getLiveCacheStatisticsNoCheck().isStatisticsEnabled()) {
+            long start = System.nanoTime();
+            try {
+                putInStore(element, doNotNotifyCacheReplicators, useCacheWriter);
+            } finally {
+                liveCacheStatisticsData.addLatencyNanos(CacheOperationLatency.PUT, System.nanoTime() - start);
+            }
+        } else {
+            putInStore(element, doNotNotifyCacheReplicators, useCacheWriter);
+        }
+    }
+
+    private void putInStore(Element element, boolean doNotNotifyCacheReplicators, boolean useCacheWriter) {
         element.resetAccessStatistics();
 
         applyDefaultsToElementWithoutLifespanSet(element);
@@ -1466,10 +1517,12 @@ public class Cache implements InternalEhcache, StoreListener {
 
         backOffIfDiskSpoolFull();
 
-        compoundStore.putAll(elements);
         for (Element element : elements) {
             element.resetAccessStatistics();
             applyDefaultsToElementWithoutLifespanSet(element);
+        }
+        compoundStore.putAll(elements);
+        for (Element element : elements) {
             notifyPutInternalListeners(element, doNotNotifyCacheReplicators, false);
         }
     }
@@ -1580,12 +1633,7 @@ public class Cache implements InternalEhcache, StoreListener {
         }
 
         if (isStatisticsEnabled()) {
-            long start = System.nanoTime();
-            Element element = searchInStoreWithStats(key);
-            //todo is this expensive. Maybe ditch.
-            long end = System.nanoTime();
-            liveCacheStatisticsData.addGetTimeNanos(end - start);
-            return element;
+            return searchInStoreWithStats(key, System.nanoTime());
         } else {
             return searchInStoreWithoutStats(key, false, true);
         }
@@ -1671,6 +1719,66 @@ public class Cache implements InternalEhcache, StoreListener {
         return getQuiet(key);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Loads run on the loader executor of this cache, and are bounded by its
+     * {@link CacheConfiguration#getCacheLoaderTimeoutMillis() cacheLoaderTimeoutMillis}: the futures of a load past
+     * it fail with a {@link LoaderTimeoutException}, and the next miss on the key starts a new load.
+     */
+    public Future<Element> getAsync(final Object key, final CacheLoader loader, final Object loaderArgument) throws CacheException {
+        Element element = get(key);
+        if (element != null || key == null || (registeredCacheLoaders.isEmpty() && loader == null)) {
+            return completedLoad(element);
+        }
+
+        InFlightLoad load = new InFlightLoad(key, new Callable<Element>() {
+            public Element call() throws CacheException {
+                try {
+                    //check again in case the last load completed since the miss
+                    Element loaded = getQuiet(key);
+                    if (loaded == null) {
+                        Object value = loadValueUsingLoader(key, loader, loaderArgument);
+                        if (value != null) {
+                            loaded = new Element(key, value);
+                            put(loaded, false);
+                        }
+                    }
+                    return loaded;
+                } catch (RuntimeException e) {
+                    throw new CacheException("Exception on load for key " + key, e);
+                }
+            }
+        }, inFlightLoads, configuration.getCacheLoaderTimeoutMillis());
+
+        while (true) {
+            InFlightLoad existing = inFlightLoads.putIfAbsent(key, load);
+            if (existing == null) {
+                break;
+            } else if (!existing.expireIfOverdue()) {
+                return existing;
+            }
+            inFlightLoads.remove(key, existing);
+        }
+        try {
+            getExecutorService().execute(load);
+        } catch (RejectedExecutionException e) {
+            inFlightLoads.remove(key, load);
+            throw new CacheException("Cannot load key " + key + " as the loader executor of " + getName() + " is shut down", e);
+        }
+        return load;
+    }
+
+    private static Future<Element> completedLoad(Element element) {
+        FutureTask<Element> future = new FutureTask<Element>(new Runnable() {
+            public void run() {
+                // nothing to load
+            }
+        }, element);
+        future.run();
+        return future;
+    }
+
     /**
      * The load method provides a means to "pre-load" the cache. This method will, asynchronously, load the specified
      * object into the cache using the associated CacheLoader. If the object already exists in the cache, no action is
@@ -1732,66 +1840,26 @@ public class Cache implements InternalEhcache, StoreListener {
             return new HashMap(0);
         }
         Map<Object, Object> map = new HashMap<Object, Object>(keys.size());
+        if (keys.isEmpty()) {
+            return map;
+        }
 
-        List<Object> missingKeys = new ArrayList<Object>(keys.size());
-
-        if (registeredCacheLoaders.size() > 0) {
-            Object key = null;
-            try {
-                map = new HashMap<Object, Object>(keys.size());
-
-                for (Object key1 : keys) {
-                    key = key1;
-                    Element element = get(key);
-
-                    if (element == null) {
-                        missingKeys.add(key);
-                    } else {
-                        map.put(key, element.getObjectValue());
-                    }
-                }
-
-                //now load everything that's missing.
-                Future future = asynchronousLoadAll(missingKeys, loaderArgument);
-
-                //wait for result
-                long cacheLoaderTimeoutMillis = configuration.getCacheLoaderTimeoutMillis();
-                if (cacheLoaderTimeoutMillis > 0) {
-                    try {
-                        future.get(cacheLoaderTimeoutMillis, TimeUnit.MILLISECONDS);
-                    } catch (TimeoutException e) {
-                        throw new LoaderTimeoutException("Timeout on load for key " + key, e);
-                    }
-                } else {
-                    future.get();
-                }
-
-
-                for (Object missingKey : missingKeys) {
-                    key = missingKey;
-                    Element element = get(key);
-                    if (element != null) {
-                        map.put(key, element.getObjectValue());
-                    } else {
-                        map.put(key, null);
-                    }
-                }
-
-            } catch (InterruptedException e) {
-                throw new CacheException(e.getMessage() + " for key " + key, e);
-            } catch (ExecutionException e) {
-                throw new CacheException(e.getMessage() + " for key " + key, e);
-            }
-        } else {
-            for (Object key : keys) {
-                Element element = get(key);
-                if (element != null) {
-                    map.put(key, element.getObjectValue());
-                } else {
-                    map.put(key, null);
-                }
+        Map<Object, Element> elements = getAll(keys);
+        List<Object> missingKeys = new ArrayList<Object>();
+        for (Object key : keys) {
+            Element element = elements == null ? null : elements.get(key);
+            if (element == null) {
+                missingKeys.add(key);
+                map.put(key, null);
+            } else {
+                map.put(key, element.getObjectValue());
             }
         }
+
+        if (!missingKeys.isEmpty() && registeredCacheLoaders.size() > 0) {
+            //now load everything that's missing, in parallel batches
+            map.putAll(bulkLoader.load(missingKeys, loaderArgument));
+        }
         return map;
     }
 
@@ -1937,7 +2005,8 @@ public class Cache implements InternalEhcache, StoreListener {
         return getKeys();
     }
 
-    private Element searchInStoreWithStats(Object key) {
+    private Element searchInStoreWithStats(Object key, long start) {
+        CacheOperationLatency latency = CacheOperationLatency.GET_MISS;
         boolean wasInMemory = compoundStore.containsKeyInMemory(key);
         boolean wasOffHeap = false;
         boolean hasOffHeap = getCacheConfiguration().isOverflowToOffHeap();
@@ -1970,13 +2039,17 @@ public class Cache implements InternalEhcache, StoreListener {
 
                 if (wasInMemory) {
                     liveCacheStatisticsData.cacheHitInMemory();
+                    latency = CacheOperationLatency.GET_HEAP_HIT;
                 } else if (wasOffHeap) {
                     liveCacheStatisticsData.cacheHitOffHeap();
+                    latency = CacheOperationLatency.GET_OFFHEAP_HIT;
                 } else if (hasOffHeap) {
                     liveCacheStatisticsData.cacheMissOffHeap();
                     liveCacheStatisticsData.cacheHitOnDisk();
+                    latency = CacheOperationLatency.GET_DISK_HIT;
                 } else {
                     liveCacheStatisticsData.cacheHitOnDisk();
+                    latency = CacheOperationLatency.GET_DISK_HIT;
                 }
             }
         } else {
@@ -1992,6 +2065,9 @@ public class Cache implements InternalEhcache, StoreListener {
                 LOG.debug(configuration.getName() + " cache - Miss");
             }
         }
+        long nanos = System.nanoTime() - start;
+        liveCacheStatisticsData.addGetTimeNanos(nanos);
+        liveCacheStatisticsData.addLatencyNanos(latency, nanos);
         return element;
     }
 
@@ -2318,6 +2394,21 @@ public class Cache implements InternalEhcache, StoreListener {
         }
 
         checkStatus();
+
+        if (!expiry && getLiveCacheStatisticsNoCheck().isStatisticsEnabled()) {
+            long start = System.nanoTime();
+            try {
+                return removeFromStore(key, expiry, notifyListeners, doNotNotifyCacheReplicators, useCacheWriter);
+            } finally {
+                liveCacheStatisticsData.addLatencyNanos(CacheOperationLatency.REMOVE, System.nanoTime() - start);
+            }
+        } else {
+            return removeFromStore(key, expiry, notifyListeners, doNotNotifyCacheReplicators, useCacheWriter);
+        }
+    }
+
+    private Element removeFromStore(Object key, boolean expiry, boolean notifyListeners,
+                                    boolean doNotNotifyCacheReplicators, boolean useCacheWriter) {
         Element elementFromStore = null;
 
         if (useCacheWriter) {
@@ -2818,6 +2909,8 @@ public class Cache implements InternalEhcache, StoreListener {
         copy.nonstopActiveDelegateHolder = new NonstopActiveDelegateHolderImpl(copy);
         copy.cacheWriterManagerInitFlag = new AtomicBoolean(false);
         copy.cacheWriterManagerInitLock = new ReentrantLock();
+        copy.bulkLoader = new CacheBulkLoader(copy);
+        copy.inFlightLoads = new ConcurrentHashMap<Object, InFlightLoad>();
         for (PropertyChangeListener propertyChangeListener : propertyChangeSupport.getPropertyChangeListeners()) {
             copy.addPropertyChangeListener(propertyChangeListener);
         }
@@ -3549,9 +3642,12 @@ public class Cache implements InternalEhcache, StoreListener {
                         }
                     };
                 } else {
-                    // we can create Threads
-                    executorService = new ThreadPoolExecutor(EXECUTOR_CORE_POOL_SIZE, EXECUTOR_MAXIMUM_POOL_SIZE, EXECUTOR_KEEP_ALIVE_TIME,
-                            TimeUnit.MILLISECONDS, new LinkedBlockingQueue(), new NamedThreadFactory("Cache Executor Service"));
+                    // we can create Threads, as many as there are loads to run in parallel, each stopping when idle
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(EXECUTOR_MAXIMUM_POOL_SIZE, EXECUTOR_MAXIMUM_POOL_SIZE,
+                            EXECUTOR_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS, new LinkedBlockingQueue(),
+                            new NamedThreadFactory("Cache Executor Service"));
+                    executor.allowCoreThreadTimeOut(true);
+                    executorService = executor;
                 }
             }
         }
@@ -4012,9 +4108,11 @@ public class Cache implements InternalEhcache, StoreListener {
         validateSearchQuery(query);
 
         if (isStatisticsEnabled()) {
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             Results results = this.compoundStore.executeQuery(query);
-            sampledCacheStatistics.notifyCacheSearch(System.currentTimeMillis() - start);
+            long nanos = System.nanoTime() - start;
+            sampledCacheStatistics.notifyCacheSearch(TimeUnit.NANOSECONDS.toMillis(nanos));
+            liveCacheStatisticsData.addLatencyNanos(CacheOperationLatency.SEARCH, nanos);
             return results;
         }
 
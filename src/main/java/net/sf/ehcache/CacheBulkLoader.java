@@ -0,0 +1,180 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the keys missing from a {@link Cache} in bulk, through the registered loaders' loadAll methods.
+ * <p>
+ * Keys are partitioned into batches of at most the configured cacheLoaderBatchSize, all run in parallel on the
+ * cache's loader executor, and the elements loaded by a batch are stored with a single putAll. A key already being
+ * loaded for another caller is not loaded again: its batch is waited for instead, whatever the loader argument. A null
+ * key is never loaded, as it could not be cached.
+ *
+ * @see Cache#getAllWithLoader(Collection, Object)
+ */
+final class CacheBulkLoader {
+
+    private final Cache cache;
+    private final ConcurrentMap<Object, LoadBatch> inFlight = new ConcurrentHashMap<Object, LoadBatch>();
+
+    /**
+     * Constructor
+     *
+     * @param cache the cache loaded into
+     */
+    CacheBulkLoader(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Loads the keys into the cache, waiting for their batches to complete.
+     *
+     * @param keys the keys missing from the cache
+     * @param argument the argument passed to the loaders
+     * @return the values loaded, with a null value for each key none of the loaders found, except a null key
+     * @throws LoaderTimeoutException if the loads did not complete within the cacheLoaderTimeoutMillis
+     * @throws CacheException if a loader failed
+     */
+    Map<Object, Object> load(Collection<?> keys, Object argument) throws CacheException {
+        int batchSize = cache.getCacheConfiguration().getCacheLoaderBatchSize();
+        long timeoutMillis = cache.getCacheConfiguration().getCacheLoaderTimeoutMillis();
+
+        Map<Object, LoadBatch> batches = new HashMap<Object, LoadBatch>();
+        Map<LoadBatch, Map<?, ?>> pending = new LinkedHashMap<LoadBatch, Map<?, ?>>();
+        LoadBatch batch = new LoadBatch(argument);
+        try {
+            for (Object key : keys) {
+                if (key == null || batches.containsKey(key)) {
+                    continue;
+                }
+                LoadBatch loading = inFlight.putIfAbsent(key, batch);
+                if (loading == null) {
+                    batch.keys.add(key);
+                    batches.put(key, batch);
+                    if (batchSize > 0 && batch.keys.size() >= batchSize) {
+                        submit(batch);
+                        pending.put(batch, null);
+                        batch = new LoadBatch(argument);
+                    }
+                } else {
+                    batches.put(key, loading);
+                    pending.put(loading, null);
+                }
+            }
+        } finally {
+            // even when partitioning failed, as other callers may already be waiting on the keys of the batch
+            if (!batch.keys.isEmpty()) {
+                submit(batch);
+                pending.put(batch, null);
+            }
+        }
+
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        try {
+            for (Entry<LoadBatch, Map<?, ?>> loading : pending.entrySet()) {
+                if (deadline == 0) {
+                    loading.setValue(loading.getKey().get());
+                } else {
+                    loading.setValue(loading.getKey().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+            }
+        } catch (TimeoutException e) {
+            throw new LoaderTimeoutException("Timeout on load for keys " + keys, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted on load for keys " + keys, e);
+        } catch (ExecutionException e) {
+            throw new CacheException("Exception on load for keys " + keys, e.getCause());
+        }
+
+        Map<Object, Object> result = new HashMap<Object, Object>(batches.size());
+        for (Entry<Object, LoadBatch> entry : batches.entrySet()) {
+            result.put(entry.getKey(), pending.get(entry.getValue()).get(entry.getKey()));
+        }
+        return result;
+    }
+
+    private void submit(LoadBatch batch) {
+        try {
+            cache.getExecutorService().execute(batch.future);
+        } catch (RejectedExecutionException e) {
+            batch.future.run();
+        }
+    }
+
+    /**
+     * A batch of keys loaded with one loadAll call per registered loader, whose result is shared with the callers
+     * waiting on any of its keys.
+     */
+    private final class LoadBatch implements Callable<Map<?, ?>> {
+
+        private final List<Object> keys = new ArrayList<Object>();
+        private final Object argument;
+        private final FutureTask<Map<?, ?>> future = new FutureTask<Map<?, ?>>(this);
+
+        LoadBatch(Object argument) {
+            this.argument = argument;
+        }
+
+        /**
+         * Calls the registered loaders and puts what they loaded in the cache
+         */
+        public Map<?, ?> call() {
+            try {
+                Map<?, ?> loaded = cache.loadWithRegisteredLoaders(argument, new HashSet<Object>(keys));
+                if (!loaded.isEmpty()) {
+                    List<Element> elements = new ArrayList<Element>(loaded.size());
+                    for (Entry<?, ?> entry : loaded.entrySet()) {
+                        elements.add(new Element(entry.getKey(), entry.getValue()));
+                    }
+                    cache.putAll(elements);
+                }
+                return loaded;
+            } finally {
+                for (Object key : keys) {
+                    inFlight.remove(key, this);
+                }
+            }
+        }
+
+        Map<?, ?> get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        Map<?, ?> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
+        }
+    }
+}
@@ -49,6 +49,7 @@ import net.sf.ehcache.pool.Pool;
 import net.sf.ehcache.pool.PoolEvictor;
 import net.sf.ehcache.pool.PoolableStore;
 import net.sf.ehcache.pool.SizeOfEngine;
+import net.sf.ehcache.pool.impl.BalancedAccessOffHeapPoolEvictor;
 import net.sf.ehcache.pool.impl.BalancedAccessOnDiskPoolEvictor;
 import net.sf.ehcache.pool.impl.BalancedAccessOnHeapPoolEvictor;
 import net.sf.ehcache.pool.impl.BoundedPool;
@@ -226,6 +227,8 @@ public class CacheManager {
 
     private volatile Pool onDiskPool;
 
+    private volatile Pool onOffHeapPool;
+
     private final NonstopExecutorServiceFactory nonstopExecutorServiceFactory = CacheManagerExecutorServiceFactory.getInstance();
     private volatile Configuration.RuntimeCfg runtimeCfg;
 
@@ -419,6 +422,10 @@ public class CacheManager {
             PoolEvictor<PoolableStore> evictor = new BalancedAccessOnDiskPoolEvictor();
             this.onDiskPool = new BoundedPool(configuration.getMaxBytesLocalDisk(), evictor, null);
         }
+        if (configuration.isMaxBytesLocalOffHeapSet()) {
+            PoolEvictor<PoolableStore> evictor = new BalancedAccessOffHeapPoolEvictor();
+            this.onOffHeapPool = new BoundedPool(configuration.getMaxBytesLocalOffHeap(), evictor, null);
+        }
 
         terracottaClient = new TerracottaClient(this, cacheRejoinAction, configuration.getTerracottaConfiguration());
 
@@ -549,6 +556,15 @@ public class CacheManager {
         return onDiskPool;
     }
 
+    /**
+     * Return this cache manager's shared off-heap pool
+     *
+     * @return this cache manager's shared off-heap pool
+     */
+    public Pool getOffHeapPool() {
+        return onOffHeapPool;
+    }
+
     /**
      * Returns unique cluster-wide id for this cache-manager. Only applicable when running in "cluster" mode, e.g. when this cache-manager
      * contains caches clustered with Terracotta. Otherwise returns blank string.
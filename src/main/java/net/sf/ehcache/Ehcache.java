@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
 import net.sf.ehcache.config.CacheConfiguration;
@@ -1017,6 +1018,24 @@ public interface Ehcache extends Cloneable {
      */
     public Element getWithLoader(Object key, CacheLoader loader, Object loaderArgument) throws CacheException;
 
+    /**
+     * Returns a future of the element associated with the argument "key", loading it with a cache loader if it is not
+     * in the cache. That is either the CacheLoader passed in, or if null, the ones registered with the cache. If there
+     * are none, no load is performed and the future holds null.
+     * <p/>
+     * This method does not block. A hit returns a completed future. On a miss the load runs asynchronously, without
+     * holding any lock, and the loaded element is put in the cache. Concurrent misses on a key share the load in
+     * progress for it, and so its future, whatever loader they pass. A failed load is not cached: its future fails
+     * with a {@link CacheException} and the next miss on the key loads it again.
+     *
+     * @param key key whose associated element is to be returned.
+     * @param loader the override loader to use. If null, the cache's default loaders will be used
+     * @param loaderArgument an argument to pass to the CacheLoader.
+     * @return a future of the element, holding null if the key could not be loaded
+     * @throws CacheException
+     */
+    public Future<Element> getAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException;
+
     /**
      * The getAll method will return, from the cache, a Map of the objects associated with the Collection of keys in argument "keys".
      * If the objects are not in the cache, the associated cache loader will be called. If no loader is associated with an object,
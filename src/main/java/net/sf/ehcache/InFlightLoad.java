@@ -0,0 +1,110 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A load of one key, shared by every caller of {@link Cache#getAsync(Object, net.sf.ehcache.loader.CacheLoader, Object)}
+ * that misses on the key while it runs. The load removes itself from the in-flight loads of its cache once done.
+ * <p/>
+ * A load is bounded by the loader timeout of its cache, counted from its creation. Once past it, the next caller
+ * waiting on the load or missing on its key fails it for everyone with a {@link LoaderTimeoutException}, which
+ * releases the key for a new load. The loader itself is not interrupted, and a value it returns late still populates
+ * the cache.
+ */
+final class InFlightLoad extends FutureTask<Element> {
+
+    private final Object key;
+    private final ConcurrentMap<Object, InFlightLoad> inFlightLoads;
+    private final long timeoutMillis;
+    private final long deadline;
+
+    /**
+     * Create a load.
+     *
+     * @param key the key loaded
+     * @param load computes the element of the key
+     * @param inFlightLoads the in-flight loads this load is removed from when done
+     * @param timeoutMillis the timeout of the load, or 0 for none
+     */
+    InFlightLoad(Object key, Callable<Element> load, ConcurrentMap<Object, InFlightLoad> inFlightLoads, long timeoutMillis) {
+        super(load);
+        this.key = key;
+        this.inFlightLoads = inFlightLoads;
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element get() throws InterruptedException, ExecutionException {
+        if (timeoutMillis <= 0) {
+            return super.get();
+        }
+        try {
+            return super.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            expireIfOverdue();
+            return super.get();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = deadline - System.nanoTime();
+        if (timeoutMillis <= 0 || unit.toNanos(timeout) < remaining) {
+            return super.get(timeout, unit);
+        }
+        try {
+            return super.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            expireIfOverdue();
+            return super.get();
+        }
+    }
+
+    /**
+     * Fail this load with a {@link LoaderTimeoutException} if it is still running past its timeout.
+     *
+     * @return true if this load is done, or was failed by this call
+     */
+    boolean expireIfOverdue() {
+        if (!isDone() && timeoutMillis > 0 && System.nanoTime() - deadline >= 0) {
+            setException(new LoaderTimeoutException("Timeout on load for key " + key + " after " + timeoutMillis + "ms"));
+        }
+        return isDone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void done() {
+        inFlightLoads.remove(key, this);
+    }
+}
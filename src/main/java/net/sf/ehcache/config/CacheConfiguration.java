@@ -34,6 +34,9 @@ import net.sf.ehcache.config.PersistenceConfiguration.Strategy;
 import net.sf.ehcache.config.TerracottaConfiguration.Consistency;
 import net.sf.ehcache.event.NotificationScope;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
+import net.sf.ehcache.serialization.JavaSerializer;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
 
@@ -98,6 +101,11 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final long DEFAULT_EXPIRY_THREAD_INTERVAL_SECONDS = 120;
 
+    /**
+     * Default value for expiryIndex
+     */
+    public static final boolean DEFAULT_EXPIRY_INDEX = false;
+
     /**
      * Set a buffer size for the spool of approx 30MB.
      */
@@ -108,6 +116,26 @@ public class CacheConfiguration implements Cloneable {
      */
     public static final int DEFAULT_DISK_ACCESS_STRIPES = 1;
 
+    /**
+     * Default number of disk writer threads.
+     */
+    public static final int DEFAULT_DISK_WRITER_THREADS = 1;
+
+    /**
+     * Default number of keys per bulk CacheLoader call, 0 loading all missing keys at once.
+     */
+    public static final int DEFAULT_CACHE_LOADER_BATCH_SIZE = 0;
+
+    /**
+     * Default disk access mode.
+     */
+    public static final DiskAccessMode DEFAULT_DISK_ACCESS_MODE = DiskAccessMode.RANDOM_ACCESS_FILE;
+
+    /**
+     * Default serializer class.
+     */
+    public static final String DEFAULT_SERIALIZER = JavaSerializer.class.getName();
+
     /**
      * Logging is off by default.
      */
@@ -206,6 +234,11 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile long cacheLoaderTimeoutMillis;
 
+    /**
+     * Maximum number of keys per bulk CacheLoader call
+     */
+    protected volatile int cacheLoaderBatchSize = DEFAULT_CACHE_LOADER_BATCH_SIZE;
+
     /**
      * the maximum objects to be held in the {@link net.sf.ehcache.store.MemoryStore}.
      * <p/>
@@ -286,6 +319,23 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile int diskAccessStripes = DEFAULT_DISK_ACCESS_STRIPES;
 
+    /**
+     * The number of threads serializing and writing elements to the disk store.
+     */
+    protected volatile int diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+
+    /**
+     * The I/O engine used to access the disk store data file.
+     */
+    protected volatile DiskAccessMode diskAccessMode = DEFAULT_DISK_ACCESS_MODE;
+
+    /**
+     * The class of the serializer used to store and copy elements.
+     */
+    protected volatile String serializer = DEFAULT_SERIALIZER;
+
+    private volatile Serializer serializerInstance;
+
     /**
      * The interval in seconds between runs of the disk expiry thread.
      * <p/>
@@ -295,6 +345,11 @@ public class CacheConfiguration implements Cloneable {
      */
     protected volatile long diskExpiryThreadIntervalSeconds = DEFAULT_EXPIRY_THREAD_INTERVAL_SECONDS;
 
+    /**
+     * Whether the stores index their elements by expiration time and remove them as they expire.
+     */
+    protected volatile boolean expiryIndex = DEFAULT_EXPIRY_INDEX;
+
     /**
      * Indicates whether logging is enabled or not. False by default.
      * Only used when cache is clustered with Terracotta.
@@ -745,6 +800,33 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets the maximum number of keys passed to a single CacheLoader loadAll call by getAllWithLoader (0 = no limit).
+     * The missing keys are partitioned into batches of this size which are loaded in parallel.
+     *
+     * @param cacheLoaderBatchSize the maximum number of keys per batch
+     */
+    public final void setCacheLoaderBatchSize(int cacheLoaderBatchSize) {
+        checkDynamicChange();
+        if (cacheLoaderBatchSize < 0) {
+            this.cacheLoaderBatchSize = DEFAULT_CACHE_LOADER_BATCH_SIZE;
+        } else {
+            this.cacheLoaderBatchSize = cacheLoaderBatchSize;
+        }
+    }
+
+    /**
+     * Builder that sets the maximum number of keys passed to a single CacheLoader loadAll call (0 = no limit).
+     *
+     * @param cacheLoaderBatchSize the maximum number of keys per batch
+     * @return this configuration instance
+     * @see #setCacheLoaderBatchSize(int)
+     */
+    public final CacheConfiguration cacheLoaderBatchSize(int cacheLoaderBatchSize) {
+        setCacheLoaderBatchSize(cacheLoaderBatchSize);
+        return this;
+    }
+
     /**
      * Sets the eviction policy. An invalid argument will set it to LRU.
      *
@@ -1039,6 +1121,118 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets the number of threads serializing elements spooled to the disk store. Serialized elements are written
+     * to the data file in groups, so more threads mostly help when serialization dominates. By default there is
+     * one thread.
+     *
+     * @param threads number of disk writer threads
+     */
+    public void setDiskWriterThreads(int threads) {
+        checkDynamicChange();
+        if (threads <= 0) {
+            this.diskWriterThreads = DEFAULT_DISK_WRITER_THREADS;
+        } else {
+            this.diskWriterThreads = threads;
+        }
+    }
+
+    /**
+     * Builder which sets the number of threads serializing elements spooled to the disk store.
+     *
+     * @return this configuration instance
+     * @see #setDiskWriterThreads(int)
+     */
+    public final CacheConfiguration diskWriterThreads(int threads) {
+        setDiskWriterThreads(threads);
+        return this;
+    }
+
+    /**
+     * Sets the I/O engine used to access the disk store data file. By default the data file is accessed through
+     * striped RandomAccessFiles.
+     *
+     * @param diskAccessMode one of RANDOM_ACCESS_FILE, FILE_CHANNEL, MEMORY_MAPPED
+     */
+    public final void setDiskAccessMode(String diskAccessMode) {
+        assertArgumentNotNull("Cache diskAccessMode", diskAccessMode);
+        diskAccessMode(DiskAccessMode.valueOf(diskAccessMode.toUpperCase()));
+    }
+
+    /**
+     * Builder which sets the I/O engine used to access the disk store data file.
+     *
+     * @param diskAccessMode one of RANDOM_ACCESS_FILE, FILE_CHANNEL, MEMORY_MAPPED
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(String diskAccessMode) {
+        setDiskAccessMode(diskAccessMode);
+        return this;
+    }
+
+    /**
+     * Builder which sets the I/O engine used to access the disk store data file.
+     *
+     * @param diskAccessMode the disk access mode
+     * @return this configuration instance
+     * @see #setDiskAccessMode(String)
+     */
+    public final CacheConfiguration diskAccessMode(DiskAccessMode diskAccessMode) {
+        if (diskAccessMode == null) {
+            throw new IllegalArgumentException("DiskAccessMode value must be non-null");
+        }
+        checkDynamicChange();
+        this.diskAccessMode = diskAccessMode;
+        return this;
+    }
+
+    /**
+     * Sets the class of the {@link Serializer} used to write elements to the disk and off-heap stores, to copy
+     * them when copyOnRead or copyOnWrite is set, and to replicate them. By default this is the
+     * {@link JavaSerializer}; {@link net.sf.ehcache.serialization.FastSerializer} is considerably cheaper for
+     * strings, boxed primitives and byte arrays.
+     * <p>
+     * A persistent disk store written with one serializer is discarded if reopened with another.
+     *
+     * @param className fully qualified name of a Serializer implementation
+     */
+    public final void setSerializer(String className) {
+        assertArgumentNotNull("Cache serializer", className);
+        checkDynamicChange();
+        this.serializer = className;
+        this.serializerInstance = null;
+    }
+
+    /**
+     * Builder which sets the class of the serializer used to store and copy elements.
+     *
+     * @param className fully qualified name of a Serializer implementation
+     * @return this configuration instance
+     * @see #setSerializer(String)
+     */
+    public final CacheConfiguration serializer(String className) {
+        setSerializer(className);
+        return this;
+    }
+
+    /**
+     * Builder which sets the serializer instance used to store and copy elements.
+     *
+     * @param serializer the serializer
+     * @return this configuration instance
+     * @see #setSerializer(String)
+     */
+    public final CacheConfiguration serializer(Serializer serializer) {
+        if (serializer == null) {
+            throw new IllegalArgumentException("Serializer must be non-null");
+        }
+        checkDynamicChange();
+        this.serializer = serializer.getClass().getName();
+        this.serializerInstance = serializer;
+        return this;
+    }
+
     /**
      * Sets the maximum number elements on Disk. 0 means unlimited.
      * <p/>
@@ -1138,6 +1332,32 @@ public class CacheConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets whether the heap and disk stores index their elements by expiration time.
+     * <p/>
+     * Indexed elements are removed, and expiry events fired, within a second of expiring, at a cost proportional to
+     * the number of elements expiring rather than to the size of the store. The disk store then checks for expiry
+     * every second rather than every diskExpiryThreadIntervalSeconds. False by default.
+     *
+     * @param expiryIndex true to index elements by expiration time
+     */
+    public final void setExpiryIndex(boolean expiryIndex) {
+        checkDynamicChange();
+        this.expiryIndex = expiryIndex;
+    }
+
+    /**
+     * Builder which sets whether the heap and disk stores index their elements by expiration time.
+     *
+     * @param expiryIndex true to index elements by expiration time
+     * @return this configuration instance
+     * @see #setExpiryIndex(boolean)
+     */
+    public final CacheConfiguration expiryIndex(boolean expiryIndex) {
+        setExpiryIndex(expiryIndex);
+        return this;
+    }
+
     /**
      * Freeze this configuration. Any subsequent changes will throw a CacheException
      */
@@ -1163,7 +1383,7 @@ public class CacheConfiguration implements Cloneable {
      */
     public ReadWriteCopyStrategy<Element> getCopyStrategy() {
         // todo really make this pluggable through config!
-        return copyStrategyConfiguration.getCopyStrategyInstance();
+        return copyStrategyConfiguration.getCopyStrategyInstance(getSerializer());
     }
 
     /**
@@ -2370,6 +2590,13 @@ public class CacheConfiguration implements Cloneable {
         return cacheLoaderTimeoutMillis;
     }
 
+    /**
+     * Accessor
+     */
+    public int getCacheLoaderBatchSize() {
+        return cacheLoaderBatchSize;
+    }
+
     /**
      * Accessor
      *
@@ -2469,6 +2696,13 @@ public class CacheConfiguration implements Cloneable {
         return diskExpiryThreadIntervalSeconds;
     }
 
+    /**
+     * Accessor
+     */
+    public boolean isExpiryIndex() {
+        return expiryIndex;
+    }
+
     /**
      * Accessor
      */
@@ -2476,6 +2710,41 @@ public class CacheConfiguration implements Cloneable {
         return diskAccessStripes;
     }
 
+    /**
+     * Accessor
+     */
+    public int getDiskWriterThreads() {
+        return diskWriterThreads;
+    }
+
+    /**
+     * Accessor
+     */
+    public DiskAccessMode getDiskAccessMode() {
+        return diskAccessMode;
+    }
+
+    /**
+     * Accessor
+     */
+    public String getSerializerClassName() {
+        return serializer;
+    }
+
+    /**
+     * Returns the serializer used to store and copy elements, instantiating the configured class on first use.
+     *
+     * @return the serializer for this cache
+     */
+    public Serializer getSerializer() {
+        Serializer instance = serializerInstance;
+        if (instance == null) {
+            instance = Serializers.getSerializer(serializer);
+            serializerInstance = instance;
+        }
+        return instance;
+    }
+
     /**
      * Accessor
      */
@@ -2739,6 +3008,27 @@ public class CacheConfiguration implements Cloneable {
         }
     }
 
+    /**
+     * The I/O engines available to access the disk store data file.
+     */
+    public static enum DiskAccessMode {
+
+        /**
+         * Striped RandomAccessFiles, each read or write locking its stripe (see diskAccessStripes)
+         */
+        RANDOM_ACCESS_FILE,
+
+        /**
+         * Positional FileChannel reads and writes, which need no locking
+         */
+        FILE_CHANNEL,
+
+        /**
+         * The data file is memory mapped, reads are served without locking or copying
+         */
+        MEMORY_MAPPED
+    }
+
     /**
      * Add a listener to this cache configuration
      *
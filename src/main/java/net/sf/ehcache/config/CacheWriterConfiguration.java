@@ -81,6 +81,11 @@ public class CacheWriterConfiguration implements Cloneable {
      */
     public static final int DEFAULT_WRITE_BEHIND_MAX_QUEUE_SIZE = 0;
 
+    /**
+     * Default journaling of the write-behind queue
+     */
+    public static final boolean DEFAULT_WRITE_BEHIND_JOURNAL = false;
+
     /**
      * Represents how elements are written to the {@link net.sf.ehcache.writer.CacheWriter}
      */
@@ -132,6 +137,7 @@ public class CacheWriterConfiguration implements Cloneable {
     private int retryAttemptDelaySeconds = DEFAULT_RETRY_ATTEMPT_DELAY_SECONDS;
     private int writeBehindConcurrency = DEFAULT_WRITE_BEHIND_CONCURRENCY;
     private int writeBehindMaxQueueSize = DEFAULT_WRITE_BEHIND_MAX_QUEUE_SIZE;
+    private boolean writeBehindJournal = DEFAULT_WRITE_BEHIND_JOURNAL;
     private CacheWriterFactoryConfiguration cacheWriterFactoryConfiguration;
 
     /**
@@ -599,6 +605,37 @@ public class CacheWriterConfiguration implements Cloneable {
         return this;
     }
 
+    /**
+     * Sets whether the write-behind queue records its operations in a journal in the disk store path, so that
+     * operations not yet written when the JVM dies are replayed to the {@code CacheWriter} on the next start.
+     * Replayed operations may include some that were already written.
+     * <p/>
+     * This is only applicable to write behind mode on caches that are not clustered.
+     * <p/>
+     * Defaults to {@value #DEFAULT_WRITE_BEHIND_JOURNAL}.
+     *
+     * @param writeBehindJournal {@code true} to journal the write-behind queue; {@code false} otherwise
+     */
+    public void setWriteBehindJournal(boolean writeBehindJournal) {
+        this.writeBehindJournal = writeBehindJournal;
+    }
+
+    /**
+     * @return this configuration instance
+     * @see #setWriteBehindJournal(boolean)
+     */
+    public CacheWriterConfiguration writeBehindJournal(boolean writeBehindJournal) {
+        setWriteBehindJournal(writeBehindJournal);
+        return this;
+    }
+
+    /**
+     * Check whether the write-behind queue is journaled.
+     */
+    public boolean getWriteBehindJournal() {
+        return writeBehindJournal;
+    }
+
     /**
      * Overrided hashCode()
      */
@@ -620,6 +657,7 @@ public class CacheWriterConfiguration implements Cloneable {
         result = prime * result + (writeCoalescing ? primeTwo : primeThree);
         result = prime * result + ((writeMode == null) ? 0 : writeMode.hashCode());
         result = prime * result + writeBehindConcurrency;
+        result = prime * result + (writeBehindJournal ? primeTwo : primeThree);
         return result;
     }
 
@@ -675,6 +713,9 @@ public class CacheWriterConfiguration implements Cloneable {
         if (writeBehindConcurrency != other.writeBehindConcurrency) {
             return false;
         }
+        if (writeBehindJournal != other.writeBehindJournal) {
+            return false;
+        }
         if (writeMode == null) {
             if (other.writeMode != null) {
                 return false;
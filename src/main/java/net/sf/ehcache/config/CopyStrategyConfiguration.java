@@ -16,9 +16,11 @@
 package net.sf.ehcache.config;
 
 import net.sf.ehcache.Element;
+import net.sf.ehcache.serialization.Serializer;
 import net.sf.ehcache.store.compound.CopyStrategy;
 import net.sf.ehcache.store.compound.LegacyCopyStrategyAdapter;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
 import net.sf.ehcache.util.ClassLoaderUtil;
 
 /**
@@ -63,6 +65,17 @@ public class CopyStrategyConfiguration {
      * @return the instance
      */
     public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance() {
+        return getCopyStrategyInstance(null);
+    }
+
+    /**
+     * Get (and potentially) instantiate the instance. A {@link ReadWriteSerializationCopyStrategy} instantiated by this
+     * call copies with the given serializer; an existing instance is returned unchanged.
+     *
+     * @param serializer the serializer of an instantiated serialization copy strategy, or null for Java serialization
+     * @return the instance
+     */
+    public synchronized ReadWriteCopyStrategy<Element> getCopyStrategyInstance(Serializer serializer) {
         if (strategy == null) {
             Class copyStrategy = null;
             try {
@@ -83,6 +96,9 @@ public class CopyStrategyConfiguration {
                 throw new RuntimeException(copyStrategy != null ? copyStrategy.getSimpleName()
                         + " doesn't implement net.sf.ehcache.store.compound.CopyStrategy" : "Error with CopyStrategy", e);
             }
+            if (serializer != null && strategy instanceof ReadWriteSerializationCopyStrategy) {
+                ((ReadWriteSerializationCopyStrategy) strategy).setSerializer(serializer);
+            }
         }
         return strategy;
     }
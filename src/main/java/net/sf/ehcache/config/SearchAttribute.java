@@ -40,6 +40,28 @@ public class SearchAttribute {
     private String expression;
     private String properties;
     private String propertySeparator;
+    private IndexType indexType = IndexType.NONE;
+
+    /**
+     * The secondary index a local store can keep for a search attribute.
+     */
+    public static enum IndexType {
+
+        /**
+         * No index, queries on this attribute scan the store
+         */
+        NONE,
+
+        /**
+         * A hash index, used for equality and {@code in} criteria
+         */
+        HASH,
+
+        /**
+         * A sorted index, used for range criteria and for equality on non-string attributes
+         */
+        SORTED
+    }
 
     /**
      * Set the attribute name
@@ -192,6 +214,43 @@ public class SearchAttribute {
         return this;
     }
 
+    /**
+     * Set the secondary index the store should keep for this attribute, one of "none", "hash" or "sorted"
+     *
+     * @param index
+     */
+    public void setIndex(String index) {
+        if (index == null) {
+            throw new InvalidConfigurationException("Search attribute index type cannot be null");
+        }
+        try {
+            index(IndexType.valueOf(index.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidConfigurationException("Invalid index type for search attribute " + name + ": " + index);
+        }
+    }
+
+    /**
+     * Set the secondary index the store should keep for this attribute
+     *
+     * @param indexType
+     * @return this
+     */
+    public SearchAttribute index(IndexType indexType) {
+        if (indexType == null) {
+            throw new InvalidConfigurationException("Search attribute index type cannot be null");
+        }
+        this.indexType = indexType;
+        return this;
+    }
+
+    /**
+     * Get the secondary index the store keeps for this attribute
+     */
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
     /**
      * Create a generated config element node for this search attribute definition
      *
@@ -215,6 +274,10 @@ public class SearchAttribute {
             }
         }
 
+        if (indexType != IndexType.NONE) {
+            rv.addAttribute(new SimpleNodeAttribute("index", indexType.name().toLowerCase()));
+        }
+
         return rv;
     }
 
@@ -96,12 +96,20 @@ public class CacheConfigurationElement extends SimpleNodeElement {
                 String.valueOf(CacheConfiguration.DEFAULT_CLEAR_ON_FLUSH)));
         element.addAttribute(new SimpleNodeAttribute("diskAccessStripes", cacheConfiguration.getDiskAccessStripes()).optional(true)
                 .defaultValue(CacheConfiguration.DEFAULT_DISK_ACCESS_STRIPES));
+        element.addAttribute(new SimpleNodeAttribute("diskWriterThreads", cacheConfiguration.getDiskWriterThreads()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_WRITER_THREADS));
+        element.addAttribute(new SimpleNodeAttribute("diskAccessMode", cacheConfiguration.getDiskAccessMode()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_DISK_ACCESS_MODE));
+        element.addAttribute(new SimpleNodeAttribute("serializer", cacheConfiguration.getSerializerClassName()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_SERIALIZER));
         element.addAttribute(new SimpleNodeAttribute("diskSpoolBufferSizeMB", cacheConfiguration.getDiskSpoolBufferSizeMB()).optional(true)
                 .defaultValue(CacheConfiguration.DEFAULT_SPOOL_BUFFER_SIZE));
         element
                 .addAttribute(new SimpleNodeAttribute("diskExpiryThreadIntervalSeconds", cacheConfiguration
                         .getDiskExpiryThreadIntervalSeconds()).optional(true).defaultValue(
                         CacheConfiguration.DEFAULT_EXPIRY_THREAD_INTERVAL_SECONDS));
+        element.addAttribute(new SimpleNodeAttribute("expiryIndex", cacheConfiguration.isExpiryIndex()).optional(true)
+                .defaultValue(CacheConfiguration.DEFAULT_EXPIRY_INDEX));
         element.addAttribute(new SimpleNodeAttribute("copyOnWrite", cacheConfiguration.isCopyOnWrite()).optional(true).defaultValue(
                 CacheConfiguration.DEFAULT_COPY_ON_WRITE));
         element.addAttribute(new SimpleNodeAttribute("copyOnRead", cacheConfiguration.isCopyOnRead()).optional(true).defaultValue(
@@ -122,6 +130,8 @@ public class CacheConfigurationElement extends SimpleNodeElement {
                 .defaultValue(false));
         element.addAttribute(new SimpleNodeAttribute("cacheLoaderTimeoutMillis", cacheConfiguration.getCacheLoaderTimeoutMillis())
                 .optional(true).defaultValue(0L));
+        element.addAttribute(new SimpleNodeAttribute("cacheLoaderBatchSize", cacheConfiguration.getCacheLoaderBatchSize())
+                .optional(true).defaultValue(CacheConfiguration.DEFAULT_CACHE_LOADER_BATCH_SIZE));
         element.addAttribute(new SimpleNodeAttribute("transactionalMode", cacheConfiguration.getTransactionalMode()).optional(true)
                 .defaultValue(CacheConfiguration.DEFAULT_TRANSACTIONAL_MODE));
         element.addAttribute(new SimpleNodeAttribute("statistics", cacheConfiguration.getStatistics()).optional(true).defaultValue(
@@ -72,6 +72,8 @@ public class CacheWriterConfigurationElement extends SimpleNodeElement {
                 true).defaultValue(CacheWriterConfiguration.DEFAULT_WRITE_BEHIND_CONCURRENCY));
         addAttribute(new SimpleNodeAttribute("writeBehindMaxQueueSize", cacheWriterConfiguration.getWriteBehindMaxQueueSize()).optional(
                 true).defaultValue(CacheWriterConfiguration.DEFAULT_WRITE_BEHIND_MAX_QUEUE_SIZE));
+        addAttribute(new SimpleNodeAttribute("writeBehindJournal", cacheWriterConfiguration.getWriteBehindJournal()).optional(true)
+                .defaultValue(CacheWriterConfiguration.DEFAULT_WRITE_BEHIND_JOURNAL));
 
         CacheWriterFactoryConfiguration cacheWriterFactoryConfiguration = cacheWriterConfiguration.getCacheWriterFactoryConfiguration();
         if (cacheWriterFactoryConfiguration != null) {
@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
@@ -274,6 +275,13 @@ public class EhcacheDecoratorAdapter implements InternalEhcache {
         return underlyingCache.getWithLoader(key, loader, loaderArgument);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Element> getAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException {
+        return underlyingCache.getAsync(key, loader, loaderArgument);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,6 +19,7 @@ package net.sf.ehcache.constructs.blocking;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.ehcache.CacheException;
@@ -59,6 +60,9 @@ import net.sf.ehcache.loader.CacheLoader;
  * - Brian Goetz
  * <p/>
  * Further improvements to hashing suggested by Joe Bowbeer.
+ * <p/>
+ * A thread missing on a key holds the lock of its stripe until it puts the value, blocking the readers of every key in
+ * that stripe. Where those readers should not wait, {@link net.sf.ehcache.Ehcache#getAsync} loads without any lock.
  *
  * @author Greg Luck
  * @version $Id$
@@ -391,6 +395,17 @@ public class BlockingCache extends EhcacheDecoratorAdapter {
         throw new CacheException("This method is not appropriate for a Blocking Cache");
     }
 
+    /**
+     * This method is not appropriate to use with BlockingCache: its loads would not take the locks of this cache.
+     * Use it on the underlying cache instead, which shares concurrent loads of a key without blocking.
+     *
+     * @throws CacheException if this method is called
+     */
+    @Override
+    public Future<Element> getAsync(Object key, CacheLoader loader, Object loaderArgument) throws CacheException {
+        throw new CacheException("This method is not appropriate for a Blocking Cache");
+    }
+
     /**
      * This method is not appropriate to use with BlockingCache.
      *
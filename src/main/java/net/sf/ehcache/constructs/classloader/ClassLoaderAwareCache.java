@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
@@ -977,6 +978,21 @@ public class ClassLoaderAwareCache implements Ehcache {
         }
     }
 
+    /**
+    * {@inheritDoc}
+    */
+    public Future<Element> getAsync(Object arg0, CacheLoader arg1, Object arg2) throws CacheException {
+        // THIS IS GENERATED CODE -- DO NOT HAND MODIFY!
+        Thread t = Thread.currentThread();
+        ClassLoader prev = t.getContextClassLoader();
+        t.setContextClassLoader(this.classLoader);
+        try {
+            return this.cache.getAsync(arg0, arg1, arg2);
+        } finally {
+            t.setContextClassLoader(prev);
+        }
+    }
+
     /**
     * {@inheritDoc}
     */
@@ -0,0 +1,59 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.distribution;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * A {@link CachePeer} which streams its contents to a bootstrapping peer: the keys are paged through a cursor held
+ * by this peer, and elements are returned in chunks whose serialized size is known to the caller.
+ * <p/>
+ * A bootstrap loader checks whether the stub of a peer implements this interface before using it. Peers running an
+ * older version only implement {@link CachePeer}, and are bootstrapped from with {@link CachePeer#getKeys()} and
+ * {@link CachePeer#getElements(List)}.
+ */
+public interface BootstrapCachePeer extends CachePeer {
+
+    /**
+     * Gets the next page of keys from a key cursor.
+     * <p/>
+     * The keys of a cursor are read from the cache as pages are requested, in no particular order: keys in the cache
+     * for as long as the cursor is open are returned once, keys added or removed meanwhile may or may not be. Caches
+     * whose store cannot walk its keys in place copy all of them when the cursor is opened, so serving a bootstrap
+     * still costs a list of every key on the heap of such peers. A peer keeps a bounded number of cursors open,
+     * and closes a cursor which is not used for a while.
+     *
+     * @param cursor      the cursor returned with the previous page, or {@code 0} to open a new cursor
+     * @param maximumKeys the largest number of keys to return
+     * @return the page of keys, with the cursor for the next page
+     * @throws RemoteException if the cursor is unknown, too many cursors are open, or the remote call fails
+     */
+    KeyPage getKeyPage(long cursor, int maximumKeys) throws RemoteException;
+
+    /**
+     * Gets the elements for a list of keys, without updating element statistics, serialized as a {@link List}.
+     * <p/>
+     * Elements that are not found, or are null, are not in the list. The length of the returned array tells the
+     * caller how large elements are, so it can size its next request.
+     *
+     * @param keys a list of serializable values which represent keys
+     * @return the serialized list of elements
+     */
+    byte[] getSerializedElements(List keys) throws RemoteException;
+}
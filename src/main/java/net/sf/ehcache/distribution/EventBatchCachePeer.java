@@ -0,0 +1,44 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.rmi.RemoteException;
+
+/**
+ * A {@link CachePeer} which also receives batches of event messages in a compact, versioned binary encoding,
+ * optionally compressed, rather than as serialized {@link EventMessage} objects.
+ * <p/>
+ * A replicator checks whether the stub of a peer implements this interface, and which format version it supports,
+ * before using it. Peers running an older version only implement {@link CachePeer} and keep receiving
+ * {@link CachePeer#send(java.util.List)}.
+ */
+public interface EventBatchCachePeer extends CachePeer {
+
+    /**
+     * Gets the highest version of the event batch format this peer can decode.
+     *
+     * @return the format version
+     */
+    int getEventBatchFormatVersion() throws RemoteException;
+
+    /**
+     * Send the cache peer an ordered batch of event messages in the binary event batch format.
+     *
+     * @param eventBatch the encoded batch, in a format version no higher than {@link #getEventBatchFormatVersion()}
+     */
+    void sendEventBatch(byte[] eventBatch) throws RemoteException;
+}
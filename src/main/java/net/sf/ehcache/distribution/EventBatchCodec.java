@@ -0,0 +1,285 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
+
+/**
+ * Encodes batches of {@link RmiEventMessage}s in the binary format sent to {@link EventBatchCachePeer}s.
+ * <p/>
+ * A batch starts with a magic number, the format version and a flags byte. If the compressed flag is set, the
+ * uncompressed length and the deflated body follow, otherwise the body itself. The body holds the class name of the
+ * {@link Serializer} used for keys and values, the number of messages and, per message, a type tag followed by:
+ * <ul>
+ * <li>for a put, the key and value bytes, the version, the creation, last access and last update times, the hit
+ * count and the lifespan of the element;
+ * <li>for a remove, the key bytes;
+ * <li>for a removeAll, nothing.
+ * </ul>
+ * Lengths, counts and times are written as variable length integers, so the per message overhead is a few bytes
+ * instead of the class descriptors and field names of Java serialization. The body is only deflated if it is at
+ * least as large as the compression threshold, and only sent deflated if that makes it smaller.
+ */
+final class EventBatchCodec {
+
+    /**
+     * The highest format version this codec reads and writes.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The default body size, in bytes, from which batches are compressed.
+     */
+    static final int DEFAULT_COMPRESSION_THRESHOLD = 8 * 1024;
+
+    private static final int MAGIC = 0x45484542;
+    private static final int COMPRESSED = 1;
+
+    private static final int PUT = 1;
+    private static final int REMOVE = 2;
+    private static final int REMOVE_ALL = 3;
+
+    private static final int SEVEN_BITS = 0x7F;
+    private static final int CONTINUATION = 0x80;
+    private static final int BITS_PER_BYTE = 7;
+    private static final int LONG_BITS = 63;
+    private static final int BUFFER_SIZE = 4096;
+
+    private EventBatchCodec() {
+        // static helpers only
+    }
+
+    /**
+     * Encode a batch.
+     *
+     * @param messages the messages, all of type {@link RmiEventMessage}
+     * @param serializer the serializer for keys and values, which the receiving peer must be able to load
+     * @param compressionThreshold the body size from which to compress, negative to never compress
+     * @return the encoded batch
+     * @throws IOException if a key or value cannot be serialized
+     */
+    static byte[] encode(List<? extends EventMessage> messages, Serializer serializer, int compressionThreshold) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeUTF(serializer.getClass().getName());
+        writeVarLong(out, messages.size());
+        for (EventMessage message : messages) {
+            RmiEventMessage eventMessage = (RmiEventMessage) message;
+            switch (eventMessage.getType()) {
+                case PUT:
+                    Element element = eventMessage.getElement();
+                    out.write(PUT);
+                    writeBytes(out, Serializers.toBytes(serializer, element.getObjectKey()));
+                    writeBytes(out, Serializers.toBytes(serializer, element.getObjectValue()));
+                    writeSignedVarLong(out, element.getVersion());
+                    writeSignedVarLong(out, element.getCreationTime());
+                    writeSignedVarLong(out, element.getLastAccessTime());
+                    writeSignedVarLong(out, element.getLastUpdateTime());
+                    writeSignedVarLong(out, element.getHitCount());
+                    out.writeBoolean(element.usesCacheDefaultLifespan());
+                    writeSignedVarLong(out, element.getTimeToLive());
+                    writeSignedVarLong(out, element.getTimeToIdle());
+                    break;
+                case REMOVE:
+                    out.write(REMOVE);
+                    writeBytes(out, Serializers.toBytes(serializer, eventMessage.getSerializableKey()));
+                    break;
+                case REMOVE_ALL:
+                    out.write(REMOVE_ALL);
+                    break;
+                default:
+                    throw new IOException("Unknown event type " + eventMessage.getType());
+            }
+        }
+        out.flush();
+
+        byte[] uncompressed = body.toByteArray();
+        byte[] compressed = compressionThreshold >= 0 && uncompressed.length >= compressionThreshold ? deflate(uncompressed) : null;
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(compressed == null ? uncompressed.length + 6 : compressed.length + 11);
+        DataOutputStream header = new DataOutputStream(batch);
+        header.writeInt(MAGIC);
+        header.write(FORMAT_VERSION);
+        if (compressed != null && compressed.length < uncompressed.length) {
+            header.write(COMPRESSED);
+            writeVarLong(header, uncompressed.length);
+            header.write(compressed);
+        } else {
+            header.write(0);
+            header.write(uncompressed);
+        }
+        header.flush();
+        return batch.toByteArray();
+    }
+
+    /**
+     * Decode a batch.
+     *
+     * @param batch the encoded batch
+     * @return the messages, without a cache
+     * @throws IOException if the batch is corrupt or of an unsupported version
+     * @throws ClassNotFoundException if the serializer, or the class of a key or value, cannot be loaded
+     */
+    static List<RmiEventMessage> decode(byte[] batch) throws IOException, ClassNotFoundException {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(batch));
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not an event batch");
+        }
+        int version = header.read();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported event batch format version " + version);
+        }
+        int flags = header.read();
+        DataInputStream in;
+        if ((flags & COMPRESSED) != 0) {
+            int length = (int) readVarLong(header);
+            in = new DataInputStream(new ByteArrayInputStream(inflate(batch, batch.length - header.available(), length)));
+        } else {
+            in = header;
+        }
+
+        Serializer serializer = Serializers.getSerializer(in.readUTF());
+        int count = (int) readVarLong(in);
+        List<RmiEventMessage> messages = new ArrayList<RmiEventMessage>(count);
+        for (int i = 0; i < count; i++) {
+            int type = in.read();
+            switch (type) {
+                case PUT:
+                    Object key = Serializers.fromBytes(serializer, readBytes(in));
+                    Object value = Serializers.fromBytes(serializer, readBytes(in));
+                    long elementVersion = readSignedVarLong(in);
+                    long creationTime = readSignedVarLong(in);
+                    long lastAccessTime = readSignedVarLong(in);
+                    long lastUpdateTime = readSignedVarLong(in);
+                    long hitCount = readSignedVarLong(in);
+                    boolean cacheDefaultLifespan = in.readBoolean();
+                    int timeToLive = (int) readSignedVarLong(in);
+                    int timeToIdle = (int) readSignedVarLong(in);
+                    Element element = new Element(key, value, elementVersion, creationTime, lastAccessTime, hitCount,
+                            cacheDefaultLifespan, timeToLive, timeToIdle, lastUpdateTime);
+                    messages.add(new RmiEventMessage(null, RmiEventType.PUT, null, element));
+                    break;
+                case REMOVE:
+                    Serializable removed = (Serializable) Serializers.fromBytes(serializer, readBytes(in));
+                    messages.add(new RmiEventMessage(null, RmiEventType.REMOVE, removed, null));
+                    break;
+                case REMOVE_ALL:
+                    messages.add(new RmiEventMessage(null, RmiEventType.REMOVE_ALL, null, null));
+                    break;
+                default:
+                    throw new IOException("Corrupt event batch: unknown event type " + type);
+            }
+        }
+        return messages;
+    }
+
+    private static byte[] deflate(byte[] uncompressed) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(uncompressed.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] batch, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(batch, offset, batch.length - offset);
+            byte[] uncompressed = new byte[length];
+            int inflated = 0;
+            while (inflated < length) {
+                int read = inflater.inflate(uncompressed, inflated, length - inflated);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt event batch: truncated compressed body");
+                }
+                inflated += read;
+            }
+            return uncompressed;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt event batch: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length > in.available()) {
+            throw new IOException("Corrupt event batch: " + length + " bytes announced, " + in.available() + " left");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> LONG_BITS));
+    }
+
+    private static long readSignedVarLong(DataInputStream in) throws IOException {
+        long encoded = readVarLong(in);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~SEVEN_BITS) != 0) {
+            out.write((int) (remaining & SEVEN_BITS) | CONTINUATION);
+            remaining >>>= BITS_PER_BYTE;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift <= LONG_BITS; shift += BITS_PER_BYTE) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & SEVEN_BITS) << shift;
+            if ((b & CONTINUATION) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt event batch: variable length integer too long");
+    }
+}
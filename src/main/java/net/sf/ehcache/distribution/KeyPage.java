@@ -0,0 +1,70 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.distribution;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of keys from a {@link BootstrapCachePeer} key cursor.
+ */
+public final class KeyPage implements Serializable {
+
+    private static final long serialVersionUID = 5132968412876364530L;
+
+    private final long cursor;
+    private final List keys;
+
+    /**
+     * Create a page.
+     *
+     * @param cursor the cursor for the next page, or {@code 0} if this is the last page
+     * @param keys   the keys of this page
+     */
+    public KeyPage(long cursor, List keys) {
+        this.cursor = cursor;
+        this.keys = keys;
+    }
+
+    /**
+     * Gets the cursor to pass to {@link BootstrapCachePeer#getKeyPage(long, int)} for the next page.
+     *
+     * @return the cursor, or {@code 0} if this is the last page
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Gets the keys of this page.
+     *
+     * @return a list of serializable keys
+     */
+    public List getKeys() {
+        return keys;
+    }
+
+    /**
+     * Whether the cursor has no more keys.
+     *
+     * @return true if this is the last page
+     */
+    public boolean isLast() {
+        return cursor == 0;
+    }
+}
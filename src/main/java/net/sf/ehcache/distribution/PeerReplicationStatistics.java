@@ -0,0 +1,124 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+/**
+ * A snapshot of how asynchronous replication to one peer is keeping up, as reported by
+ * {@link RMIAsynchronousCacheReplicator#getPeerStatistics()}.
+ */
+public final class PeerReplicationStatistics {
+
+    private final String peer;
+    private final long lag;
+    private final int queuedBatches;
+    private final int backloggedMessages;
+    private final long sentMessages;
+    private final long failedBatches;
+    private final long coalescedMessages;
+    private final long sentBytes;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param peer the URL of the peer
+     * @param lag the age in milliseconds of the oldest batch not yet sent to the peer
+     * @param queuedBatches the number of batches waiting for the peer
+     * @param backloggedMessages the number of messages coalescing because the peer did not keep up
+     * @param sentMessages the number of messages sent to the peer
+     * @param failedBatches the number of batches the peer failed to receive
+     * @param coalescedMessages the number of backlogged messages superseded by a later message
+     * @param sentBytes the number of bytes sent to the peer in the binary event batch format
+     */
+    PeerReplicationStatistics(String peer, long lag, int queuedBatches, int backloggedMessages, long sentMessages,
+            long failedBatches, long coalescedMessages, long sentBytes) {
+        this.peer = peer;
+        this.lag = lag;
+        this.queuedBatches = queuedBatches;
+        this.backloggedMessages = backloggedMessages;
+        this.sentMessages = sentMessages;
+        this.failedBatches = failedBatches;
+        this.coalescedMessages = coalescedMessages;
+        this.sentBytes = sentBytes;
+    }
+
+    /**
+     * @return the URL of the peer
+     */
+    public String getPeer() {
+        return peer;
+    }
+
+    /**
+     * @return the age in milliseconds of the oldest batch not yet sent to the peer, 0 if none is waiting
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * @return the number of batches waiting to be sent to the peer, not including one being sent
+     */
+    public int getQueuedBatches() {
+        return queuedBatches;
+    }
+
+    /**
+     * @return the number of messages waiting, coalesced by key, for the queue of the peer to drain
+     */
+    public int getBackloggedMessages() {
+        return backloggedMessages;
+    }
+
+    /**
+     * @return the number of messages successfully sent to the peer
+     */
+    public long getSentMessages() {
+        return sentMessages;
+    }
+
+    /**
+     * @return the number of batches which could not be sent to the peer
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * @return the number of backlogged messages which were not sent because a later message on the same key, or a
+     *         removeAll, superseded them
+     */
+    public long getCoalescedMessages() {
+        return coalescedMessages;
+    }
+
+    /**
+     * @return the number of bytes sent to the peer in the binary event batch format, 0 if it does not support it
+     */
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "PeerReplicationStatistics[peer=" + peer + ", lag=" + lag + "ms, queuedBatches=" + queuedBatches
+                + ", backloggedMessages=" + backloggedMessages + ", sentMessages=" + sentMessages + ", failedBatches="
+                + failedBatches + ", coalescedMessages=" + coalescedMessages + ", sentBytes=" + sentBytes + "]";
+    }
+}
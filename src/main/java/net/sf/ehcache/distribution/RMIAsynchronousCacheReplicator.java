@@ -13,7 +13,6 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-
 package net.sf.ehcache.distribution;
 
 import net.sf.ehcache.CacheException;
@@ -21,13 +20,28 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
 
+import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.rmi.RemoteException;
 import java.rmi.UnmarshalException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serialization.Serializer;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -36,7 +50,21 @@ import org.slf4j.Logger;
  * Listens to {@link net.sf.ehcache.CacheManager} and {@link net.sf.ehcache.Cache} events and propagates those to
  * {@link CachePeer} peers of the Cache asynchronously.
  * <p/>
- * Updates are guaranteed to be replicated in the order in which they are received.
+ * Events wait in a pending queue for up to the replication interval. While waiting, events on the same key are
+ * coalesced: only the last put or remove of a key is replicated, in the position of the first pending event on that
+ * key, and a removeAll supersedes everything pending before it. Updates of a given key are therefore replicated in
+ * the order in which they are received, but intermediate values may be skipped.
+ * <p/>
+ * Each peer has a bounded queue of batches of its own, so that a slow or unreachable peer does not hold up replication
+ * to the others. The batches for a remote node are sent by a single thread, shared by every replicator replicating to
+ * that node, which ends once idle. Batches are only taken from the pending queue once every peer has room for them,
+ * letting events coalesce while the peers catch up. A peer that still has no room after a replication interval is no
+ * longer waited for: its events are coalesced in a backlog of its own, as pending events are, until it has caught up.
+ * No event is discarded because a peer is slow. {@link #getPeerStatistics()} reports, per peer, the lag and the
+ * messages sent and backlogged.
+ * <p/>
+ * Peers which are {@link EventBatchCachePeer}s are sent batches in the compact binary format, compressed when larger
+ * than the compression threshold. Other peers are sent the {@link EventMessage}s themselves.
  * <p/>
  * While much faster in operation than {@link RMISynchronousCacheReplicator}, it does suffer from a number
  * of problems. Elements, which may be being spooled to DiskStore may stay around in memory because references
@@ -45,7 +73,7 @@ import org.slf4j.Logger;
  * to get an {@link OutOfMemoryError} using distribution in circumstances when it would not happen if we were
  * just using the DiskStore.
  * <p/>
- * Accordingly, the Element values in {@link EventMessage}s are held by {@link java.lang.ref.SoftReference} in the queue,
+ * Accordingly, the Element values in pending {@link EventMessage}s are held by {@link java.lang.ref.SoftReference},
  * so that they can be discarded if required by the GC to avoid an {@link OutOfMemoryError}. A log message
  * will be issued on each flush of the queue if there were any forced discards. One problem with GC collection
  * of SoftReferences is that the VM (JDK1.5 anyway) will do that rather than grow the heap size to the maximum.
@@ -59,7 +87,21 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
 
 
     private static final Logger LOG = LoggerFactory.getLogger(RMIAsynchronousCacheReplicator.class.getName());
-    
+
+    /**
+     * The pending queue key of a removeAll event.
+     */
+    private static final Object REMOVE_ALL_KEY = new Object();
+
+    /**
+     * The number of seconds after which an idle thread sending to a remote node ends.
+     */
+    private static final long SENDER_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The single threaded executors sending batches to the remote nodes, by URL base. Guarded by itself.
+     */
+    private static final Map<String, NodeSender> NODE_SENDERS = new HashMap<String, NodeSender>();
 
     /**
      * A thread which handles replication, so that replication can take place asynchronously and not hold up the cache
@@ -78,9 +120,24 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
     private final int maximumBatchSize;
 
     /**
-     * A queue of updates.
+     * The maximum number of batches queued for each peer.
+     */
+    private final int peerQueueSize;
+
+    /**
+     * The size from which batches in the binary format are compressed, negative to never compress them.
      */
-    private final Queue<Object> replicationQueue = new ConcurrentLinkedQueue<Object>();
+    private final int compressionThreshold;
+
+    /**
+     * The pending events, by key, in replication order.
+     */
+    private final CoalescingQueue replicationQueue = new CoalescingQueue();
+
+    /**
+     * The senders for the peers replicated to, by peer, including those of departed peers until they are drained.
+     */
+    private final Map<CachePeer, PeerSender> peerSenders = new ConcurrentHashMap<CachePeer, PeerSender>();
 
     /**
      * Constructor for internal and subclass use
@@ -93,6 +150,30 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
             boolean replicateRemovals,
             int replicationInterval,
             int maximumBatchSize) {
+        this(replicatePuts,
+                replicatePutsViaCopy,
+                replicateUpdates,
+                replicateUpdatesViaCopy,
+                replicateRemovals,
+                replicationInterval,
+                maximumBatchSize,
+                RMICacheReplicatorFactory.DEFAULT_ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE,
+                EventBatchCodec.DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Constructor for internal and subclass use
+     */
+    public RMIAsynchronousCacheReplicator(
+            boolean replicatePuts,
+            boolean replicatePutsViaCopy,
+            boolean replicateUpdates,
+            boolean replicateUpdatesViaCopy,
+            boolean replicateRemovals,
+            int replicationInterval,
+            int maximumBatchSize,
+            int peerQueueSize,
+            int compressionThreshold) {
         super(replicatePuts,
                 replicatePutsViaCopy,
                 replicateUpdates,
@@ -100,6 +181,8 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
                 replicateRemovals);
         this.replicationInterval = replicationInterval;
         this.maximumBatchSize = maximumBatchSize;
+        this.peerQueueSize = Math.max(1, peerQueueSize);
+        this.compressionThreshold = compressionThreshold;
         status = Status.STATUS_ALIVE;
         replicationThread.start();
     }
@@ -112,7 +195,7 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
     private void replicationThreadMain() {
         while (true) {
             // Wait for elements in the replicationQueue
-            while (alive() && replicationQueue != null && replicationQueue.isEmpty()) {
+            while (alive() && getPendingEventCount() == 0) {
                 try {
                     Thread.sleep(replicationInterval);
                 } catch (InterruptedException e) {
@@ -125,13 +208,15 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
             }
             try {
                 writeReplicationQueue();
+            } catch (InterruptedException e) {
+                LOG.debug("Spool Thread interrupted.");
+                return;
             } catch (Throwable e) {
                 LOG.error("Exception on flushing of replication queue: " + e.getMessage() + ". Continuing...", e);
             }
         }
     }
 
-
     /**
      * {@inheritDoc}
      * <p/>
@@ -272,7 +357,8 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      * Adds a message to the queue.
      * <p/>
      * This method checks the state of the replication thread and warns
-     * if it has stopped and then discards the message.
+     * if it has stopped and then discards the message. A message supersedes any pending message on the same key, a
+     * removeAll message supersedes all pending messages.
      *
      * @param cacheEventMessage
      */
@@ -280,13 +366,8 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
         if (!replicationThread.isAlive()) {
             LOG.error("CacheEventMessages cannot be added to the replication queue because the replication thread has died.");
         } else {
-            switch (eventMessage.getType()) {
-                case PUT:
-                    replicationQueue.add(new SoftReference(eventMessage));
-                    break;
-                default:
-                    replicationQueue.add(eventMessage);
-                    break;
+            synchronized (replicationQueue) {
+                replicationQueue.add(eventMessage);
             }
         }
     }
@@ -298,39 +379,60 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      * Sends accumulated messages in bulk to each peer. i.e. if ther are 100 messages and 1 peer,
      * 1 RMI invocation results, not 100. Also, if a peer is unavailable this is discovered in only 1 try.
      * <p/>
-     * Makes a copy of the queue so as not to hold up the enqueue operations.
-     * <p/>
-     * Any exceptions are caught so that the replication thread does not die, and because errors are expected,
-     * due to peers becoming unavailable.
-     * <p/>
-     * This method issues warnings for problems that can be fixed with configuration changes.
+     * Batches are handed to the sender of each peer, which sends them concurrently with the senders of the
+     * peers on other nodes. Any exceptions are caught by the senders, because errors are expected, due to peers becoming
+     * unavailable.
      */
-    private void writeReplicationQueue() {
+    private synchronized void writeReplicationQueue() throws InterruptedException {
+        awaitPeerRoom();
         List<EventMessage> eventMessages = extractEventMessages(maximumBatchSize);
 
         if (!eventMessages.isEmpty()) {
-            for (CachePeer cachePeer : listRemoteCachePeers(eventMessages.get(0).getEhcache())) {
-                try {
-                    cachePeer.send(eventMessages);
-                } catch (UnmarshalException e) {
-                    String message = e.getMessage();
-                    if (message.contains("Read time out") || message.contains("Read timed out")) {
-                        LOG.warn("Unable to send message to remote peer due to socket read timeout. Consider increasing" +
-                                " the socketTimeoutMillis setting in the cacheManagerPeerListenerFactory. " +
-                                "Message was: " + message);
-                    } else {
-                        LOG.debug("Unable to send message to remote peer.  Message was: " + message);
-                    }
-                } catch (Throwable t) {
-                    LOG.warn("Unable to send message to remote peer.  Message was: " + t.getMessage(), t);
+            Batch batch = new Batch(eventMessages);
+            Set<CachePeer> peers = new HashSet<CachePeer>(listRemoteCachePeers(eventMessages.get(0).getEhcache()));
+            for (CachePeer cachePeer : peers) {
+                PeerSender sender = peerSenders.get(cachePeer);
+                // a peer which comes back while its sender still drains keeps that sender, so its batches stay in order
+                if (sender == null || !sender.reinstate()) {
+                    sender = new PeerSender(cachePeer);
+                    peerSenders.put(cachePeer, sender);
+                }
+                sender.submit(batch);
+            }
+            for (Iterator<Map.Entry<CachePeer, PeerSender>> it = peerSenders.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<CachePeer, PeerSender> entry = it.next();
+                if (!peers.contains(entry.getKey()) && entry.getValue().retire()) {
+                    it.remove();
                 }
             }
         }
     }
 
+    /**
+     * Waits, for up to a replication interval, until every peer that is keeping up has room for another batch.
+     */
+    private void awaitPeerRoom() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + replicationInterval;
+        for (PeerSender sender : peerSenders.values()) {
+            sender.awaitRoom(deadline);
+        }
+    }
+
     private void flushReplicationQueue() {
-        while (!replicationQueue.isEmpty()) {
-            writeReplicationQueue();
+        try {
+            while (getPendingEventCount() > 0) {
+                writeReplicationQueue();
+            }
+            for (PeerSender sender : peerSenders.values()) {
+                sender.retire();
+            }
+            for (PeerSender sender : peerSenders.values()) {
+                sender.awaitDrained();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while flushing the replication queue, " + getPendingEventCount()
+                    + " pending messages were not replicated.");
         }
     }
 
@@ -340,36 +442,93 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
      * If an EventMessage has been invalidated due to SoftReference collection of the Element, it is not
      * propagated. This only affects puts and updates via copy.
      *
-     * @param replicationQueueCopy
+     * @param limit the maximum number of messages to extract
      * @return a list of EventMessages which were able to be resolved
      */
     private List<EventMessage> extractEventMessages(int limit) {
-        List<EventMessage> list = new ArrayList(Math.min(replicationQueue.size(), limit));
-
-        int droppedMessages = 0;
-        
-        while (list.size() < limit) {
-            Object polled = replicationQueue.poll();
-            if (polled == null) {
-                break;
-            } else if (polled instanceof EventMessage) {
-                list.add((EventMessage) polled);
-            } else {
-                EventMessage message = ((SoftReference<EventMessage>) polled).get();
-                if (message == null) {
-                    droppedMessages++;
-                } else {
-                    list.add(message);
-                }
-            }
+        List<EventMessage> list;
+        int droppedMessages;
+
+        synchronized (replicationQueue) {
+            list = new ArrayList<EventMessage>(Math.min(replicationQueue.size(), limit));
+            droppedMessages = replicationQueue.poll(limit, list);
         }
-        
+
+        warnOfDroppedMessages(droppedMessages);
+        return list;
+    }
+
+    private static void warnOfDroppedMessages(int droppedMessages) {
         if (droppedMessages > 0) {
             LOG.warn(droppedMessages + " messages were discarded on replicate due to reclamation of " +
                     "SoftReferences by the VM. Consider increasing the maximum heap size and/or setting the " +
                     "starting heap size to a higher value.");
         }
-        return list;
+    }
+
+    /**
+     * Returns the executor sending to the given remote node, creating it if needed. Each call must be matched by a
+     * call to {@link #releaseNodeSender(NodeSender)} once the caller no longer uses the executor.
+     */
+    private static NodeSender acquireNodeSender(String node) {
+        synchronized (NODE_SENDERS) {
+            NodeSender sender = NODE_SENDERS.get(node);
+            if (sender == null) {
+                sender = new NodeSender(node);
+                NODE_SENDERS.put(node, sender);
+            }
+            sender.users++;
+            return sender;
+        }
+    }
+
+    /**
+     * Stops using the executor sending to a remote node, shutting it down if nothing else uses it.
+     */
+    private static void releaseNodeSender(NodeSender sender) {
+        synchronized (NODE_SENDERS) {
+            if (--sender.users == 0) {
+                NODE_SENDERS.remove(sender.node);
+                sender.executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be handed to the peers.
+     *
+     * @return the number of pending events
+     */
+    public int getPendingEventCount() {
+        synchronized (replicationQueue) {
+            return replicationQueue.size();
+        }
+    }
+
+    /**
+     * Returns the number of events which were not replicated because a later event on the same key, or a
+     * removeAll, superseded them while they were pending.
+     *
+     * @return the number of coalesced events
+     */
+    public long getCoalescedEventCount() {
+        synchronized (replicationQueue) {
+            return replicationQueue.getCoalescedCount();
+        }
+    }
+
+    /**
+     * Returns how replication to each of the peers currently replicated to is keeping up.
+     *
+     * @return a snapshot of the statistics of each peer
+     */
+    public List<PeerReplicationStatistics> getPeerStatistics() {
+        Collection<PeerSender> senders = peerSenders.values();
+        List<PeerReplicationStatistics> statistics = new ArrayList<PeerReplicationStatistics>(senders.size());
+        for (PeerSender sender : senders) {
+            statistics.add(sender.getStatistics());
+        }
+        return statistics;
     }
 
     /**
@@ -390,6 +549,347 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
         }
     }
 
+    /**
+     * Events by key, in replication order. An event supersedes any queued event on the same key, and a removeAll
+     * supersedes every queued event. PUT events are held by SoftReference. Access is guarded by the owner.
+     */
+    private static final class CoalescingQueue {
+        private final LinkedHashMap<Object, Object> events = new LinkedHashMap<Object, Object>();
+        private long coalesced;
+
+        void add(RmiEventMessage eventMessage) {
+            switch (eventMessage.getType()) {
+                case PUT:
+                    enqueue(eventMessage.getElement().getObjectKey(), new SoftReference<EventMessage>(eventMessage));
+                    break;
+                case REMOVE_ALL:
+                    coalesced += events.size();
+                    events.clear();
+                    events.put(REMOVE_ALL_KEY, eventMessage);
+                    break;
+                default:
+                    enqueue(eventMessage.getSerializableKey(), eventMessage);
+                    break;
+            }
+        }
+
+        private void enqueue(Object key, Object queued) {
+            if (events.put(key, queued) != null) {
+                coalesced++;
+            }
+        }
+
+        /**
+         * Move up to limit events to the list, returning the number discarded due to reclamation of SoftReferences.
+         */
+        int poll(int limit, List<EventMessage> list) {
+            int dropped = 0;
+            for (Iterator<Object> it = events.values().iterator(); it.hasNext() && list.size() < limit;) {
+                Object polled = it.next();
+                it.remove();
+                if (polled instanceof EventMessage) {
+                    list.add((EventMessage) polled);
+                } else {
+                    EventMessage message = ((SoftReference<EventMessage>) polled).get();
+                    if (message == null) {
+                        dropped++;
+                    } else {
+                        list.add(message);
+                    }
+                }
+            }
+            return dropped;
+        }
+
+        void clear() {
+            events.clear();
+        }
+
+        int size() {
+            return events.size();
+        }
+
+        long getCoalescedCount() {
+            return coalesced;
+        }
+    }
+
+    /**
+     * The single threaded executor sending to one remote node, shared by the senders of all peers on the node.
+     */
+    private static final class NodeSender {
+        private final String node;
+        private final ThreadPoolExecutor executor;
+        private int users;
+
+        NodeSender(final String node) {
+            this.node = node;
+            this.executor = new ThreadPoolExecutor(1, 1, SENDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "Replication Thread for " + node);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * A batch of messages, sent as one RMI message to each peer.
+     */
+    private static final class Batch {
+        private final List<EventMessage> messages;
+        private final long created;
+
+        Batch(List<EventMessage> messages) {
+            this(messages, System.currentTimeMillis());
+        }
+
+        Batch(List<EventMessage> messages, long created) {
+            this.messages = messages;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Queues the batches for one peer, and sends them one at a time on the thread of the node of the peer.
+     */
+    private final class PeerSender implements Runnable {
+
+        private final CachePeer cachePeer;
+        private final String url;
+        private final NodeSender nodeSender;
+        private final Deque<Batch> batches = new ArrayDeque<Batch>();
+        private final CoalescingQueue backlog = new CoalescingQueue();
+        private long backlogCreated;
+        private int formatVersion = -1;
+        private Batch sending;
+        private boolean scheduled;
+        private boolean lagging;
+        private boolean retired;
+        private boolean closed;
+        private long sentMessages;
+        private long failedBatches;
+        private long sentBytes;
+
+        PeerSender(CachePeer cachePeer) {
+            this.cachePeer = cachePeer;
+            String peerUrl;
+            String node;
+            try {
+                peerUrl = cachePeer.getUrl();
+                node = cachePeer.getUrlBase();
+            } catch (Throwable t) {
+                peerUrl = cachePeer.toString();
+                node = peerUrl;
+            }
+            this.url = peerUrl;
+            this.nodeSender = acquireNodeSender(node);
+        }
+
+        /**
+         * Queue a batch or, while the queue is full or a backlog remains, coalesce its messages in the backlog.
+         */
+        synchronized void submit(Batch batch) {
+            if (backlog.size() == 0 && batches.size() < peerQueueSize) {
+                batches.addLast(batch);
+            } else {
+                if (backlog.size() == 0) {
+                    backlogCreated = batch.created;
+                }
+                if (!lagging) {
+                    LOG.warn("Replication to peer " + url + " is not keeping up, coalescing its messages until it catches up.");
+                    lagging = true;
+                }
+                for (EventMessage message : batch.messages) {
+                    backlog.add((RmiEventMessage) message);
+                }
+            }
+            schedule();
+        }
+
+        /**
+         * Wait until the queue has room or the deadline passes, unless the peer is already lagging.
+         */
+        synchronized void awaitRoom(long deadline) throws InterruptedException {
+            long remaining = deadline - System.currentTimeMillis();
+            while (!lagging && batches.size() >= peerQueueSize && !retired && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Stop waiting for the peer, and give up on its remaining messages as soon as a batch fails. The sender
+         * closes once it has nothing left to send.
+         *
+         * @return true if the sender is closed
+         */
+        synchronized boolean retire() {
+            retired = true;
+            notifyAll();
+            closeIfDrained();
+            return closed;
+        }
+
+        /**
+         * Take a retired sender back into use for its returning peer.
+         *
+         * @return false if the sender is already closed, and a new one must be created
+         */
+        synchronized boolean reinstate() {
+            if (!closed) {
+                retired = false;
+            }
+            return !closed;
+        }
+
+        /**
+         * Wait until the queued batches and the backlog are sent, or given up on.
+         */
+        synchronized void awaitDrained() throws InterruptedException {
+            while (scheduled) {
+                wait();
+            }
+        }
+
+        synchronized PeerReplicationStatistics getStatistics() {
+            Batch oldest = sending != null ? sending : batches.peekFirst();
+            long created = oldest != null ? oldest.created : backlog.size() > 0 ? backlogCreated : -1;
+            long lag = created < 0 ? 0 : Math.max(0, System.currentTimeMillis() - created);
+            return new PeerReplicationStatistics(url, lag, batches.size(), backlog.size(), sentMessages, failedBatches,
+                    backlog.getCoalescedCount(), sentBytes);
+        }
+
+        private void schedule() {
+            if (!scheduled && (!batches.isEmpty() || backlog.size() > 0)) {
+                scheduled = true;
+                nodeSender.executor.execute(this);
+            }
+        }
+
+        private void closeIfDrained() {
+            if (retired && !scheduled && !closed) {
+                closed = true;
+                releaseNodeSender(nodeSender);
+            }
+        }
+
+        /**
+         * Send the next batch, then queue up behind the senders of the other caches of the node.
+         */
+        public void run() {
+            Batch batch;
+            synchronized (this) {
+                batch = batches.pollFirst();
+                if (batch == null) {
+                    batch = pollBacklog();
+                }
+                sending = batch;
+                notifyAll();
+            }
+            long sent = batch == null ? 0 : send(batch.messages);
+            synchronized (this) {
+                sending = null;
+                if (batch != null) {
+                    if (sent >= 0) {
+                        sentMessages += batch.messages.size();
+                        sentBytes += sent;
+                    } else {
+                        failedBatches++;
+                        if (retired) {
+                            abandon();
+                        }
+                    }
+                }
+                if (lagging && backlog.size() == 0) {
+                    LOG.info("Replication to peer " + url + " has caught up.");
+                    lagging = false;
+                }
+                scheduled = false;
+                schedule();
+                closeIfDrained();
+                notifyAll();
+            }
+        }
+
+        private Batch pollBacklog() {
+            List<EventMessage> messages = new ArrayList<EventMessage>();
+            while (messages.isEmpty() && backlog.size() > 0) {
+                warnOfDroppedMessages(backlog.poll(maximumBatchSize, messages));
+            }
+            return messages.isEmpty() ? null : new Batch(messages, backlogCreated);
+        }
+
+        private void abandon() {
+            int abandoned = backlog.size();
+            for (Batch queued : batches) {
+                abandoned += queued.messages.size();
+            }
+            batches.clear();
+            backlog.clear();
+            if (abandoned > 0) {
+                LOG.warn(abandoned + " messages were not replicated to peer " + url + ", which could not be reached.");
+            }
+        }
+
+        /**
+         * Send a batch, returning the bytes sent in the binary format, or -1 if the batch could not be sent.
+         */
+        private long send(List<EventMessage> eventMessages) {
+            try {
+                byte[] eventBatch = encode(eventMessages);
+                if (eventBatch == null) {
+                    cachePeer.send(eventMessages);
+                    return 0;
+                } else {
+                    ((EventBatchCachePeer) cachePeer).sendEventBatch(eventBatch);
+                    return eventBatch.length;
+                }
+            } catch (UnmarshalException e) {
+                String message = e.getMessage();
+                if (message.contains("Read time out") || message.contains("Read timed out")) {
+                    LOG.warn("Unable to send message to remote peer due to socket read timeout. Consider increasing" +
+                            " the socketTimeoutMillis setting in the cacheManagerPeerListenerFactory. " +
+                            "Message was: " + message);
+                } else {
+                    LOG.debug("Unable to send message to remote peer.  Message was: " + message);
+                }
+            } catch (Throwable t) {
+                LOG.warn("Unable to send message to remote peer.  Message was: " + t.getMessage(), t);
+            }
+            return -1;
+        }
+
+        /**
+         * Encode a batch in the binary format if the peer supports it, returning null otherwise.
+         */
+        private byte[] encode(List<EventMessage> eventMessages) throws RemoteException {
+            if (formatVersion < 0) {
+                if (cachePeer instanceof EventBatchCachePeer) {
+                    formatVersion = Math.min(EventBatchCodec.FORMAT_VERSION,
+                            ((EventBatchCachePeer) cachePeer).getEventBatchFormatVersion());
+                } else {
+                    formatVersion = 0;
+                }
+                LOG.debug("Replicating to peer {} using event batch format version {}", url, formatVersion);
+            }
+            if (formatVersion < 1) {
+                return null;
+            }
+            Serializer serializer = eventMessages.get(0).getEhcache().getCacheConfiguration().getSerializer();
+            try {
+                return EventBatchCodec.encode(eventMessages, serializer, compressionThreshold);
+            } catch (IOException e) {
+                LOG.warn("Unable to encode messages for remote peer, sending them serialized instead. Message was: "
+                        + e.getMessage(), e);
+                return null;
+            }
+        }
+    }
+
     /**
      * Give the replicator a chance to flush the replication queue, then cleanup and free resources when no longer needed
      */
@@ -412,7 +912,8 @@ public class RMIAsynchronousCacheReplicator extends RMISynchronousCacheReplicato
         //shutup checkstyle
         super.clone();
         return new RMIAsynchronousCacheReplicator(replicatePuts, replicatePutsViaCopy,
-                replicateUpdates, replicateUpdatesViaCopy, replicateRemovals, replicationInterval, maximumBatchSize);
+                replicateUpdates, replicateUpdatesViaCopy, replicateRemovals, replicationInterval, maximumBatchSize,
+                peerQueueSize, compressionThreshold);
     }
 
 
@@ -16,21 +16,41 @@
 
 package net.sf.ehcache.distribution;
 
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.bootstrap.BootstrapCacheLoader;
+import net.sf.ehcache.util.NamedThreadFactory;
+import net.sf.ehcache.util.PreferTCCLObjectInputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Loads Elements from a random Cache Peer
+ * <p/>
+ * Peers implementing {@link BootstrapCachePeer} are bootstrapped from by streaming: the keys of a random peer are
+ * paged through a cursor, and chunks of them are fetched from all such peers in turn, several at a time. Chunks are
+ * sized from the serialized size of the elements received so far, so that each is close to the maximum chunk size,
+ * and progress is logged as the elements are put. Older peers are bootstrapped from by fetching all of their keys,
+ * then their elements in chunks sized from a sample element.
  *
  * @author Greg Luck
  * @version $Id$
@@ -39,6 +59,15 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
 
     private static final int ONE_SECOND = 1000;
 
+    /**
+     * The number of keys fetched per chunk until an element size has been measured.
+     */
+    private static final int FIRST_CHUNK_KEYS = 16;
+    private static final int MAXIMUM_CHUNK_KEYS = 100000;
+    private static final double CHUNK_SIZE_SMOOTHING = 0.25;
+    private static final long PROGRESS_INTERVAL_MILLIS = 10000;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
     private static final Logger LOG = LoggerFactory.getLogger(RMIBootstrapCacheLoader.class.getName());
 
     /**
@@ -51,14 +80,31 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
      */
     protected int maximumChunkSizeBytes;
 
+    /**
+     * The maximum number of chunks being fetched at once when streaming from peers.
+     */
+    protected int maximumConcurrentFetches;
+
     /**
      * Creates a boostrap cache loader that will work with RMI based distribution
      *
      * @param asynchronous Whether to load asynchronously
      */
     public RMIBootstrapCacheLoader(boolean asynchronous, int maximumChunkSize) {
+        this(asynchronous, maximumChunkSize, RMIBootstrapCacheLoaderFactory.DEFAULT_MAXIMUM_CONCURRENT_FETCHES);
+    }
+
+    /**
+     * Creates a boostrap cache loader that will work with RMI based distribution
+     *
+     * @param asynchronous             Whether to load asynchronously
+     * @param maximumChunkSize         the maximum serialized size of the elements to request at once
+     * @param maximumConcurrentFetches the maximum number of chunks being fetched at once
+     */
+    public RMIBootstrapCacheLoader(boolean asynchronous, int maximumChunkSize, int maximumConcurrentFetches) {
         this.asynchronous = asynchronous;
         this.maximumChunkSizeBytes = maximumChunkSize;
+        this.maximumConcurrentFetches = Math.max(1, maximumConcurrentFetches);
     }
 
 
@@ -134,7 +180,24 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
             LOG.debug("Empty list of cache peers for cache " + cache.getName() + ". No cache peer to bootstrap from.");
             return;
         }
+        List<BootstrapCachePeer> streamingPeers = new ArrayList<BootstrapCachePeer>();
+        for (Object cachePeer : cachePeers) {
+            if (cachePeer instanceof BootstrapCachePeer) {
+                streamingPeers.add((BootstrapCachePeer) cachePeer);
+            }
+        }
         Random random = new Random();
+        if (!streamingPeers.isEmpty()) {
+            BootstrapCachePeer keySource = streamingPeers.get(random.nextInt(streamingPeers.size()));
+            LOG.debug("Streaming bootstrap of " + cache.getName() + " from " + streamingPeers);
+            try {
+                new StreamingBootstrap(cache, keySource, streamingPeers).load();
+            } catch (Throwable t) {
+                throw new RemoteCacheException("Error bootstrapping from remote peer. Message was: " + t.getMessage(), t);
+            }
+            return;
+        }
+
         int randomPeerNumber = random.nextInt(cachePeers.size());
         CachePeer cachePeer = (CachePeer) cachePeers.get(randomPeerNumber);
         LOG.debug("Bootstrapping " + cache.getName() + " from " + cachePeer);
@@ -222,14 +285,32 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
      * @throws java.rmi.RemoteException
      */
     protected void fetchAndPutElements(Ehcache cache, List requestChunk, CachePeer cachePeer) throws RemoteException {
-        List receivedChunk = cachePeer.getElements(requestChunk);
-        for (int i = 0; i < receivedChunk.size(); i++) {
-            Element element = (Element) receivedChunk.get(i);
+        putElements(cache, cachePeer.getElements(requestChunk));
+    }
+
+    /**
+     * Puts elements received from a remote cache peer, without notifying replicators
+     *
+     * @param cache    the cache to put elements in
+     * @param received the elements, some of which may be null
+     * @return the number of elements put
+     */
+    protected int putElements(Ehcache cache, List received) {
+        List<Element> elements = new ArrayList<Element>(received.size());
+        for (Object element : received) {
             // element could be expired at the peer
             if (element != null) {
+                elements.add((Element) element);
+            }
+        }
+        if (cache instanceof Cache) {
+            ((Cache) cache).putAll(elements, true);
+        } else {
+            for (Element element : elements) {
                 cache.put(element, true);
             }
         }
+        return elements.size();
     }
 
     /**
@@ -254,13 +335,158 @@ public class RMIBootstrapCacheLoader implements BootstrapCacheLoader, Cloneable
         return maximumChunkSizeBytes;
     }
 
+    /**
+     * Gets the maximum number of chunks being fetched at once when streaming from peers
+     */
+    public int getMaximumConcurrentFetches() {
+        return maximumConcurrentFetches;
+    }
+
     /**
      * Clones this loader
      */
     @Override
     public Object clone() throws CloneNotSupportedException {
         //checkstyle
-        return new RMIBootstrapCacheLoader(asynchronous, maximumChunkSizeBytes);
+        return new RMIBootstrapCacheLoader(asynchronous, maximumChunkSizeBytes, maximumConcurrentFetches);
+    }
+
+    /**
+     * A bootstrap streamed from {@link BootstrapCachePeer}s.
+     * <p/>
+     * The calling thread pages through the keys of one peer, and hands chunks of them to fetch threads, which fetch
+     * them from each peer in turn and put the elements. A chunk that cannot be fetched from another peer is fetched
+     * from the peer the keys came from. At most {@link #maximumConcurrentFetches} chunks are handed out at once, which
+     * bounds the memory used on both sides.
+     */
+    private final class StreamingBootstrap {
+
+        private final Ehcache cache;
+        private final BootstrapCachePeer keySource;
+        private final List<BootstrapCachePeer> peers;
+        private final Semaphore fetchPermits = new Semaphore(maximumConcurrentFetches);
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final AtomicInteger nextPeer = new AtomicInteger();
+        private final AtomicLong elementsLoaded = new AtomicLong();
+        private final AtomicLong bytesLoaded = new AtomicLong();
+        private final AtomicLong lastProgress = new AtomicLong();
+        private final long start = System.nanoTime();
+        private double averageElementBytes = -1;
+
+        StreamingBootstrap(Ehcache cache, BootstrapCachePeer keySource, List<BootstrapCachePeer> peers) {
+            this.cache = cache;
+            this.keySource = keySource;
+            this.peers = peers;
+            this.lastProgress.set(System.currentTimeMillis());
+        }
+
+        void load() throws Throwable {
+            ThreadPoolExecutor fetchers = new ThreadPoolExecutor(maximumConcurrentFetches, maximumConcurrentFetches,
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamedThreadFactory("Bootstrap Fetch Thread for cache " + cache.getName()));
+            long keysRequested = 0;
+            try {
+                long cursor = 0;
+                do {
+                    int pageKeys = (int) Math.min(MAXIMUM_CHUNK_KEYS, (long) chunkKeys() * maximumConcurrentFetches);
+                    KeyPage page = keySource.getKeyPage(cursor, pageKeys);
+                    cursor = page.getCursor();
+                    List keys = page.getKeys();
+                    keysRequested += keys.size();
+                    for (int from = 0; from < keys.size() && failure.get() == null;) {
+                        int to = Math.min(keys.size(), from + chunkKeys());
+                        submit(fetchers, new ArrayList(keys.subList(from, to)));
+                        from = to;
+                    }
+                } while (cursor != 0 && failure.get() == null);
+                fetchPermits.acquire(maximumConcurrentFetches);
+            } finally {
+                fetchers.shutdownNow();
+            }
+
+            Throwable t = failure.get();
+            if (t != null) {
+                throw t;
+            }
+            LOG.info("Bootstrap of " + cache.getName() + " finished. " + keysRequested + " keys requested. "
+                    + progress());
+        }
+
+        private void submit(ExecutorService fetchers, final List keys) throws InterruptedException {
+            fetchPermits.acquire();
+            fetchers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        fetch(keys);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        fetchPermits.release();
+                    }
+                }
+            });
+        }
+
+        private void fetch(List keys) throws RemoteException, IOException, ClassNotFoundException {
+            BootstrapCachePeer peer = peers.get((nextPeer.getAndIncrement() & Integer.MAX_VALUE) % peers.size());
+            byte[] serialized;
+            try {
+                serialized = peer.getSerializedElements(keys);
+            } catch (RemoteException e) {
+                if (peer == keySource) {
+                    throw e;
+                }
+                LOG.debug("Fetching a chunk of " + cache.getName() + " from " + peer + " failed. Fetching it from "
+                        + keySource + " instead.", e);
+                serialized = keySource.getSerializedElements(keys);
+            }
+
+            int elements = putElements(cache, deserialize(serialized));
+            elementsLoaded.addAndGet(elements);
+            bytesLoaded.addAndGet(serialized.length);
+            if (elements > 0) {
+                elementsMeasured(serialized.length, elements);
+            }
+
+            long now = System.currentTimeMillis();
+            long last = lastProgress.get();
+            if (now - last >= PROGRESS_INTERVAL_MILLIS && lastProgress.compareAndSet(last, now)) {
+                LOG.info("Bootstrapping " + cache.getName() + ". " + progress());
+            }
+        }
+
+        private synchronized void elementsMeasured(int bytes, int elements) {
+            double chunkAverage = (double) bytes / elements;
+            if (averageElementBytes < 0) {
+                averageElementBytes = chunkAverage;
+            } else {
+                averageElementBytes += CHUNK_SIZE_SMOOTHING * (chunkAverage - averageElementBytes);
+            }
+        }
+
+        private synchronized int chunkKeys() {
+            if (averageElementBytes < 0) {
+                return FIRST_CHUNK_KEYS;
+            }
+            return (int) Math.max(1, Math.min(MAXIMUM_CHUNK_KEYS, maximumChunkSizeBytes / averageElementBytes));
+        }
+
+        private List deserialize(byte[] serialized) throws IOException, ClassNotFoundException {
+            ObjectInputStream in = new PreferTCCLObjectInputStream(new ByteArrayInputStream(serialized));
+            try {
+                return (List) in.readObject();
+            } finally {
+                in.close();
+            }
+        }
+
+        private String progress() {
+            double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)) / (double) ONE_SECOND;
+            long elements = elementsLoaded.get();
+            long bytes = bytesLoaded.get();
+            return String.format("%d elements (%.1f MB) loaded in %.1fs: %.0f elements/s, %.2f MB/s",
+                    elements, bytes / BYTES_PER_MEGABYTE, seconds, elements / seconds, bytes / BYTES_PER_MEGABYTE / seconds);
+        }
     }
 
 }
@@ -37,6 +37,21 @@ public class RMIBootstrapCacheLoaderFactory extends BootstrapCacheLoaderFactory<
      */
     public static final String MAXIMUM_CHUNK_SIZE_BYTES = "maximumChunkSizeBytes";
 
+    /**
+     * The property name expected in ehcache.xml for the maximum number of chunks fetched at once
+     */
+    public static final String MAXIMUM_CONCURRENT_FETCHES = "maximumConcurrentFetches";
+
+    /**
+     * The default maximum number of chunks fetched at once when streaming from peers.
+     */
+    protected static final int DEFAULT_MAXIMUM_CONCURRENT_FETCHES = 4;
+
+    /**
+     * The highest reasonable number of chunks fetched at once
+     */
+    protected static final int MAXIMUM_REASONABLE_CONCURRENT_FETCHES = 64;
+
     /**
      * The default maximum serialized size of the elements to request from a remote cache peer during bootstrap.
      */
@@ -65,7 +80,31 @@ public class RMIBootstrapCacheLoaderFactory extends BootstrapCacheLoaderFactory<
     public RMIBootstrapCacheLoader createBootstrapCacheLoader(Properties properties) {
         boolean bootstrapAsynchronously = extractBootstrapAsynchronously(properties);
         int maximumChunkSizeBytes = extractMaximumChunkSizeBytes(properties);
-        return new RMIBootstrapCacheLoader(bootstrapAsynchronously, maximumChunkSizeBytes);
+        int maximumConcurrentFetches = extractMaximumConcurrentFetches(properties);
+        return new RMIBootstrapCacheLoader(bootstrapAsynchronously, maximumChunkSizeBytes, maximumConcurrentFetches);
+    }
+
+    /**
+     *
+     * @param properties the properties passed by the CacheManager, read from the configuration file
+     * @return the maximum number of chunks fetched at once
+     */
+    protected int extractMaximumConcurrentFetches(Properties properties) {
+        String maximumConcurrentFetchesString = PropertyUtil.extractAndLogProperty(MAXIMUM_CONCURRENT_FETCHES, properties);
+        if (maximumConcurrentFetchesString == null) {
+            return DEFAULT_MAXIMUM_CONCURRENT_FETCHES;
+        }
+        try {
+            int maximumConcurrentFetches = Integer.parseInt(maximumConcurrentFetchesString);
+            if (maximumConcurrentFetches < 1 || maximumConcurrentFetches > MAXIMUM_REASONABLE_CONCURRENT_FETCHES) {
+                LOG.warn("Trying to set the number of concurrent fetches to an unreasonable number. Using the default instead.");
+                return DEFAULT_MAXIMUM_CONCURRENT_FETCHES;
+            }
+            return maximumConcurrentFetches;
+        } catch (NumberFormatException e) {
+            LOG.warn("Number format exception trying to set the number of concurrent fetches. Using the default instead.");
+            return DEFAULT_MAXIMUM_CONCURRENT_FETCHES;
+        }
     }
 
     /**
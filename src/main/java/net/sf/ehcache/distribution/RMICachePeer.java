@@ -16,16 +16,28 @@
 
 package net.sf.ehcache.distribution;
 
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheStoreHelper;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.store.FrontEndCacheTier;
+import net.sf.ehcache.store.Store;
+import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,14 +50,19 @@ import org.slf4j.LoggerFactory;
  * @author Greg Luck
  * @version $Id$
  */
-public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remote {
+public class RMICachePeer extends UnicastRemoteObject implements EventBatchCachePeer, BootstrapCachePeer, Remote {
 
     private static final Logger LOG = LoggerFactory.getLogger(RMICachePeer.class.getName());
 
+    private static final long KEY_CURSOR_IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int MAXIMUM_KEY_CURSORS = 16;
+
     private final String hostname;
     private final Integer rmiRegistryPort;
     private Integer remoteObjectPort;
     private final Ehcache cache;
+    private final ConcurrentMap<Long, KeyCursor> keyCursors = new ConcurrentHashMap<Long, KeyCursor>();
+    private final AtomicLong lastKeyCursor = new AtomicLong();
 
     /**
      * Construct a new remote peer.
@@ -166,6 +183,76 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A new cursor walks the keys of the cache's store in place when the store supports it, and iterates over a copy
+     * of {@link #getKeys()} otherwise. At most sixteen cursors are open at once, and cursors idle for more than five
+     * minutes are closed.
+     */
+    public KeyPage getKeyPage(long cursor, int maximumKeys) throws RemoteException {
+        closeIdleKeyCursors();
+        KeyCursor keyCursor;
+        if (cursor == 0) {
+            if (keyCursors.size() >= MAXIMUM_KEY_CURSORS) {
+                throw new RemoteException("Too many open key cursors on cache " + cache.getName());
+            }
+            cursor = lastKeyCursor.incrementAndGet();
+            keyCursor = new KeyCursor(keyIterator());
+            keyCursors.put(cursor, keyCursor);
+        } else {
+            keyCursor = keyCursors.get(cursor);
+            if (keyCursor == null) {
+                throw new RemoteException("Key cursor " + cursor + " of cache " + cache.getName() + " is closed");
+            }
+        }
+
+        List keys = new ArrayList(Math.max(0, Math.min(maximumKeys, 1024)));
+        synchronized (keyCursor) {
+            keyCursor.lastAccess = System.nanoTime();
+            while (keys.size() < maximumKeys && keyCursor.keys.hasNext()) {
+                keys.add(keyCursor.keys.next());
+            }
+            if (!keyCursor.keys.hasNext()) {
+                keyCursors.remove(cursor);
+                cursor = 0;
+            }
+        }
+        return new KeyPage(cursor, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The elements are those returned by {@link #getElements(List)}.
+     */
+    public byte[] getSerializedElements(List keys) throws RemoteException {
+        try {
+            return MemoryEfficientByteArrayOutputStream.serialize((Serializable) getElements(keys)).getBytes();
+        } catch (IOException e) {
+            throw new RemoteException("Could not serialize elements of cache " + cache.getName(), e);
+        }
+    }
+
+    private Iterator keyIterator() throws RemoteException {
+        if (cache instanceof Cache) {
+            Store store = new CacheStoreHelper((Cache) cache).getStore();
+            if (store instanceof FrontEndCacheTier) {
+                return ((FrontEndCacheTier) store).keyIterator();
+            }
+        }
+        return getKeys().iterator();
+    }
+
+    private void closeIdleKeyCursors() {
+        long now = System.nanoTime();
+        for (Iterator<KeyCursor> it = keyCursors.values().iterator(); it.hasNext();) {
+            if (now - it.next().lastAccess > KEY_CURSOR_IDLE_NANOS) {
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Puts an Element into the underlying cache without notifying listeners or updating statistics.
      *
@@ -229,6 +316,30 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public int getEventBatchFormatVersion() throws RemoteException {
+        return EventBatchCodec.FORMAT_VERSION;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The batch is decoded and applied as by {@link #send(List)}.
+     */
+    public void sendEventBatch(byte[] eventBatch) throws RemoteException {
+        List<RmiEventMessage> eventMessages;
+        try {
+            eventMessages = EventBatchCodec.decode(eventBatch);
+        } catch (IOException e) {
+            throw new RemoteException("Could not decode event batch for cache " + cache.getName(), e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Could not decode event batch for cache " + cache.getName(), e);
+        }
+        send(eventMessages);
+    }
+
     /**
      * Gets the cache name
      */
@@ -262,4 +373,16 @@ public class RMICachePeer extends UnicastRemoteObject implements CachePeer, Remo
         return buffer.toString();
     }
 
+
+    /**
+     * The position of a bootstrapping peer in the keys of this cache.
+     */
+    private static final class KeyCursor {
+        private final Iterator keys;
+        private volatile long lastAccess = System.nanoTime();
+
+        KeyCursor(Iterator keys) {
+            this.keys = keys;
+        }
+    }
 }
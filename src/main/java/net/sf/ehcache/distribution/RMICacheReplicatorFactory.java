@@ -53,6 +53,11 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
      */
     protected static final int DEFAULT_ASYNCHRONOUS_REPLICATION_MAXIMUM_BATCH_SIZE = 1000;
 
+    /**
+     * A default for the maximum number of batches queued for each peer.
+     */
+    protected static final int DEFAULT_ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE = 16;
+
     private static final Logger LOG = LoggerFactory.getLogger(RMICacheReplicatorFactory.class.getName());
     private static final String REPLICATE_PUTS = "replicatePuts";
     private static final String REPLICATE_PUTS_VIA_COPY = "replicatePutsViaCopy";
@@ -62,6 +67,8 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
     private static final String REPLICATE_ASYNCHRONOUSLY = "replicateAsynchronously";
     private static final String ASYNCHRONOUS_REPLICATION_INTERVAL_MILLIS = "asynchronousReplicationIntervalMillis";
     private static final String ASYNCHRONOUS_REPLICATION_MAXIMUM_BATCH_SIZE = "asynchronousReplicationMaximumBatchSize";
+    private static final String ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE = "asynchronousReplicationPeerQueueSize";
+    private static final String ASYNCHRONOUS_REPLICATION_COMPRESSION_THRESHOLD = "asynchronousReplicationCompressionThreshold";
     private static final int MINIMUM_REASONABLE_INTERVAL = 10;
 
     /**
@@ -76,6 +83,9 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
      * <li>replicateRemovals=true;
      * <li>replicateAsynchronously=true
      * <li>asynchronousReplicationIntervalMillis=1000
+     * <li>asynchronousReplicationMaximumBatchSize=1000
+     * <li>asynchronousReplicationPeerQueueSize=16
+     * <li>asynchronousReplicationCompressionThreshold=8192
      * </ul>
      *
      * @param properties implementation specific properties. These are configured as comma
@@ -102,6 +112,8 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
         boolean replicateAsynchronously = extractReplicateAsynchronously(properties);
         int replicationIntervalMillis = extractReplicationIntervalMilis(properties);
         int maximumBatchSize = extractMaximumBatchSize(properties);
+        int peerQueueSize = extractPeerQueueSize(properties);
+        int compressionThreshold = extractCompressionThreshold(properties);
 
         if (replicateAsynchronously) {
             return new RMIAsynchronousCacheReplicator(
@@ -111,7 +123,9 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
                     replicateUpdatesViaCopy,
                     replicateRemovals,
                     replicationIntervalMillis,
-                    maximumBatchSize);
+                    maximumBatchSize,
+                    peerQueueSize,
+                    compressionThreshold);
         } else {
             return new RMISynchronousCacheReplicator(
                     replicatePuts,
@@ -174,6 +188,53 @@ public class RMICacheReplicatorFactory extends CacheEventListenerFactory {
         }
     }
     
+    /**
+     * Extracts the value of asynchronousReplicationPeerQueueSize. Sets it to 16 if
+     * either not set or there is a problem parsing the number
+     * @param properties
+     */
+    protected int extractPeerQueueSize(Properties properties) {
+        String peerQueueSizeString =
+                PropertyUtil.extractAndLogProperty(ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE, properties);
+        if (peerQueueSizeString == null) {
+            return DEFAULT_ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE;
+        } else {
+            try {
+                int peerQueueSize = Integer.parseInt(peerQueueSizeString);
+                if (peerQueueSize < 1) {
+                    LOG.warn("asynchronousReplicationPeerQueueSize must be at least 1. Using the default instead.");
+                    return DEFAULT_ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE;
+                }
+                return peerQueueSize;
+            } catch (NumberFormatException e) {
+                LOG.warn("Number format exception trying to set asynchronousReplicationPeerQueueSize. " +
+                        "Using the default instead. String value was: '" + peerQueueSizeString + "'");
+                return DEFAULT_ASYNCHRONOUS_REPLICATION_PEER_QUEUE_SIZE;
+            }
+        }
+    }
+
+    /**
+     * Extracts the value of asynchronousReplicationCompressionThreshold. Sets it to 8192 if
+     * either not set or there is a problem parsing the number
+     * @param properties
+     */
+    protected int extractCompressionThreshold(Properties properties) {
+        String compressionThresholdString =
+                PropertyUtil.extractAndLogProperty(ASYNCHRONOUS_REPLICATION_COMPRESSION_THRESHOLD, properties);
+        if (compressionThresholdString == null) {
+            return EventBatchCodec.DEFAULT_COMPRESSION_THRESHOLD;
+        } else {
+            try {
+                return Integer.parseInt(compressionThresholdString);
+            } catch (NumberFormatException e) {
+                LOG.warn("Number format exception trying to set asynchronousReplicationCompressionThreshold. " +
+                        "Using the default instead. String value was: '" + compressionThresholdString + "'");
+                return EventBatchCodec.DEFAULT_COMPRESSION_THRESHOLD;
+            }
+        }
+    }
+
     /**
      * Extracts the value of replicateAsynchronously from the properties
      * @param properties
@@ -16,16 +16,37 @@
 
 package net.sf.ehcache.distribution;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.serialization.JavaSerializer;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
 
 /**
+ * An event message replicated over RMI.
+ * <p>
+ * The serialized form is that of earlier versions, so that peers of either version can exchange messages. When the
+ * cache's configured {@link Serializer} is not Java serialization, the element is written with it instead, in two
+ * trailing fields holding the serializer class name and the element bytes, which earlier versions ignore.
  *
  * @author cdennis
  */
 public final class RmiEventMessage extends EventMessage {
 
+    private static final long serialVersionUID = -6838027855576772339L;
+
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("type", RmiEventType.class),
+        new ObjectStreamField("element", Element.class),
+        new ObjectStreamField("serializerClass", String.class),
+        new ObjectStreamField("serializedElement", byte[].class),
+    };
+
     /**
      * Enumeration of event types.
      */
@@ -50,12 +71,17 @@ public final class RmiEventMessage extends EventMessage {
     /**
      * The event component.
      */
-    private final RmiEventType type;
+    private RmiEventType type;
 
     /**
      * The element component.
      */
-    private final Element element;
+    private Element element;
+
+    /**
+     * The serializer used for the element on the sending side.
+     */
+    private final transient Serializer serializer;
 
     /**
      * Full constructor.
@@ -69,6 +95,7 @@ public final class RmiEventMessage extends EventMessage {
         super(cache, key);
         this.type = type;
         this.element = element;
+        this.serializer = cache == null || cache.getCacheConfiguration() == null ? null : cache.getCacheConfiguration().getSerializer();
     }
     
     /**
@@ -86,4 +113,28 @@ public final class RmiEventMessage extends EventMessage {
     public final Element getElement() {
         return element;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("type", type);
+        if (element == null || serializer == null || serializer instanceof JavaSerializer) {
+            fields.put("element", element);
+        } else {
+            fields.put("serializerClass", serializer.getClass().getName());
+            fields.put("serializedElement", Serializers.toBytes(serializer, element));
+        }
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        type = (RmiEventType) fields.get("type", null);
+        String serializerClass = (String) fields.get("serializerClass", null);
+        if (serializerClass == null) {
+            element = (Element) fields.get("element", null);
+        } else {
+            byte[] bytes = (byte[]) fields.get("serializedElement", null);
+            element = (Element) Serializers.fromBytes(Serializers.getSerializer(serializerClass), bytes);
+        }
+    }
 }
@@ -25,13 +25,13 @@ import net.sf.ehcache.distribution.CacheReplicator;
 import net.sf.ehcache.statistics.LiveCacheStatisticsData;
 import net.sf.ehcache.store.FrontEndCacheTier;
 import net.sf.ehcache.store.Store;
+import net.sf.ehcache.util.counter.StripedLongAdder;
 
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Registered listeners for registering and unregistering CacheEventListeners and multicasting notifications to registrants.
@@ -57,12 +57,12 @@ public class RegisteredEventListeners {
 
     private final AtomicBoolean hasReplicator = new AtomicBoolean(false);
 
-    private final AtomicLong elementsRemovedCounter = new AtomicLong(0);
-    private final AtomicLong elementsPutCounter = new AtomicLong(0);
-    private final AtomicLong elementsUpdatedCounter = new AtomicLong(0);
-    private final AtomicLong elementsExpiredCounter = new AtomicLong(0);
-    private final AtomicLong elementsEvictedCounter = new AtomicLong(0);
-    private final AtomicLong elementsRemoveAllCounter = new AtomicLong(0);
+    private final StripedLongAdder elementsRemovedCounter = new StripedLongAdder();
+    private final StripedLongAdder elementsPutCounter = new StripedLongAdder();
+    private final StripedLongAdder elementsUpdatedCounter = new StripedLongAdder();
+    private final StripedLongAdder elementsExpiredCounter = new StripedLongAdder();
+    private final StripedLongAdder elementsEvictedCounter = new StripedLongAdder();
+    private final StripedLongAdder elementsRemoveAllCounter = new StripedLongAdder();
 
     private final CacheStoreHelper helper;
 
@@ -99,7 +99,7 @@ public class RegisteredEventListeners {
     }
 
     private void internalNotifyElementRemoved(Element element, ElementCreationCallback callback, boolean remoteEvent) {
-        elementsRemovedCounter.incrementAndGet();
+        elementsRemovedCounter.increment();
         if (hasCacheEventListeners()) {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -135,7 +135,7 @@ public class RegisteredEventListeners {
     }
 
     private void internalNotifyElementPut(Element element, ElementCreationCallback callback, boolean remoteEvent) {
-        elementsPutCounter.incrementAndGet();
+        elementsPutCounter.increment();
         if (hasCacheEventListeners()) {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -171,7 +171,7 @@ public class RegisteredEventListeners {
     }
 
     private void internalNotifyElementUpdated(Element element, ElementCreationCallback callback, boolean remoteEvent) {
-        elementsUpdatedCounter.incrementAndGet();
+        elementsUpdatedCounter.increment();
         if (hasCacheEventListeners()) {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -207,7 +207,7 @@ public class RegisteredEventListeners {
     }
 
     private void internalNotifyElementExpiry(Element element, ElementCreationCallback callback, boolean remoteEvent) {
-        elementsExpiredCounter.incrementAndGet();
+        elementsExpiredCounter.increment();
         if (hasCacheEventListeners()) {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -255,7 +255,7 @@ public class RegisteredEventListeners {
 
     private void internalNotifyElementEvicted(Element element, ElementCreationCallback callback, boolean remoteEvent) {
         if (cache.getCacheConfiguration().getPinningConfiguration() == null) {
-            elementsEvictedCounter.incrementAndGet();
+            elementsEvictedCounter.increment();
             if (hasCacheEventListeners()) {
                 for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                     if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -320,7 +320,7 @@ public class RegisteredEventListeners {
      * @see CacheEventListener#notifyElementEvicted
      */
     public final void notifyRemoveAll(boolean remoteEvent) {
-        elementsRemoveAllCounter.incrementAndGet();
+        elementsRemoveAllCounter.increment();
         if (hasCacheEventListeners()) {
             for (ListenerWrapper listenerWrapper : cacheEventListeners) {
                 if (listenerWrapper.getScope().shouldDeliver(remoteEvent)
@@ -466,12 +466,12 @@ public class RegisteredEventListeners {
      * Clears all event counters
      */
     public void clearCounters() {
-        elementsRemovedCounter.set(0);
-        elementsPutCounter.set(0);
-        elementsUpdatedCounter.set(0);
-        elementsExpiredCounter.set(0);
-        elementsEvictedCounter.set(0);
-        elementsRemoveAllCounter.set(0);
+        elementsRemovedCounter.reset();
+        elementsPutCounter.reset();
+        elementsUpdatedCounter.reset();
+        elementsExpiredCounter.reset();
+        elementsEvictedCounter.reset();
+        elementsRemoveAllCounter.reset();
     }
 
     /**
@@ -480,7 +480,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsRemovedCounter() {
-        return elementsRemovedCounter.get();
+        return elementsRemovedCounter.sum();
     }
 
     /**
@@ -489,7 +489,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsPutCounter() {
-        return elementsPutCounter.get();
+        return elementsPutCounter.sum();
     }
 
     /**
@@ -498,7 +498,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsUpdatedCounter() {
-        return elementsUpdatedCounter.get();
+        return elementsUpdatedCounter.sum();
     }
 
     /**
@@ -507,7 +507,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsExpiredCounter() {
-        return elementsExpiredCounter.get();
+        return elementsExpiredCounter.sum();
     }
 
     /**
@@ -516,7 +516,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsEvictedCounter() {
-        return elementsEvictedCounter.get();
+        return elementsEvictedCounter.sum();
     }
 
     /**
@@ -525,7 +525,7 @@ public class RegisteredEventListeners {
      * @return the number of events since cache creation or last clearing of counters
      */
     public long getElementsRemoveAllCounter() {
-        return elementsRemoveAllCounter.get();
+        return elementsRemoveAllCounter.sum();
     }
 
     /**
@@ -53,6 +53,11 @@ public interface CacheLoader {
      * method to customize the loading of cache object. This method is called
      * by the caching service when the requested object is not in the cache.
      * <P>
+     * {@link Ehcache#getAllWithLoader(Collection, Object)} passes at most the cache's
+     * cacheLoaderBatchSize keys at once, and may do so from several threads concurrently.
+     * Keys absent from the returned map are considered not found. The loader argument
+     * is passed to {@link #loadAll(Collection, Object)} instead when not null.
+     * <P>
      *
      * @param keys a Collection of keys identifying the objects to be loaded
      *
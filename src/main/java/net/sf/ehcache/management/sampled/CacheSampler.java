@@ -16,6 +16,9 @@
 
 package net.sf.ehcache.management.sampled;
 
+import java.util.Map;
+
+import net.sf.ehcache.statistics.CacheOperationLatency;
 import net.sf.ehcache.statistics.LiveCacheStatistics;
 import net.sf.ehcache.statistics.sampled.SampledCacheStatistics;
 
@@ -488,4 +491,10 @@ public interface CacheSampler extends LiveCacheStatistics, SampledCacheStatistic
      * @return average get time (nanos.)
      */
     long getCacheAverageGetTime();
+
+    /**
+     * @return the 50th, 99th and 99.9th percentile latency (nanos.) of each {@link CacheOperationLatency}, keyed by its
+     *         name suffixed with {@code _P50}, {@code _P99} or {@code _P999}, e.g. {@code GET_DISK_HIT_P999}
+     */
+    Map<String, Long> getCacheLatencyPercentiles();
 }
\ No newline at end of file
@@ -21,11 +21,15 @@ import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.CacheConfigurationListener;
 import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.config.TerracottaConfiguration.Consistency;
+import net.sf.ehcache.statistics.CacheOperationLatency;
 import net.sf.ehcache.util.CacheTransactionHelper;
 import net.sf.ehcache.writer.writebehind.WriteBehindManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * An implementation of {@link CacheSampler}
  *
@@ -36,6 +40,8 @@ public class CacheSamplerImpl implements CacheSampler, CacheConfigurationListene
     private static final int PERCENTAGE_DIVISOR = 100;
     private static final int MILLIS_PER_SECOND = 1000;
     private static final int NANOS_PER_MILLI = MILLIS_PER_SECOND * MILLIS_PER_SECOND;
+    private static final double[] LATENCY_PERCENTILES = {50d, 99d, 99.9d};
+    private static final String[] LATENCY_PERCENTILE_SUFFIXES = {"_P50", "_P99", "_P999"};
 
     private static final Logger LOG = LoggerFactory.getLogger(CacheSamplerImpl.class);
 
@@ -553,6 +559,31 @@ public class CacheSamplerImpl implements CacheSampler, CacheConfigurationListene
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        try {
+            return cache.getLiveCacheStatistics().getLatencyPercentileNanos(operation, percentile);
+        } catch (RuntimeException e) {
+            throw Utils.newPlainException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getCacheLatencyPercentiles() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (CacheOperationLatency operation : CacheOperationLatency.values()) {
+            for (int i = 0; i < LATENCY_PERCENTILES.length; i++) {
+                result.put(operation.name() + LATENCY_PERCENTILE_SUFFIXES[i],
+                        getLatencyPercentileNanos(operation.name(), LATENCY_PERCENTILES[i]));
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -551,6 +551,22 @@ public class SampledCache extends BaseEmitterBean implements SampledCacheMBean,
         return sampledCacheDelegate.getMinGetTimeNanos();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see net.sf.ehcache.statistics.LiveCacheStatistics#getLatencyPercentileNanos(String, double)
+     */
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        return sampledCacheDelegate.getLatencyPercentileNanos(operation, percentile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getCacheLatencyPercentiles() {
+        return sampledCacheDelegate.getCacheLatencyPercentiles();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,60 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool;
+
+/**
+ * A poolable store which also reports its off-heap resource usage to a {@link Pool}.
+ */
+public interface OffHeapPoolableStore extends PoolableStore {
+
+    /**
+     * Perform eviction to release off-heap resources
+     *
+     * @param count the number of elements to evict
+     * @param size the size in bytes to free (hint)
+     * @return true if the requested number of elements could be evicted
+     */
+    boolean evictFromOffHeap(int count, long size);
+
+    /**
+     * Return the approximate off-heap hit rate
+     *
+     * @return the approximate off-heap hit rate
+     */
+    float getApproximateOffHeapHitRate();
+
+    /**
+     * Return the approximate off-heap miss rate
+     *
+     * @return the approximate off-heap miss rate
+     */
+    float getApproximateOffHeapMissRate();
+
+    /**
+     * Return the approximate off-heap size
+     *
+     * @return the approximate off-heap size
+     */
+    long getApproximateOffHeapCountSize();
+
+    /**
+     * Return the approximate off-heap size in bytes
+     *
+     * @return the approximate off-heap size in bytes
+     */
+    long getApproximateOffHeapByteSize();
+}
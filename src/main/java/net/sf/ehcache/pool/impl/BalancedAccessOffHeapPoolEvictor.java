@@ -0,0 +1,68 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.pool.impl;
+
+import net.sf.ehcache.pool.OffHeapPoolableStore;
+import net.sf.ehcache.pool.PoolableStore;
+
+/**
+ * Balanced access evictor that makes off-heap eviction decisions.
+ * <p>
+ * Stores which do not implement {@link OffHeapPoolableStore} are treated as holding no off-heap resources.
+ */
+public class BalancedAccessOffHeapPoolEvictor extends AbstractBalancedAccessEvictor<PoolableStore> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean evict(PoolableStore store, int count, long size) {
+        return store instanceof OffHeapPoolableStore && ((OffHeapPoolableStore) store).evictFromOffHeap(count, size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long countSize(PoolableStore store) {
+        return store instanceof OffHeapPoolableStore ? ((OffHeapPoolableStore) store).getApproximateOffHeapCountSize() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long byteSize(PoolableStore store) {
+        return store instanceof OffHeapPoolableStore ? ((OffHeapPoolableStore) store).getApproximateOffHeapByteSize() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected float hitRate(PoolableStore store) {
+        return store instanceof OffHeapPoolableStore ? ((OffHeapPoolableStore) store).getApproximateOffHeapHitRate() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected float missRate(PoolableStore store) {
+        return store instanceof OffHeapPoolableStore ? ((OffHeapPoolableStore) store).getApproximateOffHeapMissRate() : 0;
+    }
+}
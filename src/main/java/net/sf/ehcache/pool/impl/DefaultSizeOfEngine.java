@@ -30,6 +30,7 @@ import net.sf.ehcache.pool.SizeOfEngine;
 import net.sf.ehcache.pool.sizeof.AgentSizeOf;
 import net.sf.ehcache.pool.sizeof.ReflectionSizeOf;
 import net.sf.ehcache.pool.sizeof.SizeOf;
+import net.sf.ehcache.pool.sizeof.SizeOfMemoizer;
 import net.sf.ehcache.pool.sizeof.UnsafeSizeOf;
 import net.sf.ehcache.pool.sizeof.filter.AnnotationSizeOfFilter;
 import net.sf.ehcache.pool.sizeof.filter.CombinationSizeOfFilter;
@@ -59,11 +60,27 @@ public class DefaultSizeOfEngine implements SizeOfEngine {
      * when calculating the size of the object graph.
      */
     public static final String USER_FILTER_RESOURCE = "net.sf.ehcache.sizeof.filter";
+
+    /**
+     * System property defining a user specific resource of types that can be sized without walking their graph.
+     * <p>
+     * The resource pointed to by this property must be a list of fully qualified class names, one per line,
+     * optionally followed by the {@link net.sf.ehcache.pool.sizeof.SizeFunction} sizing them:
+     * <pre>
+     * # This is a comment
+     * org.mycompany.domain.MyFixedSizeType
+     * org.mycompany.domain.MyOtherType = org.mycompany.sizing.MyOtherTypeSizeFunction
+     * </pre>
+     * The size of the graph beneath the first instance of a type listed alone is reused for all its other instances.
+     * @see SizeOfMemoizer
+     */
+    public static final String USER_MEMOIZATION_RESOURCE = "net.sf.ehcache.sizeof.memoization";
     
     private static final Logger LOG = LoggerFactory.getLogger(DefaultSizeOfEngine.class.getName());
     private static final String VERBOSE_DEBUG_LOGGING = "net.sf.ehcache.sizeof.verboseDebugLogging";
 
     private static final SizeOfFilter DEFAULT_FILTER;
+    private static final SizeOfMemoizer DEFAULT_MEMOIZER;
     private static final boolean USE_VERBOSE_DEBUG_LOGGING;
 
     static {
@@ -79,6 +96,7 @@ public class DefaultSizeOfEngine implements SizeOfEngine {
             filters.add(userFilter);
         }
         DEFAULT_FILTER = new CombinationSizeOfFilter(filters.toArray(new SizeOfFilter[filters.size()]));
+        DEFAULT_MEMOIZER = getUserMemoizer();
 
         USE_VERBOSE_DEBUG_LOGGING = getVerboseSizeOfDebugLogging();
     }
@@ -97,15 +115,15 @@ public class DefaultSizeOfEngine implements SizeOfEngine {
         this.abortWhenMaxDepthExceeded = abortWhenMaxDepthExceeded;
         SizeOf bestSizeOf;
         try {
-            bestSizeOf = new AgentSizeOf(DEFAULT_FILTER);
+            bestSizeOf = new AgentSizeOf(DEFAULT_FILTER, true, DEFAULT_MEMOIZER);
             LOG.info("using Agent sizeof engine");
         } catch (UnsupportedOperationException e) {
             try {
-                bestSizeOf = new UnsafeSizeOf(DEFAULT_FILTER);
+                bestSizeOf = new UnsafeSizeOf(DEFAULT_FILTER, true, DEFAULT_MEMOIZER);
                 LOG.info("using Unsafe sizeof engine");
             } catch (UnsupportedOperationException f) {
                 try {
-                    bestSizeOf = new ReflectionSizeOf(DEFAULT_FILTER);
+                    bestSizeOf = new ReflectionSizeOf(DEFAULT_FILTER, true, DEFAULT_MEMOIZER);
                     LOG.info("using Reflection sizeof engine");
                 } catch (UnsupportedOperationException g) {
                     throw new CacheException("A suitable SizeOf engine could not be loaded: " + e + ", " + f + ", " + g);
@@ -130,33 +148,50 @@ public class DefaultSizeOfEngine implements SizeOfEngine {
     }
 
     private static SizeOfFilter getUserFilter() {
-        String userFilterProperty = System.getProperty(USER_FILTER_RESOURCE);
+        for (URL filterUrl : getUserResourceUrls(USER_FILTER_RESOURCE)) {
+            SizeOfFilter filter;
+            try {
+                filter = new ResourceSizeOfFilter(filterUrl);
+                LOG.info("Using user supplied filter @ {}", filterUrl);
+                return filter;
+            } catch (IOException e) {
+                LOG.debug("IOException while loading user size-of filter resource", e);
+            }
+        }
+        return null;
+    }
 
-        if (userFilterProperty != null) {
-            List<URL> filterUrls = new ArrayList<URL>();
+    private static SizeOfMemoizer getUserMemoizer() {
+        for (URL memoizationUrl : getUserResourceUrls(USER_MEMOIZATION_RESOURCE)) {
             try {
-                filterUrls.add(new URL(userFilterProperty));
-            } catch (MalformedURLException e) {
-                LOG.debug("MalformedURLException using {} as a URL", userFilterProperty);
+                SizeOfMemoizer memoizer = new SizeOfMemoizer(memoizationUrl);
+                LOG.info("Using user supplied size-of memoization @ {}", memoizationUrl);
+                return memoizer;
+            } catch (IOException e) {
+                LOG.debug("IOException while loading user size-of memoization resource", e);
             }
+        }
+        return new SizeOfMemoizer();
+    }
+
+    private static List<URL> getUserResourceUrls(String property) {
+        List<URL> urls = new ArrayList<URL>();
+        String userProperty = System.getProperty(property);
+
+        if (userProperty != null) {
             try {
-                filterUrls.add(new File(userFilterProperty).toURI().toURL());
+                urls.add(new URL(userProperty));
             } catch (MalformedURLException e) {
-                LOG.debug("MalformedURLException using {} as a file URL", userFilterProperty);
+                LOG.debug("MalformedURLException using {} as a URL", userProperty);
             }
-            filterUrls.add(ClassLoaderUtil.getStandardClassLoader().getResource(userFilterProperty));
-            for (URL filterUrl : filterUrls) {
-                SizeOfFilter filter;
-                try {
-                    filter = new ResourceSizeOfFilter(filterUrl);
-                    LOG.info("Using user supplied filter @ {}", filterUrl);
-                    return filter;
-                } catch (IOException e) {
-                    LOG.debug("IOException while loading user size-of filter resource", e);
-                }
+            try {
+                urls.add(new File(userProperty).toURI().toURL());
+            } catch (MalformedURLException e) {
+                LOG.debug("MalformedURLException using {} as a file URL", userProperty);
             }
+            urls.add(ClassLoaderUtil.getStandardClassLoader().getResource(userProperty));
         }
-        return null;
+        return urls;
     }
 
     private static boolean getVerboseSizeOfDebugLogging() {
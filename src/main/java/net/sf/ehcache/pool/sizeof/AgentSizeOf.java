@@ -65,7 +65,21 @@ public class AgentSizeOf extends SizeOf {
      * @see SizeOfFilter
      */
     public AgentSizeOf(SizeOfFilter filter, boolean caching) throws UnsupportedOperationException {
-        super(filter, caching);
+        this(filter, caching, new SizeOfMemoizer());
+    }
+
+    /**
+     * Builds a new SizeOf that will filter fields according to the provided filter, and size the types the memoizer
+     * declares without walking their graph
+     * @param filter The filter to apply
+     * @param caching whether to cache reflected fields
+     * @param memoizer the types to size without walking their graph
+     * @throws UnsupportedOperationException If agent couldn't be loaded or isn't present
+     * @see SizeOfFilter
+     * @see SizeOfMemoizer
+     */
+    public AgentSizeOf(SizeOfFilter filter, boolean caching, SizeOfMemoizer memoizer) throws UnsupportedOperationException {
+        super(filter, caching, memoizer);
         if (!AGENT_LOADED) {
             throw new UnsupportedOperationException("Agent not available or loadable");
         }
@@ -17,14 +17,12 @@
 package net.sf.ehcache.pool.sizeof;
 
 import java.lang.ref.SoftReference;
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.IdentityHashMap;
-import java.util.Stack;
 
 import net.sf.ehcache.pool.sizeof.filter.SizeOfFilter;
 import net.sf.ehcache.util.WeakIdentityConcurrentMap;
@@ -32,11 +30,22 @@ import net.sf.ehcache.util.WeakIdentityConcurrentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import sun.misc.Unsafe;
+
 /**
  * This will walk an object graph and let you execute some "function" along the way
+ * <p>
+ * Each class is planned once: whether it is walked at all, its flyweight type and the offsets of its reference
+ * fields, which are then read through {@link Unsafe} where it is available. A walk runs on a per-thread stack and
+ * identity set that are reused from one walk to the next, so sizing a typical element allocates nothing.
+ * <p>
+ * Types the {@link SizeOfMemoizer} declares of fixed size are only walked for their first instance, while types it
+ * provides a {@link SizeFunction} for are not walked at all. While a fixed size type is measured, other instances of
+ * it are walked like any other object, so its size then includes the instances its first one reaches.
  *
  * @author Alex Snaps
  */
+@SuppressWarnings("restriction")
 final class ObjectGraphWalker {
 
     private static final Logger LOG = LoggerFactory.getLogger(ObjectGraphWalker.class);
@@ -60,16 +69,31 @@ final class ObjectGraphWalker {
 
     private static final boolean USE_VERBOSE_DEBUG_LOGGING;
 
-    // Todo this is probably not what we want...
-    private final WeakIdentityConcurrentMap<Class<?>, SoftReference<Collection<Field>>> fieldCache =
-            new WeakIdentityConcurrentMap<Class<?>, SoftReference<Collection<Field>>>();
-    private final WeakIdentityConcurrentMap<Class<?>, Boolean> classCache =
-            new WeakIdentityConcurrentMap<Class<?>, Boolean>();
+    private static final Unsafe UNSAFE = UnsafeSizeOf.UNSAFE;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int RETAINED_CAPACITY = 4096;
+    private static final int LAYOUT_CACHE_SIZE = 64;
+
+    private final WeakIdentityConcurrentMap<Class<?>, ClassLayout> layouts = new WeakIdentityConcurrentMap<Class<?>, ClassLayout>();
+
+    private final ThreadLocal<WalkState> walkStates = new ThreadLocal<WalkState>() {
+        @Override
+        protected WalkState initialValue() {
+            return new WalkState();
+        }
+    };
 
     private final SizeOfFilter sizeOfFilter;
 
     private final Visitor visitor;
 
+    private final boolean cacheShallowSizes;
+
+    private final SizeOfMemoizer memoizer;
+
+    private final SizeOf sizeOf;
+
     static {
         USE_VERBOSE_DEBUG_LOGGING = getVerboseSizeOfDebugLogging();
     }
@@ -83,8 +107,40 @@ final class ObjectGraphWalker {
      * @see SizeOfFilter
      */
     ObjectGraphWalker(Visitor visitor, SizeOfFilter filter) {
+        this(visitor, filter, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param visitor the visitor to use
+     * @param filter the filtering
+     * @param cacheShallowSizes whether the visitor result for non-array instances can be cached per class
+     * @see Visitor
+     * @see SizeOfFilter
+     */
+    ObjectGraphWalker(Visitor visitor, SizeOfFilter filter, boolean cacheShallowSizes) {
+        this(visitor, filter, cacheShallowSizes, null, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param visitor the visitor to use
+     * @param filter the filtering
+     * @param cacheShallowSizes whether the visitor result for non-array instances can be cached per class
+     * @param memoizer the types that can be sized without walking their graph, may be null
+     * @param sizeOf the engine passed to size functions
+     * @see Visitor
+     * @see SizeOfFilter
+     * @see SizeOfMemoizer
+     */
+    ObjectGraphWalker(Visitor visitor, SizeOfFilter filter, boolean cacheShallowSizes, SizeOfMemoizer memoizer, SizeOf sizeOf) {
         this.visitor = visitor;
         this.sizeOfFilter = filter;
+        this.cacheShallowSizes = cacheShallowSizes;
+        this.memoizer = memoizer;
+        this.sizeOf = sizeOf;
     }
 
     private static boolean getVerboseSizeOfDebugLogging() {
@@ -117,23 +173,36 @@ final class ObjectGraphWalker {
      * @return the sum of all Visitor#visit returned values
      */
     long walk(int maxDepth, boolean abortWhenMaxDepthExceeded, Object... root) {
+        return walkGraph(maxDepth, abortWhenMaxDepthExceeded, null, root);
+    }
+
+    /**
+     * Walk the graph, walking instances of the fixed size types being measured rather than using their memoized size
+     */
+    private long walkGraph(int maxDepth, boolean abortWhenMaxDepthExceeded, Measurement measuring, Object[] root) {
+        WalkState state = walkStates.get();
+        if (state.active) {
+            // a visitor or filter is sizing from within a walk
+            state = new WalkState();
+        }
+        state.active = true;
+
         StringBuilder traversalDebugMessage = null;
         long result = 0;
         boolean warned = false;
         try {
-            Stack<Object> toVisit = new Stack<Object>();
-            IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
-
             if (root != null) {
                 if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
                     traversalDebugMessage = new StringBuilder();
                     traversalDebugMessage.append("visiting ");
                 }
                 for (Object object : root) {
-                    nullSafeAdd(toVisit, object);
-                    if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled() && object != null) {
-                        traversalDebugMessage.append(object.getClass().getName())
-                            .append("@").append(System.identityHashCode(object)).append(", ");
+                    if (object != null) {
+                        state.push(object);
+                        if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
+                            traversalDebugMessage.append(object.getClass().getName())
+                                .append("@").append(System.identityHashCode(object)).append(", ");
+                        }
                     }
                 }
                 if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
@@ -141,32 +210,39 @@ final class ObjectGraphWalker {
                 }
             }
 
-            while (!toVisit.isEmpty()) {
-                warned = checkMaxDepth(maxDepth, abortWhenMaxDepthExceeded, warned, visited);
+            while (state.top > 0) {
+                warned = checkMaxDepth(maxDepth, abortWhenMaxDepthExceeded, warned, state.visitedCount);
 
-                Object ref = toVisit.pop();
+                Object ref = state.pop();
 
-                if (visited.containsKey(ref)) {
+                if (!state.markVisited(ref)) {
                     continue;
                 }
 
                 Class<?> refClass = ref.getClass();
-                if (!isSharedFlyweight(ref) && shouldWalkClass(refClass)) {
-                    if (refClass.isArray() && !refClass.getComponentType().isPrimitive()) {
-                        for (int i = 0; i < Array.getLength(ref); i++) {
-                            nullSafeAdd(toVisit, Array.get(ref, i));
-                        }
+                ClassLayout layout = state.cachedLayout(refClass);
+                if (layout == null) {
+                    layout = getLayout(refClass);
+                    state.cacheLayout(refClass, layout);
+                }
+
+                if (layout.walk && !layout.flyweight.isShared(ref)) {
+                    long visitSize;
+                    if (layout.memoized && !Measurement.isMeasuring(measuring, ref)) {
+                        visitSize = memoizedSize(ref, refClass, layout, maxDepth, abortWhenMaxDepthExceeded, measuring);
                     } else {
-                        for (Field field : getFilteredFields(refClass)) {
-                            try {
-                                nullSafeAdd(toVisit, field.get(ref));
-                            } catch (IllegalAccessException ex) {
-                                throw new RuntimeException(ex);
+                        if (layout.objectArray) {
+                            for (Object element : (Object[]) ref) {
+                                if (element != null) {
+                                    state.push(element);
+                                }
                             }
+                        } else if (!layout.array) {
+                            pushReferences(ref, refClass, layout, state);
                         }
+                        visitSize = calculateSize(ref, layout);
                     }
 
-                    long visitSize = calculateSize(ref);
                     if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
                         traversalDebugMessage.append("  ").append(visitSize).append("b\t\t")
                             .append(ref.getClass().getName()).append("@").append(System.identityHashCode(ref)).append("\n");
@@ -176,7 +252,6 @@ final class ObjectGraphWalker {
                     traversalDebugMessage.append("  ignored\t")
                         .append(ref.getClass().getName()).append("@").append(System.identityHashCode(ref)).append("\n");
                 }
-                visited.put(ref, null);
             }
 
             if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
@@ -187,22 +262,86 @@ final class ObjectGraphWalker {
         } catch (MaxDepthExceededException we) {
             we.addToMeasuredSize(result);
             throw we;
+        } finally {
+            state.reset();
+            state.active = false;
         }
     }
 
-    private long calculateSize(Object ref) {
-        long visitSize = 0;
-        if (ref == null) {
-            return 0;
+    private void pushReferences(Object ref, Class<?> refClass, ClassLayout layout, WalkState state) {
+        long[] offsets = layout.offsets;
+        if (offsets != null) {
+            for (long offset : offsets) {
+                Object value = UNSAFE.getObject(ref, offset);
+                if (value != null) {
+                    state.push(value);
+                }
+            }
         } else {
-            visitSize = visitor.visit(ref);
+            Field[] fields = layout.fields.get();
+            if (fields == null) {
+                // the field list was collected, plan the class again
+                ClassLayout replanned = createLayout(refClass);
+                fields = replanned.strongFields;
+                replanned.strongFields = null;
+                layouts.put(refClass, replanned);
+                state.cacheLayout(refClass, replanned);
+            }
+            for (Field field : fields) {
+                try {
+                    Object value = field.get(ref);
+                    if (value != null) {
+                        state.push(value);
+                    }
+                } catch (IllegalAccessException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+    }
+
+    private long calculateSize(Object ref, ClassLayout layout) {
+        if (cacheShallowSizes && !layout.array) {
+            long size = layout.shallowSize;
+            if (size < 0) {
+                size = visitor.visit(ref);
+                layout.shallowSize = size;
+            }
+            return size;
+        } else {
+            return visitor.visit(ref);
+        }
+    }
+
+    private long memoizedSize(Object ref, Class<?> refClass, ClassLayout layout, int maxDepth, boolean abortWhenMaxDepthExceeded,
+                              Measurement measuring) {
+        if (layout.function != null) {
+            SizeFunction<Object> function = layout.function.get();
+            if (function == null) {
+                function = memoizer.getSizeFunction(refClass);
+                layout.function = new SoftReference<SizeFunction<Object>>(function);
+            }
+            return function.sizeOf(ref, sizeOf);
         }
-        return visitSize;
+
+        long size = layout.deepSize;
+        if (size < 0) {
+            Measurement measurement = new Measurement(ref, measuring);
+            size = walkGraph(maxDepth, abortWhenMaxDepthExceeded, measurement, new Object[] {ref});
+            layout.deepSize = size;
+            if (measurement.reachesOtherInstances) {
+                LOG.warn("Fixed size type {} references other instances of itself, which are included in its size of {} bytes",
+                    refClass.getName(), size);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Measured fixed size type {} at {} bytes", refClass.getName(), size);
+            }
+        }
+        return size;
     }
 
     private boolean checkMaxDepth(final int maxDepth, final boolean abortWhenMaxDepthExceeded, boolean warned,
-                                  final IdentityHashMap<Object, Object> visited) {
-        if (visited.size() >= maxDepth) {
+                                  final int visited) {
+        if (visited >= maxDepth) {
             if (abortWhenMaxDepthExceeded) {
                 throw new MaxDepthExceededException(MessageFormat.format(ABORT_MESSAGE, maxDepth));
             } else if (!warned) {
@@ -213,45 +352,78 @@ final class ObjectGraphWalker {
         return warned;
     }
 
+    private ClassLayout getLayout(Class<?> refClass) {
+        ClassLayout layout = layouts.get(refClass);
+        if (layout == null) {
+            layout = createLayout(refClass);
+            layout.strongFields = null;
+            layouts.put(refClass, layout);
+        }
+        return layout;
+    }
+
     /**
-     * Returns the filtered fields for a particular type
+     * Plans how instances of a type are walked. The returned layout still holds its fields strongly.
      *
      * @param refClass the type
-     * @return A collection of fields to be visited
+     * @return the layout for that type
      */
-    private Collection<Field> getFilteredFields(Class<?> refClass) {
-        SoftReference<Collection<Field>> ref = fieldCache.get(refClass);
-        Collection<Field> fieldList = ref != null ? ref.get() : null;
-        if (fieldList != null) {
-            return fieldList;
-        } else {
-            Collection<Field> result;
-            result = sizeOfFilter.filterFields(refClass, getAllFields(refClass));
-            if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
-                for (Field field : result) {
-                    if (Modifier.isTransient(field.getModifiers())) {
-                        LOG.debug("SizeOf engine walking transient field '{}' of class {}", field.getName(), refClass.getName());
-                    }
-                }
+    private ClassLayout createLayout(Class<?> refClass) {
+        FlyweightType flyweight = FlyweightType.getFlyweightType(refClass);
+        if (!sizeOfFilter.filterClass(refClass)) {
+            return new ClassLayout(false, refClass, flyweight, null, null);
+        } else if (refClass.isArray()) {
+            return new ClassLayout(true, refClass, flyweight, null, null);
+        }
+
+        ClassLayout layout = createFieldLayout(refClass, flyweight);
+        if (memoizer != null) {
+            SizeFunction<Object> function = memoizer.getSizeFunction(refClass);
+            if (function != null) {
+                layout.memoized = true;
+                layout.function = new SoftReference<SizeFunction<Object>>(function);
+            } else {
+                layout.memoized = memoizer.isFixedSize(refClass);
             }
-            fieldCache.put(refClass, new SoftReference<Collection<Field>>(result));
-            return result;
         }
+        return layout;
     }
 
-    private boolean shouldWalkClass(Class<?> refClass) {
-        Boolean cached = classCache.get(refClass);
-        if (cached == null) {
-            cached = sizeOfFilter.filterClass(refClass);
-            classCache.put(refClass, cached);
+    private ClassLayout createFieldLayout(Class<?> refClass, FlyweightType flyweight) {
+
+        Collection<Field> filtered = getFilteredFields(refClass);
+        Field[] fields = filtered.toArray(new Field[filtered.size()]);
+        long[] offsets = null;
+        if (UNSAFE != null) {
+            offsets = new long[fields.length];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    offsets[i] = UNSAFE.objectFieldOffset(fields[i]);
+                }
+            } catch (UnsupportedOperationException e) {
+                LOG.debug("Reading the fields of {} reflectively", refClass.getName());
+                offsets = null;
+            }
         }
-        return cached.booleanValue();
+        return new ClassLayout(true, refClass, flyweight, offsets, fields);
     }
 
-    private static void nullSafeAdd(final Stack<Object> toVisit, final Object o) {
-        if (o != null) {
-            toVisit.push(o);
+    /**
+     * Returns the filtered fields for a particular type
+     *
+     * @param refClass the type
+     * @return A collection of fields to be visited
+     */
+    private Collection<Field> getFilteredFields(Class<?> refClass) {
+        Collection<Field> result = sizeOfFilter.filterFields(refClass, getAllFields(refClass));
+        if (USE_VERBOSE_DEBUG_LOGGING && LOG.isDebugEnabled()) {
+            for (Field field : result) {
+                if (Modifier.isTransient(field.getModifiers())) {
+                    LOG.debug("SizeOf engine walking transient field '{}' of class {}", field.getName(), refClass.getName());
+                }
+            }
         }
+        return result;
     }
 
     /**
@@ -281,9 +453,168 @@ final class ObjectGraphWalker {
         return fields;
     }
 
-    private static boolean isSharedFlyweight(Object obj) {
-        FlyweightType type = FlyweightType.getFlyweightType(obj.getClass());
-        return type != null && type.isShared(obj);
+    /**
+     * A fixed size type being measured, within the measurements of the types whose graph reached it.
+     */
+    private static final class Measurement {
+
+        private final Object instance;
+        private final Measurement outer;
+        private boolean reachesOtherInstances;
+
+        Measurement(Object instance, Measurement outer) {
+            this.instance = instance;
+            this.outer = outer;
+        }
+
+        /**
+         * Whether the reference is of a type being measured, and so is to be walked rather than sized from memory.
+         */
+        static boolean isMeasuring(Measurement measuring, Object ref) {
+            for (Measurement measurement = measuring; measurement != null; measurement = measurement.outer) {
+                if (measurement.instance.getClass() == ref.getClass()) {
+                    if (measurement.instance != ref) {
+                        measurement.reachesOtherInstances = true;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * How instances of one class are walked.
+     * <p>
+     * Layouts are held in a map weakly keyed by class, so they must not strongly reference the class: reference
+     * fields are kept as offsets, or softly as {@link Field}s when they have to be read reflectively, and so are size
+     * functions.
+     */
+    private static final class ClassLayout {
+        private final boolean walk;
+        private final boolean array;
+        private final boolean objectArray;
+        private final FlyweightType flyweight;
+        private final long[] offsets;
+        private final SoftReference<Field[]> fields;
+        private volatile long shallowSize = -1;
+        private volatile long deepSize = -1;
+        private volatile SoftReference<SizeFunction<Object>> function;
+        private boolean memoized;
+        private Field[] strongFields;
+
+        ClassLayout(boolean walk, Class<?> klazz, FlyweightType flyweight, long[] offsets, Field[] fields) {
+            this.walk = walk;
+            this.array = klazz.isArray();
+            this.objectArray = array && !klazz.getComponentType().isPrimitive();
+            this.flyweight = flyweight;
+            this.offsets = offsets;
+            this.fields = offsets == null && fields != null ? new SoftReference<Field[]>(fields) : null;
+            this.strongFields = fields;
+        }
     }
 
+    /**
+     * The reusable working memory of a walk: a stack of references still to visit, an open-addressed identity set of
+     * the references already visited, and a small direct-mapped cache of the layouts used so far.
+     */
+    private static final class WalkState {
+        private boolean active;
+
+        private Object[] stack = new Object[INITIAL_CAPACITY];
+        private int top;
+
+        private Object[] visited = new Object[INITIAL_CAPACITY];
+        private int visitedCount;
+
+        private final Class<?>[] layoutClasses = new Class<?>[LAYOUT_CACHE_SIZE];
+        private final ClassLayout[] layoutCache = new ClassLayout[LAYOUT_CACHE_SIZE];
+
+        void push(Object ref) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = ref;
+        }
+
+        Object pop() {
+            Object ref = stack[--top];
+            stack[top] = null;
+            return ref;
+        }
+
+        /**
+         * Add to the visited set.
+         *
+         * @return false if the reference had already been visited
+         */
+        boolean markVisited(Object ref) {
+            Object[] table = visited;
+            int mask = table.length - 1;
+            int i = hash(ref) & mask;
+            for (Object existing = table[i]; existing != null; existing = table[i]) {
+                if (existing == ref) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = ref;
+            if (++visitedCount * 3 > table.length * 2) {
+                resizeVisited();
+            }
+            return true;
+        }
+
+        private void resizeVisited() {
+            Object[] old = visited;
+            Object[] table = new Object[old.length * 2];
+            int mask = table.length - 1;
+            for (Object ref : old) {
+                if (ref != null) {
+                    int i = hash(ref) & mask;
+                    while (table[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = ref;
+                }
+            }
+            visited = table;
+        }
+
+        ClassLayout cachedLayout(Class<?> klazz) {
+            int i = hash(klazz) & (LAYOUT_CACHE_SIZE - 1);
+            return layoutClasses[i] == klazz ? layoutCache[i] : null;
+        }
+
+        void cacheLayout(Class<?> klazz, ClassLayout layout) {
+            int i = hash(klazz) & (LAYOUT_CACHE_SIZE - 1);
+            layoutClasses[i] = klazz;
+            layoutCache[i] = layout;
+        }
+
+        /**
+         * Drop every reference held, so that nothing walked is retained by the thread, and shrink oversized arrays.
+         */
+        void reset() {
+            if (stack.length > RETAINED_CAPACITY) {
+                stack = new Object[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(stack, 0, top, null);
+            }
+            top = 0;
+            if (visited.length > RETAINED_CAPACITY) {
+                visited = new Object[INITIAL_CAPACITY];
+            } else if (visitedCount > 0) {
+                Arrays.fill(visited, null);
+            }
+            visitedCount = 0;
+            Arrays.fill(layoutClasses, null);
+            Arrays.fill(layoutCache, null);
+        }
+
+        private static int hash(Object ref) {
+            int h = System.identityHashCode(ref);
+            return h ^ (h >>> 16);
+        }
+    }
 }
@@ -64,7 +64,19 @@ public class ReflectionSizeOf extends SizeOf {
      * @see SizeOfFilter
      */
     public ReflectionSizeOf(SizeOfFilter fieldFilter, boolean caching) {
-        super(fieldFilter, caching);
+        this(fieldFilter, caching, new SizeOfMemoizer());
+    }
+
+    /**
+     * Builds a new SizeOf that will filter fields, and size the types the memoizer declares without walking their graph
+     * @param fieldFilter The filter to apply
+     * @param caching Whether to cache reflected fields
+     * @param memoizer the types to size without walking their graph
+     * @see SizeOfFilter
+     * @see SizeOfMemoizer
+     */
+    public ReflectionSizeOf(SizeOfFilter fieldFilter, boolean caching, SizeOfMemoizer memoizer) {
+        super(fieldFilter, caching, memoizer);
 
         if (!CURRENT_JVM_INFORMATION.supportsReflectionSizeOf()) {
             LOGGER.warn("ReflectionSizeOf is not always accurate on the JVM (" + CURRENT_JVM_INFORMATION.getJvmDescription() +
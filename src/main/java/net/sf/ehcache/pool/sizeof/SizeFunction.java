@@ -0,0 +1,39 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.pool.sizeof;
+
+/**
+ * Calculates the size of instances of a type directly, rather than having the SizeOf engine walk their object graph.
+ * <p>
+ * Implementations need a public no-arg constructor, and are declared either with the
+ * {@link net.sf.ehcache.pool.sizeof.annotations.FunctionSizeOf} annotation or in a {@link SizeOfMemoizer} resource.
+ *
+ * @param <T> the type sized
+ * @see SizeOfMemoizer
+ */
+public interface SizeFunction<T> {
+
+    /**
+     * Calculates the size of an instance and of everything it references that should be accounted for
+     *
+     * @param instance the instance to measure
+     * @param sizeOf the engine in use, whose {@link SizeOf#sizeOf(Object)} measures a single object
+     * @return the size in bytes
+     */
+    long sizeOf(T instance, SizeOf sizeOf);
+}
@@ -19,7 +19,6 @@ package net.sf.ehcache.pool.sizeof;
 import net.sf.ehcache.pool.Size;
 import net.sf.ehcache.pool.sizeof.ObjectGraphWalker.Visitor;
 import net.sf.ehcache.pool.sizeof.filter.SizeOfFilter;
-import net.sf.ehcache.util.WeakIdentityConcurrentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,17 +36,24 @@ public abstract class SizeOf {
     /**
      * Builds a new SizeOf that will filter fields according to the provided filter
      * @param fieldFilter The filter to apply
-     * @param caching whether to cache reflected fields
+     * @param caching whether to cache the shallow size of each (non-array) type
      * @see SizeOfFilter
      */
     public SizeOf(SizeOfFilter fieldFilter, boolean caching) {
-        ObjectGraphWalker.Visitor visitor;
-        if (caching) {
-            visitor = new CachingSizeOfVisitor();
-        } else {
-            visitor = new SizeOfVisitor();
-        }
-        this.walker = new ObjectGraphWalker(visitor, fieldFilter);
+        this(fieldFilter, caching, new SizeOfMemoizer());
+    }
+
+    /**
+     * Builds a new SizeOf that will filter fields according to the provided filter, and size the types the memoizer
+     * declares without walking their graph
+     * @param fieldFilter The filter to apply
+     * @param caching whether to cache the shallow size of each (non-array) type
+     * @param memoizer the types to size without walking their graph
+     * @see SizeOfFilter
+     * @see SizeOfMemoizer
+     */
+    public SizeOf(SizeOfFilter fieldFilter, boolean caching, SizeOfMemoizer memoizer) {
+        this.walker = new ObjectGraphWalker(new SizeOfVisitor(), fieldFilter, caching, memoizer, this);
     }
 
     /**
@@ -89,30 +95,4 @@ public abstract class SizeOf {
             return sizeOf(object);
         }
     }
-
-    /**
-     * Will Cache already visited types
-     */
-    private class CachingSizeOfVisitor implements Visitor {
-        private final WeakIdentityConcurrentMap<Class<?>, Long> cache = new WeakIdentityConcurrentMap<Class<?>, Long>();
-
-        /**
-         * {@inheritDoc}
-         */
-        public long visit(final Object object) {
-            Class<?> klazz = object.getClass();
-            Long cachedSize = cache.get(klazz);
-            if (cachedSize == null) {
-                if (klazz.isArray()) {
-                    return sizeOf(object);
-                } else {
-                    long size = sizeOf(object);
-                    cache.put(klazz, size);
-                    return size;
-                }
-            } else {
-                return cachedSize.longValue();
-            }
-        }
-    }
 }
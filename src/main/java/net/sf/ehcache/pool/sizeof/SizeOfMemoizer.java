@@ -0,0 +1,171 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.pool.sizeof;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.pool.sizeof.annotations.FixedSizeOf;
+import net.sf.ehcache.pool.sizeof.annotations.FunctionSizeOf;
+import net.sf.ehcache.util.ClassLoaderUtil;
+
+/**
+ * Decides which types can be sized without walking their object graph.
+ * <p>
+ * A type is either of fixed size, in which case the graph beneath its first instance is measured and that size is
+ * reused for all other instances, or sized by a {@link SizeFunction}. Types are declared with the {@link FixedSizeOf}
+ * and {@link FunctionSizeOf} annotations, or in a resource listing one fully qualified class name per line, optionally
+ * followed by the function sizing it:
+ * <pre>
+ * # This is a comment
+ * org.mycompany.domain.Money
+ * org.mycompany.domain.Document = org.mycompany.sizing.DocumentSizeFunction
+ * </pre>
+ * Types listed in a resource are matched exactly, and take precedence over annotations.
+ */
+public final class SizeOfMemoizer {
+
+    private final Set<String> fixedSizeTypes;
+    private final Map<String, SizeFunction<?>> sizeFunctions;
+
+    /**
+     * Builds a memoizer relying on annotations only
+     */
+    public SizeOfMemoizer() {
+        this.fixedSizeTypes = Collections.emptySet();
+        this.sizeFunctions = Collections.emptyMap();
+    }
+
+    /**
+     * Builds a memoizer based on annotations and on the types declared in the provided resource
+     * @param memoizationData the URL of the resource
+     * @throws IOException if it couldn't read the resource from the URL
+     * @throws CacheException if a declared function couldn't be instantiated
+     */
+    public SizeOfMemoizer(URL memoizationData) throws IOException, CacheException {
+        if (memoizationData == null) {
+            this.fixedSizeTypes = Collections.emptySet();
+            this.sizeFunctions = Collections.emptyMap();
+        } else {
+            Set<String> fixed = new HashSet<String>();
+            Map<String, SizeFunction<?>> functions = new HashMap<String, SizeFunction<?>>();
+            InputStream is = memoizationData.openStream();
+            try {
+                BufferedReader r = new BufferedReader(new InputStreamReader(is));
+                try {
+                    while (true) {
+                        String line = r.readLine();
+                        if (line == null) {
+                            break;
+                        }
+                        line = line.trim();
+                        if (line.length() == 0 || line.startsWith("#")) {
+                            continue;
+                        }
+                        int separator = line.indexOf('=');
+                        if (separator < 0) {
+                            fixed.add(line);
+                        } else {
+                            String type = line.substring(0, separator).trim();
+                            String function = line.substring(separator + 1).trim();
+                            functions.put(type, toSizeFunction(ClassLoaderUtil.createNewInstance(function), type));
+                        }
+                    }
+                } finally {
+                    r.close();
+                }
+            } finally {
+                is.close();
+            }
+            this.fixedSizeTypes = Collections.unmodifiableSet(fixed);
+            this.sizeFunctions = Collections.unmodifiableMap(functions);
+        }
+    }
+
+    /**
+     * Whether all instances of a type have the same size
+     *
+     * @param klazz the type
+     * @return true if the size of one instance can be reused for all others
+     */
+    public boolean isFixedSize(Class<?> klazz) {
+        return fixedSizeTypes.contains(klazz.getName()) || getAnnotation(klazz, FixedSizeOf.class) != null;
+    }
+
+    /**
+     * Returns the function sizing a type, if any
+     *
+     * @param klazz the type
+     * @return the function sizing instances of that type, or null if their graph is to be walked
+     * @throws CacheException if the function declared on the type couldn't be instantiated
+     */
+    @SuppressWarnings("unchecked")
+    public SizeFunction<Object> getSizeFunction(Class<?> klazz) throws CacheException {
+        SizeFunction<?> function = sizeFunctions.get(klazz.getName());
+        if (function == null) {
+            FunctionSizeOf annotation = getAnnotation(klazz, FunctionSizeOf.class);
+            if (annotation != null) {
+                try {
+                    function = annotation.value().newInstance();
+                } catch (InstantiationException e) {
+                    throw new CacheException("Unable to instantiate the size function of " + klazz.getName(), e);
+                } catch (IllegalAccessException e) {
+                    throw new CacheException("Unable to instantiate the size function of " + klazz.getName(), e);
+                }
+            }
+        }
+        return (SizeFunction<Object>) function;
+    }
+
+    private static SizeFunction<?> toSizeFunction(Object function, String type) {
+        if (function instanceof SizeFunction<?>) {
+            return (SizeFunction<?>) function;
+        } else {
+            throw new CacheException(function.getClass().getName() + " declared to size " + type + " is not a "
+                    + SizeFunction.class.getName());
+        }
+    }
+
+    private static <T extends Annotation> T getAnnotation(Class<?> instanceKlazz, Class<T> annotationType) {
+        for (Class<?> klazz = instanceKlazz; klazz != null; klazz = klazz.getSuperclass()) {
+            T annotation = klazz.getAnnotation(annotationType);
+            if (annotation != null && (klazz == instanceKlazz || isInherited(annotation))) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInherited(Annotation annotation) {
+        if (annotation instanceof FixedSizeOf) {
+            return ((FixedSizeOf) annotation).inherited();
+        } else {
+            return ((FunctionSizeOf) annotation).inherited();
+        }
+    }
+}
@@ -42,7 +42,7 @@ public class UnsafeSizeOf extends SizeOf {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UnsafeSizeOf.class);
 
-    private static final Unsafe UNSAFE;
+    static final Unsafe UNSAFE;
 
     static {
         Unsafe unsafe;
@@ -87,7 +87,22 @@ public class UnsafeSizeOf extends SizeOf {
      * @see SizeOfFilter
      */
     public UnsafeSizeOf(SizeOfFilter filter, boolean caching) throws UnsupportedOperationException {
-        super(filter, caching);
+        this(filter, caching, new SizeOfMemoizer());
+    }
+
+    /**
+     * Builds a new SizeOf that will filter fields according to the provided filter, and size the types the memoizer
+     * declares without walking their graph
+     *
+     * @param filter The filter to apply
+     * @param caching     whether to cache reflected fields
+     * @param memoizer the types to size without walking their graph
+     * @throws UnsupportedOperationException If Unsafe isn't accessible
+     * @see SizeOfFilter
+     * @see SizeOfMemoizer
+     */
+    public UnsafeSizeOf(SizeOfFilter filter, boolean caching, SizeOfMemoizer memoizer) throws UnsupportedOperationException {
+        super(filter, caching, memoizer);
         if (UNSAFE == null) {
             throw new UnsupportedOperationException("sun.misc.Unsafe instance not accessible");
         }
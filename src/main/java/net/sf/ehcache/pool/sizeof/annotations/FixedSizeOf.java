@@ -0,0 +1,40 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.pool.sizeof.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to declare that all instances of a type have the same size, including the graph they reference.
+ * The graph beneath the first instance is measured once and that size is then reused for every other instance,
+ * without walking it again.
+ * @see net.sf.ehcache.pool.sizeof.SizeOfMemoizer
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface FixedSizeOf {
+
+    /**
+     * Controls whether the annotation is to be applied to all subclasses of the type as well or solely on that type only.
+     * true if inherited by subtypes, false otherwise
+     */
+    boolean inherited() default false;
+}
@@ -23,7 +23,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author teck
  */
-public class Average implements AggregatorInstance<Double> {
+public class Average implements MergeableAggregatorInstance<Double> {
 
     private final Attribute<?> attribute;
 
@@ -77,6 +77,21 @@ public class Average implements AggregatorInstance<Double> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Double> partial) {
+        Engine other = ((Average) partial).engine;
+        if (other == null) {
+            return;
+        }
+        if (engine == null) {
+            engine = other;
+        } else {
+            engine.merge(other);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -121,6 +136,27 @@ public class Average implements AggregatorInstance<Double> {
          */
         abstract Number result();
 
+        /**
+         * Fold the values seen by another engine into this one.
+         *
+         * @param other the other engine
+         */
+        abstract void merge(Engine other);
+
+        /**
+         * Get the number of values seen by this engine.
+         *
+         * @return value count
+         */
+        abstract int count();
+
+        /**
+         * Get the sum of the values seen by this engine.
+         *
+         * @return value sum
+         */
+        abstract Number sum();
+
         /**
          * An int based averaging engine.
          */
@@ -145,6 +181,22 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.intValue();
             }
 
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return sum;
+            }
+
             @Override
             Number result() {
                 return Float.valueOf(((float) sum) / count);
@@ -175,6 +227,22 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.longValue();
             }
 
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().longValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return sum;
+            }
+
             @Override
             Number result() {
                 return Double.valueOf(((double) sum) / count);
@@ -205,6 +273,22 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.floatValue();
             }
 
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().floatValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return sum;
+            }
+
             @Override
             Number result() {
                 return Float.valueOf(sum / count);
@@ -235,6 +319,22 @@ public class Average implements AggregatorInstance<Double> {
                 sum += input.doubleValue();
             }
 
+            @Override
+            void merge(Engine other) {
+                count += other.count();
+                sum += other.sum().doubleValue();
+            }
+
+            @Override
+            int count() {
+                return count;
+            }
+
+            @Override
+            Number sum() {
+                return sum;
+            }
+
             @Override
             Number result() {
                 return Double.valueOf(sum / count);
@@ -0,0 +1,36 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.aggregator;
+
+/**
+ * An aggregator whose partial results can be combined, allowing a query to aggregate disjoint parts of a store
+ * concurrently.
+ *
+ * @param <T> the aggregate result type
+ */
+public interface MergeableAggregatorInstance<T> extends AggregatorInstance<T> {
+
+    /**
+     * Fold the state of another instance of this aggregator into this one. The other instance must have been created
+     * with {@link #createClone()} and is not used anymore afterwards.
+     *
+     * @param partial the partial aggregate to fold in
+     * @throws AggregatorException if the partial states cannot be combined
+     */
+    void merge(AggregatorInstance<T> partial) throws AggregatorException;
+}
@@ -25,7 +25,7 @@ import net.sf.ehcache.search.Attribute;
  *
  * @author Greg Luck
  */
-public class Sum implements AggregatorInstance<Long> {
+public class Sum implements MergeableAggregatorInstance<Long> {
 
     private final Attribute<?> attribute;
 
@@ -81,6 +81,16 @@ public class Sum implements AggregatorInstance<Long> {
     /**
      * {@inheritDoc}
      */
+    /**
+     * {@inheritDoc}
+     */
+    public void merge(AggregatorInstance<Long> partial) throws AggregatorException {
+        Engine other = ((Sum) partial).engine;
+        if (other != null) {
+            accept(other.result());
+        }
+    }
+
     public Attribute getAttribute() {
         return attribute;
     }
@@ -16,8 +16,9 @@
 
 package net.sf.ehcache.search.attribute;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import net.sf.ehcache.Element;
 
@@ -35,8 +36,16 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
 
     private static final Object NO_VALUE = new Object();
 
-    private transient volatile MethodRef lastKeyMethod;
-    private transient volatile MethodRef lastValueMethod;
+    /**
+     * Marks classes on which the bean property is not present
+     */
+    private static final PropertyAccessor NO_PROPERTY = new PropertyAccessor() {
+        public Object get(Object target) {
+            throw new AssertionError();
+        }
+    };
+
+    private transient volatile Map<Class<?>, PropertyAccessor> accessors;
 
     private final String isMethodName;
     private final String getMethodName;
@@ -76,31 +85,22 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         final Object key = element.getObjectKey();
 
         if (key != null) {
-            MethodRef keyMethod = lastKeyMethod;
-            if (keyMethod == null || keyMethod.targetClass != key.getClass()) {
-                keyMethod = findMethod(key);
-                lastKeyMethod = keyMethod;
-            }
-            if (keyMethod.method != null) {
-                attribute = getValue(keyMethod.method, key);
+            PropertyAccessor keyAccessor = accessorFor(key.getClass());
+            if (keyAccessor != NO_PROPERTY) {
+                attribute = getValue(keyAccessor, key);
             }
         }
 
         final Object value = element.getObjectValue();
 
         if (value != null) {
-            MethodRef valueMethod = lastValueMethod;
-            if (valueMethod == null || valueMethod.targetClass != value.getClass()) {
-                valueMethod = findMethod(value);
-                lastValueMethod = valueMethod;
-            }
-
-            if (valueMethod.method != null) {
+            PropertyAccessor valueAccessor = accessorFor(value.getClass());
+            if (valueAccessor != NO_PROPERTY) {
                 if (attribute != NO_VALUE) {
                     throw new AttributeExtractorException("Bean property [" + beanProperty + "] present on both key and value");
                 }
 
-                return getValue(valueMethod.method, value);
+                return getValue(valueAccessor, value);
             }
         }
 
@@ -111,11 +111,23 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         throw new AttributeExtractorException("Bean property [" + beanProperty + "] not present on either key or value");
     }
 
-    private MethodRef findMethod(Object obj) {
-        final Class target = obj.getClass();
+    private PropertyAccessor accessorFor(Class<?> target) {
+        Map<Class<?>, PropertyAccessor> current = accessors;
+        PropertyAccessor accessor = current == null ? null : current.get(target);
+        if (accessor == null) {
+            accessor = findAccessor(target);
+            // copy on write, a racing lookup of another class may get lost and be redone later
+            Map<Class<?>, PropertyAccessor> updated = current == null ? new HashMap<Class<?>, PropertyAccessor>()
+                    : new HashMap<Class<?>, PropertyAccessor>(current);
+            updated.put(target, accessor);
+            accessors = updated;
+        }
+        return accessor;
+    }
 
+    private PropertyAccessor findAccessor(Class<?> target) {
         try {
-            return new MethodRef(target, target.getMethod(getMethodName));
+            return PropertyAccessors.forMethod(target, target.getMethod(getMethodName));
         } catch (SecurityException e) {
             throw new AttributeExtractorException(e);
         } catch (NoSuchMethodException e) {
@@ -125,7 +137,7 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         try {
             Method m = target.getMethod(isMethodName);
             if (m.getReturnType().equals(Boolean.class) || m.getReturnType().equals(Boolean.TYPE)) {
-                return new MethodRef(target, m);
+                return PropertyAccessors.forMethod(target, m);
             }
         } catch (SecurityException e) {
             throw new AttributeExtractorException(e);
@@ -134,17 +146,13 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         }
 
         // no applicable method available
-        return new MethodRef(target, null);
+        return NO_PROPERTY;
     }
 
-    private Object getValue(Method method, Object key) {
+    private Object getValue(PropertyAccessor accessor, Object key) {
         try {
-            return method.invoke(key);
+            return accessor.get(key);
         } catch (Throwable t) {
-            if (t instanceof InvocationTargetException) {
-                t = t.getCause();
-            }
-
             if (t instanceof Error) {
                 throw ((Error) t);
             }
@@ -154,17 +162,4 @@ public class JavaBeanAttributeExtractor implements AttributeExtractor {
         }
     }
 
-    /**
-     * A cached method lookup. Method is null to indicate the method is not present/accessible
-     */
-    private static class MethodRef {
-        private final Class targetClass;
-        private final Method method;
-
-        MethodRef(Class target, Method method) {
-            this.targetClass = target;
-            this.method = method;
-        }
-    }
-
 }
@@ -0,0 +1,34 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.attribute;
+
+/**
+ * Reads one property, a field or a no-argument method, of an object. Instances are generated at runtime by the
+ * built-in attribute extractors and are not meant to be implemented by user code.
+ */
+public interface PropertyAccessor {
+
+    /**
+     * Read the property of the given object
+     *
+     * @param target the object to read from
+     * @return the property value, primitives are boxed
+     * @throws Exception anything thrown by the underlying method
+     */
+    Object get(Object target) throws Exception;
+}
@@ -0,0 +1,416 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.attribute;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates {@link PropertyAccessor}s. Public members of public classes get a generated class calling the member
+ * directly, which the JIT can inline like any other call site. Anything else goes through reflection.
+ */
+final class PropertyAccessors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyAccessors.class.getName());
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ACCESSOR = PropertyAccessor.class.getName().replace('.', '/');
+    private static final String ACCESSOR_PREFIX = PropertyAccessor.class.getName() + "$Generated";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private static final int CLASS_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ACONST_NULL = 0x01;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        BOXES.put(Boolean.TYPE, Boolean.class);
+        BOXES.put(Byte.TYPE, Byte.class);
+        BOXES.put(Character.TYPE, Character.class);
+        BOXES.put(Short.TYPE, Short.class);
+        BOXES.put(Integer.TYPE, Integer.class);
+        BOXES.put(Long.TYPE, Long.class);
+        BOXES.put(Float.TYPE, Float.class);
+        BOXES.put(Double.TYPE, Double.class);
+    }
+
+    private PropertyAccessors() {
+        //
+    }
+
+    /**
+     * Create an accessor calling a no-argument method
+     *
+     * @param targetClass the class of the objects the accessor will be used on
+     * @param method the method, accessible or made accessible
+     * @return the accessor
+     */
+    static PropertyAccessor forMethod(Class<?> targetClass, Method method) {
+        Class<?> owner = accessibleOwner(targetClass, method.getDeclaringClass(), method.getModifiers());
+        if (owner != null) {
+            int opcode = owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+            PropertyAccessor accessor = generate(owner, opcode, method.getName(), "()" + descriptor(method.getReturnType()),
+                    method.getReturnType());
+            if (accessor != null) {
+                return new GeneratedAccessor(accessor, new ReflectiveMethodAccessor(method));
+            }
+        }
+        return new ReflectiveMethodAccessor(method);
+    }
+
+    /**
+     * Create an accessor reading a field
+     *
+     * @param targetClass the class of the objects the accessor will be used on
+     * @param field the field, accessible or made accessible
+     * @return the accessor
+     */
+    static PropertyAccessor forField(Class<?> targetClass, Field field) {
+        Class<?> owner = accessibleOwner(targetClass, field.getDeclaringClass(), field.getModifiers());
+        if (owner != null) {
+            PropertyAccessor accessor = generate(owner, GETFIELD, field.getName(), descriptor(field.getType()), field.getType());
+            if (accessor != null) {
+                return new GeneratedAccessor(accessor, new ReflectiveFieldAccessor(field));
+            }
+        }
+        return new ReflectiveFieldAccessor(field);
+    }
+
+    /**
+     * The class a generated accessor can reference the member through, null if there is none
+     */
+    private static Class<?> accessibleOwner(Class<?> targetClass, Class<?> declaringClass, int modifiers) {
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)) {
+            return null;
+        }
+        if (Modifier.isPublic(declaringClass.getModifiers())) {
+            return declaringClass;
+        }
+        if (Modifier.isPublic(targetClass.getModifiers()) && !declaringClass.isInterface()) {
+            return targetClass;
+        }
+        return null;
+    }
+
+    private static PropertyAccessor generate(Class<?> owner, int opcode, String name, String descriptor, Class<?> type) {
+        String className = ACCESSOR_PREFIX + COUNTER.incrementAndGet();
+        try {
+            byte[] bytes = new ClassWriter(className.replace('.', '/'), owner, opcode, name, descriptor, type).toByteArray();
+            Class<?> generated = new AccessorLoader(owner.getClassLoader()).define(className, bytes);
+            return (PropertyAccessor) generated.newInstance();
+        } catch (Throwable t) {
+            LOG.debug("Could not generate accessor for " + owner.getName() + "." + name + ", using reflection", t);
+            return null;
+        }
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isPrimitive()) {
+            if (type == Boolean.TYPE) {
+                return "Z";
+            } else if (type == Byte.TYPE) {
+                return "B";
+            } else if (type == Character.TYPE) {
+                return "C";
+            } else if (type == Short.TYPE) {
+                return "S";
+            } else if (type == Integer.TYPE) {
+                return "I";
+            } else if (type == Long.TYPE) {
+                return "J";
+            } else if (type == Float.TYPE) {
+                return "F";
+            } else if (type == Double.TYPE) {
+                return "D";
+            } else {
+                return "V";
+            }
+        } else if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        } else {
+            return "L" + type.getName().replace('.', '/') + ";";
+        }
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    /**
+     * Defines generated accessors next to the class they read from, resolving {@link PropertyAccessor} to the copy
+     * this class was loaded with.
+     */
+    private static final class AccessorLoader extends ClassLoader {
+
+        AccessorLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (PropertyAccessor.class.getName().equals(name)) {
+                return PropertyAccessor.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    /**
+     * Writes the class file of an accessor: a public final class with a no-arg constructor and a get method casting
+     * its argument to the owner, reading the member and boxing primitive values.
+     */
+    private static final class ClassWriter {
+
+        private final List<Object[]> constants = new ArrayList<Object[]>();
+        private final Map<String, Integer> constantIndexes = new HashMap<String, Integer>();
+        private final String className;
+        private final Class<?> owner;
+        private final int opcode;
+        private final String name;
+        private final String descriptor;
+        private final Class<?> type;
+
+        ClassWriter(String className, Class<?> owner, int opcode, String name, String descriptor, Class<?> type) {
+            this.className = className;
+            this.owner = owner;
+            this.opcode = opcode;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.type = type;
+        }
+
+        byte[] toByteArray() throws IOException {
+            int thisClass = classRef(className);
+            int superClass = classRef(OBJECT);
+            int accessorInterface = classRef(ACCESSOR);
+            int codeName = utf8("Code");
+            int initName = utf8("<init>");
+            int initDescriptor = utf8("()V");
+            int getName = utf8("get");
+            int getDescriptor = utf8("(Ljava/lang/Object;)Ljava/lang/Object;");
+            int superInit = memberRef(10, OBJECT, "<init>", "()V");
+            int ownerClass = classRef(internalName(owner));
+            int member = memberRef(opcode == GETFIELD ? 9 : opcode == INVOKEINTERFACE ? 11 : 10, internalName(owner), name, descriptor);
+            int box = -1;
+            Class<?> boxType = BOXES.get(type);
+            if (boxType != null) {
+                box = memberRef(10, internalName(boxType), "valueOf", "(" + descriptor(type) + ")" + descriptor(boxType));
+            }
+
+            ByteArrayOutputStream init = new ByteArrayOutputStream();
+            DataOutputStream initCode = new DataOutputStream(init);
+            initCode.writeByte(ALOAD_0);
+            initCode.writeByte(INVOKESPECIAL);
+            initCode.writeShort(superInit);
+            initCode.writeByte(RETURN);
+
+            ByteArrayOutputStream get = new ByteArrayOutputStream();
+            DataOutputStream getCode = new DataOutputStream(get);
+            getCode.writeByte(ALOAD_1);
+            getCode.writeByte(CHECKCAST);
+            getCode.writeShort(ownerClass);
+            getCode.writeByte(opcode);
+            getCode.writeShort(member);
+            if (opcode == INVOKEINTERFACE) {
+                getCode.writeByte(1);
+                getCode.writeByte(0);
+            }
+            if (box != -1) {
+                getCode.writeByte(INVOKESTATIC);
+                getCode.writeShort(box);
+            } else if (type == Void.TYPE) {
+                getCode.writeByte(ACONST_NULL);
+            }
+            getCode.writeByte(ARETURN);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(constants.size() + 1);
+            for (Object[] constant : constants) {
+                int tag = (Integer) constant[0];
+                out.writeByte(tag);
+                if (tag == 1) {
+                    out.writeUTF((String) constant[1]);
+                } else {
+                    for (int i = 1; i < constant.length; i++) {
+                        out.writeShort((Integer) constant[i]);
+                    }
+                }
+            }
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(accessorInterface);
+            out.writeShort(0);
+            out.writeShort(2);
+            writeMethod(out, initName, initDescriptor, codeName, 1, 1, init.toByteArray());
+            writeMethod(out, getName, getDescriptor, codeName, 2, 2, get.toByteArray());
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream out, int methodName, int methodDescriptor, int codeName, int maxStack,
+                int maxLocals, byte[] code) throws IOException {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(methodName);
+            out.writeShort(methodDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private int utf8(String value) {
+            return constant("U" + value, 1, value);
+        }
+
+        private int classRef(String internalName) {
+            return constant("C" + internalName, 7, utf8(internalName));
+        }
+
+        private int memberRef(int tag, String ownerName, String memberName, String memberDescriptor) {
+            int ownerIndex = classRef(ownerName);
+            int nameAndType = constant("N" + memberName + " " + memberDescriptor, 12, utf8(memberName), utf8(memberDescriptor));
+            return constant(tag + ownerName + "." + memberName + " " + memberDescriptor, tag, ownerIndex, nameAndType);
+        }
+
+        private int constant(String key, int tag, Object... values) {
+            Integer index = constantIndexes.get(key);
+            if (index == null) {
+                Object[] constant = new Object[values.length + 1];
+                constant[0] = tag;
+                System.arraycopy(values, 0, constant, 1, values.length);
+                constants.add(constant);
+                index = constants.size();
+                constantIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * A generated accessor. Access to the member is only checked when the JVM links the call site on first use, when
+     * that fails (e.g. the owner lives in a module that does not export its package) reflection takes over.
+     */
+    private static final class GeneratedAccessor implements PropertyAccessor {
+
+        private volatile PropertyAccessor delegate;
+        private final PropertyAccessor fallback;
+
+        GeneratedAccessor(PropertyAccessor delegate, PropertyAccessor fallback) {
+            this.delegate = delegate;
+            this.fallback = fallback;
+        }
+
+        public Object get(Object target) throws Exception {
+            PropertyAccessor accessor = delegate;
+            if (accessor == fallback) {
+                return fallback.get(target);
+            }
+            try {
+                return accessor.get(target);
+            } catch (IllegalAccessError e) {
+                delegate = fallback;
+                return fallback.get(target);
+            }
+        }
+    }
+
+    /**
+     * Calls a method through reflection
+     */
+    private static final class ReflectiveMethodAccessor implements PropertyAccessor {
+
+        private final Method method;
+
+        ReflectiveMethodAccessor(Method method) {
+            this.method = method;
+        }
+
+        public Object get(Object target) throws Exception {
+            try {
+                return method.invoke(target);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getTargetException();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads a field through reflection
+     */
+    private static final class ReflectiveFieldAccessor implements PropertyAccessor {
+
+        private final Field field;
+
+        ReflectiveFieldAccessor(Field field) {
+            this.field = field;
+        }
+
+        public Object get(Object target) throws Exception {
+            return field.get(target);
+        }
+    }
+}
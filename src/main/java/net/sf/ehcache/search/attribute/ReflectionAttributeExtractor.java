@@ -18,8 +18,9 @@ package net.sf.ehcache.search.attribute;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.InvalidConfigurationException;
@@ -89,9 +90,6 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
      * @throws AttributeExtractorException if there is an error in evaluating the expression
      */
     public Object attributeFor(Element e, String attributeName) throws AttributeExtractorException {
-        // NOTE: We can play all kinds of tricks of generating java classes and
-        // using Unsafe if needed
-
         Object startObject;
         switch (start) {
             case ELEMENT: {
@@ -176,129 +174,124 @@ public class ReflectionAttributeExtractor implements AttributeExtractor {
     }
 
     /**
-     * A field expression part
+     * A part reading its value through accessors resolved once per concrete class of the objects it is evaluated on
      */
-    private static class FieldPart implements Part {
+    private abstract static class AccessorPart implements Part {
 
-        private final String fieldName;
-
-        private transient volatile FieldRef cache;
-
-        public FieldPart(String field) {
-            this.fieldName = field;
-        }
+        private transient volatile Map<Class<?>, PropertyAccessor> accessors;
 
         public Object eval(Object target) {
             if (target == null) {
-                throw new AttributeExtractorException("null reference encountered trying to read field " + fieldName);
-            }
-
-            Class c = target.getClass();
-            FieldRef ref = cache;
-
-            if (ref == null || ref.target != c) {
-                while (true) {
-                    try {
-                        Field field = c.getDeclaredField(fieldName);
-                        field.setAccessible(true);
-                        ref = new FieldRef(target.getClass(), field);
-                        cache = ref;
-                        break;
-                    } catch (NoSuchFieldException e) {
-                        c = c.getSuperclass();
-                        if (c == null) {
-                            throw new AttributeExtractorException("No such field named \"" + fieldName + "\" present in instance of "
-                                    + target.getClass());
-                        }
-                    } catch (Exception e) {
-                        throw new AttributeExtractorException(e);
-                    }
-                }
+                throw new AttributeExtractorException(nullReferenceMessage());
             }
 
+            PropertyAccessor accessor = accessorFor(target.getClass());
             try {
-                return ref.field.get(target);
+                return accessor.get(target);
             } catch (Exception e) {
                 throw new AttributeExtractorException(e);
             }
         }
 
+        private PropertyAccessor accessorFor(Class<?> targetClass) {
+            Map<Class<?>, PropertyAccessor> current = accessors;
+            PropertyAccessor accessor = current == null ? null : current.get(targetClass);
+            if (accessor == null) {
+                accessor = resolve(targetClass);
+                // copy on write, a racing resolution of another class may get lost and be redone later
+                Map<Class<?>, PropertyAccessor> updated = current == null ? new HashMap<Class<?>, PropertyAccessor>()
+                        : new HashMap<Class<?>, PropertyAccessor>(current);
+                updated.put(targetClass, accessor);
+                accessors = updated;
+            }
+            return accessor;
+        }
+
+        /**
+         * Resolve the accessor to use on instances of the given class
+         *
+         * @param targetClass concrete class of the evaluated objects
+         * @return the accessor
+         */
+        abstract PropertyAccessor resolve(Class<?> targetClass);
+
+        /**
+         * Message used when this part is evaluated on null
+         */
+        abstract String nullReferenceMessage();
     }
 
     /**
-     * A reference to a resolved Field instance
+     * A field expression part
      */
-    private static class FieldRef {
-        private final Class target;
-        private final Field field;
+    private static class FieldPart extends AccessorPart {
+
+        private final String fieldName;
 
-        FieldRef(Class target, Field field) {
-            this.target = target;
-            this.field = field;
+        public FieldPart(String field) {
+            this.fieldName = field;
         }
-    }
 
-    /**
-     * A reference to a resolved Method instance
-     */
-    private static class MethodRef {
-        private final Method method;
-        private final Class target;
+        @Override
+        String nullReferenceMessage() {
+            return "null reference encountered trying to read field " + fieldName;
+        }
 
-        MethodRef(Class target, Method method) {
-            this.target = target;
-            this.method = method;
+        @Override
+        PropertyAccessor resolve(Class<?> targetClass) {
+            Class c = targetClass;
+            while (true) {
+                try {
+                    Field field = c.getDeclaredField(fieldName);
+                    field.setAccessible(true);
+                    return PropertyAccessors.forField(targetClass, field);
+                } catch (NoSuchFieldException e) {
+                    c = c.getSuperclass();
+                    if (c == null) {
+                        throw new AttributeExtractorException("No such field named \"" + fieldName + "\" present in instance of "
+                                + targetClass);
+                    }
+                } catch (Exception e) {
+                    throw new AttributeExtractorException(e);
+                }
+            }
         }
     }
 
     /**
      * A method expression part
      */
-    private static class MethodPart implements Part {
+    private static class MethodPart extends AccessorPart {
 
         private final String methodName;
-        private transient volatile MethodRef cache;
 
         public MethodPart(String method) {
             this.methodName = method;
         }
 
-        public Object eval(Object target) {
-            if (target == null) {
-                throw new AttributeExtractorException("null reference encountered trying to call " + methodName + "()");
-            }
+        @Override
+        String nullReferenceMessage() {
+            return "null reference encountered trying to call " + methodName + "()";
+        }
 
-            Class c = target.getClass();
-
-            MethodRef ref = cache;
-
-            if (ref == null || ref.target != c) {
-                while (true) {
-                    try {
-                        Method method = c.getDeclaredMethod(methodName);
-                        method.setAccessible(true);
-                        ref = new MethodRef(target.getClass(), method);
-                        cache = ref;
-                        break;
-                    } catch (NoSuchMethodException e) {
-                        c = c.getSuperclass();
-                        if (c == null) {
-                            throw new AttributeExtractorException("No such method named \"" + methodName + "\" present on instance of "
-                                    + target.getClass());
-                        }
-                    } catch (Exception e) {
-                        throw new AttributeExtractorException(e);
+        @Override
+        PropertyAccessor resolve(Class<?> targetClass) {
+            Class c = targetClass;
+            while (true) {
+                try {
+                    Method method = c.getDeclaredMethod(methodName);
+                    method.setAccessible(true);
+                    return PropertyAccessors.forMethod(targetClass, method);
+                } catch (NoSuchMethodException e) {
+                    c = c.getSuperclass();
+                    if (c == null) {
+                        throw new AttributeExtractorException("No such method named \"" + methodName + "\" present on instance of "
+                                + targetClass);
                     }
+                } catch (Exception e) {
+                    throw new AttributeExtractorException(e);
                 }
             }
-
-            try {
-                return ref.method.invoke(target);
-            } catch (InvocationTargetException e) {
-                throw new AttributeExtractorException(e.getTargetException());
-            } catch (Exception e) {
-                throw new AttributeExtractorException(e);
-            }
         }
     }
 }
@@ -0,0 +1,284 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.ehcache.search.attribute.AttributeType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A secondary index mapping the values of one search attribute to the keys of the elements holding them.
+ * <p>
+ * Lookups return a superset of the matching keys: callers still evaluate the query criteria against every candidate.
+ * Updates for a given key must be serialized by the caller. An index that sees values of more than one class, or a
+ * value whose extraction failed, stops being used for the rest of its life and queries scan the store instead.
+ */
+abstract class AttributeIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AttributeIndex.class.getName());
+
+    private final String attributeName;
+    private final ConcurrentMap<Object, Object> valuesByKey = new ConcurrentHashMap<Object, Object>();
+    private final ConcurrentMap<Object, KeyBucket> buckets;
+    private volatile Class<?> valueClass;
+    private volatile boolean usable = true;
+
+    /**
+     * Create an index
+     *
+     * @param attributeName the indexed attribute
+     * @param buckets the map holding the keys per index value
+     */
+    AttributeIndex(String attributeName, ConcurrentMap<Object, KeyBucket> buckets) {
+        this.attributeName = attributeName;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Get the indexed attribute name
+     */
+    String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * Whether this index can still be used to answer queries
+     */
+    boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * Number of keys currently held by this index
+     */
+    int size() {
+        return valuesByKey.size();
+    }
+
+    /**
+     * Snapshot of the keys currently held by this index
+     */
+    Set<Object> keys() {
+        return new HashSet<Object>(valuesByKey.keySet());
+    }
+
+    /**
+     * Record the current value of the attribute for the given key
+     *
+     * @param key the element key
+     * @param attributeValue the attribute value, null if the element is gone or has no value for the attribute
+     */
+    void update(Object key, Object attributeValue) {
+        if (!usable) {
+            return;
+        }
+
+        Object indexValue = null;
+        if (attributeValue != null) {
+            if (!accept(attributeValue)) {
+                return;
+            }
+            indexValue = toIndexValue(attributeValue);
+        }
+
+        Object previous = indexValue == null ? valuesByKey.remove(key) : valuesByKey.put(key, indexValue);
+        if (previous != null && !previous.equals(indexValue)) {
+            removeFromBucket(previous, key);
+        }
+        if (indexValue != null && !indexValue.equals(previous)) {
+            addToBucket(indexValue, key);
+        }
+
+        if (!usable) {
+            clear();
+        }
+    }
+
+    /**
+     * Stop using this index, the reason is logged once
+     *
+     * @param reason why the index cannot be used anymore
+     */
+    void disable(String reason) {
+        if (usable) {
+            usable = false;
+            LOG.warn("Search index on attribute [" + attributeName + "] disabled, queries on it will scan the store: " + reason);
+        }
+        clear();
+    }
+
+    /**
+     * Remove everything from this index
+     */
+    void clear() {
+        valuesByKey.clear();
+        buckets.clear();
+    }
+
+    /**
+     * Keys whose attribute value may equal the given value
+     *
+     * @param value the queried value
+     * @return the candidate keys, or null if this index cannot answer
+     */
+    Set<Object> equalTo(Object value) {
+        if (!usable || !supportsEquality(value) || !matchesValueClass(value)) {
+            return null;
+        }
+        Set<Object> keys = new HashSet<Object>();
+        collect(buckets.get(toIndexValue(value)), keys);
+        return keys;
+    }
+
+    /**
+     * Keys whose attribute value may fall in the given range
+     *
+     * @param from the lower bound, null if unbounded
+     * @param fromInclusive whether the lower bound is part of the range
+     * @param to the upper bound, null if unbounded
+     * @param toInclusive whether the upper bound is part of the range
+     * @return the candidate keys, or null if this index cannot answer
+     */
+    Set<Object> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return null;
+    }
+
+    /**
+     * Whether the value class of the queried value is the one seen by this index, the criteria raise type
+     * mismatches themselves when the store gets scanned
+     *
+     * @param value the queried value
+     * @return true if the index can be looked up with this value
+     */
+    boolean matchesValueClass(Object value) {
+        Class<?> indexed = valueClass;
+        return indexed == null || indexed == valueClassOf(value);
+    }
+
+    private static Class<?> valueClassOf(Object value) {
+        return value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+    }
+
+    /**
+     * Add the keys of a bucket to the given set
+     *
+     * @param bucket the bucket, may be null
+     * @param keys the set to add to
+     */
+    static void collect(KeyBucket bucket, Set<Object> keys) {
+        if (bucket != null) {
+            synchronized (bucket) {
+                keys.addAll(bucket.keys);
+            }
+        }
+    }
+
+    /**
+     * Whether equality lookups can be answered for this value
+     *
+     * @param value the queried value
+     * @return true if supported
+     */
+    abstract boolean supportsEquality(Object value);
+
+    /**
+     * Normalize a string attribute value so that values the criteria consider equal share an index value
+     *
+     * @param value the string
+     * @return the normalized string
+     */
+    abstract String normalize(String value);
+
+    /**
+     * Convert an attribute value to the value held by the index
+     *
+     * @param value the attribute value
+     * @return the index value
+     */
+    Object toIndexValue(Object value) {
+        return value instanceof String ? normalize((String) value) : value;
+    }
+
+    private boolean accept(Object attributeValue) {
+        Class<?> indexed = valueClass;
+        if (indexed == null) {
+            synchronized (this) {
+                if (valueClass == null) {
+                    if (!AttributeType.isSupportedType(attributeValue)) {
+                        disable("unsupported type " + attributeValue.getClass().getName());
+                        return false;
+                    }
+                    valueClass = valueClassOf(attributeValue);
+                }
+                indexed = valueClass;
+            }
+        }
+        if (indexed != valueClassOf(attributeValue)) {
+            disable("values of types " + indexed.getName() + " and " + valueClassOf(attributeValue).getName());
+            return false;
+        }
+        return true;
+    }
+
+    private void addToBucket(Object indexValue, Object key) {
+        while (true) {
+            KeyBucket bucket = buckets.get(indexValue);
+            if (bucket == null) {
+                bucket = new KeyBucket();
+                KeyBucket existing = buckets.putIfAbsent(indexValue, bucket);
+                if (existing != null) {
+                    bucket = existing;
+                }
+            }
+            synchronized (bucket) {
+                if (!bucket.dead) {
+                    bucket.keys.add(key);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void removeFromBucket(Object indexValue, Object key) {
+        KeyBucket bucket = buckets.get(indexValue);
+        if (bucket != null) {
+            synchronized (bucket) {
+                bucket.keys.remove(key);
+                if (bucket.keys.isEmpty()) {
+                    bucket.dead = true;
+                    buckets.remove(indexValue, bucket);
+                }
+            }
+        }
+    }
+
+    /**
+     * The keys sharing an index value. A bucket found empty is marked dead and unmapped, writers racing with that
+     * removal retry with a fresh bucket.
+     */
+    static final class KeyBucket {
+        private final Set<Object> keys = new HashSet<Object>();
+        private boolean dead;
+    }
+}
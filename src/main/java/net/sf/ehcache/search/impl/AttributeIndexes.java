@@ -0,0 +1,156 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+import net.sf.ehcache.store.StoreQuery;
+import net.sf.ehcache.transaction.SoftLockID;
+
+/**
+ * The secondary indexes a local store keeps for the search attributes configured with an index.
+ * <p>
+ * The store calls {@link #update(Object, Element)} with the current mapping of a key after every write to it, while
+ * holding that key's write lock. {@link #candidates(StoreQuery)} then narrows down the elements a query has to be
+ * evaluated against.
+ */
+public final class AttributeIndexes {
+
+    private final Map<String, AttributeIndex> indexes;
+    private final Map<String, AttributeExtractor> extractors;
+
+    private AttributeIndexes(Map<String, AttributeIndex> indexes, Map<String, AttributeExtractor> extractors) {
+        this.indexes = indexes;
+        this.extractors = extractors;
+    }
+
+    /**
+     * Create the indexes for the given search attributes
+     *
+     * @param attributes the search attribute configurations
+     * @param extractors the attribute extractors, by attribute name
+     * @return the indexes, or null if no attribute asks for one
+     */
+    public static AttributeIndexes create(Collection<SearchAttribute> attributes, Map<String, AttributeExtractor> extractors) {
+        Map<String, AttributeIndex> indexes = new HashMap<String, AttributeIndex>();
+        for (SearchAttribute attribute : attributes) {
+            String name = attribute.getName();
+            if (!extractors.containsKey(name)) {
+                continue;
+            }
+            switch (attribute.getIndexType()) {
+                case HASH:
+                    indexes.put(name, new HashAttributeIndex(name));
+                    break;
+                case SORTED:
+                    indexes.put(name, new SortedAttributeIndex(name));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return indexes.isEmpty() ? null : new AttributeIndexes(indexes, new HashMap<String, AttributeExtractor>(extractors));
+    }
+
+    /**
+     * Record the element currently mapped to a key
+     *
+     * @param key the key
+     * @param element the element mapped to it, null if none
+     */
+    public void update(Object key, Element element) {
+        if (element == null || element.getObjectValue() instanceof SoftLockID) {
+            remove(key);
+            return;
+        }
+
+        for (AttributeIndex index : indexes.values()) {
+            if (!index.isUsable()) {
+                continue;
+            }
+            String name = index.getAttributeName();
+            Object value;
+            try {
+                value = extractors.get(name).attributeFor(element, name);
+            } catch (RuntimeException e) {
+                index.disable("extraction failed for key " + key + ": " + e);
+                continue;
+            }
+            index.update(key, value);
+        }
+    }
+
+    /**
+     * Forget a key
+     *
+     * @param key the key
+     */
+    public void remove(Object key) {
+        for (AttributeIndex index : indexes.values()) {
+            index.update(key, null);
+        }
+    }
+
+    /**
+     * Remove all keys
+     */
+    public void clear() {
+        for (AttributeIndex index : indexes.values()) {
+            index.clear();
+        }
+    }
+
+    /**
+     * The largest number of keys held by one of the indexes
+     */
+    public int size() {
+        int size = 0;
+        for (AttributeIndex index : indexes.values()) {
+            size = Math.max(size, index.size());
+        }
+        return size;
+    }
+
+    /**
+     * Snapshot of all the keys held by the indexes
+     */
+    public Set<Object> keys() {
+        Set<Object> keys = new HashSet<Object>();
+        for (AttributeIndex index : indexes.values()) {
+            keys.addAll(index.keys());
+        }
+        return keys;
+    }
+
+    /**
+     * Compute the keys of the elements that may match a query
+     *
+     * @param query the query
+     * @return the candidate keys, or null if the whole store has to be evaluated
+     */
+    public Set<Object> candidates(StoreQuery query) {
+        return IndexQueryPlanner.plan(indexes, query);
+    }
+}
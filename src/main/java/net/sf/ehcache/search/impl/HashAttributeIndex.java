@@ -0,0 +1,55 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An attribute index answering equality lookups.
+ */
+class HashAttributeIndex extends AttributeIndex {
+
+    /**
+     * Create a hash index
+     *
+     * @param attributeName the indexed attribute
+     */
+    HashAttributeIndex(String attributeName) {
+        super(attributeName, new ConcurrentHashMap<Object, KeyBucket>());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean supportsEquality(Object value) {
+        return true;
+    }
+
+    /**
+     * Folds every character the way {@link String#equalsIgnoreCase(String)} compares them.
+     */
+    @Override
+    String normalize(String value) {
+        char[] chars = new char[value.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        }
+        return new String(chars);
+    }
+}
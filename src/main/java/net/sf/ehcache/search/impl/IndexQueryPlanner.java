@@ -0,0 +1,290 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.ehcache.search.SearchException;
+import net.sf.ehcache.search.expression.And;
+import net.sf.ehcache.search.expression.Criteria;
+import net.sf.ehcache.search.expression.Not;
+import net.sf.ehcache.search.expression.Or;
+import net.sf.ehcache.store.StoreQuery;
+
+/**
+ * Walks the criteria of a query and computes, from the attribute indexes, the keys of the elements that may match.
+ * <p>
+ * Each criteria yields either a set of candidate keys or null when no index can answer it. And groups intersect the
+ * sets of their members, ignoring unanswerable members; or groups union them and become unanswerable as soon as one
+ * member is. A null plan means the store has to be scanned.
+ * <p>
+ * Criteria under a {@link Not} are never answered from the indexes: the interpreter rewrites them into ranges and terms
+ * which, unlike the negation, do not match the elements lacking the attribute, and those are not indexed.
+ */
+final class IndexQueryPlanner extends BaseQueryInterpreter {
+
+    private final Map<String, AttributeIndex> indexes;
+    private final LinkedList<Group> groups = new LinkedList<Group>();
+
+    private IndexQueryPlanner(Map<String, AttributeIndex> indexes) {
+        this.indexes = indexes;
+        groups.push(new Group());
+    }
+
+    /**
+     * Compute the candidate keys for a query
+     *
+     * @param indexes the attribute indexes, by attribute name
+     * @param query the query
+     * @return the candidate keys, or null if the store must be scanned
+     */
+    static Set<Object> plan(Map<String, AttributeIndex> indexes, StoreQuery query) {
+        if (isNegated(query.getCriteria())) {
+            return null;
+        }
+        IndexQueryPlanner planner = new IndexQueryPlanner(indexes);
+        try {
+            planner.process(query);
+        } catch (SearchException e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        } catch (AssertionError e) {
+            return null;
+        }
+        return planner.groups.size() == 1 ? planner.groups.peek().candidates() : null;
+    }
+
+    private static boolean isNegated(Criteria criteria) {
+        if (criteria instanceof Not) {
+            return true;
+        }
+        Criteria[] members = null;
+        if (criteria instanceof And) {
+            members = ((And) criteria).getCriterion();
+        } else if (criteria instanceof Or) {
+            members = ((Or) criteria).getCriterion();
+        }
+        if (members != null) {
+            for (Criteria member : members) {
+                if (isNegated(member)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void add(Set<Object> candidates) {
+        groups.peek().add(candidates);
+    }
+
+    private AttributeIndex index(String name) {
+        AttributeIndex index = indexes.get(name);
+        return index == null || !index.isUsable() ? null : index;
+    }
+
+    private Set<Object> range(String name, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        AttributeIndex index = index(name);
+        return index == null ? null : index.range(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    protected void beginGroup() {
+        groups.push(new Group());
+    }
+
+    @Override
+    protected void and() {
+        groups.peek().or = false;
+    }
+
+    @Override
+    protected void or() {
+        groups.peek().or = true;
+    }
+
+    @Override
+    protected void endGroup() {
+        Group group = groups.pop();
+        add(group.candidates());
+    }
+
+    @Override
+    protected void term(String name, Object value) {
+        AttributeIndex index = index(name);
+        add(index == null ? null : index.equalTo(value));
+    }
+
+    @Override
+    protected void greaterThan(String name, Object value) {
+        add(range(name, value, false, null, false));
+    }
+
+    @Override
+    protected void greaterThanEqual(String name, Object value) {
+        add(range(name, value, true, null, false));
+    }
+
+    @Override
+    protected void lessThan(String name, Object value) {
+        add(range(name, null, false, value, false));
+    }
+
+    @Override
+    protected void lessThanEqual(String name, Object value) {
+        add(range(name, null, false, value, true));
+    }
+
+    @Override
+    protected void between(String name1, Object value1, String name2, Object value2, boolean minInclusive, boolean maxInclusive) {
+        add(name1.equals(name2) ? range(name1, value1, minInclusive, value2, maxInclusive) : null);
+    }
+
+    @Override
+    protected void notEqualTerm(String name, Object value) {
+        add(null);
+    }
+
+    @Override
+    protected void ilike(String name, String regex) {
+        add(null);
+    }
+
+    @Override
+    protected void notIlike(String name, String regex) {
+        add(null);
+    }
+
+    @Override
+    protected void all() {
+        add(null);
+    }
+
+    @Override
+    protected void maxResults(int maxResults) {
+        //
+    }
+
+    @Override
+    protected void includeKeys(boolean include) {
+        //
+    }
+
+    @Override
+    protected void includeValues(boolean include) {
+        //
+    }
+
+    @Override
+    protected void max(String name) {
+        //
+    }
+
+    @Override
+    protected void min(String name) {
+        //
+    }
+
+    @Override
+    protected void sum(String name) {
+        //
+    }
+
+    @Override
+    protected void average(String name) {
+        //
+    }
+
+    @Override
+    protected void count() {
+        //
+    }
+
+    @Override
+    protected void attribute(String name) {
+        //
+    }
+
+    @Override
+    protected void attributeAscending(String name) {
+        //
+    }
+
+    @Override
+    protected void attributeDescending(String name) {
+        //
+    }
+
+    @Override
+    protected void groupBy(String name) {
+        //
+    }
+
+    /**
+     * The candidates of the members of an and/or group
+     */
+    private static final class Group {
+        private final List<Set<Object>> members = new ArrayList<Set<Object>>();
+        private boolean or;
+        private boolean unbounded;
+
+        void add(Set<Object> candidates) {
+            if (candidates == null) {
+                unbounded = true;
+            } else {
+                members.add(candidates);
+            }
+        }
+
+        Set<Object> candidates() {
+            if (or) {
+                if (unbounded) {
+                    return null;
+                }
+                Set<Object> union = new HashSet<Object>();
+                for (Set<Object> member : members) {
+                    union.addAll(member);
+                }
+                return union;
+            }
+
+            if (members.isEmpty()) {
+                return null;
+            }
+            Set<Object> smallest = members.get(0);
+            for (Set<Object> member : members) {
+                if (member.size() < smallest.size()) {
+                    smallest = member;
+                }
+            }
+            Set<Object> intersection = new HashSet<Object>(smallest);
+            for (Set<Object> member : members) {
+                if (member != smallest) {
+                    intersection.retainAll(member);
+                }
+            }
+            return intersection;
+        }
+    }
+}
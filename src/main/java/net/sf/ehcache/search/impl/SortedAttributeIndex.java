@@ -0,0 +1,105 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.search.impl;
+
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An attribute index answering range lookups, and equality lookups on non-string attributes.
+ * <p>
+ * Strings are ordered the way the comparison criteria order them, character by character in lower case. That order
+ * does not group all the strings {@link String#equalsIgnoreCase(String)} considers equal, hence string equality is
+ * left to the store scan.
+ */
+class SortedAttributeIndex extends AttributeIndex {
+
+    private final ConcurrentNavigableMap<Object, KeyBucket> buckets;
+
+    /**
+     * Create a sorted index
+     *
+     * @param attributeName the indexed attribute
+     */
+    SortedAttributeIndex(String attributeName) {
+        this(attributeName, new ConcurrentSkipListMap<Object, KeyBucket>());
+    }
+
+    private SortedAttributeIndex(String attributeName, ConcurrentNavigableMap<Object, KeyBucket> buckets) {
+        super(attributeName, buckets);
+        this.buckets = buckets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean supportsEquality(Object value) {
+        return !(value instanceof String);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    String normalize(String value) {
+        char[] chars = new char[value.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(value.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    Set<Object> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        if (!isUsable() || (from != null && !matchesValueClass(from)) || (to != null && !matchesValueClass(to))) {
+            return null;
+        }
+
+        Object low = from == null ? null : toIndexValue(from);
+        Object high = to == null ? null : toIndexValue(to);
+        Set<Object> keys = new HashSet<Object>();
+        if (low != null && high != null) {
+            int cmp = ((Comparable) low).compareTo(high);
+            if (cmp > 0 || (cmp == 0 && !(fromInclusive && toInclusive))) {
+                return keys;
+            }
+        }
+
+        NavigableMap<Object, KeyBucket> view;
+        if (low != null && high != null) {
+            view = buckets.subMap(low, fromInclusive, high, toInclusive);
+        } else if (low != null) {
+            view = buckets.tailMap(low, fromInclusive);
+        } else if (high != null) {
+            view = buckets.headMap(high, toInclusive);
+        } else {
+            view = buckets;
+        }
+        for (KeyBucket bucket : view.values()) {
+            collect(bucket, keys);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of reusable serialization buffers.
+ * <p>
+ * Serializing into a fresh {@link ByteArrayOutputStream} grows its array several times for all but the smallest
+ * objects, and then throws it away. Buffers taken from this pool keep the array they grew to, so a steady stream of
+ * similarly sized elements is serialized without reallocating. Buffers that grew beyond the retained size limit are
+ * dropped on release rather than pinning large arrays.
+ */
+public final class BufferPool {
+
+    private static final int DEFAULT_MAXIMUM_BUFFERS = 64;
+    private static final int DEFAULT_MAXIMUM_RETAINED_SIZE = 1024 * 1024;
+    private static final int INITIAL_SIZE = 512;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_MAXIMUM_BUFFERS, DEFAULT_MAXIMUM_RETAINED_SIZE);
+
+    private final Queue<Buffer> buffers = new ConcurrentLinkedQueue<Buffer>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maximumBuffers;
+    private final int maximumRetainedSize;
+
+    /**
+     * Create a pool.
+     *
+     * @param maximumBuffers the maximum number of idle buffers kept
+     * @param maximumRetainedSize the largest buffer capacity, in bytes, returned to the pool
+     */
+    public BufferPool(int maximumBuffers, int maximumRetainedSize) {
+        this.maximumBuffers = maximumBuffers;
+        this.maximumRetainedSize = maximumRetainedSize;
+    }
+
+    /**
+     * Return the pool shared by the stores and copy strategies.
+     *
+     * @return the default pool
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Take an empty buffer from the pool, or create one if the pool is empty.
+     *
+     * @return an empty buffer, to be handed back with {@link Buffer#release()}
+     */
+    public Buffer acquire() {
+        Buffer buffer = buffers.poll();
+        if (buffer == null) {
+            return new Buffer(this);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    private void release(Buffer buffer) {
+        if (buffer.capacity() <= maximumRetainedSize && pooled.incrementAndGet() <= maximumBuffers) {
+            buffer.reset();
+            buffers.add(buffer);
+        } else if (buffer.capacity() <= maximumRetainedSize) {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Return the number of idle buffers in the pool.
+     *
+     * @return the idle buffer count
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * A growable byte buffer that can be handed back to the pool it came from.
+     * <p>
+     * A buffer must not be used by more than one thread at a time, nor used at all once released.
+     */
+    public static final class Buffer extends ByteArrayOutputStream {
+
+        private final BufferPool pool;
+
+        private Buffer(BufferPool pool) {
+            super(INITIAL_SIZE);
+            this.pool = pool;
+        }
+
+        /**
+         * Return the backing array, valid up to {@link #size()} bytes, without copying it.
+         *
+         * @return the backing array
+         */
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+        /**
+         * Hand this buffer back to its pool.
+         */
+        public void release() {
+            pool.release(this);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementIdHelper;
+import net.sf.ehcache.util.ClassLoaderUtil;
+import net.sf.ehcache.util.PreferTCCLObjectInputStream;
+
+/**
+ * A serializer with compact, descriptor-free encodings for the types most often used as keys and values.
+ * <p>
+ * Strings, boxed primitives, byte arrays and {@link Element}s are written as a one byte tag followed by their raw
+ * content. {@link Externalizable} objects are written as their class name and the output of
+ * {@link Externalizable#writeExternal(java.io.ObjectOutput)}. Anything else that is {@link Serializable} falls back to
+ * Java serialization, so every object the {@link JavaSerializer} accepts is accepted here too.
+ * <p>
+ * Unlike Java serialization, element creation and access times keep their millisecond precision.
+ */
+public class FastSerializer implements Serializer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte SHORT = 4;
+    private static final byte BYTE = 5;
+    private static final byte CHARACTER = 6;
+    private static final byte BOOLEAN = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte BYTE_ARRAY = 10;
+    private static final byte ELEMENT = 11;
+    private static final byte EXTERNALIZABLE = 12;
+    private static final byte JAVA = 13;
+
+    private static final byte LIFESPAN_SET = 1;
+    private static final byte DEFAULT_LIFESPAN = 2;
+    private static final byte HAS_ID = 4;
+
+    private final ConcurrentMap<String, Constructor<?>> externalizableConstructors = new ConcurrentHashMap<String, Constructor<?>>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object object, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        write(object, dout);
+        dout.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object deserialize(InputStream in) throws IOException, ClassNotFoundException {
+        return read(new DataInputStream(in));
+    }
+
+    private void write(Object object, DataOutputStream out) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(((String) object).getBytes(UTF8), out);
+        } else if (object instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) object);
+        } else if (object instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) object);
+        } else if (object instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) object);
+        } else if (object instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) object);
+        } else if (object instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) object);
+        } else if (object instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) object);
+        } else if (object instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) object);
+        } else if (object instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) object);
+        } else if (object instanceof byte[]) {
+            out.writeByte(BYTE_ARRAY);
+            writeBytes((byte[]) object, out);
+        } else if (object.getClass() == Element.class) {
+            out.writeByte(ELEMENT);
+            writeElement((Element) object, out);
+        } else if (object instanceof Externalizable) {
+            out.writeByte(EXTERNALIZABLE);
+            out.writeUTF(object.getClass().getName());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            ((Externalizable) object).writeExternal(oos);
+            oos.close();
+            writeBytes(bytes.toByteArray(), out);
+        } else if (object instanceof Serializable) {
+            out.writeByte(JAVA);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(object);
+            oos.close();
+            writeBytes(bytes.toByteArray(), out);
+        } else {
+            throw new NotSerializableException(object.getClass().getName());
+        }
+    }
+
+    private Object read(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), UTF8);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BYTE_ARRAY:
+                return readBytes(in);
+            case ELEMENT:
+                return readElement(in);
+            case EXTERNALIZABLE:
+                return readExternalizable(in.readUTF(), readBytes(in));
+            case JAVA:
+                ObjectInputStream ois = new PreferTCCLObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+                try {
+                    return ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            default:
+                throw new StreamCorruptedException("Unknown type tag " + tag);
+        }
+    }
+
+    private void writeElement(Element element, DataOutputStream out) throws IOException {
+        if (!element.getElementEvictionData().canParticipateInSerialization()) {
+            throw new NotSerializableException(Element.class.getName());
+        }
+        byte flags = 0;
+        if (element.isLifespanSet()) {
+            flags |= LIFESPAN_SET;
+        }
+        if (element.usesCacheDefaultLifespan()) {
+            flags |= DEFAULT_LIFESPAN;
+        }
+        if (ElementIdHelper.hasId(element)) {
+            flags |= HAS_ID;
+        }
+        out.writeByte(flags);
+        write(element.getObjectKey(), out);
+        write(element.getObjectValue(), out);
+        out.writeLong(element.getVersion());
+        out.writeLong(element.getCreationTime());
+        out.writeLong(element.getLastAccessTime());
+        out.writeLong(element.getHitCount());
+        out.writeLong(element.getLastUpdateTime());
+        if ((flags & LIFESPAN_SET) != 0) {
+            out.writeInt(element.getTimeToLive());
+            out.writeInt(element.getTimeToIdle());
+        }
+        if ((flags & HAS_ID) != 0) {
+            out.writeLong(ElementIdHelper.getId(element));
+        }
+    }
+
+    private Element readElement(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte flags = in.readByte();
+        Object key = read(in);
+        Object value = read(in);
+        long version = in.readLong();
+        long creationTime = in.readLong();
+        long lastAccessTime = in.readLong();
+        long hitCount = in.readLong();
+        long lastUpdateTime = in.readLong();
+        int timeToLive = Integer.MIN_VALUE;
+        int timeToIdle = Integer.MIN_VALUE;
+        if ((flags & LIFESPAN_SET) != 0) {
+            timeToLive = in.readInt();
+            timeToIdle = in.readInt();
+        }
+        Element element = new Element(key, value, version, creationTime, lastAccessTime, hitCount,
+                (flags & DEFAULT_LIFESPAN) != 0, timeToLive, timeToIdle, lastUpdateTime);
+        if ((flags & HAS_ID) != 0) {
+            ElementIdHelper.setId(element, in.readLong());
+        }
+        return element;
+    }
+
+    private Object readExternalizable(String className, byte[] data) throws IOException, ClassNotFoundException {
+        Constructor<?> constructor = externalizableConstructors.get(className);
+        if (constructor == null) {
+            try {
+                constructor = ClassLoaderUtil.loadClass(className).getConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new InvalidClassException(className, "no public no-arg constructor");
+            }
+            externalizableConstructors.putIfAbsent(className, constructor);
+        }
+
+        Externalizable object;
+        try {
+            object = (Externalizable) constructor.newInstance();
+        } catch (Exception e) {
+            InvalidClassException ice = new InvalidClassException(className, "could not be instantiated");
+            ice.initCause(e);
+            throw ice;
+        }
+        ObjectInputStream ois = new PreferTCCLObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            object.readExternal(ois);
+        } finally {
+            ois.close();
+        }
+        return object;
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new StreamCorruptedException("Negative length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Turns keys, values and whole {@link net.sf.ehcache.Element}s into bytes and back.
+ * <p>
+ * A serializer is used wherever a cache needs a byte representation of its content: the disk store data file
+ * and index, the off-heap store, the serializing copy strategy and replicated event messages. It is configured
+ * per cache through {@link net.sf.ehcache.config.CacheConfiguration#serializer(String)}.
+ * <p>
+ * Implementations must be thread-safe and have a public no-argument constructor.
+ */
+public interface Serializer {
+
+    /**
+     * Write the given object to the stream.
+     *
+     * @param object the object to serialize, possibly null
+     * @param out the stream to write to
+     * @throws IOException if the object cannot be serialized or written
+     */
+    void serialize(Object object, OutputStream out) throws IOException;
+
+    /**
+     * Read back an object written by {@link #serialize(Object, OutputStream)}.
+     *
+     * @param in the stream to read from
+     * @return the deserialized object
+     * @throws IOException if the stream cannot be read or is corrupt
+     * @throws ClassNotFoundException if the class of a serialized object cannot be loaded
+     */
+    Object deserialize(InputStream in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.util.ClassLoaderUtil;
+
+/**
+ * Static helpers to look up configured serializers and to serialize to and from byte arrays.
+ */
+public final class Serializers {
+
+    private static final ConcurrentMap<String, Serializer> SERIALIZERS = new ConcurrentHashMap<String, Serializer>();
+
+    private Serializers() {
+        // static helpers only
+    }
+
+    /**
+     * Return the shared instance of the named serializer class, creating it on first use.
+     *
+     * @param className fully qualified name of a {@link Serializer} implementation
+     * @return the serializer
+     * @throws CacheException if the class cannot be loaded or is not a serializer
+     */
+    public static Serializer getSerializer(String className) throws CacheException {
+        Serializer serializer = SERIALIZERS.get(className);
+        if (serializer == null) {
+            Object instance = ClassLoaderUtil.createNewInstance(className);
+            if (!(instance instanceof Serializer)) {
+                throw new CacheException(className + " does not implement " + Serializer.class.getName());
+            }
+            Serializer previous = SERIALIZERS.putIfAbsent(className, (Serializer) instance);
+            serializer = previous == null ? (Serializer) instance : previous;
+        }
+        return serializer;
+    }
+
+    /**
+     * Serialize the object into a new byte array, using a pooled buffer.
+     *
+     * @param serializer the serializer to use
+     * @param object the object to serialize
+     * @return the serialized form
+     * @throws IOException if the object cannot be serialized
+     */
+    public static byte[] toBytes(Serializer serializer, Object object) throws IOException {
+        BufferPool.Buffer buffer = BufferPool.getDefault().acquire();
+        try {
+            serializer.serialize(object, buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Deserialize an object from the given bytes.
+     *
+     * @param serializer the serializer that wrote the bytes
+     * @param bytes the serialized form
+     * @return the deserialized object
+     * @throws IOException if the bytes cannot be read
+     * @throws ClassNotFoundException if the class of a serialized object cannot be loaded
+     */
+    public static Object fromBytes(Serializer serializer, byte[] bytes) throws IOException, ClassNotFoundException {
+        return serializer.deserialize(new ByteArrayInputStream(bytes));
+    }
+}
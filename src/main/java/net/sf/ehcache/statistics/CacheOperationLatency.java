@@ -0,0 +1,62 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.statistics;
+
+/**
+ * The cache operations, split by the tier that served them, for which {@link LiveCacheStatistics} keeps a
+ * {@link LatencyHistogram}.
+ *
+ * @since 2.6
+ */
+public enum CacheOperationLatency {
+
+    /**
+     * A get served from the heap tier
+     */
+    GET_HEAP_HIT,
+
+    /**
+     * A get served from the off-heap tier
+     */
+    GET_OFFHEAP_HIT,
+
+    /**
+     * A get served from the disk tier
+     */
+    GET_DISK_HIT,
+
+    /**
+     * A get that found no element, or an expired one
+     */
+    GET_MISS,
+
+    /**
+     * A put
+     */
+    PUT,
+
+    /**
+     * A remove
+     */
+    REMOVE,
+
+    /**
+     * A search query
+     */
+    SEARCH
+}
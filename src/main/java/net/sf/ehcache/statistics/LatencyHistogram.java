@@ -0,0 +1,217 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.statistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: every power of two is split into {@value #SUB_BUCKETS} equally wide buckets, so any
+ * recorded value is reported with a relative error below 1/{@value #SUB_BUCKETS}. Values from 0 up to
+ * 2<sup>{@value #MAX_EXPONENT} + 1</sup> nanoseconds (about 36 minutes) are tracked; larger values are counted in
+ * the highest bucket. Recording a value is a single atomic increment on a preallocated array, and only allocates
+ * when a stripe is added.
+ * <p>
+ * As with {@link net.sf.ehcache.util.counter.StripedLongAdder}, the buckets start out as a single array and are
+ * striped over more arrays, up to one per processor, once recording threads collide on a bucket. Each thread
+ * records into the stripe picked by its own hash; reads merge the stripes.
+ * <p>
+ * Percentiles are computed from a sweep of the buckets that is not atomic with respect to concurrent recording,
+ * which is adequate for monitoring purposes.
+ *
+ * @since 2.6
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final double MAX_PERCENTILE = 100d;
+
+    private static final int MAX_STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        MAX_STRIPES = stripes;
+    }
+
+    private static final AtomicInteger PROBE_SEED = new AtomicInteger();
+
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            int seed = PROBE_SEED.getAndAdd(0x9e3779b9);
+            return new int[] {seed == 0 ? 1 : seed};
+        }
+    };
+
+    private volatile AtomicLongArray[] stripes = new AtomicLongArray[] {new AtomicLongArray(BUCKETS)};
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as zero
+     */
+    public void recordValue(long nanos) {
+        long value = Math.max(0L, nanos);
+        int index = indexOf(value);
+        AtomicLongArray[] as = stripes;
+        int[] probe = PROBE.get();
+        AtomicLongArray counts = as[probe[0] & (as.length - 1)];
+        long count = counts.get(index);
+        if (!counts.compareAndSet(index, count, count + 1)) {
+            // another thread records into this stripe: move to a different one next time and add stripes if we can
+            probe[0] = rehash(probe[0]);
+            if (as.length < MAX_STRIPES) {
+                expand(as);
+            }
+            counts.incrementAndGet(index);
+        }
+        if (value > maxValue.get()) {
+            long max;
+            do {
+                max = maxValue.get();
+            } while (value > max && !maxValue.compareAndSet(max, value));
+        }
+    }
+
+    /**
+     * Returns the number of latencies recorded since creation or the last {@link #reset()}.
+     *
+     * @return the number of recorded values
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the largest latency recorded.
+     *
+     * @return the largest recorded value in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the latency at or below which the given percentage of the recorded latencies fall.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > MAX_PERCENTILE) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = counts.get(i);
+                snapshot[i] += count;
+                total += count;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / MAX_PERCENTILE * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && i < BUCKETS - 1) {
+                return Math.min(highestEquivalentValue(i), maxValue.get());
+            }
+        }
+        // the highest bucket also holds every value past the tracked range
+        return maxValue.get();
+    }
+
+    /**
+     * Discards all recorded latencies.
+     */
+    public void reset() {
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0L);
+            }
+        }
+        maxValue.set(0L);
+    }
+
+    private synchronized void expand(AtomicLongArray[] current) {
+        AtomicLongArray[] as = stripes;
+        if (as == current && as.length < MAX_STRIPES) {
+            AtomicLongArray[] grown = new AtomicLongArray[as.length << 1];
+            // existing stripes are carried over, so no value recorded into them is lost
+            System.arraycopy(as, 0, grown, 0, as.length);
+            for (int i = as.length; i < grown.length; i++) {
+                grown[i] = new AtomicLongArray(BUCKETS);
+            }
+            stripes = grown;
+        }
+    }
+
+    private static int rehash(int h) {
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+
+    /**
+     * Returns the bucket of a non-negative value.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value that falls into the given bucket.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
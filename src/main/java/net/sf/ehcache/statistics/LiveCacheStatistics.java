@@ -294,6 +294,18 @@ public interface LiveCacheStatistics {
      */
     long getMinGetTimeNanos();
 
+    /**
+     * Return the latency at or below which the given percentage of the operations of a kind completed, as
+     * recorded by a {@link LatencyHistogram}. For example {@code getLatencyPercentileNanos("GET_DISK_HIT", 99.9)}
+     * is the 99.9th percentile latency of gets that faulted from disk.
+     *
+     * @param operation the name of a {@link CacheOperationLatency}: the operation, and the tier that served it
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or 0 if no such operation was recorded
+     * @throws IllegalArgumentException if there is no such operation
+     */
+    long getLatencyPercentileNanos(String operation, double percentile);
+
     /**
      * Gets the size of the write-behind queue, if any.
      * The value is for all local buckets
@@ -108,6 +108,14 @@ public interface LiveCacheStatisticsData extends CacheEventListener {
      */
     void addGetTimeNanos(final long nanos);
 
+    /**
+     * Adds the time taken by an operation to its latency histogram
+     *
+     * @param operation the operation, and the tier that served it
+     * @param nanos
+     */
+    void addLatencyNanos(CacheOperationLatency operation, final long nanos);
+
     /**
      * Sets the statistics accuracy.
      *
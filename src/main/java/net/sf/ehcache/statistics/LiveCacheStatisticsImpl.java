@@ -28,6 +28,7 @@ import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Statistics;
+import net.sf.ehcache.util.counter.StripedLongAdder;
 import net.sf.ehcache.writer.CacheWriterManager;
 import net.sf.ehcache.writer.writebehind.WriteBehindManager;
 
@@ -47,26 +48,27 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
     private static final int HIT_RATIO_MULTIPLIER = 100;
 
     private final AtomicBoolean statisticsEnabled = new AtomicBoolean(true);
-    private final AtomicLong cacheHitInMemoryCount = new AtomicLong();
-    private final AtomicLong cacheHitOffHeapCount = new AtomicLong();
-    private final AtomicLong cacheHitOnDiskCount = new AtomicLong();
-    private final AtomicLong cacheMissNotFound = new AtomicLong();
-    private final AtomicLong cacheMissInMemoryCount = new AtomicLong();
-    private final AtomicLong cacheMissOffHeapCount = new AtomicLong();
-    private final AtomicLong cacheMissOnDiskCount = new AtomicLong();
-    private final AtomicLong cacheMissExpired = new AtomicLong();
-    private final AtomicLong cacheElementEvictedCount = new AtomicLong();
-    private final AtomicLong totalGetTimeTakenNanos = new AtomicLong();
-    private final AtomicLong cacheElementRemoved = new AtomicLong();
-    private final AtomicLong cacheElementExpired = new AtomicLong();
-    private final AtomicLong cacheElementPut = new AtomicLong();
-    private final AtomicLong cacheElementUpdated = new AtomicLong();
+    private final StripedLongAdder cacheHitInMemoryCount = new StripedLongAdder();
+    private final StripedLongAdder cacheHitOffHeapCount = new StripedLongAdder();
+    private final StripedLongAdder cacheHitOnDiskCount = new StripedLongAdder();
+    private final StripedLongAdder cacheMissNotFound = new StripedLongAdder();
+    private final StripedLongAdder cacheMissInMemoryCount = new StripedLongAdder();
+    private final StripedLongAdder cacheMissOffHeapCount = new StripedLongAdder();
+    private final StripedLongAdder cacheMissOnDiskCount = new StripedLongAdder();
+    private final StripedLongAdder cacheMissExpired = new StripedLongAdder();
+    private final StripedLongAdder cacheElementEvictedCount = new StripedLongAdder();
+    private final StripedLongAdder totalGetTimeTakenNanos = new StripedLongAdder();
+    private final StripedLongAdder cacheElementRemoved = new StripedLongAdder();
+    private final StripedLongAdder cacheElementExpired = new StripedLongAdder();
+    private final StripedLongAdder cacheElementPut = new StripedLongAdder();
+    private final StripedLongAdder cacheElementUpdated = new StripedLongAdder();
     private final AtomicInteger statisticsAccuracy = new AtomicInteger();
     private final AtomicLong minGetTimeNanos = new AtomicLong(MIN_MAX_DEFAULT_VALUE);
     private final AtomicLong maxGetTimeNanos = new AtomicLong(MIN_MAX_DEFAULT_VALUE);
-    private final AtomicLong xaCommitCount = new AtomicLong();
-    private final AtomicLong xaRollbackCount = new AtomicLong();
-    private final AtomicLong xaRecoveredCount = new AtomicLong();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[CacheOperationLatency.values().length];
+    private final StripedLongAdder xaCommitCount = new StripedLongAdder();
+    private final StripedLongAdder xaRollbackCount = new StripedLongAdder();
+    private final StripedLongAdder xaRecoveredCount = new StripedLongAdder();
 
     private final List<CacheUsageListener> listeners = new CopyOnWriteArrayList<CacheUsageListener>();
 
@@ -79,30 +81,36 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      */
     public LiveCacheStatisticsImpl(Ehcache cache) {
         this.cache = cache;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     public void clearStatistics() {
-        cacheHitInMemoryCount.set(0);
-        cacheHitOffHeapCount.set(0);
-        cacheHitOnDiskCount.set(0);
-        cacheMissExpired.set(0);
-        cacheMissNotFound.set(0);
-        cacheMissInMemoryCount.set(0);
-        cacheMissOffHeapCount.set(0);
-        cacheMissOnDiskCount.set(0);
-        cacheElementEvictedCount.set(0);
-        totalGetTimeTakenNanos.set(0);
-        cacheElementRemoved.set(0);
-        cacheElementExpired.set(0);
-        cacheElementPut.set(0);
-        cacheElementUpdated.set(0);
+        cacheHitInMemoryCount.reset();
+        cacheHitOffHeapCount.reset();
+        cacheHitOnDiskCount.reset();
+        cacheMissExpired.reset();
+        cacheMissNotFound.reset();
+        cacheMissInMemoryCount.reset();
+        cacheMissOffHeapCount.reset();
+        cacheMissOnDiskCount.reset();
+        cacheElementEvictedCount.reset();
+        totalGetTimeTakenNanos.reset();
+        cacheElementRemoved.reset();
+        cacheElementExpired.reset();
+        cacheElementPut.reset();
+        cacheElementUpdated.reset();
         minGetTimeNanos.set(MIN_MAX_DEFAULT_VALUE);
         maxGetTimeNanos.set(MIN_MAX_DEFAULT_VALUE);
-        xaCommitCount.set(0);
-        xaRollbackCount.set(0);
+        xaCommitCount.reset();
+        xaRollbackCount.reset();
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
         for (CacheUsageListener l : listeners) {
             l.notifyStatisticsCleared();
         }
@@ -115,7 +123,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        xaCommitCount.incrementAndGet();
+        xaCommitCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyXaCommit();
         }
@@ -128,7 +136,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        xaRollbackCount.incrementAndGet();
+        xaRollbackCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyXaRollback();
         }
@@ -141,7 +149,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        xaRecoveredCount.addAndGet(count);
+        xaRecoveredCount.add(count);
     }
 
     /**
@@ -171,17 +179,12 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        totalGetTimeTakenNanos.addAndGet(nanos);
+        totalGetTimeTakenNanos.add(nanos);
         for (CacheUsageListener l : listeners) {
             l.notifyGetTimeNanos(nanos);
             l.notifyTimeTakenForGet(nanos / NANOS_PER_MILLI);
         }
-        if (minGetTimeNanos.get() == MIN_MAX_DEFAULT_VALUE || (nanos < minGetTimeNanos.get())) {
-            minGetTimeNanos.set(nanos);
-        }
-        if (maxGetTimeNanos.get() == MIN_MAX_DEFAULT_VALUE || (nanos > maxGetTimeNanos.get() && nanos > 0)) {
-            maxGetTimeNanos.set(nanos);
-        }
+        updateMinMaxGetTime(nanos);
     }
 
     /**
@@ -191,18 +194,38 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        totalGetTimeTakenNanos.addAndGet(millis);
+        totalGetTimeTakenNanos.add(millis);
         for (CacheUsageListener l : listeners) {
             l.notifyTimeTakenForGet(millis);
         }
-        if (minGetTimeNanos.get() == MIN_MAX_DEFAULT_VALUE || (millis < minGetTimeNanos.get() /*&& millis > 0*/)) {
-            minGetTimeNanos.set(millis);
+        updateMinMaxGetTime(millis);
+    }
+    /**
+     * {@inheritDoc}
+     */
+    public void addLatencyNanos(CacheOperationLatency operation, long nanos) {
+        if (!statisticsEnabled.get()) {
+            return;
         }
-        if (maxGetTimeNanos.get() == MIN_MAX_DEFAULT_VALUE || (millis > maxGetTimeNanos.get() && millis > 0)) {
-            maxGetTimeNanos.set(millis);
+        latencies[operation.ordinal()].recordValue(nanos);
+    }
+
+    /**
+     * Min and max are only written when a new extreme is seen, so once warmed up the get path only reads them
+     * and their cache lines stay shared.
+     */
+    private void updateMinMaxGetTime(long time) {
+        long min = minGetTimeNanos.get();
+        if (min == MIN_MAX_DEFAULT_VALUE || time < min) {
+            minGetTimeNanos.set(time);
+        }
+        long max = maxGetTimeNanos.get();
+        if (max == MIN_MAX_DEFAULT_VALUE || (time > max && time > 0)) {
+            maxGetTimeNanos.set(time);
         }
     }
 
+
     /**
      * {@inheritDoc}
      */
@@ -210,7 +233,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheHitInMemoryCount.incrementAndGet();
+        cacheHitInMemoryCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheHitInMemory();
         }
@@ -223,7 +246,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheHitOffHeapCount.incrementAndGet();
+        cacheHitOffHeapCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheHitOffHeap();
         }
@@ -236,7 +259,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheHitOnDiskCount.incrementAndGet();
+        cacheHitOnDiskCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheHitOnDisk();
         }
@@ -249,7 +272,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheMissExpired.incrementAndGet();
+        cacheMissExpired.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheMissedWithExpired();
         }
@@ -262,7 +285,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheMissNotFound.incrementAndGet();
+        cacheMissNotFound.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheMissedWithNotFound();
         }
@@ -275,7 +298,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheMissInMemoryCount.incrementAndGet();
+        cacheMissInMemoryCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheMissInMemory();
         }
@@ -288,7 +311,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheMissOffHeapCount.incrementAndGet();
+        cacheMissOffHeapCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheMissOffHeap();
         }
@@ -301,7 +324,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheMissOnDiskCount.incrementAndGet();
+        cacheMissOnDiskCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheMissOnDisk();
         }
@@ -336,7 +359,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheElementEvictedCount.incrementAndGet();
+        cacheElementEvictedCount.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheElementEvicted();
         }
@@ -349,7 +372,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheElementExpired.incrementAndGet();
+        cacheElementExpired.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheElementExpired();
         }
@@ -362,7 +385,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheElementPut.incrementAndGet();
+        cacheElementPut.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheElementPut();
         }
@@ -375,7 +398,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheElementRemoved.incrementAndGet();
+        cacheElementRemoved.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheElementRemoved();
         }
@@ -388,7 +411,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (!statisticsEnabled.get()) {
             return;
         }
-        cacheElementUpdated.incrementAndGet();
+        cacheElementUpdated.increment();
         for (CacheUsageListener l : listeners) {
             l.notifyCacheElementUpdated();
         }
@@ -431,7 +454,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         if (accessCount == 0) {
             return 0;
         }
-        return totalGetTimeTakenNanos.get() / accessCount;
+        return totalGetTimeTakenNanos.sum() / accessCount;
     }
 
     /**
@@ -456,35 +479,35 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * {@inheritDoc}
      */
     public long getCacheHitCount() {
-        return cacheHitInMemoryCount.get() + cacheHitOffHeapCount.get() + cacheHitOnDiskCount.get();
+        return cacheHitInMemoryCount.sum() + cacheHitOffHeapCount.sum() + cacheHitOnDiskCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getCacheMissCount() {
-        return cacheMissNotFound.get() + cacheMissExpired.get();
+        return cacheMissNotFound.sum() + cacheMissExpired.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getInMemoryMissCount() {
-        return cacheMissInMemoryCount.get();
+        return cacheMissInMemoryCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getOffHeapMissCount() {
-        return cacheMissOffHeapCount.get();
+        return cacheMissOffHeapCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getOnDiskMissCount() {
-        return cacheMissOnDiskCount.get();
+        return cacheMissOnDiskCount.sum();
     }
 
 
@@ -492,7 +515,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * {@inheritDoc}
      */
     public long getCacheMissCountExpired() {
-        return cacheMissExpired.get();
+        return cacheMissExpired.sum();
     }
 
     /**
@@ -509,28 +532,28 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * {@inheritDoc}
      */
     public long getEvictedCount() {
-        return cacheElementEvictedCount.get();
+        return cacheElementEvictedCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getInMemoryHitCount() {
-        return cacheHitInMemoryCount.get();
+        return cacheHitInMemoryCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getOffHeapHitCount() {
-        return cacheHitOffHeapCount.get();
+        return cacheHitOffHeapCount.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getOnDiskHitCount() {
-        return cacheHitOnDiskCount.get();
+        return cacheHitOnDiskCount.sum();
     }
 
     /**
@@ -649,28 +672,28 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * {@inheritDoc}
      */
     public long getExpiredCount() {
-        return cacheElementExpired.get();
+        return cacheElementExpired.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getPutCount() {
-        return cacheElementPut.get();
+        return cacheElementPut.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getRemovedCount() {
-        return cacheElementRemoved.get();
+        return cacheElementRemoved.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getUpdateCount() {
-        return cacheElementUpdated.get();
+        return cacheElementUpdated.sum();
     }
 
     /**
@@ -723,13 +746,20 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
         return minGetTimeNanos.get();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        return latencies[CacheOperationLatency.valueOf(operation).ordinal()].getValueAtPercentile(percentile);
+    }
+
     /**
      * {@inheritDoc}
      *
      * @see net.sf.ehcache.statistics.LiveCacheStatistics#getXaCommitCount()
      */
     public long getXaCommitCount() {
-        return xaCommitCount.get();
+        return xaCommitCount.sum();
     }
 
     /**
@@ -738,7 +768,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * @see net.sf.ehcache.statistics.LiveCacheStatistics#getXaRollbackCount()
      */
     public long getXaRollbackCount() {
-        return xaRollbackCount.get();
+        return xaRollbackCount.sum();
     }
 
     /**
@@ -747,7 +777,7 @@ public class LiveCacheStatisticsImpl implements LiveCacheStatistics, LiveCacheSt
      * @see net.sf.ehcache.statistics.LiveCacheStatistics#getXaRecoveredCount()
      */
     public long getXaRecoveredCount() {
-        return xaRecoveredCount.get();
+        return xaRecoveredCount.sum();
     }
 
     /**
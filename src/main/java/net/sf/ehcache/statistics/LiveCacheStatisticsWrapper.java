@@ -393,6 +393,15 @@ public class LiveCacheStatisticsWrapper implements LiveCacheStatistics, LiveCach
         getDelegateAsLiveStatisticsData().addGetTimeNanos(nanos);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see net.sf.ehcache.statistics.LiveCacheStatisticsData#addLatencyNanos(CacheOperationLatency, long)
+     */
+    public void addLatencyNanos(CacheOperationLatency operation, long nanos) {
+        getDelegateAsLiveStatisticsData().addLatencyNanos(operation, nanos);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -433,6 +442,15 @@ public class LiveCacheStatisticsWrapper implements LiveCacheStatistics, LiveCach
         return delegate.getMinGetTimeNanos();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see net.sf.ehcache.statistics.LiveCacheStatistics#getLatencyPercentileNanos(String, double)
+     */
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        return delegate.getLatencyPercentileNanos(operation, percentile);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -468,6 +468,13 @@ public class NullLiveCacheStatisticsData implements LiveCacheStatistics, LiveCac
         /**/
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void addLatencyNanos(CacheOperationLatency operation, long nanos) {
+        /**/
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -495,4 +502,12 @@ public class NullLiveCacheStatisticsData implements LiveCacheStatistics, LiveCac
     public long getMinGetTimeNanos() {
         return 0;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        CacheOperationLatency.valueOf(operation);
+        return 0;
+    }
 }
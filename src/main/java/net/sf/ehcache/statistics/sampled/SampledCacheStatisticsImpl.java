@@ -20,6 +20,7 @@ import net.sf.ehcache.Statistics;
 import net.sf.ehcache.statistics.CacheUsageListener;
 import net.sf.ehcache.util.FailSafeTimer;
 import net.sf.ehcache.util.counter.CounterConfig;
+import net.sf.ehcache.util.counter.CounterImpl;
 import net.sf.ehcache.util.counter.CounterManager;
 import net.sf.ehcache.util.counter.CounterManagerImpl;
 import net.sf.ehcache.util.counter.sampled.SampledCounter;
@@ -143,7 +144,15 @@ public class SampledCacheStatisticsImpl implements CacheUsageListener, CacheStat
             return;
         }
         for (SampledCounter counter : counters) {
-            counter.increment();
+            add(counter, 1);
+        }
+    }
+
+    private static void add(SampledCounter counter, long amount) {
+        if (counter instanceof CounterImpl) {
+            ((CounterImpl) counter).add(amount);
+        } else {
+            counter.increment(amount);
         }
     }
 
@@ -700,7 +709,7 @@ public class SampledCacheStatisticsImpl implements CacheUsageListener, CacheStat
      * {@inheritDoc}
      */
     public void notifyCacheSearch(long executeTime) {
-        this.cacheSearchCount.increment();
+        add(this.cacheSearchCount, 1);
         this.averageSearchTime.increment(executeTime, 1);
     }
 
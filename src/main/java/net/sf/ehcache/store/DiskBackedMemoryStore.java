@@ -68,7 +68,7 @@ public final class DiskBackedMemoryStore extends FrontEndCacheTier<MemoryStore,
      * {@inheritDoc}
      */
     public Object getMBean() {
-        return null;
+        return authority.getMBean();
     }
 
     /**
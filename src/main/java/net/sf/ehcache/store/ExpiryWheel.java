@@ -0,0 +1,302 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of keys by expiration time, as a hashed hierarchical timing wheel, from which the keys due to expire
+ * can be taken in time proportional to their number rather than to the size of the store.
+ * <p/>
+ * Time is divided in ticks. Keys due within 64 ticks hang off the slots of the first wheel, keys due later off the
+ * coarser slots of three further wheels, each slot of which covers a whole turn of the wheel below; beyond the
+ * last wheel keys wait in its furthest slot. As time passes the slots of a coarser wheel are cascaded into the finer
+ * ones. Scheduling, cancelling and taking a key are constant time.
+ * <p/>
+ * The index only knows the expiration time it was given for a key: callers check the keys it returns against the
+ * store, and schedule again those whose expiration has since moved, e.g. because they have been accessed. A key is
+ * indexed along with the value it was scheduled for, so that removing an old value does not cancel the schedule of
+ * a newer one. The index is split in independently locked stripes so that concurrent puts seldom contend.
+ */
+public final class ExpiryWheel {
+
+    /**
+     * The tick of the indexes kept by the stores, in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final long HORIZON = 1L << (WHEEL_BITS * LEVELS);
+    private static final int STRIPES = 16;
+
+    private final long tickMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Create an empty index.
+     *
+     * @param tickMillis the resolution of the index, in milliseconds
+     * @param now        the current time, in milliseconds
+     */
+    public ExpiryWheel(long tickMillis, long now) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(now / tickMillis);
+        }
+    }
+
+    /**
+     * Index a key by the expiration time of its value, replacing any time it was indexed by before.
+     *
+     * @param key            the key
+     * @param value          the value now mapped to the key
+     * @param expirationTime the time after which the value expires, {@link Long#MAX_VALUE} if it never does
+     */
+    public void schedule(Object key, Object value, long expirationTime) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            if (expirationTime == Long.MAX_VALUE) {
+                stripe.cancel(key, null);
+            } else {
+                stripe.schedule(key, value, expirationTime / tickMillis + 1);
+            }
+        }
+    }
+
+    /**
+     * Remove a key from the index, if it is still indexed for a given value.
+     *
+     * @param key   the key
+     * @param value the value removed from the key
+     */
+    public void cancel(Object key, Object value) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.cancel(key, value);
+        }
+    }
+
+    /**
+     * Take the keys which expired by a given time out of the index.
+     *
+     * @param now the current time, in milliseconds
+     * @return the keys whose expiration time has passed
+     */
+    public List<Object> advance(long now) {
+        long tick = now / tickMillis;
+        List<Object> due = new ArrayList<Object>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.advance(tick, due);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Remove all keys from the index.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the number of keys in the index.
+     *
+     * @return the number of indexed keys
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.nodes.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    /**
+     * An indexed key.
+     */
+    private static final class Node {
+        private final Object key;
+        private Object value;
+        private long deadline;
+        private Node previous;
+        private Node next;
+        private Node[] slots;
+        private int slot;
+
+        Node(Object key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * An independently locked part of the index.
+     */
+    private static final class Stripe {
+
+        private final Node[][] wheels = new Node[LEVELS][WHEEL_SIZE];
+        private final Map<Object, Node> nodes = new HashMap<Object, Node>();
+        private long currentTick;
+
+        Stripe(long currentTick) {
+            this.currentTick = currentTick;
+        }
+
+        void schedule(Object key, Object value, long deadline) {
+            Node node = nodes.get(key);
+            if (node == null) {
+                node = new Node(key);
+                nodes.put(key, node);
+            } else if (node.deadline == deadline) {
+                node.value = value;
+                return;
+            } else {
+                unlink(node);
+            }
+            node.value = value;
+            node.deadline = deadline;
+            link(node, currentTick + 1);
+        }
+
+        /**
+         * Remove the node of a key, if it is for the given value or the value is null.
+         */
+        void cancel(Object key, Object value) {
+            Node node = nodes.get(key);
+            if (node != null && (value == null || node.value == value)) {
+                nodes.remove(key);
+                unlink(node);
+            }
+        }
+
+        void advance(long tick, List<Object> due) {
+            if (nodes.isEmpty()) {
+                currentTick = Math.max(currentTick, tick);
+                return;
+            }
+            while (currentTick < tick) {
+                long t = currentTick + 1;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((t & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                        cascade(wheels[level], (int) (t >>> (WHEEL_BITS * level)) & WHEEL_MASK, t);
+                    }
+                }
+                Node[] slots = wheels[0];
+                int slot = (int) t & WHEEL_MASK;
+                Node node = slots[slot];
+                slots[slot] = null;
+                while (node != null) {
+                    Node next = node.next;
+                    node.previous = null;
+                    node.next = null;
+                    node.slots = null;
+                    if (node.deadline <= t) {
+                        nodes.remove(node.key);
+                        due.add(node.key);
+                    } else {
+                        link(node, t);
+                    }
+                    node = next;
+                }
+                currentTick = t;
+            }
+        }
+
+        void clear() {
+            nodes.clear();
+            for (Node[] slots : wheels) {
+                for (int i = 0; i < WHEEL_SIZE; i++) {
+                    slots[i] = null;
+                }
+            }
+        }
+
+        private void cascade(Node[] slots, int slot, long base) {
+            Node node = slots[slot];
+            slots[slot] = null;
+            while (node != null) {
+                Node next = node.next;
+                node.previous = null;
+                node.next = null;
+                node.slots = null;
+                link(node, base);
+                node = next;
+            }
+        }
+
+        /**
+         * Hang a node off the slot for its deadline, given the first tick still to be processed.
+         */
+        private void link(Node node, long base) {
+            long deadline = Math.max(node.deadline, base);
+            long delta = Math.min(deadline - base, HORIZON - 1);
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+                level++;
+            }
+            long at = base + delta;
+            Node[] slots = wheels[level];
+            int slot = (int) (at >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+            node.slots = slots;
+            node.slot = slot;
+            node.previous = null;
+            node.next = slots[slot];
+            if (node.next != null) {
+                node.next.previous = node;
+            }
+            slots[slot] = node;
+        }
+
+        private static void unlink(Node node) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+            } else if (node.slots != null) {
+                node.slots[node.slot] = node.next;
+            }
+            if (node.next != null) {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.slots = null;
+        }
+    }
+}
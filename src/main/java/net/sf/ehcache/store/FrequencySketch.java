@@ -0,0 +1,131 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.store;
+
+/**
+ * A count-min sketch estimating how often keys were accessed recently, in 4 bits per counter.
+ * <p>
+ * Each key maps to one counter in each of four rows; its frequency is the smallest of them, so that collisions can only
+ * overestimate it. Only the smallest counters are incremented, which keeps the overestimate low, and counters saturate
+ * at 15. After ten increments per expected key, every counter is halved, so that the sketch forgets keys that stop
+ * being accessed and keeps following the working set.
+ * <p>
+ * Updates are not atomic: increments racing on the same counter may be lost, which only makes the estimates slightly
+ * low and is the price of not contending on every read.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int COUNTER_MASK = 0xf;
+    private static final int MAXIMUM_FREQUENCY = 15;
+    private static final int SAMPLE_FACTOR = 10;
+    private static final int MINIMUM_SIZE = 16;
+    private static final int MAXIMUM_SIZE = 1 << 24;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Create a sketch for a cache holding about the given number of keys.
+     *
+     * @param expectedSize the number of keys the cache holds when full
+     */
+    FrequencySketch(int expectedSize) {
+        int size = Math.max(MINIMUM_SIZE, Math.min(expectedSize, MAXIMUM_SIZE));
+        int tableSize = Integer.highestOneBit(size - 1) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = SAMPLE_FACTOR * size;
+    }
+
+    /**
+     * Return the estimated number of recent accesses to a key.
+     *
+     * @param key the key
+     * @return the frequency, between 0 and 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAXIMUM_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(indexOf(hash, i), offsetOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access to a key.
+     *
+     * @param key the key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAXIMUM_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(indexOf(hash, i), offsetOf(hash, i)));
+        }
+        if (frequency == MAXIMUM_FREQUENCY) {
+            return;
+        }
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int offset = offsetOf(hash, i);
+            if (counter(index, offset) == frequency) {
+                table[index] += 1L << offset;
+            }
+        }
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halve every counter.
+     */
+    private synchronized void reset() {
+        if (additions < sampleSize) {
+            return;
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int counter(int index, int offset) {
+        return (int) (table[index] >>> offset) & COUNTER_MASK;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int offsetOf(int hash, int row) {
+        return ((hash >>> (row << 3)) & COUNTER_MASK) << 2;
+    }
+
+    private static int spread(int hashCode) {
+        int h = hashCode;
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        return h ^ (h >>> 16);
+    }
+}
@@ -18,6 +18,8 @@ package net.sf.ehcache.store;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -33,6 +35,7 @@ import net.sf.ehcache.concurrent.StripedReadWriteLock;
 import net.sf.ehcache.concurrent.StripedReadWriteLockSync;
 import net.sf.ehcache.search.impl.SearchManager;
 import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
+import net.sf.ehcache.store.disk.DiskStore;
 import net.sf.ehcache.util.SetAsList;
 import net.sf.ehcache.writer.CacheWriterManager;
 
@@ -506,6 +509,32 @@ public abstract class FrontEndCacheTier<T extends TierableStore, U extends Tiera
         }
     }
 
+    /**
+     * Returns an iterator over the same keys as {@link #getKeys()} which, rather than copying them, walks the tiers
+     * in place where they support it. The iterator is weakly consistent: keys added or removed while iterating may
+     * or may not be returned.
+     *
+     * @return an iterator over the keys of this store
+     */
+    public Iterator<?> keyIterator() {
+        if (cache.isTierPinned() && !authority.isPersistent()) {
+            return keysOf(cache).iterator();
+        } else {
+            return new CacheKeySet<Object>(
+                keysOf(authority), cache.isTierPinned() ? keysOf(cache) : cache.getPresentPinnedKeys()).iterator();
+        }
+    }
+
+    private static Collection keysOf(TierableStore store) {
+        if (store instanceof MemoryStore) {
+            return ((MemoryStore) store).keySet();
+        } else if (store instanceof DiskStore) {
+            return ((DiskStore) store).keySet();
+        } else {
+            return store.getKeys();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -16,17 +16,23 @@
 
 package net.sf.ehcache.store;
 
+import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.concurrent.LockType;
+import net.sf.ehcache.concurrent.ReadWriteLockSync;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.pool.Pool;
 import net.sf.ehcache.search.Attribute;
 import net.sf.ehcache.search.Results;
+import net.sf.ehcache.search.SearchException;
 import net.sf.ehcache.search.aggregator.AggregatorInstance;
+import net.sf.ehcache.search.aggregator.MergeableAggregatorInstance;
 import net.sf.ehcache.search.attribute.AttributeExtractor;
 import net.sf.ehcache.search.attribute.DynamicAttributesExtractor;
 import net.sf.ehcache.search.expression.Criteria;
 import net.sf.ehcache.search.impl.AggregateOnlyResult;
+import net.sf.ehcache.search.impl.AttributeIndexes;
 import net.sf.ehcache.search.impl.BaseResult;
 import net.sf.ehcache.search.impl.GroupedResultImpl;
 import net.sf.ehcache.search.impl.OrderComparator;
@@ -34,18 +40,30 @@ import net.sf.ehcache.search.impl.ResultImpl;
 import net.sf.ehcache.search.impl.ResultsImpl;
 import net.sf.ehcache.search.impl.SearchManager;
 import net.sf.ehcache.transaction.SoftLockID;
+import net.sf.ehcache.util.NamedThreadFactory;
+import net.sf.ehcache.writer.CacheWriterManager;
 
 import static net.sf.ehcache.search.expression.BaseCriteria.getExtractor;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 /**
@@ -55,8 +73,28 @@ import java.util.concurrent.locks.Lock;
  */
 public class MemoryOnlyStore extends FrontEndCacheTier<NullStore, MemoryStore> {
 
+    /**
+     * System property setting the store size from which queries that cannot use the attribute indexes get evaluated
+     * in parallel over the store segments
+     */
+    public static final String PARALLEL_QUERY_THRESHOLD_PROPERTY = "net.sf.ehcache.search.parallelQueryThreshold";
+
+    private static final int DEFAULT_PARALLEL_QUERY_THRESHOLD = 10000;
+    private static final int QUERY_EXECUTOR_KEEP_ALIVE_TIME = 10000;
+    private static final int TOP_RESULTS_INITIAL_CAPACITY = 1024;
+
     private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
 
+    /**
+     * How many more keys than the store holds the attribute indexes may keep before evicted keys get purged from them
+     */
+    private static final int INDEX_PURGE_SLACK = 1000;
+
+    private final CacheConfiguration cacheConfiguration;
+    private final AtomicBoolean purgingIndexes = new AtomicBoolean();
+    private volatile AttributeIndexes attributeIndexes;
+    private volatile ExecutorService queryExecutor;
+
     /**
      * Create a MemoryOnlyStore
      *
@@ -66,6 +104,7 @@ public class MemoryOnlyStore extends FrontEndCacheTier<NullStore, MemoryStore> {
     protected MemoryOnlyStore(CacheConfiguration cacheConfiguration, MemoryStore authority, SearchManager searchManager) {
         super(NullStore.create(), authority, cacheConfiguration.getCopyStrategy(), searchManager,
               cacheConfiguration.isCopyOnWrite(), cacheConfiguration.isCopyOnRead());
+        this.cacheConfiguration = cacheConfiguration;
     }
 
     /**
@@ -92,6 +131,249 @@ public class MemoryOnlyStore extends FrontEndCacheTier<NullStore, MemoryStore> {
         return authority.elementSet();
     }
 
+    /**
+     * Get the underlying memory store element set, split per map segment
+     *
+     * @return element sets
+     */
+    List<Collection<Element>> segmentElementSets() {
+        return authority.segmentElementSets();
+    }
+
+    /**
+     * Get the candidates the attribute indexes found for a query
+     *
+     * @param query the query
+     * @return the elements to evaluate, or null if the indexes cannot answer the query's criteria
+     */
+    Collection<Element> indexedElements(StoreQuery query) {
+        AttributeIndexes indexes = attributeIndexes;
+        if (indexes != null) {
+            Set<Object> keys = indexes.candidates(query);
+            if (keys != null) {
+                List<Element> elements = new ArrayList<Element>(keys.size());
+                for (Object key : keys) {
+                    Element element = authority.getQuiet(key);
+                    if (element != null) {
+                        elements.add(element);
+                    }
+                }
+                return elements;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the executor evaluating queries in parallel, created on first use
+     *
+     * @return the query executor
+     */
+    ExecutorService getQueryExecutor() {
+        ExecutorService executor = queryExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = queryExecutor;
+                if (executor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, QUERY_EXECUTOR_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(cacheConfiguration.getName() + " Search Executor"));
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                    queryExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dispose() {
+        super.dispose();
+        ExecutorService executor = queryExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAttributeExtractors(Map<String, AttributeExtractor> extractors) {
+        super.setAttributeExtractors(extractors);
+        attributeIndexes = AttributeIndexes.create(cacheConfiguration.getSearchAttributes().values(), extractors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean put(Element e) {
+        boolean put = super.put(e);
+        if (e != null) {
+            reindex(e.getObjectKey());
+        }
+        return put;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean putWithWriter(Element e, CacheWriterManager writer) {
+        boolean put = super.putWithWriter(e, writer);
+        if (e != null) {
+            reindex(e.getObjectKey());
+        }
+        return put;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element remove(Object key) {
+        Element removed = super.remove(key);
+        reindex(key);
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element removeWithWriter(Object key, CacheWriterManager writerManager) throws CacheException {
+        Element removed = super.removeWithWriter(key, writerManager);
+        reindex(key);
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element putIfAbsent(Element e) throws NullPointerException {
+        Element existing = super.putIfAbsent(e);
+        reindex(e.getObjectKey());
+        return existing;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element removeElement(Element e, ElementValueComparator comparator) throws NullPointerException {
+        Element removed = super.removeElement(e, comparator);
+        reindex(e.getObjectKey());
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean replace(Element old, Element e, ElementValueComparator comparator) throws NullPointerException,
+            IllegalArgumentException {
+        boolean replaced = super.replace(old, e, comparator);
+        reindex(e.getObjectKey());
+        return replaced;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element replace(Element e) throws NullPointerException {
+        Element replaced = super.replace(e);
+        reindex(e.getObjectKey());
+        return replaced;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAll() throws CacheException {
+        AttributeIndexes indexes = attributeIndexes;
+        if (indexes == null) {
+            super.removeAll();
+            return;
+        }
+
+        List<ReadWriteLockSync> locks = getAllLocks();
+        for (ReadWriteLockSync lock : locks) {
+            lock.lock(LockType.WRITE);
+        }
+        try {
+            super.removeAll();
+            indexes.clear();
+        } finally {
+            for (ReadWriteLockSync lock : locks) {
+                lock.unlock(LockType.WRITE);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void expireElements() {
+        super.expireElements();
+        AttributeIndexes indexes = attributeIndexes;
+        if (indexes != null) {
+            purgeIndexes(indexes);
+        }
+    }
+
+    /**
+     * Bring the attribute indexes in line with the element now mapped to a key
+     */
+    private void reindex(Object key) {
+        AttributeIndexes indexes = attributeIndexes;
+        if (indexes == null || key == null) {
+            return;
+        }
+
+        Lock lock = getLockFor(key).writeLock();
+        lock.lock();
+        try {
+            indexes.update(key, copyElementForReadIfNeeded(authority.getQuiet(key)));
+        } finally {
+            lock.unlock();
+        }
+
+        // evictions bypass this tier, the keys they leave behind are dropped once they pile up
+        if (indexes.size() > 2L * authority.getSize() + INDEX_PURGE_SLACK) {
+            purgeIndexes(indexes);
+        }
+    }
+
+    private void purgeIndexes(AttributeIndexes indexes) {
+        if (!purgingIndexes.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Object key : indexes.keys()) {
+                Lock lock = getLockFor(key).writeLock();
+                lock.lock();
+                try {
+                    if (authority.getQuiet(key) == null) {
+                        indexes.remove(key);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            purgingIndexes.set(false);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -160,12 +442,15 @@ public class MemoryOnlyStore extends FrontEndCacheTier<NullStore, MemoryStore> {
     protected static class BruteForceSearchManager implements SearchManager {
 
         private volatile MemoryOnlyStore memoryStore;
+        private final int parallelism;
+        private final int parallelThreshold;
 
         /**
          * Create a BruteForceSearchManager
          */
         public BruteForceSearchManager() {
-            //
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+            this.parallelThreshold = Integer.getInteger(PARALLEL_QUERY_THRESHOLD_PROPERTY, DEFAULT_PARALLEL_QUERY_THRESHOLD);
         }
 
         /**
@@ -185,109 +470,261 @@ public class MemoryOnlyStore extends FrontEndCacheTier<NullStore, MemoryStore> {
 
         @Override
         public Results executeQuery(String cacheName, StoreQuery query, Map<String, AttributeExtractor> extractors) {
-            Criteria c = query.getCriteria();
-
             List<AggregatorInstance<?>> aggregators = query.getAggregatorInstances();
 
-            final Set<Attribute<?>> groupByAttributes = query.groupByAttributes();
-            final boolean isGroupBy = !groupByAttributes.isEmpty();
+            final boolean isGroupBy = !query.groupByAttributes().isEmpty();
             boolean includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
 
             boolean hasOrder = !query.getOrdering().isEmpty();
 
-            final Map<Set<?>, BaseResult> groupByResults = new HashMap<Set<?>, BaseResult>();
-            final Map<Set, List<AggregatorInstance<?>>> groupByAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
-            final int maxResults = query.maxResults();
-
-            Collection<Element> matches = new LinkedList<Element>();
+            QueryPartition[] partitions = evaluate(query, extractors);
+            QueryPartition merged = partitions[0];
+            for (int i = 1; i < partitions.length; i++) {
+                merged.merge(partitions[i]);
+            }
 
-            for (Element element : memoryStore.elementSet()) {
-                element = memoryStore.copyElementForReadIfNeeded(element);
+            List<BaseResult> results = new ArrayList<BaseResult>(isGroupBy ? merged.groups.values() : merged.results);
 
-                if (element.getObjectValue() instanceof SoftLockID) {
-                    continue;
+            if (hasOrder) {
+                Collections.sort(results, new OrderComparator(query.getOrdering()));
+            }
+            if (hasOrder || isGroupBy) {
+                // trim results to max length if necessary
+                int max = query.maxResults();
+                if (max >= 0 && (results.size() > max)) {
+                    results = results.subList(0, max);
                 }
+            }
 
-                if (c.execute(element, extractors)) {
-                    if (!isGroupBy && !hasOrder && query.maxResults() >= 0 && matches.size() == query.maxResults()) {
-                        break;
+            if (!aggregators.isEmpty()) {
+                for (BaseResult result : results) {
+                    if (isGroupBy) {
+                        GroupedResultImpl group = (GroupedResultImpl)result;
+                        Set<?> groupId = new HashSet(group.getGroupByValues().values());
+                        setResultAggregators(merged.groupAggregators.get(groupId), result);
+                    } else {
+                        setResultAggregators(merged.aggregators, result);
                     }
+                }
+            }
+
+            if (!isGroupBy && merged.anyMatches && !includeResults && !aggregators.isEmpty()) {
+                // add one row in the results if the only thing included was aggregators and anything matched
+                BaseResult aggOnly = new AggregateOnlyResult(query);
+                setResultAggregators(merged.aggregators, aggOnly);
+                results.add(aggOnly);
+            }
+
+            return new ResultsImpl((List)results, query.requestsKeys(), query.requestsValues(), !query.requestedAttributes().isEmpty(),
+                    merged.anyMatches && !aggregators.isEmpty());
+        }
+
+        /**
+         * Evaluate the query criteria, on the caller thread when the attribute indexes narrowed down the candidates or
+         * the store is small, in parallel over the store segments otherwise
+         */
+        private QueryPartition[] evaluate(StoreQuery query, Map<String, AttributeExtractor> extractors) {
+            Collection<Element> candidates = memoryStore.indexedElements(query);
+            if (candidates == null && !isParallelizable(query)) {
+                candidates = memoryStore.elementSet();
+            }
+
+            if (candidates != null) {
+                QueryPartition partition = new QueryPartition(query, extractors, Collections.singletonList(candidates), null);
+                partition.call();
+                return new QueryPartition[] {partition};
+            }
+
+            List<Collection<Element>> segments = memoryStore.segmentElementSets();
+            int count = Math.min(parallelism, segments.size());
+            List<List<Collection<Element>>> parts = new ArrayList<List<Collection<Element>>>(count);
+            for (int i = 0; i < count; i++) {
+                parts.add(new ArrayList<Collection<Element>>());
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                parts.get(i % count).add(segments.get(i));
+            }
 
-                    matches.add(element);
+            boolean limited = query.groupByAttributes().isEmpty() && query.getOrdering().isEmpty() && query.maxResults() >= 0;
+            AtomicInteger claimed = limited ? new AtomicInteger() : null;
+            QueryPartition[] partitions = new QueryPartition[count];
+            for (int i = 0; i < count; i++) {
+                partitions[i] = new QueryPartition(query, extractors, parts.get(i), claimed);
+            }
+
+            ExecutorService executor = memoryStore.getQueryExecutor();
+            List<Future<QueryPartition>> futures = new ArrayList<Future<QueryPartition>>(count - 1);
+            try {
+                for (int i = 1; i < count; i++) {
+                    futures.add(executor.submit(partitions[i]));
+                }
+                partitions[0].call();
+                for (Future<QueryPartition> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SearchException("Interrupted while executing query", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new SearchException(cause);
+            } finally {
+                for (Future<QueryPartition> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            return partitions;
+        }
+
+        private boolean isParallelizable(StoreQuery query) {
+            if (parallelism <= 1 || memoryStore.getSize() < parallelThreshold) {
+                return false;
+            }
+            for (AggregatorInstance<?> aggregator : query.getAggregatorInstances()) {
+                if (!(aggregator instanceof MergeableAggregatorInstance)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static List<AggregatorInstance<?>> cloneAggregators(List<AggregatorInstance<?>> aggregators) {
+            List<AggregatorInstance<?>> clones = new ArrayList<AggregatorInstance<?>>(aggregators.size());
+            for (AggregatorInstance<?> aggr : aggregators) {
+                clones.add(aggr.createClone());
+            }
+            return clones;
+        }
+
+        private static void mergeAggregators(List<AggregatorInstance<?>> aggregators, List<AggregatorInstance<?>> partials) {
+            for (int i = 0; i < aggregators.size(); i++) {
+                ((MergeableAggregatorInstance) aggregators.get(i)).merge(partials.get(i));
+            }
+        }
+
+        /**
+         * The matches of a query over a part of the store. Ordered queries with a maximum result count only keep that
+         * many results, in a heap whose head is the worst one. Unordered ones stop once the partitions together
+         * claimed as many matches as requested.
+         */
+        private final class QueryPartition implements Callable<QueryPartition> {
+
+            private final StoreQuery query;
+            private final Map<String, AttributeExtractor> extractors;
+            private final List<Collection<Element>> elements;
+            private final AtomicInteger claimed;
+            private final boolean isGroupBy;
+            private final boolean includeResults;
+            private final int maxResults;
+            private final Collection<BaseResult> results;
+            private final List<AggregatorInstance<?>> aggregators;
+            private final Map<Set<?>, BaseResult> groups = new HashMap<Set<?>, BaseResult>();
+            private final Map<Set, List<AggregatorInstance<?>>> groupAggregators = new HashMap<Set, List<AggregatorInstance<?>>>();
+            private boolean anyMatches;
+
+            QueryPartition(StoreQuery query, Map<String, AttributeExtractor> extractors, List<Collection<Element>> elements,
+                    AtomicInteger claimed) {
+                this.query = query;
+                this.extractors = extractors;
+                this.elements = elements;
+                this.claimed = claimed;
+                this.isGroupBy = !query.groupByAttributes().isEmpty();
+                this.includeResults = query.requestsKeys() || query.requestsValues() || !query.requestedAttributes().isEmpty() || isGroupBy;
+                this.maxResults = query.maxResults();
+                this.aggregators = cloneAggregators(query.getAggregatorInstances());
+                if (!isGroupBy && maxResults >= 0 && !query.getOrdering().isEmpty()) {
+                    Comparator<BaseResult> order = new OrderComparator<BaseResult>(query.getOrdering());
+                    this.results = new PriorityQueue<BaseResult>(Math.min(maxResults, TOP_RESULTS_INITIAL_CAPACITY) + 1,
+                            Collections.reverseOrder(order));
+                } else {
+                    this.results = new ArrayList<BaseResult>();
                 }
             }
 
-            Collection<BaseResult> results = isGroupBy ? groupByResults.values() : new ArrayList<BaseResult>();
+            public QueryPartition call() {
+                Criteria c = query.getCriteria();
+                final boolean limited = !isGroupBy && query.getOrdering().isEmpty() && maxResults >= 0;
+                int matched = 0;
+
+                for (Collection<Element> part : elements) {
+                    for (Element element : part) {
+                        element = memoryStore.copyElementForReadIfNeeded(element);
+
+                        if (element.getObjectValue() instanceof SoftLockID) {
+                            continue;
+                        }
+
+                        if (c.execute(element, extractors)) {
+                            if (limited && (claimed == null ? matched++ : claimed.getAndIncrement()) >= maxResults) {
+                                return this;
+                            }
+
+                            accept(element);
+                        }
+                    }
+                }
+                return this;
+            }
 
-            boolean anyMatches = !matches.isEmpty();
-            for (Element element : matches) {
+            private void accept(Element element) {
+                anyMatches = true;
+                List<AggregatorInstance<?>> target = aggregators;
                 if (includeResults) {
                     final Map<String, Object> attributes = getAttributeValues(query.requestedAttributes(), extractors, element);
                     final Object[] sortAttributes = getSortAttributes(query, extractors, element);
 
                     if (!isGroupBy) {
-                        results.add(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes, sortAttributes));
+                        addResult(new ResultImpl(element.getObjectKey(), element.getObjectValue(), query, attributes, sortAttributes));
                     } else {
-                        Map<String, Object> groupByValues = getAttributeValues(groupByAttributes, extractors, element);
+                        Map<String, Object> groupByValues = getAttributeValues(query.groupByAttributes(), extractors, element);
                         Set<?> groupId = new HashSet(groupByValues.values());
-                        BaseResult group = groupByResults.get(groupId);
+                        BaseResult group = groups.get(groupId);
                         if (group == null) {
                             group = new GroupedResultImpl(query, attributes, sortAttributes, Collections.EMPTY_LIST /* placeholder for now */,
                                     groupByValues);
-                            groupByResults.put(groupId, group);
-                        }
-                        List<AggregatorInstance<?>> groupAggrs = groupByAggregators.get(groupId);
-                        if (groupAggrs == null) {
-                            groupAggrs = new ArrayList<AggregatorInstance<?>>(aggregators.size());
-                            for (AggregatorInstance<?> aggr : aggregators) {
-                                groupAggrs.add(aggr.createClone());
-                            }
-                            groupByAggregators.put(groupId, groupAggrs);
+                            groups.put(groupId, group);
+                            groupAggregators.put(groupId, cloneAggregators(aggregators));
                         }
                         // Switch to per-record aggregators
-                        aggregators = groupAggrs;
+                        target = groupAggregators.get(groupId);
                     }
                 }
 
-                aggregate(aggregators, extractors, element);
-
+                aggregate(target, extractors, element);
             }
 
-            if (hasOrder || isGroupBy) {
-                if (isGroupBy) {
-                    results = new ArrayList<BaseResult>(results);
-                }
-
-                if (hasOrder) {
-                    Collections.sort((List<BaseResult>)results, new OrderComparator(query.getOrdering()));
-                }
-                // trim results to max length if necessary
-                int max = query.maxResults();
-                if (max >= 0 && (results.size() > max)) {
-                    results = ((List<BaseResult>)results).subList(0, max);
+            private void addResult(BaseResult result) {
+                results.add(result);
+                if (results instanceof PriorityQueue && results.size() > maxResults) {
+                    ((PriorityQueue<BaseResult>) results).poll();
                 }
             }
 
-            if (!aggregators.isEmpty()) {
-                for (BaseResult result : results) {
-                    if (isGroupBy) {
-                        GroupedResultImpl group = (GroupedResultImpl)result;
-                        Set<?> groupId = new HashSet(group.getGroupByValues().values());
-                        aggregators = groupByAggregators.get(groupId);
+            /**
+             * Fold the matches of another partition of the same query into this one
+             */
+            void merge(QueryPartition other) {
+                anyMatches |= other.anyMatches;
+                for (BaseResult result : other.results) {
+                    addResult(result);
+                }
+                mergeAggregators(aggregators, other.aggregators);
+                for (Map.Entry<Set<?>, BaseResult> group : other.groups.entrySet()) {
+                    Set<?> groupId = group.getKey();
+                    List<AggregatorInstance<?>> partials = other.groupAggregators.get(groupId);
+                    if (groups.containsKey(groupId)) {
+                        mergeAggregators(groupAggregators.get(groupId), partials);
+                    } else {
+                        groups.put(groupId, group.getValue());
+                        groupAggregators.put(groupId, partials);
                     }
-                    setResultAggregators(aggregators, result);
                 }
             }
-
-            if (!isGroupBy && anyMatches && !includeResults && !aggregators.isEmpty()) {
-                // add one row in the results if the only thing included was aggregators and anything matched
-                BaseResult aggOnly = new AggregateOnlyResult(query);
-                setResultAggregators(aggregators, aggOnly);
-                results.add(aggOnly);
-            }
-
-            return new ResultsImpl((List)results, query.requestsKeys(), query.requestsValues(), !query.requestedAttributes().isEmpty(), anyMatches
-                    && !aggregators.isEmpty());
         }
 
         private void setResultAggregators(List<AggregatorInstance<?>> aggregators, BaseResult result)
@@ -36,6 +36,7 @@ import net.sf.ehcache.pool.Size;
 import net.sf.ehcache.pool.impl.DefaultSizeOfEngine;
 import net.sf.ehcache.store.chm.SelectableConcurrentHashMap;
 import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.util.FailSafeTimer;
 import net.sf.ehcache.util.ratestatistics.AtomicRateStatistic;
 import net.sf.ehcache.util.ratestatistics.RateStatistic;
 import net.sf.ehcache.writer.CacheWriterManager;
@@ -46,6 +47,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -114,6 +116,12 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
 
     private volatile CacheLockProvider lockProvider;
 
+    /**
+     * The index of the elements by expiration time, if enabled
+     */
+    private final ExpiryWheel expiryIndex;
+    private volatile TimerTask expiryTask;
+
     /**
      * Constructs things that all MemoryStores have in common.
      *
@@ -147,6 +155,16 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
             this.map = factory.newBackingMap(poolAccessor, elementPinningEnabled, CONCURRENCY_LEVEL, maximumCapacity, eventListener);
         }
 
+        this.expiryIndex = cache.getCacheConfiguration().isExpiryIndex()
+                ? new ExpiryWheel(ExpiryWheel.DEFAULT_TICK_MILLIS, System.currentTimeMillis()) : null;
+        if (expiryIndex != null) {
+            map.setEvictionCallback(new SelectableConcurrentHashMap.EvictionCallback() {
+                public void evicted(final Element element) {
+                    unindexExpiry(element.getObjectKey(), element);
+                }
+            });
+        }
+
         this.status = Status.STATUS_ALIVE;
 
         if (LOG.isDebugEnabled()) {
@@ -198,9 +216,62 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
     public static MemoryStore create(final Ehcache cache, Pool pool) {
         MemoryStore memoryStore = new MemoryStore(cache, pool, false, new BasicBackingFactory());
         cache.getCacheConfiguration().addConfigurationListener(memoryStore);
+        memoryStore.startExpiryTask();
         return memoryStore;
     }
 
+    /**
+     * Starts removing indexed elements as they expire, on the timer of the cache manager, if the elements are indexed
+     * by expiration time.
+     */
+    protected final void startExpiryTask() {
+        FailSafeTimer timer = cache.getCacheManager() == null ? null : cache.getCacheManager().getTimer();
+        if (expiryIndex == null || timer == null) {
+            return;
+        }
+        expiryTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    expireElements();
+                } catch (Throwable t) {
+                    LOG.warn("Expiring elements of " + cache.getName() + " failed", t);
+                }
+            }
+        };
+        timer.scheduleAtFixedRate(expiryTask, ExpiryWheel.DEFAULT_TICK_MILLIS, ExpiryWheel.DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Index an element just mapped to its key by its expiration time, if elements are indexed.
+     */
+    private void indexExpiry(final Element element) {
+        if (expiryIndex != null) {
+            expiryIndex.schedule(element.getObjectKey(), element, element.getExpirationTime());
+            // CLOCK eviction may already have taken the element out again, before it got indexed
+            if (!map.containsKey(element.getObjectKey())) {
+                expiryIndex.cancel(element.getObjectKey(), element);
+            }
+        }
+    }
+
+    /**
+     * The number of elements currently held by the expiry index, or 0 if elements are not indexed.
+     */
+    int getExpiryIndexSize() {
+        return expiryIndex == null ? 0 : expiryIndex.size();
+    }
+
+    /**
+     * Drop an element just removed from its key from the expiry index, if elements are indexed.
+     */
+    private Element unindexExpiry(final Object key, final Element element) {
+        if (expiryIndex != null && element != null) {
+            expiryIndex.cancel(key, element);
+        }
+        return element;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -255,10 +326,15 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         if (element == null) {
             return false;
         }
+        if (!admit(element)) {
+            notifyDirectEviction(element);
+            return true;
+        }
 
         long delta = poolAccessor.add(element.getObjectKey(), element.getObjectValue(), map.storedObject(element), isPinningEnabled(element));
         if (delta > -1) {
             Element old = map.put(element.getObjectKey(), element, delta);
+            indexExpiry(element);
             checkCapacity(element);
             return old == null;
         } else {
@@ -271,9 +347,21 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
      * {@inheritDoc}
      */
     public boolean putWithWriter(Element element, CacheWriterManager writerManager) throws CacheException {
+        if (!admit(element)) {
+            if (writerManager != null) {
+                try {
+                    writerManager.put(element);
+                } catch (RuntimeException e) {
+                    throw new StoreUpdateException(e, false);
+                }
+            }
+            notifyDirectEviction(element);
+            return true;
+        }
         long delta = poolAccessor.add(element.getObjectKey(), element.getObjectValue(), map.storedObject(element), isPinningEnabled(element));
         if (delta > -1) {
             Element old = map.put(element.getObjectKey(), element, delta);
+            indexExpiry(element);
             if (writerManager != null) {
                 try {
                     writerManager.put(element);
@@ -302,6 +390,10 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
             return null;
         } else {
             final Element e = map.get(key);
+            Policy p = policy;
+            if (p instanceof TinyLfuPolicy) {
+                ((TinyLfuPolicy) p).recordAccess(key);
+            }
             if (e == null) {
                 missRate.event();
             } else {
@@ -332,7 +424,7 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
             return null;
         }
 
-        return map.remove(key);
+        return unindexExpiry(key, map.remove(key));
     }
 
     /**
@@ -372,7 +464,7 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         }
 
         // remove single item.
-        Element element = map.remove(key);
+        Element element = unindexExpiry(key, map.remove(key));
         if (writerManager != null) {
             writerManager.remove(new CacheEntry(key, element));
         }
@@ -392,11 +484,31 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
     /**
      * Expire all elements.
      * <p/>
-     * This is a default implementation which does nothing. Expiration on demand is only implemented for disk stores.
+     * When elements are indexed by expiration time, only those the index holds as due are checked, and those which
+     * are not expired after all are indexed again. Otherwise every element is checked. Checking an element is not an
+     * access to it: hit and miss rates and the eviction policy are left untouched.
      */
     public void expireElements() {
-        for (Object key : map.keySet()) {
-            expireElement(key);
+        if (expiryIndex == null) {
+            for (Object key : map.keySet()) {
+                Element expired = expireElement(key);
+                if (expired != null) {
+                    notifyExpiredElement(expired);
+                }
+            }
+            return;
+        }
+
+        for (Object key : expiryIndex.advance(System.currentTimeMillis())) {
+            Element value = map.get(key);
+            if (value != null && !value.isExpired()) {
+                indexExpiry(value);
+            } else {
+                Element expired = expireElement(key);
+                if (expired != null) {
+                    notifyExpiredElement(expired);
+                }
+            }
         }
     }
 
@@ -406,8 +518,16 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
      * @return the evicted element, if any. Otherwise null
      */
     protected Element expireElement(final Object key) {
-        Element value = get(key);
-        return value != null && value.isExpired() && map.remove(key, value) ? value : null;
+        Element value = map.get(key);
+        return value != null && value.isExpired() && map.remove(key, value) ? unindexExpiry(key, value) : null;
+    }
+
+    /**
+     * Called when {@link #expireElements()} removes an expired element
+     *
+     * @param element the expired element
+     */
+    protected void notifyExpiredElement(final Element element) {
     }
 
     /**
@@ -426,6 +546,8 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
             return new LfuPolicy();
         } else if (policySelection.equals(MemoryStoreEvictionPolicy.CLOCK)) {
             return null;
+        } else if (policySelection.equals(MemoryStoreEvictionPolicy.TINYLFU)) {
+            return new TinyLfuPolicy((int) cache.getCacheConfiguration().getMaxEntriesLocalHeap());
         }
 
         throw new IllegalArgumentException(policySelection + " isn't a valid eviction policy");
@@ -448,6 +570,10 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
             return;
         }
         status = Status.STATUS_SHUTDOWN;
+        TimerTask task = expiryTask;
+        if (task != null) {
+            task.cancel();
+        }
         flush();
         poolAccessor.unlink();
     }
@@ -550,6 +676,28 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         return !isFull() && poolAccessor.canAddWithoutEvicting(element.getObjectKey(), element.getObjectValue(), map.storedObject(element));
     }
 
+    /**
+     * Decide whether a new element is admitted into the store, when the eviction policy is a {@link TinyLfuPolicy}.
+     * <p/>
+     * Elements which fit without evicting, or replace a mapping, are always admitted. Otherwise the element is compared
+     * with the element the policy would evict for it, and only admitted if its key was read at least as often.
+     *
+     * @param element the element to be put
+     * @return true if the element should be put
+     */
+    private boolean admit(final Element element) {
+        Policy p = policy;
+        if (!(p instanceof TinyLfuPolicy)) {
+            return true;
+        }
+        Object key = element.getObjectKey();
+        if (isPinningEnabled(element) || canPutWithoutEvicting(element) || map.containsKey(key)) {
+            return true;
+        }
+        Element victim = findEvictionCandidate(element);
+        return victim == null || victim.isExpired() || ((TinyLfuPolicy) p).admit(key, victim.getObjectKey());
+    }
+
     /**
      * If the store is over capacity, evict elements until capacity is reached
      *
@@ -818,11 +966,19 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         if (element == null) {
             return null;
         }
+        if (!admit(element)) {
+            Element old = map.get(element.getObjectKey());
+            if (old == null) {
+                notifyDirectEviction(element);
+            }
+            return old;
+        }
 
         long delta = poolAccessor.add(element.getObjectKey(), element.getObjectValue(), map.storedObject(element), isPinningEnabled(element));
         if (delta > -1) {
             Element old = map.putIfAbsent(element.getObjectKey(), element, delta);
             if (old == null) {
+              indexExpiry(element);
               checkCapacity(element);
             } else {
               poolAccessor.delete(delta);
@@ -873,7 +1029,7 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         try {
             Element toRemove = map.get(key);
             if (comparator.equals(element, toRemove)) {
-                map.remove(key);
+                unindexExpiry(key, map.remove(key));
                 return toRemove;
             } else {
                 return null;
@@ -902,6 +1058,7 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
                 Element toRemove = map.get(key);
                 if (comparator.equals(old, toRemove)) {
                     map.put(key, element, delta);
+                    indexExpiry(element);
                     return true;
                 } else {
                     poolAccessor.delete(delta);
@@ -934,6 +1091,7 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
                 Element toRemove = map.get(key);
                 if (toRemove != null) {
                     map.put(key, element, delta);
+                    indexExpiry(element);
                     return toRemove;
                 } else {
                     poolAccessor.delete(delta);
@@ -1048,6 +1206,15 @@ public class MemoryStore extends AbstractStore implements TierableStore, Poolabl
         return map.values();
     }
 
+    /**
+     * Get the elements of this store split in disjoint parts, one per map segment, that can be iterated concurrently
+     *
+     * @return the element sets of the map segments
+     */
+    public List<Collection<Element>> segmentElementSets() {
+        return map.segmentValues();
+    }
+
     /**
      * LockProvider implementation that uses the segment locks.
      */
@@ -30,6 +30,8 @@ import org.slf4j.LoggerFactory;
  * <li>LRU - least recently used
  * <li>LFU - least frequently used
  * <li>FIFO - first in first out, the oldest element by creation time
+ * <li>CLOCK - an approximation of LRU
+ * <li>TINYLFU - least frequently used, only admitting elements read at least as often as the element they would evict
  * </ol>
  * The default value is LRU
  *
@@ -60,6 +62,12 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
      */
     public static final MemoryStoreEvictionPolicy CLOCK = new MemoryStoreEvictionPolicy("CLOCK");
 
+    /**
+     * TINYLFU - least frequently used, with new elements only admitted when read at least as often as the element they
+     * would evict.
+     */
+    public static final MemoryStoreEvictionPolicy TINYLFU = new MemoryStoreEvictionPolicy("TINYLFU");
+
     private static final Logger LOG = LoggerFactory.getLogger(MemoryStoreEvictionPolicy.class.getName());
 
     private final String myName;
@@ -83,7 +91,7 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
     /**
      * Converts a string representation of the policy into a policy.
      *
-     * @param policy either LRU, LFU or FIFO
+     * @param policy either LRU, LFU, FIFO, CLOCK or TINYLFU
      * @return one of the static instances
      */
     public static MemoryStoreEvictionPolicy fromString(String policy) {
@@ -96,6 +104,8 @@ public final class MemoryStoreEvictionPolicy implements Serializable {
                 return FIFO;
             } else if (policy.equalsIgnoreCase("CLOCK")) {
                 return CLOCK;
+            } else if (policy.equalsIgnoreCase("TINYLFU")) {
+                return TINYLFU;
             }
         }
             LOG.warn("The memoryStoreEvictionPolicy of {} cannot be resolved. The policy will be set to LRU", policy);
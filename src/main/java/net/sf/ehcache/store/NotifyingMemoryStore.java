@@ -48,6 +48,7 @@ public final class NotifyingMemoryStore extends MemoryStore {
     public static NotifyingMemoryStore create(final Ehcache cache, Pool pool) {
         NotifyingMemoryStore store = new NotifyingMemoryStore(cache, pool);
         cache.getCacheConfiguration().addConfigurationListener(store);
+        store.startExpiryTask();
         return store;
     }
 
@@ -76,12 +77,7 @@ public final class NotifyingMemoryStore extends MemoryStore {
      * {@inheritDoc}
      */
     @Override
-    public void expireElements() {
-        for (Object key : keySet()) {
-            final Element element = expireElement(key);
-            if (element != null) {
-                cache.getCacheEventNotificationService().notifyElementExpiry(element, false);
-            }
-        }
+    protected void notifyExpiredElement(final Element element) {
+        cache.getCacheEventNotificationService().notifyElementExpiry(element, false);
     }
 }
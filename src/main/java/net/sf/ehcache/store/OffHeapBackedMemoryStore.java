@@ -0,0 +1,56 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.search.impl.SearchManager;
+import net.sf.ehcache.store.offheap.OffHeapStore;
+
+/**
+ * A tiered store using an in-memory cache of elements stored off-heap.
+ */
+public final class OffHeapBackedMemoryStore extends FrontEndCacheTier<MemoryStore, OffHeapStore> {
+
+    private OffHeapBackedMemoryStore(CacheConfiguration cacheConfiguration, MemoryStore cache, OffHeapStore authority,
+                                     SearchManager searchManager) {
+        super(cache, authority, cacheConfiguration.getCopyStrategy(), searchManager,
+              cacheConfiguration.isCopyOnWrite(), cacheConfiguration.isCopyOnRead());
+    }
+
+    /**
+     * Create an OffHeapBackedMemoryStore instance
+     * @param cache the cache
+     * @param onHeapPool the pool tracking on-heap usage
+     * @param offHeapPool the pool tracking off-heap usage
+     * @return an OffHeapBackedMemoryStore instance
+     */
+    public static Store create(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        final MemoryStore memoryStore = MemoryStore.create(cache, onHeapPool);
+        final OffHeapStore offHeapStore = OffHeapStore.create(cache, onHeapPool, offHeapPool);
+
+        return new OffHeapBackedMemoryStore(cache.getCacheConfiguration(), memoryStore, offHeapStore, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getMBean() {
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store;
+
+import net.sf.ehcache.Element;
+
+/**
+ * A least-frequently-used policy which also decides whether new elements are worth admitting to a full store, after
+ * the TinyLFU admission scheme.
+ * <p>
+ * The frequencies of reads, hits and misses alike, are kept for every key read recently, present in the store or not,
+ * in a compact {@link FrequencySketch} that ages as it goes. Writes are not counted, so that a miss followed by a put
+ * counts as the one request it is. Eviction candidates are the least frequently read elements of the sample, the least
+ * recently accessed breaking ties, and an element is only admitted when its key was read at least as often as the key
+ * of the element that would be evicted for it. A scan over many keys read once therefore only ever displaces elements
+ * read as rarely, and cannot flush the elements read repeatedly.
+ */
+public class TinyLfuPolicy extends AbstractPolicy {
+
+    /**
+     * The name of this policy as a string literal
+     */
+    public static final String NAME = "TINYLFU";
+
+    /**
+     * The number of keys the frequency sketch is sized for when the store is not bounded by a count.
+     */
+    static final int DEFAULT_EXPECTED_SIZE = 1 << 16;
+
+    private final FrequencySketch sketch;
+
+    /**
+     * Create a policy for a store holding up to the given number of elements.
+     *
+     * @param maximumSize the maximum number of elements in the store, or 0 if it is not bounded by a count
+     */
+    public TinyLfuPolicy(int maximumSize) {
+        this.sketch = new FrequencySketch(maximumSize > 0 ? maximumSize : DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * @return the name of the Policy. Inbuilt examples are LRU, LFU and FIFO.
+     */
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Record a read of a key, whether or not the store holds it.
+     *
+     * @param key the key read
+     */
+    public void recordAccess(Object key) {
+        sketch.increment(key);
+    }
+
+    /**
+     * Return the estimated number of recent reads of a key.
+     *
+     * @param key the key
+     * @return the frequency, between 0 and 15
+     */
+    public int frequency(Object key) {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * Decide whether an element should be admitted at the expense of an eviction candidate.
+     *
+     * @param candidateKey the key of the element to be added
+     * @param victimKey the key of the element which would be evicted
+     * @return true if the candidate was read at least as often as the victim
+     */
+    public boolean admit(Object candidateKey, Object victimKey) {
+        return sketch.frequency(candidateKey) >= sketch.frequency(victimKey);
+    }
+
+    /**
+     * Compares the desirableness for eviction of two elements
+     *
+     * Compares read frequencies, then last access times.
+     *
+     * @param element1 the element to compare against
+     * @param element2 the element to compare
+     * @return true if the second element is preferable to the first element for this policy
+     */
+    public boolean compare(Element element1, Element element2) {
+        int frequency1 = frequency(element1.getObjectKey());
+        int frequency2 = frequency(element2.getObjectKey());
+        return frequency2 < frequency1 || (frequency2 == frequency1 && element2.getLastAccessTime() < element1.getLastAccessTime());
+    }
+}
@@ -105,6 +105,7 @@ public class SelectableConcurrentHashMap {
     private volatile long maxSize;
     private volatile SelectableConcurrentHashMap.PinnedKeySet pinnedKeySet;
     private final RegisteredEventListeners cacheEventNotificationService;
+    private volatile EvictionCallback evictionCallback;
 
     private Set<Object> keySet;
     private Set<Map.Entry<Object,Element>> entrySet;
@@ -155,6 +156,13 @@ public class SelectableConcurrentHashMap {
         this.maxSize = maxSize;
     }
 
+    /**
+     * Registers the callback told about every element this map evicts or expires on its own.
+     */
+    public void setEvictionCallback(final EvictionCallback evictionCallback) {
+        this.evictionCallback = evictionCallback;
+    }
+
     public Element[] getRandomValues(final int size, Object keyHint) {
         ArrayList<Element> sampled = new ArrayList<Element>(size * 2);
 
@@ -483,6 +491,17 @@ public class SelectableConcurrentHashMap {
         return (vs != null) ? vs : (values = new Values());
     }
 
+    /**
+     * Returns the values of this map as one view per segment, views can be iterated concurrently.
+     */
+    public List<Collection<Element>> segmentValues() {
+        List<Collection<Element>> views = new ArrayList<Collection<Element>>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            views.add(new SegmentValues(i));
+        }
+        return views;
+    }
+
     public Set<Entry<Object, Element>> entrySet() {
         Set<Entry<Object, Element>> es = entrySet;
         return (es != null) ? es : (entrySet = new EntrySet());
@@ -879,6 +898,10 @@ public class SelectableConcurrentHashMap {
         }
 
         private void notifyEvictionOrExpiry(final Element element) {
+            EvictionCallback callback = evictionCallback;
+            if (element != null && callback != null) {
+                callback.evicted(element);
+            }
             if(element != null && cacheEventNotificationService != null) {
                 if (element.isExpired()) {
                     cacheEventNotificationService.notifyElementExpiry(element, false);
@@ -1238,6 +1261,26 @@ public class SelectableConcurrentHashMap {
         }
     }
 
+    final class SegmentValues extends AbstractCollection<Element> {
+
+        private final int segmentIndex;
+
+        SegmentValues(int segmentIndex) {
+            this.segmentIndex = segmentIndex;
+        }
+
+        @Override
+        public Iterator<Element> iterator() {
+            return new ValueIterator(segmentIndex);
+        }
+
+        @Override
+        public int size() {
+            Segment segment = segments[segmentIndex];
+            return segment.count - segment.numDummyPinnedKeys;
+        }
+    }
+
     final class EntrySet extends AbstractSet<Entry<Object, Element>> {
 
         @Override
@@ -1303,6 +1346,14 @@ public class SelectableConcurrentHashMap {
 
     final class ValueIterator extends HashEntryIterator implements Iterator<Element> {
 
+        ValueIterator() {
+            super();
+        }
+
+        ValueIterator(int segmentIndex) {
+            super(segmentIndex);
+        }
+
         @Override
         public Element next() {
             return nextEntry().value;
@@ -1340,6 +1391,11 @@ public class SelectableConcurrentHashMap {
             myNextEntry = advanceToNextEntry();
         }
 
+        public HashEntryIterator(int segmentIndex) {
+            super(segmentIndex);
+            myNextEntry = advanceToNextEntry();
+        }
+
         @Override
         public void remove() {
             throw new UnsupportedOperationException("remove is not supported");
@@ -1384,9 +1440,18 @@ public class SelectableConcurrentHashMap {
         HashEntry[] currentTable;
         HashEntry nextEntry;
         HashEntry lastReturned;
+        final int lastSegmentIndex;
 
         HashIterator() {
             nextSegmentIndex = segments.length - 1;
+            lastSegmentIndex = 0;
+            nextTableIndex = -1;
+            advance();
+        }
+
+        HashIterator(int segmentIndex) {
+            nextSegmentIndex = segmentIndex;
+            lastSegmentIndex = segmentIndex;
             nextTableIndex = -1;
             advance();
         }
@@ -1402,7 +1467,7 @@ public class SelectableConcurrentHashMap {
                     return;
             }
 
-            while (nextSegmentIndex >= 0) {
+            while (nextSegmentIndex >= lastSegmentIndex) {
                 Segment seg = segments[nextSegmentIndex--];
                 if (seg.count != 0) {
                     currentTable = seg.table;
@@ -1468,4 +1533,17 @@ public class SelectableConcurrentHashMap {
         h += (h <<   2) + (h << 14);
         return h ^ (h >>> 16);
     }
+
+    /**
+     * Told about elements removed by the map itself, e.g. by CLOCK eviction, rather than by its caller.
+     */
+    public interface EvictionCallback {
+
+        /**
+         * Called once the element has been removed from the map.
+         *
+         * @param element the evicted or expired element
+         */
+        void evicted(Element element);
+    }
 }
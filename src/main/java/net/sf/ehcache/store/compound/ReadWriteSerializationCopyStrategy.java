@@ -18,21 +18,47 @@ package net.sf.ehcache.store.compound;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Element;
-import net.sf.ehcache.util.PreferTCCLObjectInputStream;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import net.sf.ehcache.serialization.JavaSerializer;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
 
 /**
  * A copy strategy that can use partial (if both copy on read and copy on write are set) or full Serialization to copy the object graph
+ * <p>
+ * Values are serialized with the cache's configured {@link Serializer}, Java serialization unless set otherwise.
  *
  * @author Alex Snaps
  * @author Ludovic Orban
  */
 public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy<Element> {
 
+    private volatile Serializer serializer;
+
+    /**
+     * Create a copy strategy using Java serialization.
+     */
+    public ReadWriteSerializationCopyStrategy() {
+        this(new JavaSerializer());
+    }
+
+    /**
+     * Create a copy strategy using the given serializer.
+     *
+     * @param serializer the serializer used to copy values
+     */
+    public ReadWriteSerializationCopyStrategy(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Set the serializer used to copy values.
+     *
+     * @param serializer the serializer
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
     /**
      * @inheritDoc
      */
@@ -40,29 +66,15 @@ public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy
         if (value == null) {
             return null;
         } else {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            ObjectOutputStream oos = null;
-
             if (value.getObjectValue() == null) {
                 return duplicateElementWithNewValue(value, null);
             }
 
             try {
-                oos = new ObjectOutputStream(bout);
-                oos.writeObject(value.getObjectValue());
+                return duplicateElementWithNewValue(value, Serializers.toBytes(serializer, value.getObjectValue()));
             } catch (Exception e) {
                 throw new CacheException("When configured copyOnRead or copyOnWrite, a Store will only accept Serializable values", e);
-            } finally {
-                try {
-                    if (oos != null) {
-                        oos.close();
-                    }
-                } catch (Exception e) {
-                    //
-                }
             }
-
-            return duplicateElementWithNewValue(value, bout.toByteArray());
         }
     }
 
@@ -77,21 +89,10 @@ public class ReadWriteSerializationCopyStrategy implements ReadWriteCopyStrategy
                 return duplicateElementWithNewValue(storedValue, null);
             }
 
-            ByteArrayInputStream bin = new ByteArrayInputStream((byte[]) storedValue.getObjectValue());
-            ObjectInputStream ois = null;
             try {
-                ois = new PreferTCCLObjectInputStream(bin);
-                return duplicateElementWithNewValue(storedValue, ois.readObject());
+                return duplicateElementWithNewValue(storedValue, Serializers.fromBytes(serializer, (byte[]) storedValue.getObjectValue()));
             } catch (Exception e) {
                 throw new CacheException("When configured copyOnRead or copyOnWrite, a Store will only accept Serializable values", e);
-            } finally {
-                try {
-                    if (ois != null) {
-                        ois.close();
-                    }
-                } catch (Exception e) {
-                    //
-                }
             }
         }
     }
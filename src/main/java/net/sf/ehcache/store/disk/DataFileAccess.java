@@ -0,0 +1,556 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.concurrent.ConcurrencyUtil;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+import net.sf.ehcache.util.ByteBufferInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The I/O engine used by a {@link DiskStorageFactory} to access its data file.
+ * <p>
+ * Implementations exist for each {@link DiskAccessMode}:
+ * <ul>
+ * <li>{@link DiskAccessMode#RANDOM_ACCESS_FILE} - striped {@code RandomAccessFile}s, each access locking its stripe</li>
+ * <li>{@link DiskAccessMode#FILE_CHANNEL} - positional {@code FileChannel} reads and writes, which need no locking</li>
+ * <li>{@link DiskAccessMode#MEMORY_MAPPED} - the file is mapped in fixed size segments, reads are served without
+ * locking or copying straight from the mapped pages</li>
+ * </ul>
+ * Callers guarantee that a region is never read while it is being written, and that regions are not accessed once
+ * {@link #close()} has been called.
+ */
+abstract class DataFileAccess {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataFileAccess.class.getName());
+
+    /**
+     * Create the data file access engine configured for the given cache.
+     *
+     * @param file the data file
+     * @param config the cache configuration
+     * @return the engine
+     * @throws IOException if the data file cannot be opened
+     */
+    static DataFileAccess create(File file, CacheConfiguration config) throws IOException {
+        switch (config.getDiskAccessMode()) {
+            case FILE_CHANNEL:
+                return new FileChannelAccess(file);
+            case MEMORY_MAPPED:
+                return new MappedAccess(file, MappedAccess.DEFAULT_SEGMENT_SIZE);
+            case RANDOM_ACCESS_FILE:
+                return new RandomAccessFileAccess(file, config.getDiskAccessStripes());
+            default:
+                throw new IllegalArgumentException("Unknown disk access mode " + config.getDiskAccessMode());
+        }
+    }
+
+    /**
+     * Return a stream over the {@code size} bytes stored at {@code position}.
+     *
+     * @param key key of the element stored in the region
+     * @param position start of the region
+     * @param size size of the region
+     * @return a stream over the region
+     * @throws IOException on read error
+     */
+    abstract InputStream read(Object key, long position, int size) throws IOException;
+
+    /**
+     * Write {@code length} bytes from {@code data} at {@code position}.
+     *
+     * @param key key of the element stored in the region
+     * @param position start of the region
+     * @param data source array
+     * @param length number of bytes to write
+     * @throws IOException on write error
+     */
+    abstract void write(Object key, long position, byte[] data, int length) throws IOException;
+
+    /**
+     * Write the remaining bytes of each buffer in turn, starting at {@code position}.
+     * <p>
+     * Used to write a run of adjacent regions at once. Gathered writes are never issued concurrently.
+     *
+     * @param position start of the first region
+     * @param buffers the contents of the regions, in file order
+     * @throws IOException on write error
+     */
+    abstract void write(long position, ByteBuffer[] buffers) throws IOException;
+
+    /**
+     * Return the length of the data file.
+     *
+     * @return the length of the data file
+     * @throws IOException on error
+     */
+    abstract long length() throws IOException;
+
+    /**
+     * Set the length of the data file.
+     *
+     * @param length the new length
+     * @throws IOException on error
+     */
+    abstract void setLength(long length) throws IOException;
+
+    /**
+     * Return the file the allocation tree may directly truncate as the tail of the data file is freed, or
+     * {@code null} if this engine does not support that.
+     *
+     * @return the file to truncate, or {@code null}
+     */
+    abstract RandomAccessFile getAllocatorFile();
+
+    /**
+     * Close the data file.
+     *
+     * @throws IOException on error
+     */
+    abstract void close() throws IOException;
+
+    /**
+     * The classic engine: a power-of-two number of {@code RandomAccessFile} stripes, selected by key.
+     */
+    static final class RandomAccessFileAccess extends DataFileAccess {
+
+        private final RandomAccessFile[] stripes;
+
+        RandomAccessFileAccess(File file, int stripes) throws IOException {
+            int roundedStripes = stripes;
+            while ((roundedStripes & (roundedStripes - 1)) != 0) {
+                ++roundedStripes;
+            }
+
+            this.stripes = new RandomAccessFile[roundedStripes];
+            for (int i = 0; i < this.stripes.length; ++i) {
+                this.stripes[i] = new RandomAccessFile(file, "rw");
+            }
+        }
+
+        private RandomAccessFile stripeFor(Object key) {
+            return stripes[ConcurrencyUtil.selectLock(key, stripes.length)];
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            final byte[] buffer = new byte[size];
+            final RandomAccessFile data = stripeFor(key);
+            synchronized (data) {
+                data.seek(position);
+                data.readFully(buffer);
+            }
+            return new ByteArrayInputStream(buffer);
+        }
+
+        @Override
+        void write(Object key, long position, byte[] buffer, int length) throws IOException {
+            final RandomAccessFile data = stripeFor(key);
+            synchronized (data) {
+                data.seek(position);
+                data.write(buffer, 0, length);
+            }
+        }
+
+        @Override
+        void write(long position, ByteBuffer[] buffers) throws IOException {
+            final RandomAccessFile data = stripes[0];
+            synchronized (data) {
+                data.seek(position);
+                for (ByteBuffer buffer : buffers) {
+                    data.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    buffer.position(buffer.limit());
+                }
+            }
+        }
+
+        @Override
+        long length() throws IOException {
+            synchronized (stripes[0]) {
+                return stripes[0].length();
+            }
+        }
+
+        @Override
+        void setLength(long length) throws IOException {
+            synchronized (stripes[0]) {
+                stripes[0].setLength(length);
+            }
+        }
+
+        @Override
+        RandomAccessFile getAllocatorFile() {
+            return stripes[0];
+        }
+
+        @Override
+        void close() throws IOException {
+            for (final RandomAccessFile raf : stripes) {
+                synchronized (raf) {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * An engine using positional {@code FileChannel} operations, which are safe for concurrent use.
+     * <p>
+     * A {@code FileChannel} is closed when a thread blocked on it is interrupted. As cache callers may well be
+     * interrupted the channel is transparently reopened, and only the interrupted access fails.
+     */
+    static class FileChannelAccess extends DataFileAccess {
+
+        /**
+         * The data file.
+         */
+        final File file;
+
+        private final RandomAccessFile sizing;
+        private volatile RandomAccessFile raf;
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+
+        FileChannelAccess(File file) throws IOException {
+            this.file = file;
+            this.sizing = new RandomAccessFile(file, "rw");
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+        }
+
+        /**
+         * Return the current channel.
+         *
+         * @return the current channel
+         */
+        FileChannel channel() {
+            return channel;
+        }
+
+        /**
+         * Handle a channel that was closed underneath an operation.
+         * <p>
+         * If the closure was not requested through {@link #close()} the channel is reopened. When the current
+         * thread caused the closure by being interrupted an {@code InterruptedIOException} is thrown, otherwise the
+         * caller should retry.
+         *
+         * @param failed the channel that was closed
+         * @param e the exception thrown by the channel
+         * @throws IOException if the caller should not retry
+         */
+        void recover(FileChannel failed, ClosedChannelException e) throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    throw e;
+                }
+                if (channel == failed) {
+                    LOG.debug("Reopening channel to {} after asynchronous close", file);
+                    raf = new RandomAccessFile(file, "rw");
+                    channel = raf.getChannel();
+                }
+            }
+            if (e instanceof ClosedByInterruptException) {
+                InterruptedIOException interrupted = new InterruptedIOException("Interrupted during access to " + file);
+                interrupted.initCause(e);
+                throw interrupted;
+            }
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    readFully(current, buffer, position);
+                    return new ByteArrayInputStream(buffer.array());
+                } catch (ClosedChannelException e) {
+                    recover(current, e);
+                    buffer.clear();
+                }
+            }
+        }
+
+        @Override
+        void write(Object key, long position, byte[] data, int length) throws IOException {
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    writeFully(current, ByteBuffer.wrap(data, 0, length), position);
+                    return;
+                } catch (ClosedChannelException e) {
+                    recover(current, e);
+                }
+            }
+        }
+
+        @Override
+        void write(long position, ByteBuffer[] buffers) throws IOException {
+            final ByteBuffer last = buffers[buffers.length - 1];
+            long written = 0;
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    // gathering writes are relative, but reads are all positional so moving the position is safe
+                    current.position(position + written);
+                    while (last.hasRemaining()) {
+                        written += current.write(buffers);
+                    }
+                    return;
+                } catch (ClosedChannelException e) {
+                    recover(current, e);
+                }
+            }
+        }
+
+        @Override
+        long length() throws IOException {
+            synchronized (sizing) {
+                return sizing.length();
+            }
+        }
+
+        @Override
+        void setLength(long length) throws IOException {
+            synchronized (sizing) {
+                sizing.setLength(length);
+            }
+        }
+
+        @Override
+        RandomAccessFile getAllocatorFile() {
+            return sizing;
+        }
+
+        @Override
+        void close() throws IOException {
+            synchronized (this) {
+                closed = true;
+            }
+            try {
+                raf.close();
+            } finally {
+                synchronized (sizing) {
+                    sizing.close();
+                }
+            }
+        }
+
+        /**
+         * Read from the channel until the buffer is full.
+         *
+         * @param channel channel to read
+         * @param buffer buffer to fill
+         * @param position file position to read from
+         * @throws IOException on read error, or if the end of file is reached
+         */
+        static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            long start = position - buffer.position();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        /**
+         * Write the remaining bytes of the buffer to the channel.
+         *
+         * @param channel channel to write
+         * @param buffer buffer to write
+         * @param position file position to write at
+         * @throws IOException on write error
+         */
+        static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            long start = position - buffer.position();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+        }
+    }
+
+    /**
+     * An engine mapping the data file in fixed size segments.
+     * <p>
+     * Segments are mapped lazily as the file grows, which extends the file to a whole number of segments. The
+     * logical length of the file is tracked separately and the file is truncated back to it on close. Since mapped
+     * segments cannot be released before they are garbage collected, the file is never shrunk while open.
+     */
+    static final class MappedAccess extends FileChannelAccess {
+
+        /**
+         * Default size of the mapped segments.
+         */
+        static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+        private final int segmentSize;
+        private final AtomicLong logicalLength;
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        MappedAccess(File file, int segmentSize) throws IOException {
+            super(file);
+            this.segmentSize = segmentSize;
+            this.logicalLength = new AtomicLong(super.length());
+        }
+
+        @Override
+        InputStream read(Object key, long position, int size) throws IOException {
+            int index = (int) (position / segmentSize);
+            int offset = (int) (position % segmentSize);
+            if (offset + size <= segmentSize) {
+                ByteBuffer view = segment(index).duplicate();
+                view.limit(offset + size).position(offset);
+                return new ByteBufferInputStream(view);
+            } else {
+                byte[] data = new byte[size];
+                int copied = 0;
+                while (copied < size) {
+                    ByteBuffer view = segment(index++).duplicate();
+                    view.position(offset);
+                    int chunk = Math.min(size - copied, view.remaining());
+                    view.get(data, copied, chunk);
+                    copied += chunk;
+                    offset = 0;
+                }
+                return new ByteArrayInputStream(data);
+            }
+        }
+
+        @Override
+        void write(Object key, long position, byte[] data, int length) throws IOException {
+            put(position, ByteBuffer.wrap(data, 0, length));
+            extendTo(position + length);
+        }
+
+        @Override
+        void write(long position, ByteBuffer[] buffers) throws IOException {
+            long end = position;
+            for (ByteBuffer buffer : buffers) {
+                int length = buffer.remaining();
+                put(end, buffer);
+                end += length;
+            }
+            extendTo(end);
+        }
+
+        private void put(long position, ByteBuffer source) throws IOException {
+            int index = (int) (position / segmentSize);
+            int offset = (int) (position % segmentSize);
+            while (source.hasRemaining()) {
+                ByteBuffer view = segment(index++).duplicate();
+                view.position(offset);
+                if (source.remaining() > view.remaining()) {
+                    ByteBuffer chunk = source.slice();
+                    chunk.limit(view.remaining());
+                    view.put(chunk);
+                    source.position(source.position() + chunk.limit());
+                } else {
+                    view.put(source);
+                }
+                offset = 0;
+            }
+        }
+
+        private void extendTo(long end) {
+            for (long current = logicalLength.get(); current < end; current = logicalLength.get()) {
+                if (logicalLength.compareAndSet(current, end)) {
+                    break;
+                }
+            }
+        }
+
+        private MappedByteBuffer segment(int index) throws IOException {
+            MappedByteBuffer[] current = segments;
+            if (index < current.length) {
+                return current[index];
+            } else {
+                return mapSegments(index);
+            }
+        }
+
+        private synchronized MappedByteBuffer mapSegments(int index) throws IOException {
+            MappedByteBuffer[] current = segments;
+            if (index < current.length) {
+                return current[index];
+            }
+            MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = map(i);
+            }
+            segments = grown;
+            return grown[index];
+        }
+
+        private MappedByteBuffer map(int index) throws IOException {
+            while (true) {
+                FileChannel current = channel();
+                try {
+                    return current.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentSize, segmentSize);
+                } catch (ClosedChannelException e) {
+                    recover(current, e);
+                }
+            }
+        }
+
+        @Override
+        long length() {
+            return logicalLength.get();
+        }
+
+        @Override
+        void setLength(long length) {
+            logicalLength.set(length);
+        }
+
+        @Override
+        RandomAccessFile getAllocatorFile() {
+            return null;
+        }
+
+        @Override
+        void close() throws IOException {
+            synchronized (this) {
+                segments = new MappedByteBuffer[0];
+            }
+            try {
+                super.setLength(logicalLength.get());
+            } catch (IOException e) {
+                LOG.debug("Could not truncate mapped data file {} : {}", file, e.getMessage());
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.ehcache.store.disk.ods.FileAllocationTree;
+import net.sf.ehcache.store.disk.ods.Region;
+
+/**
+ * Writes serialized elements to the data file in groups.
+ * <p>
+ * Threads that have serialized an element queue it here and then contend for the write lock. Whichever thread
+ * acquires the lock drains everything queued so far, allocates space for the whole group, and writes each run of
+ * adjacent regions with a single gathered write. The other threads find their element already written once they
+ * get the lock. Serialization therefore proceeds in parallel while the file sees few, large writes.
+ */
+final class DiskGroupWriter {
+
+    /**
+     * Maximum number of elements written in one group.
+     */
+    static final int MAX_GROUP_SIZE = 256;
+
+    private static final Comparator<PendingWrite> BY_POSITION = new Comparator<PendingWrite>() {
+        public int compare(PendingWrite a, PendingWrite b) {
+            return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+        }
+    };
+
+    private final FileAllocationTree allocator;
+    private final DataFileAccess dataAccess;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<PendingWrite>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong elements = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile int largestGroup;
+
+    /**
+     * Create a group writer allocating from the given tree and writing through the given engine.
+     *
+     * @param allocator data file space allocator
+     * @param dataAccess data file engine
+     */
+    DiskGroupWriter(FileAllocationTree allocator, DataFileAccess dataAccess) {
+        this.allocator = allocator;
+        this.dataAccess = dataAccess;
+    }
+
+    /**
+     * Write the given serialized element, returning once it is on disk.
+     *
+     * @param data serialized element
+     * @param length number of bytes used in the array
+     * @return the position the element was written at
+     * @throws IOException if the write failed
+     */
+    long write(byte[] data, int length) throws IOException {
+        PendingWrite pending = new PendingWrite(data, length);
+        queue.add(pending);
+        queued.incrementAndGet();
+
+        writeLock.lock();
+        try {
+            while (!pending.done) {
+                writeGroup();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+        return pending.position;
+    }
+
+    private void writeGroup() {
+        List<PendingWrite> group = new ArrayList<PendingWrite>();
+        List<PendingWrite> allocated = new ArrayList<PendingWrite>();
+        for (PendingWrite w = queue.poll(); w != null; w = group.size() < MAX_GROUP_SIZE ? queue.poll() : null) {
+            queued.decrementAndGet();
+            group.add(w);
+            try {
+                Region r = allocator.alloc(w.length);
+                w.position = r.start();
+                allocated.add(w);
+            } catch (IllegalArgumentException e) {
+                w.failure = new IOException("Could not allocate " + w.length + " bytes in the data file");
+            }
+        }
+
+        Collections.sort(allocated, BY_POSITION);
+        int start = 0;
+        while (start < allocated.size()) {
+            int end = start + 1;
+            while (end < allocated.size() && allocated.get(end - 1).end() == allocated.get(end).position) {
+                end++;
+            }
+            writeRun(allocated.subList(start, end));
+            start = end;
+        }
+
+        groups.incrementAndGet();
+        elements.addAndGet(group.size());
+        if (group.size() > largestGroup) {
+            largestGroup = group.size();
+        }
+        for (PendingWrite w : group) {
+            w.done = true;
+        }
+    }
+
+    private void writeRun(List<PendingWrite> run) {
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        long length = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            PendingWrite w = run.get(i);
+            buffers[i] = ByteBuffer.wrap(w.data, 0, w.length);
+            length += w.length;
+        }
+        try {
+            dataAccess.write(run.get(0).position, buffers);
+            writes.incrementAndGet();
+            bytes.addAndGet(length);
+        } catch (IOException e) {
+            for (PendingWrite w : run) {
+                allocator.free(new Region(w.position, w.end() - 1));
+                w.failure = e;
+            }
+        }
+    }
+
+    /**
+     * Return the number of serialized elements waiting to be written.
+     *
+     * @return the write queue depth
+     */
+    int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Return the number of groups written.
+     *
+     * @return the number of groups written
+     */
+    long getGroupCount() {
+        return groups.get();
+    }
+
+    /**
+     * Return the number of gathered writes issued to the data file.
+     *
+     * @return the number of file writes
+     */
+    long getFileWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Return the number of elements written.
+     *
+     * @return the number of elements written
+     */
+    long getElementCount() {
+        return elements.get();
+    }
+
+    /**
+     * Return the number of bytes written.
+     *
+     * @return the number of bytes written
+     */
+    long getByteCount() {
+        return bytes.get();
+    }
+
+    /**
+     * Return the size of the largest group written.
+     *
+     * @return the largest group size
+     */
+    int getLargestGroupSize() {
+        return largestGroup;
+    }
+
+    /**
+     * A serialized element waiting to be written.
+     */
+    private static final class PendingWrite {
+        private final byte[] data;
+        private final int length;
+        private long position;
+        private IOException failure;
+        private volatile boolean done;
+
+        private PendingWrite(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        private long end() {
+            return position + length;
+        }
+    }
+}
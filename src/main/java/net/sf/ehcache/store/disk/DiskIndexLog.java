@@ -0,0 +1,512 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.disk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only index of the elements stored in a disk store data file.
+ * <p>
+ * Every marker written to the data file is recorded by a {@code PUT} record carrying its position, size, hit count,
+ * expiry and serialized key, and every marker freed by a {@code REMOVE} record carrying its position. Records are
+ * checksummed, and each is appended with a single write so that a killed process leaves at worst a torn final
+ * record, which replay detects and discards. Markers are identified by their data file position, which is unique
+ * among live markers, so replay and compaction never need to deserialize keys.
+ * <p>
+ * Callers append the {@code PUT} for a marker only once its data is written, and the {@code REMOVE} before its region
+ * is released for reuse. A replayed index therefore never refers to data belonging to another element.
+ */
+final class DiskIndexLog {
+
+    /**
+     * Number of records below which the log is never compacted.
+     */
+    static final int COMPACTION_THRESHOLD = 4096;
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskIndexLog.class.getName());
+
+    private static final int MAGIC = 0xEC4C0601;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PUT_SIZE = 1 + 8 + 4 + 8 + 8;
+    private static final int REMOVE_SIZE = 1 + 8 + 4;
+
+    private final File file;
+    private final int codec;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final CRC32 crc = new CRC32();
+
+    private RandomAccessFile out;
+    private long records;
+    private long live;
+
+    /**
+     * Create an index log backed by the given file. The file is not touched until {@link #replay()} or
+     * {@link #open()} is called.
+     *
+     * @param file the index file
+     * @param codec identifies the serializer used for keys and elements, an index written with another is rejected
+     */
+    DiskIndexLog(File file, int codec) {
+        this.file = file;
+        this.codec = codec;
+    }
+
+    /**
+     * Read the index, returning the live markers in the order they were written.
+     * <p>
+     * A torn or corrupt tail is truncated away. The log is left open for appending.
+     *
+     * @return the live markers
+     * @throws IOException if the index cannot be read, or is not an index log
+     */
+    synchronized Collection<Entry> replay() throws IOException {
+        Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+        long end = HEADER_SIZE;
+        long count = 0;
+        if (file.exists() && file.length() > 0) {
+            Reader reader = new Reader(new FileInputStream(file));
+            try {
+                reader.readHeader();
+                end = reader.replay(entries, file.length());
+                count = reader.getRecordCount();
+            } finally {
+                reader.close();
+            }
+        }
+        openAt(end);
+        records = count;
+        live = entries.size();
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Open an empty log, discarding any existing content.
+     *
+     * @throws IOException on error
+     */
+    synchronized void open() throws IOException {
+        closeQuietly();
+        DiskStorageFactory.deleteFile(file);
+        openAt(HEADER_SIZE);
+        records = 0;
+        live = 0;
+    }
+
+    private void openAt(long end) throws IOException {
+        out = new RandomAccessFile(file, "rw");
+        if (out.length() < HEADER_SIZE) {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(codec);
+        } else if (out.length() > end) {
+            LOG.warn("Discarding {} bytes of torn or corrupt records from the end of index {}", out.length() - end, file);
+            out.setLength(end);
+        }
+        out.seek(out.length());
+    }
+
+    /**
+     * Record a marker written to the data file.
+     *
+     * @param position data file position
+     * @param size size of the serialized element
+     * @param hitCount hit count of the element
+     * @param expiry expiration time of the element
+     * @param key serialized key
+     * @throws IOException on write error
+     */
+    void put(long position, int size, long hitCount, long expiry, byte[] key) throws IOException {
+        append(new Entry(position, size, hitCount, expiry, key).toPayload());
+    }
+
+    /**
+     * Record a marker freed from the data file.
+     *
+     * @param position data file position
+     * @param size size of the serialized element
+     * @throws IOException on write error
+     */
+    void remove(long position, int size) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(REMOVE_SIZE);
+        payload.put(REMOVE).putLong(position).putInt(size);
+        append(payload.array());
+    }
+
+    private synchronized void append(byte[] payload) throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.write(record(payload));
+        records++;
+        if (payload[0] == PUT) {
+            live++;
+        } else {
+            live--;
+        }
+    }
+
+    private byte[] record(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.array();
+    }
+
+    /**
+     * Return {@code true} if the log has accumulated enough dead records to be worth compacting, and no compaction
+     * was requested since the last one completed.
+     *
+     * @return {@code true} if the caller should schedule a compaction
+     */
+    boolean requestCompaction() {
+        synchronized (this) {
+            if (records < COMPACTION_THRESHOLD || records < 2 * live) {
+                return false;
+            }
+        }
+        return compactionScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Rewrite the log keeping only the live records.
+     * <p>
+     * The bulk of the log is read without blocking appends. Records appended meanwhile are copied verbatim once the
+     * live records are written, and the new log then atomically replaces the old one.
+     *
+     * @throws IOException on error
+     */
+    void compact() throws IOException {
+        try {
+            long end;
+            synchronized (this) {
+                if (out == null) {
+                    return;
+                }
+                end = out.length();
+            }
+            Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+            Reader reader = new Reader(new FileInputStream(file));
+            try {
+                reader.readHeader();
+                reader.replay(entries, end);
+            } finally {
+                reader.close();
+            }
+
+            synchronized (this) {
+                if (out == null) {
+                    return;
+                }
+                records = writeSnapshot(entries.values(), end);
+                LOG.debug("Compacted index {} to {} records", file, records);
+            }
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private long writeSnapshot(Collection<Entry> entries, long tailFrom) throws IOException {
+        File snapshot = new File(file.getPath() + ".compact");
+        FileOutputStream fos = new FileOutputStream(snapshot);
+        long count = entries.size();
+        try {
+            DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(fos));
+            dout.writeInt(MAGIC);
+            dout.writeInt(VERSION);
+            dout.writeInt(codec);
+            for (Entry e : entries) {
+                dout.write(record(e.toPayload()));
+            }
+            count += copyTail(tailFrom, dout);
+            dout.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        swap(snapshot);
+        return count;
+    }
+
+    private long copyTail(long from, DataOutputStream dout) throws IOException {
+        long count = 0;
+        long position = from;
+        while (position < out.length()) {
+            out.seek(position);
+            int length = out.readInt();
+            byte[] rest = new byte[length + 4];
+            out.readFully(rest);
+            dout.writeInt(length);
+            dout.write(rest);
+            position += RECORD_HEADER_SIZE + length;
+            count++;
+        }
+        out.seek(out.length());
+        return count;
+    }
+
+    /**
+     * Replace the log with a snapshot of the given entries.
+     *
+     * @param entries the live markers
+     * @throws IOException on error
+     */
+    synchronized void rewrite(Collection<Entry> entries) throws IOException {
+        if (out == null) {
+            return;
+        }
+        records = writeSnapshot(entries, out.length());
+        live = entries.size();
+    }
+
+    private void swap(File replacement) throws IOException {
+        out.close();
+        out = null;
+        if (!replacement.renameTo(file)) {
+            // rename cannot replace an existing file on some platforms
+            DiskStorageFactory.deleteFile(file);
+            if (!replacement.renameTo(file)) {
+                throw new IOException("Could not replace index " + file + " with " + replacement);
+            }
+        }
+        out = new RandomAccessFile(file, "rw");
+        out.seek(out.length());
+    }
+
+    /**
+     * Force appended records to the storage device.
+     *
+     * @throws IOException on error
+     */
+    synchronized void force() throws IOException {
+        if (out != null) {
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Close the log. Further appends are ignored.
+     *
+     * @throws IOException on error
+     */
+    synchronized void close() throws IOException {
+        if (out != null) {
+            try {
+                out.getFD().sync();
+            } finally {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close index {} : {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Return the number of records in the log.
+     *
+     * @return the number of records
+     */
+    synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * A live marker recorded in the log.
+     */
+    static final class Entry {
+        private final long position;
+        private final int size;
+        private final long hitCount;
+        private final long expiry;
+        private final byte[] key;
+
+        /**
+         * Create an entry.
+         *
+         * @param position data file position
+         * @param size size of the serialized element
+         * @param hitCount hit count of the element
+         * @param expiry expiration time of the element
+         * @param key serialized key
+         */
+        Entry(long position, int size, long hitCount, long expiry, byte[] key) {
+            this.position = position;
+            this.size = size;
+            this.hitCount = hitCount;
+            this.expiry = expiry;
+            this.key = key;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        int getSize() {
+            return size;
+        }
+
+        long getHitCount() {
+            return hitCount;
+        }
+
+        long getExpiry() {
+            return expiry;
+        }
+
+        byte[] getKey() {
+            return key;
+        }
+
+        private byte[] toPayload() {
+            ByteBuffer payload = ByteBuffer.allocate(PUT_SIZE + key.length);
+            payload.put(PUT).putLong(position).putInt(size).putLong(hitCount).putLong(expiry).put(key);
+            return payload.array();
+        }
+    }
+
+    /**
+     * Sequential reader of log records, parsing them straight out of a large buffer filled from the file channel.
+     */
+    private final class Reader {
+        private static final int BUFFER_SIZE = 1024 * 1024;
+
+        private final FileInputStream in;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long count;
+
+        Reader(FileInputStream in) {
+            this.in = in;
+            this.channel = in.getChannel();
+            buffer.flip();
+        }
+
+        void readHeader() throws IOException {
+            if (!fill(HEADER_SIZE) || buffer.getInt() != MAGIC) {
+                throw new StreamCorruptedException("Not an index log");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported index log version " + version);
+            }
+            if (buffer.getInt() != codec) {
+                throw new StreamCorruptedException("Index log was written with a different serializer");
+            }
+        }
+
+        /**
+         * Apply records to the given map until the limit, the end of the file, or the first invalid record.
+         *
+         * @return the offset of the end of the last valid record
+         */
+        long replay(Map<Long, Entry> entries, long limit) throws IOException {
+            long position = HEADER_SIZE;
+            while (position < limit && fill(RECORD_HEADER_SIZE)) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < REMOVE_SIZE || position + RECORD_HEADER_SIZE + length > limit || !fill(length)) {
+                    return position;
+                }
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), buffer.arrayOffset() + start, length);
+                if ((int) crc.getValue() != checksum) {
+                    return position;
+                }
+                byte type = buffer.get();
+                long dataPosition = buffer.getLong();
+                int size = buffer.getInt();
+                if (type == PUT && length >= PUT_SIZE) {
+                    long hitCount = buffer.getLong();
+                    long expiry = buffer.getLong();
+                    byte[] key = new byte[length - PUT_SIZE];
+                    buffer.get(key);
+                    entries.remove(dataPosition);
+                    entries.put(dataPosition, new Entry(dataPosition, size, hitCount, expiry, key));
+                } else if (type == REMOVE) {
+                    entries.remove(dataPosition);
+                } else {
+                    return position;
+                }
+                buffer.position(start + length);
+                position += RECORD_HEADER_SIZE + length;
+                count++;
+            }
+            return position;
+        }
+
+        private boolean fill(int needed) throws IOException {
+            if (buffer.remaining() >= needed) {
+                return true;
+            }
+            if (needed > buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(needed);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            int read = 0;
+            while (buffer.position() < needed && read >= 0) {
+                read = channel.read(buffer);
+            }
+            buffer.flip();
+            return buffer.remaining() >= needed;
+        }
+
+        long getRecordCount() {
+            return count;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
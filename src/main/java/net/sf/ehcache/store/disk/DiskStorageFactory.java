@@ -18,42 +18,49 @@ package net.sf.ehcache.store.disk;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
-import java.io.ByteArrayInputStream;
-import java.io.EOFException;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.NotSerializableException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.DiskStorePathManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
-import net.sf.ehcache.concurrent.ConcurrencyUtil;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.PinningConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.pool.sizeof.annotations.IgnoreSizeOf;
+import net.sf.ehcache.serialization.BufferPool;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
+import net.sf.ehcache.store.ExpiryWheel;
 import net.sf.ehcache.store.FrontEndCacheTier;
 import net.sf.ehcache.store.disk.ods.FileAllocationTree;
 import net.sf.ehcache.store.disk.ods.Region;
-import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
-import net.sf.ehcache.util.PreferTCCLObjectInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +82,10 @@ public class DiskStorageFactory {
     private static final int MEGABYTE = 1024 * 1024;
     private static final int MAX_EVICT = 5;
     private static final int SAMPLE_SIZE = 30;
+    private static final int PARALLEL_INDEX_LOAD_THRESHOLD = 10000;
+    private static final float COMPACTION_FRAGMENTATION_THRESHOLD = 0.5f;
+    private static final long COMPACTION_MINIMUM_FILE_SIZE = 8L * MEGABYTE;
+    private static final long COMPACTION_MAXIMUM_RELOCATION = 64L * MEGABYTE;
 
     private static final Logger LOG = LoggerFactory.getLogger(DiskStorageFactory.class.getName());
 
@@ -92,10 +103,14 @@ public class DiskStorageFactory {
     private final long queueCapacity;
 
     private final File             file;
-    private final RandomAccessFile[] dataAccess;
+    private final DataFileAccess dataAccess;
 
     private final FileAllocationTree allocator;
 
+    private final DiskGroupWriter groupWriter;
+
+    private final Serializer serializer;
+
     private final RegisteredEventListeners eventService;
 
     private volatile int elementSize;
@@ -104,8 +119,14 @@ public class DiskStorageFactory {
 
     private final AtomicInteger onDisk = new AtomicInteger();
 
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong relocatedBytes = new AtomicLong();
+
     private final File indexFile;
 
+    private final DiskIndexLog indexLog;
+
     private final IndexWriteTask flushTask;
 
     private volatile int diskCapacity;
@@ -115,6 +136,9 @@ public class DiskStorageFactory {
     private final boolean diskPersistent;
 
     private final DiskStorePathManager diskStorePathManager;
+
+    private final ExpiryWheel expiryIndex;
+
     /**
      * Constructs an disk persistent factory for the given cache and disk path.
      *
@@ -139,13 +163,15 @@ public class DiskStorageFactory {
         }
 
         try {
-            dataAccess = allocateRandomAccessFiles(file, cache.getCacheConfiguration().getDiskAccessStripes());
-        } catch (FileNotFoundException e) {
+            dataAccess = DataFileAccess.create(file, cache.getCacheConfiguration());
+        } catch (IOException e) {
             throw new CacheException(e);
         }
-        this.allocator = new FileAllocationTree(Long.MAX_VALUE, dataAccess[0]);
+        this.allocator = new FileAllocationTree(Long.MAX_VALUE, dataAccess.getAllocatorFile());
+        this.groupWriter = new DiskGroupWriter(allocator, dataAccess);
+        this.serializer = cache.getCacheConfiguration().getSerializer();
 
-        diskWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        diskWriter = new ScheduledThreadPoolExecutor(cache.getCacheConfiguration().getDiskWriterThreads(), new ThreadFactory() {
             public Thread newThread(Runnable r) {
                 Thread t = new Thread(r, file.getName());
                 t.setDaemon(false);
@@ -160,19 +186,22 @@ public class DiskStorageFactory {
         diskWriter.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
         diskWriter.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
         long expiryInterval = cache.getCacheConfiguration().getDiskExpiryThreadIntervalSeconds();
-        diskWriter.scheduleWithFixedDelay(new DiskExpiryTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
+        if (cache.getCacheConfiguration().isExpiryIndex()) {
+            expiryIndex = new ExpiryWheel(ExpiryWheel.DEFAULT_TICK_MILLIS, System.currentTimeMillis());
+            diskWriter.scheduleWithFixedDelay(new DiskExpiryTask(), ExpiryWheel.DEFAULT_TICK_MILLIS, ExpiryWheel.DEFAULT_TICK_MILLIS,
+                    MILLISECONDS);
+        } else {
+            expiryIndex = null;
+            diskWriter.scheduleWithFixedDelay(new DiskExpiryTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
+        }
+        diskWriter.scheduleWithFixedDelay(new DiskCompactionTask(), expiryInterval, expiryInterval, TimeUnit.SECONDS);
 
-        flushTask = new IndexWriteTask(indexFile, cache.getCacheConfiguration().isClearOnFlush());
+        flushTask = new IndexWriteTask(cache.getCacheConfiguration().isClearOnFlush());
+        indexLog = diskPersistent ? new DiskIndexLog(indexFile, serializer.getClass().getName().hashCode()) : null;
 
         if (!getDataFile().exists() || (getDataFile().length() == 0)) {
             LOG.debug("Matching data file missing (or empty) for index file. Deleting index file " + indexFile);
             deleteFile(indexFile);
-        } else if (getDataFile().exists() && indexFile.exists()) {
-            if (getDataFile().lastModified() > (indexFile.lastModified() + TimeUnit.SECONDS.toMillis(1))) {
-                LOG.warn("The index for data file {} is out of date, probably due to an unclean shutdown. "
-                        + "Deleting index file {}", getDataFile(), indexFile);
-                deleteFile(indexFile);
-            }
         }
     }
 
@@ -195,37 +224,17 @@ public class DiskStorageFactory {
         }
     }
 
-    private static RandomAccessFile[] allocateRandomAccessFiles(File f, int stripes) throws FileNotFoundException {
-        int roundedStripes = stripes;
-        while ((roundedStripes & (roundedStripes - 1)) != 0) {
-            ++roundedStripes;
-        }
-
-        RandomAccessFile [] result = new RandomAccessFile[roundedStripes];
-        for (int i = 0; i < result.length; ++i) {
-            result[i] = new RandomAccessFile(f, "rw");
-        }
-
-        return result;
-    }
-
-    private RandomAccessFile getDataAccess(Object key) {
-        return this.dataAccess[ConcurrencyUtil.selectLock(key, dataAccess.length)];
-    }
-
     /**
      * Return this size in bytes of this factory
      *
      * @return this size in bytes of this factory
      */
     public long getOnDiskSizeInBytes() {
-        synchronized (dataAccess[0]) {
-            try {
-                return dataAccess[0].length();
-            } catch (IOException e) {
-                LOG.warn("Exception trying to determine store size", e);
-                return 0;
-            }
+        try {
+            return dataAccess.length();
+        } catch (IOException e) {
+            LOG.warn("Exception trying to determine store size", e);
+            return 0;
         }
     }
 
@@ -261,6 +270,9 @@ public class DiskStorageFactory {
             if (!faultFailure) {
                 onDisk.decrementAndGet();
             }
+            if (expiryIndex != null) {
+                expiryIndex.cancel(((DiskMarker) substitute).getKey(), substitute);
+            }
             //free done asynchronously under the relevant segment lock...
             DiskFreeTask free = new DiskFreeTask(lock, (DiskMarker) substitute);
             if (lock.tryLock()) {
@@ -288,12 +300,10 @@ public class DiskStorageFactory {
      * Shrink this store's data file down to a minimal size for its contents.
      */
     protected void shrinkDataFile() {
-        synchronized (dataAccess[0]) {
-            try {
-                dataAccess[0].setLength(allocator.getFileSize());
-            } catch (IOException e) {
-                LOG.error("Exception trying to shrink data file to size", e);
-            }
+        try {
+            dataAccess.setLength(allocator.getFileSize());
+        } catch (IOException e) {
+            LOG.error("Exception trying to shrink data file to size", e);
         }
     }
     /**
@@ -316,11 +326,14 @@ public class DiskStorageFactory {
             }
         }
 
-        for (final RandomAccessFile raf : dataAccess) {
-            synchronized (raf) {
-                raf.close();
+        if (indexLog != null) {
+            try {
+                writeIndexSnapshot();
+            } finally {
+                indexLog.close();
             }
         }
+        dataAccess.close();
 
         if (!diskPersistent) {
             deleteFile(file);
@@ -356,20 +369,11 @@ public class DiskStorageFactory {
      * @throws ClassNotFoundException on deserialization error
      */
     protected Element read(DiskMarker marker) throws IOException, ClassNotFoundException {
-        final byte[] buffer = new byte[marker.getSize()];
-        final RandomAccessFile data = getDataAccess(marker.getKey());
-        synchronized (data) {
-            // Load the element
-            data.seek(marker.getPosition());
-            data.readFully(buffer);
-        }
-
-        ObjectInputStream objstr = new PreferTCCLObjectInputStream(new ByteArrayInputStream(buffer));
-
+        InputStream in = dataAccess.read(marker.getKey(), marker.getPosition(), marker.getSize());
         try {
-            return (Element) objstr.readObject();
+            return (Element) serializer.deserialize(in);
         } finally {
-            objstr.close();
+            in.close();
         }
     }
 
@@ -381,20 +385,54 @@ public class DiskStorageFactory {
      * @throws java.io.IOException on write error
      */
     protected DiskMarker write(Element element) throws IOException {
-        MemoryEfficientByteArrayOutputStream buffer = serializeElement(element);
-        int bufferLength = buffer.size();
-        elementSize = bufferLength;
-        DiskMarker marker = alloc(element, bufferLength);
-        // Write the record
-        final RandomAccessFile data = getDataAccess(element.getObjectKey());
-        synchronized (data) {
-            data.seek(marker.getPosition());
-            data.write(buffer.toByteArray(), 0, bufferLength);
+        BufferPool.Buffer buffer = BufferPool.getDefault().acquire();
+        int bufferLength;
+        long position;
+        try {
+            serializeElement(element, buffer);
+            bufferLength = buffer.size();
+            elementSize = bufferLength;
+            // the group writer returns once the data is on disk, so the buffer can then be reused
+            position = groupWriter.write(buffer.getBuffer(), bufferLength);
+        } finally {
+            buffer.release();
+        }
+        DiskMarker marker = createMarker(position, bufferLength, element);
+        if (indexLog != null) {
+            try {
+                indexLog.put(position, bufferLength, marker.getHitCount(), marker.getExpirationTime(), serializeKey(marker.getKey()));
+            } catch (IOException e) {
+                allocator.free(new Region(position, position + bufferLength - 1));
+                throw e;
+            }
+            compactIndexIfNeeded();
         }
         return marker;
     }
 
-    private MemoryEfficientByteArrayOutputStream serializeElement(Element element) throws IOException {
+    private byte[] serializeKey(Object key) throws IOException {
+        if (key instanceof Serializable) {
+            return Serializers.toBytes(serializer, key);
+        } else {
+            throw new NotSerializableException(key.getClass().getName());
+        }
+    }
+
+    private Object deserializeKey(byte[] key) throws IOException, ClassNotFoundException {
+        return Serializers.fromBytes(serializer, key);
+    }
+
+    private void compactIndexIfNeeded() {
+        if (indexLog.requestCompaction()) {
+            try {
+                schedule(new IndexCompactionTask());
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Index compaction not scheduled, {} is shutting down", file.getName());
+            }
+        }
+    }
+
+    private void serializeElement(Element element, BufferPool.Buffer buffer) throws IOException {
         // try two times to Serialize. A ConcurrentModificationException can occur because Java's serialization
         // mechanism is not threadsafe and POJOs are seldom implemented in a threadsafe way.
         // e.g. we are serializing an ArrayList field while another thread somewhere in the application is appending to it.
@@ -402,8 +440,10 @@ public class DiskStorageFactory {
         ConcurrentModificationException exception = null;
         for (int retryCount = 0; retryCount < 2; retryCount++) {
             try {
-                return MemoryEfficientByteArrayOutputStream.serialize(element);
+                serializer.serialize(element, buffer);
+                return;
             } catch (ConcurrentModificationException e) {
+                buffer.reset();
                 exception = e;
                 try {
                     // wait for the other thread(s) to finish
@@ -416,18 +456,23 @@ public class DiskStorageFactory {
         throw exception;
     }
 
-    private DiskMarker alloc(Element element, int size) throws IOException {
-        //check for a matching chunk
-        Region r = allocator.alloc(size);
-        return createMarker(r.start(), size, element);
-    }
-
     /**
      * Free the given marker to be used by a subsequent write.
      *
      * @param marker marker to be free'd
      */
     protected void free(DiskMarker marker) {
+        if (indexLog != null) {
+            try {
+                // the removal must be on record before the region can be reused
+                indexLog.remove(marker.getPosition(), marker.getSize());
+                compactIndexIfNeeded();
+            } catch (IOException e) {
+                LOG.error("Could not record the removal of " + marker.getKey() + " in index " + indexFile
+                        + ", discarding the index", e);
+                discardIndex();
+            }
+        }
         allocator.free(new Region(marker.getPosition(), marker.getPosition() + marker.getSize() - 1));
     }
 
@@ -484,6 +529,7 @@ public class DiskStorageFactory {
                 if (store.containsKey(placeholder.getKey())) {
                     DiskMarker marker = write(placeholder.getElement());
                     if (marker != null && store.fault(placeholder.getKey(), placeholder, marker)) {
+                        indexExpiry(marker);
                         return marker;
                     } else {
                         return null;
@@ -732,14 +778,16 @@ public class DiskStorageFactory {
          * @param size size of the serialized element
          * @param key key to which this element is mapped
          * @param hits hit count for this element
+         * @param expiry expiration time of this element
          */
-        DiskMarker(DiskStorageFactory factory, long position, int size, Object key, long hits) {
+        DiskMarker(DiskStorageFactory factory, long position, int size, Object key, long hits, long expiry) {
             super(factory);
             this.position = position;
             this.size = size;
 
             this.key = key;
             this.hitCount = hits;
+            this.expiry = expiry;
         }
 
         /**
@@ -805,8 +853,161 @@ public class DiskStorageFactory {
             hitCount++;
             expiry = e.getExpirationTime();
         }
+
+        /**
+         * Take over the statistics of the marker this one replaces.
+         *
+         * @param marker the replaced marker
+         */
+        void copyStatistics(DiskMarker marker) {
+            hitCount = marker.hitCount;
+            expiry = marker.expiry;
+        }
+    }
+
+
+    /**
+     * Relocate on-disk elements from the end of the data file into free space nearer its start, and shrink the file.
+     * <p>
+     * Each element is copied while the cache stays live, and its marker is swapped under the segment write lock
+     * only if the element was not changed or removed meanwhile. At most 64MB is relocated per call.
+     *
+     * @return the number of bytes relocated
+     */
+    public long compact() {
+        if (!compactionLock.tryLock()) {
+            return 0;
+        }
+        try {
+            List<DiskMarker> markers = new ArrayList<DiskMarker>();
+            for (Object key : store.keySet()) {
+                Object o = store.unretrievedGet(key);
+                if (created(o) && o instanceof DiskMarker) {
+                    markers.add((DiskMarker) o);
+                }
+            }
+            Collections.sort(markers, new Comparator<DiskMarker>() {
+                public int compare(DiskMarker a, DiskMarker b) {
+                    return a.getPosition() > b.getPosition() ? -1 : (a.getPosition() == b.getPosition() ? 0 : 1);
+                }
+            });
+
+            long relocated = 0;
+            for (DiskMarker marker : markers) {
+                if (relocated >= COMPACTION_MAXIMUM_RELOCATION
+                        || marker.getPosition() + marker.getSize() <= allocator.getOccupiedSize()) {
+                    // everything left already lies within the space a dense file would need
+                    break;
+                }
+                Region target = allocator.allocBelow(marker.getSize(), marker.getPosition());
+                if (target != null) {
+                    try {
+                        if (relocate(marker, target.start())) {
+                            relocated += marker.getSize();
+                        }
+                    } catch (IOException e) {
+                        LOG.warn("Could not relocate " + marker.getKey() + " during compaction of " + file, e);
+                        break;
+                    }
+                }
+            }
+            shrinkDataFile();
+            compactions.incrementAndGet();
+            relocatedBytes.addAndGet(relocated);
+            LOG.debug("Compaction of {} relocated {} bytes", file, relocated);
+            return relocated;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private boolean relocate(DiskMarker marker, long position) throws IOException {
+        DiskMarker moved = new DiskMarker(this, position, marker.getSize(), marker.getKey(), marker.getHitCount(),
+                marker.getExpirationTime());
+        try {
+            byte[] data = new byte[marker.getSize()];
+            new DataInputStream(dataAccess.read(marker.getKey(), marker.getPosition(), data.length)).readFully(data);
+            dataAccess.write(marker.getKey(), position, data, data.length);
+            if (indexLog != null) {
+                indexLog.put(position, data.length, marker.getHitCount(), marker.getExpirationTime(), serializeKey(marker.getKey()));
+            }
+        } catch (IOException e) {
+            allocator.free(new Region(position, position + marker.getSize() - 1));
+            throw e;
+        }
+        if (store.relocate(marker.getKey(), marker, moved)) {
+            indexExpiry(moved);
+            return true;
+        } else {
+            free(moved);
+            return false;
+        }
+    }
+
+    /**
+     * Return the fraction of the data file not occupied by elements.
+     *
+     * @return the fragmentation ratio, between 0 and 1
+     */
+    public float getFragmentationRatio() {
+        long length;
+        try {
+            length = dataAccess.length();
+        } catch (IOException e) {
+            return 0;
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        return Math.max(0, 1 - (float) allocator.getOccupiedSize() / length);
+    }
+
+    /**
+     * Return the number of bytes of the data file occupied by elements.
+     *
+     * @return the occupied size in bytes
+     */
+    public long getOccupiedSizeInBytes() {
+        return allocator.getOccupiedSize();
+    }
+
+    /**
+     * Return the number of compaction runs completed.
+     *
+     * @return the number of compactions
+     */
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    /**
+     * Return the total number of bytes relocated by compaction.
+     *
+     * @return the number of bytes relocated
+     */
+    public long getRelocatedByteCount() {
+        return relocatedBytes.get();
     }
 
+    /**
+     * Compacts the data file once it is large enough and fragmented enough to be worth it.
+     */
+    private final class DiskCompactionTask implements Runnable {
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run() {
+            try {
+                if (dataAccess.length() >= COMPACTION_MINIMUM_FILE_SIZE
+                        && getFragmentationRatio() >= COMPACTION_FRAGMENTATION_THRESHOLD) {
+                    compact();
+                }
+            } catch (Throwable t) {
+                LOG.warn("Compaction of " + file + " failed", t);
+            }
+        }
+    }
 
     /**
      * Remove elements created by this factory if they have expired.
@@ -815,8 +1016,22 @@ public class DiskStorageFactory {
         new DiskExpiryTask().run();
     }
 
+    /**
+     * Index the expiration time of a marker now in the store, when the cache keeps an expiry index.
+     *
+     * @param marker the marker mapped in the store
+     */
+    private void indexExpiry(DiskMarker marker) {
+        if (expiryIndex != null) {
+            expiryIndex.schedule(marker.getKey(), marker, marker.getExpirationTime());
+        }
+    }
+
     /**
      * Causes removal of all expired elements (and fires the relevant events).
+     * <p>
+     * With an expiry index only the keys whose indexed expiration time has passed are visited. The index is a hint: the
+     * marker currently mapped is checked again, and rescheduled when it was accessed since it was indexed.
      */
     private final class DiskExpiryTask implements Runnable {
 
@@ -825,10 +1040,24 @@ public class DiskStorageFactory {
          */
         public void run() {
             long now = System.currentTimeMillis();
-            for (Object key : store.keySet()) {
-                Object value = store.unretrievedGet(key);
-                if (created(value) && value instanceof DiskStorageFactory.DiskMarker) {
-                    checkExpiry((DiskMarker) value, now);
+            if (expiryIndex == null) {
+                for (Object key : store.keySet()) {
+                    Object value = store.unretrievedGet(key);
+                    if (created(value) && value instanceof DiskStorageFactory.DiskMarker) {
+                        checkExpiry((DiskMarker) value, now);
+                    }
+                }
+            } else {
+                for (Object key : expiryIndex.advance(now)) {
+                    Object value = store.unretrievedGet(key);
+                    if (created(value) && value instanceof DiskStorageFactory.DiskMarker) {
+                        DiskMarker marker = (DiskMarker) value;
+                        if (marker.getExpirationTime() < now) {
+                            checkExpiry(marker, now);
+                        } else {
+                            indexExpiry(marker);
+                        }
+                    }
                 }
             }
         }
@@ -1026,6 +1255,71 @@ public class DiskStorageFactory {
         return onDisk.get();
     }
 
+    /**
+     * Return the number of serialized elements waiting for their group to be written.
+     *
+     * @return the disk write queue depth
+     */
+    public int getWriteQueueDepth() {
+        return groupWriter.getQueueDepth();
+    }
+
+    /**
+     * Return the number of element groups written to disk.
+     *
+     * @return the number of groups written
+     */
+    public long getWriteGroupCount() {
+        return groupWriter.getGroupCount();
+    }
+
+    /**
+     * Return the number of writes issued to the data file. Each run of adjacent elements in a group is written
+     * with a single write.
+     *
+     * @return the number of data file writes
+     */
+    public long getFileWriteCount() {
+        return groupWriter.getFileWriteCount();
+    }
+
+    /**
+     * Return the number of elements written to disk.
+     *
+     * @return the number of elements written
+     */
+    public long getWrittenElementCount() {
+        return groupWriter.getElementCount();
+    }
+
+    /**
+     * Return the number of bytes written to the data file.
+     *
+     * @return the number of bytes written
+     */
+    public long getWrittenByteCount() {
+        return groupWriter.getByteCount();
+    }
+
+    /**
+     * Return the average number of elements per group written.
+     *
+     * @return the average group size
+     */
+    public float getAverageWriteGroupSize() {
+        long groups = groupWriter.getGroupCount();
+        return groups == 0 ? 0 : (float) groupWriter.getElementCount() / groups;
+    }
+
+    /**
+     * Return the largest number of elements written in a single group.
+     *
+     * @return the largest group size
+     */
+    public int getLargestWriteGroupSize() {
+        return groupWriter.getLargestGroupSize();
+    }
+
     /**
      * Set the maximum on-disk capacity for this factory.
      *
@@ -1095,21 +1389,18 @@ public class DiskStorageFactory {
     }
 
     /**
-     * Task that writes the index file for this factory.
+     * Task that writes all pending elements to disk and forces the index file for this factory.
      */
     class IndexWriteTask implements Callable<Void> {
 
-        private final File index;
         private final boolean clearOnFlush;
 
         /**
-         * Create a disk flush task that writes to the given file.
+         * Create a disk flush task.
          *
-         * @param index the file to write the index to
          * @param clear clear on flush flag
          */
-        IndexWriteTask(File index, boolean clear) {
-            this.index = index;
+        IndexWriteTask(boolean clear) {
             this.clearOnFlush = clear;
         }
 
@@ -1117,70 +1408,188 @@ public class DiskStorageFactory {
          * {@inheritDoc}
          */
         public synchronized Void call() throws IOException, InterruptedException {
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(index));
-            try {
-                for (Object key : store.keySet()) {
-                    Object o = store.unretrievedGet(key);
-                    if (o instanceof Placeholder && !((Placeholder)o).failedToFlush) {
-                        o = new PersistentDiskWriteTask((Placeholder) o).call();
-                        if (o == null) {
-                            o = store.unretrievedGet(key);
-                        }
-                    }
-
-                    if (o instanceof DiskMarker) {
-                        DiskMarker marker = (DiskMarker) o;
-                        oos.writeObject(key);
-                        oos.writeObject(marker);
-                    }
+            for (Object key : store.keySet()) {
+                Object o = store.unretrievedGet(key);
+                if (o instanceof Placeholder && !((Placeholder)o).failedToFlush) {
+                    new PersistentDiskWriteTask((Placeholder) o).call();
                 }
-            } finally {
-                oos.close();
+            }
+            if (indexLog != null) {
+                indexLog.force();
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Task that compacts the index file for this factory.
+     */
+    private final class IndexCompactionTask implements Callable<Void> {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Void call() {
+            try {
+                indexLog.compact();
+            } catch (IOException e) {
+                LOG.warn("Could not compact index " + indexFile, e);
             }
             return null;
         }
+    }
+
+    private void writeIndexSnapshot() throws IOException {
+        List<DiskIndexLog.Entry> entries = new ArrayList<DiskIndexLog.Entry>();
+        for (Object key : store.keySet()) {
+            Object o = store.unretrievedGet(key);
+            if (created(o) && o instanceof DiskMarker) {
+                DiskMarker marker = (DiskMarker) o;
+                entries.add(new DiskIndexLog.Entry(marker.getPosition(), marker.getSize(), marker.getHitCount(),
+                        marker.getExpirationTime(), serializeKey(key)));
+            }
+        }
+        indexLog.rewrite(entries);
+    }
 
+    private void discardIndex() {
+        try {
+            indexLog.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close index {} : {}", indexFile, e.getMessage());
+        }
+        deleteFile(indexFile);
     }
 
     private void loadIndex() {
-        if (!indexFile.exists()) {
+        if (indexLog == null) {
             return;
         }
 
         try {
-            ObjectInputStream ois = new PreferTCCLObjectInputStream(new FileInputStream(indexFile));
+            List<DiskIndexLog.Entry> entries = new ArrayList<DiskIndexLog.Entry>(indexLog.replay());
+            int threads = entries.size() < PARALLEL_INDEX_LOAD_THRESHOLD ? 1
+                    : Math.min(Runtime.getRuntime().availableProcessors(), store.getSegmentCount());
+            ExecutorService loaders = threads > 1 ? Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, file.getName() + " index loader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }) : null;
             try {
-                Object key = ois.readObject();
-                Object value = ois.readObject();
-
-                DiskMarker marker = (DiskMarker) value;
-                while (true) {
-                    marker.bindFactory(this);
-                    markUsed(marker);
-                    if (store.putRawIfAbsent(key, marker)) {
-                        onDisk.incrementAndGet();
+                Object[] keys = deserializeKeys(entries, threads, loaders);
+
+                long dataLength = dataAccess.length();
+                Map<Object, DiskIndexLog.Entry> live = new HashMap<Object, DiskIndexLog.Entry>();
+                for (int i = 0; i < keys.length; i++) {
+                    DiskIndexLog.Entry e = entries.get(i);
+                    if (e.getPosition() + e.getSize() > dataLength) {
+                        LOG.debug("Index entry at {} lies beyond the end of data file {}, ignoring it", e.getPosition(), file);
+                        indexLog.remove(e.getPosition(), e.getSize());
                     } else {
-                        // the disk pool is full
-                        return;
+                        DiskIndexLog.Entry superseded = live.put(keys[i], e);
+                        if (superseded != null) {
+                            indexLog.remove(superseded.getPosition(), superseded.getSize());
+                        }
                     }
-                    key = ois.readObject();
-                    marker = (DiskMarker) ois.readObject();
                 }
+
+                installMarkers(live, threads, loaders);
             } finally {
-                ois.close();
+                if (loaders != null) {
+                    loaders.shutdown();
+                }
             }
-        } catch (EOFException e) {
-            // end of file reached, stop processing
         } catch (Exception e) {
             LOG.warn("Index file {} is corrupt, deleting and ignoring it : {}", indexFile, e);
-            e.printStackTrace();
             store.removeAll();
-            deleteFile(indexFile);
+            try {
+                indexLog.open();
+            } catch (IOException ioe) {
+                LOG.error("Could not recreate index " + indexFile, ioe);
+                discardIndex();
+            }
         } finally {
             shrinkDataFile();
         }
     }
 
+    private Object[] deserializeKeys(final List<DiskIndexLog.Entry> entries, int threads, ExecutorService loaders) throws Exception {
+        final Object[] keys = new Object[entries.size()];
+        int chunk = Math.max(1, (keys.length + threads - 1) / threads);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < keys.length; start += chunk) {
+            final int from = start;
+            final int to = Math.min(keys.length, start + chunk);
+            tasks.add(new Callable<Void>() {
+                public Void call() throws IOException, ClassNotFoundException {
+                    for (int i = from; i < to; i++) {
+                        keys[i] = deserializeKey(entries.get(i).getKey());
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks, loaders);
+        return keys;
+    }
+
+    private void installMarkers(Map<Object, DiskIndexLog.Entry> live, int threads, ExecutorService loaders) throws Exception {
+        // partition by segment so that loaders never contend for a segment lock
+        List<List<Map.Entry<Object, DiskIndexLog.Entry>>> partitions = new ArrayList<List<Map.Entry<Object, DiskIndexLog.Entry>>>();
+        for (int i = 0; i < threads; i++) {
+            partitions.add(new ArrayList<Map.Entry<Object, DiskIndexLog.Entry>>());
+        }
+        for (Map.Entry<Object, DiskIndexLog.Entry> mapping : live.entrySet()) {
+            partitions.get(store.getSegmentIndexFor(mapping.getKey()) % threads).add(mapping);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final List<Map.Entry<Object, DiskIndexLog.Entry>> partition : partitions) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (Map.Entry<Object, DiskIndexLog.Entry> mapping : partition) {
+                        DiskIndexLog.Entry e = mapping.getValue();
+                        DiskMarker marker = new DiskMarker(DiskStorageFactory.this, e.getPosition(), e.getSize(), mapping.getKey(),
+                                e.getHitCount(), e.getExpiry());
+                        markUsed(marker);
+                        if (store.putRawIfAbsent(mapping.getKey(), marker)) {
+                            onDisk.incrementAndGet();
+                            indexExpiry(marker);
+                        } else {
+                            // the disk pool is full
+                            free(marker);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks, loaders);
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, ExecutorService executor) throws Exception {
+        if (executor == null) {
+            for (Callable<Void> task : tasks) {
+                task.call();
+            }
+        } else {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Return the index file for this store.
      * @return the index file
@@ -85,6 +85,7 @@ public final class DiskStore extends AbstractStore implements TierableStore, Poo
     private static final int SLEEP_INTERVAL_MS = 10;
 
     private final DiskStorageFactory disk;
+    private volatile DiskStoreStatistics mbean;
     private final Random rndm = new Random();
     private final Segment[] segments;
     private final int segmentShift;
@@ -405,11 +406,61 @@ public final class DiskStore extends AbstractStore implements TierableStore, Poo
         return disk.getIndexFile();
     }
 
+    /**
+     * Return the number of serialized elements waiting to be written to the data file.
+     *
+     * @return the disk write queue depth
+     */
+    public int getDiskWriteQueueDepth() {
+        return disk.getWriteQueueDepth();
+    }
+
+    /**
+     * Return the average number of elements written to the data file per group.
+     *
+     * @return the average disk write group size
+     */
+    public float getAverageDiskWriteGroupSize() {
+        return disk.getAverageWriteGroupSize();
+    }
+
+    /**
+     * Return the largest number of elements written to the data file in a single group.
+     *
+     * @return the largest disk write group size
+     */
+    public int getLargestDiskWriteGroupSize() {
+        return disk.getLargestWriteGroupSize();
+    }
+
+    /**
+     * Return the fraction of the data file not occupied by elements.
+     *
+     * @return the data file fragmentation ratio
+     */
+    public float getFragmentationRatio() {
+        return disk.getFragmentationRatio();
+    }
+
+    /**
+     * Compact the data file, relocating elements towards its start and truncating the freed tail.
+     *
+     * @return the number of bytes relocated
+     */
+    public long compact() {
+        return disk.compact();
+    }
+
     /**
      * {@inheritDoc}
      */
     public Object getMBean() {
-        return null;
+        DiskStoreStatistics bean = mbean;
+        if (bean == null) {
+            bean = new DiskStoreStatistics(disk);
+            mbean = bean;
+        }
+        return bean;
     }
 
     /**
@@ -502,6 +553,19 @@ public final class DiskStore extends AbstractStore implements TierableStore, Poo
         return segmentFor(hash).putRawIfAbsent(key, hash, encoded);
     }
 
+    /**
+     * Replace the marker mapped to the given key with a relocated copy, if the key is still mapped to it.
+     *
+     * @param key key to which the marker is mapped
+     * @param expect marker expected
+     * @param relocated marker to install
+     * @return <code>true</code> if <code>relocated</code> was installed
+     */
+    boolean relocate(Object key, DiskMarker expect, DiskMarker relocated) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).relocate(key, hash, expect, relocated);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -897,6 +961,25 @@ public final class DiskStore extends AbstractStore implements TierableStore, Poo
         return segments[hash >>> segmentShift];
     }
 
+    /**
+     * Return the index of the segment the given key maps to.
+     *
+     * @param key the key
+     * @return the segment index
+     */
+    int getSegmentIndexFor(Object key) {
+        return hash(key.hashCode()) >>> segmentShift;
+    }
+
+    /**
+     * Return the number of segments in this store.
+     *
+     * @return the number of segments
+     */
+    int getSegmentCount() {
+        return segments.length;
+    }
+
     /**
      * Key set implementation for the DiskStore
      */
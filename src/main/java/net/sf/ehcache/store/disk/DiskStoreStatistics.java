@@ -0,0 +1,105 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.store.disk;
+
+/**
+ * Management bean for a disk store's data file.
+ */
+public class DiskStoreStatistics implements DiskStoreStatisticsMBean {
+
+    private final DiskStorageFactory disk;
+
+    /**
+     * Create a management bean over the given disk storage factory.
+     *
+     * @param disk the factory backing the disk store
+     */
+    DiskStoreStatistics(DiskStorageFactory disk) {
+        this.disk = disk;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOnDiskSize() {
+        return disk.getOnDiskSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDataFileSize() {
+        return disk.getOnDiskSizeInBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOccupiedSize() {
+        return disk.getOccupiedSizeInBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getFragmentationRatio() {
+        return disk.getFragmentationRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getWriteQueueDepth() {
+        return disk.getWriteQueueDepth();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getAverageWriteGroupSize() {
+        return disk.getAverageWriteGroupSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getLargestWriteGroupSize() {
+        return disk.getLargestWriteGroupSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCompactionCount() {
+        return disk.getCompactionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getRelocatedByteCount() {
+        return disk.getRelocatedByteCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long compact() {
+        return disk.compact();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.store.disk;
+
+/**
+ * Management interface exposing the state of a disk store's data file.
+ */
+public interface DiskStoreStatisticsMBean {
+
+    /**
+     * Return the number of elements on disk.
+     *
+     * @return the on-disk element count
+     */
+    int getOnDiskSize();
+
+    /**
+     * Return the length of the data file.
+     *
+     * @return the data file size in bytes
+     */
+    long getDataFileSize();
+
+    /**
+     * Return the number of bytes of the data file occupied by elements.
+     *
+     * @return the occupied size in bytes
+     */
+    long getOccupiedSize();
+
+    /**
+     * Return the fraction of the data file not occupied by elements.
+     *
+     * @return the fragmentation ratio, between 0 and 1
+     */
+    float getFragmentationRatio();
+
+    /**
+     * Return the number of serialized elements waiting to be written to the data file.
+     *
+     * @return the disk write queue depth
+     */
+    int getWriteQueueDepth();
+
+    /**
+     * Return the average number of elements written to the data file per group.
+     *
+     * @return the average write group size
+     */
+    float getAverageWriteGroupSize();
+
+    /**
+     * Return the largest number of elements written to the data file in a single group.
+     *
+     * @return the largest write group size
+     */
+    int getLargestWriteGroupSize();
+
+    /**
+     * Return the number of compaction runs completed.
+     *
+     * @return the compaction count
+     */
+    long getCompactionCount();
+
+    /**
+     * Return the total number of bytes relocated by compaction.
+     *
+     * @return the relocated byte count
+     */
+    long getRelocatedByteCount();
+
+    /**
+     * Compact the data file now.
+     *
+     * @return the number of bytes relocated
+     */
+    long compact();
+}
@@ -821,6 +821,40 @@ public class Segment extends ReentrantReadWriteLock {
         }
     }
 
+    /**
+     * Replace the disk marker mapped to the given key with the same data relocated elsewhere in the data file.
+     * <p>
+     * A successful switch frees the old marker's region. A failed switch, because the key is no longer mapped to
+     * {@code expect}, leaves freeing the relocated marker to the caller.
+     *
+     * @param key key to which the marker is mapped
+     * @param hash the hash of the key
+     * @param expect marker expected
+     * @param relocated marker to install
+     * @return <code>true</code> if <code>relocated</code> was installed
+     */
+    boolean relocate(Object key, int hash, DiskMarker expect, DiskMarker relocated) {
+        writeLock().lock();
+        try {
+            for (HashEntry e = getFirst(hash); e != null; e = e.next) {
+                if (e.hash == hash && key.equals(e.key)) {
+                    if (e.element != expect) {
+                        return false;
+                    }
+                    relocated.onHeapSize = expect.onHeapSize;
+                    relocated.copyStatistics(expect);
+                    e.element = relocated;
+                    // the relocated marker takes over the on-disk count of the one it replaces
+                    free(expect, true);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
     private void notifyEviction(final Element evicted) {
         if (evicted != null) {
             cacheEventNotificationService.notifyElementEvicted(evicted, false);
@@ -31,6 +31,7 @@ public final class FileAllocationTree extends RegionSet {
     private static final Logger LOGGER = LoggerFactory.getLogger(FileAllocationTree.class);
     
     private long fileSize;
+    private long occupied;
     private final RandomAccessFile data;
 
     /**
@@ -50,6 +51,17 @@ public final class FileAllocationTree extends RegionSet {
         return r;
     }
 
+    /**
+     * Allocate a new region of the given size lying wholly below the given limit, or return null if there is none.
+     */
+    public synchronized Region allocBelow(long size, long limit) {
+        Region r = findBelow(size, limit);
+        if (r != null) {
+            mark(r);
+        }
+        return r;
+    }
+
     /**
      * Mark this region as used
      */
@@ -65,6 +77,7 @@ public final class FileAllocationTree extends RegionSet {
         } else if (!current.isNull()) {
             add(current);
         }
+        occupied += r.size();
         checkGrow(r);
     }
 
@@ -72,6 +85,7 @@ public final class FileAllocationTree extends RegionSet {
      * Mark this region as free.
      */
     public synchronized void free(Region r) {
+        occupied -= r.size();
         // Step 1 : Check if the previous number is present, if so add to the same Range.
         Region prev = removeAndReturn(Long.valueOf(r.start() - 1));
         if (prev != null) {
@@ -105,6 +119,7 @@ public final class FileAllocationTree extends RegionSet {
     @Override
     public synchronized void clear() {
         super.clear();
+        occupied = 0;
     }
 
     private void checkGrow(Region alloc) {
@@ -145,4 +160,11 @@ public final class FileAllocationTree extends RegionSet {
     public synchronized long getFileSize() {
         return fileSize;
     }
+
+    /**
+     * Return the number of bytes currently allocated.
+     */
+    public synchronized long getOccupiedSize() {
+        return occupied;
+    }
 }
@@ -82,4 +82,35 @@ class RegionSet extends AATreeSet<Region> {
             }
         }
     }
+
+    /**
+     * Find the lowest addressed region of the given size lying wholly below the given limit.
+     *
+     * @return the region, or {@code null} if there is none
+     */
+    public Region findBelow(long size, long limit) {
+        Region r = findLowest(getRoot(), size, limit);
+        if (r != null) {
+            return new Region(r.start(), r.start() + size - 1);
+        } else {
+            return null;
+        }
+    }
+
+    private Region findLowest(Node<Region> node, long size, long limit) {
+        Region current = node.getPayload();
+        if (current == null || current.contiguous() < size) {
+            return null;
+        }
+        Region left = findLowest(node.getLeft(), size, limit);
+        if (left != null) {
+            return left;
+        } else if (current.start() + size > limit) {
+            return null;
+        } else if (current.size() >= size) {
+            return current;
+        } else {
+            return findLowest(node.getRight(), size, limit);
+        }
+    }
 }
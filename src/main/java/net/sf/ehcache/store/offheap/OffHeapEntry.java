@@ -0,0 +1,108 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.pool.sizeof.annotations.IgnoreSizeOf;
+
+/**
+ * Internal entry structure used by the {@link OffHeapSegment} class.
+ * <p>
+ * Only the key and this small record live on the heap, the serialized element lives in the
+ * {@link OffHeapStorageArea}. All fields other than the statistics are guarded by the owning segment's lock.
+ */
+final class OffHeapEntry {
+
+    /**
+     * Key instance for this mapping.
+     */
+    @IgnoreSizeOf
+    final Object key;
+
+    /**
+     * Spread hash value for the key.
+     */
+    final int hash;
+
+    /**
+     * Size of the serialized element.
+     */
+    final int size;
+
+    /**
+     * Next entry in this hash chain.
+     */
+    @IgnoreSizeOf
+    OffHeapEntry next;
+
+    /**
+     * Address of the serialized element in the storage area.
+     */
+    long address = -1;
+
+    /**
+     * Cached size of this mapping on the Java heap.
+     */
+    long onHeapSize;
+
+    private volatile long hitCount;
+    private volatile long expiry;
+
+    /**
+     * Create an entry for the given element, serialized to {@code size} bytes.
+     *
+     * @param key key of the element
+     * @param hash spread-hash of the key
+     * @param size serialized size of the element
+     * @param element element being stored
+     */
+    OffHeapEntry(Object key, int hash, int size, Element element) {
+        this.key = key;
+        this.hash = hash;
+        this.size = size;
+        this.hitCount = element.getHitCount();
+        this.expiry = element.getExpirationTime();
+    }
+
+    /**
+     * Return the total number of hits on this entry
+     *
+     * @return the total number of hits on this entry
+     */
+    long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Return the time at which this entry expires.
+     *
+     * @return the time at which this entry expires.
+     */
+    long getExpirationTime() {
+        return expiry;
+    }
+
+    /**
+     * Increment statistic associated with a hit on this entry.
+     *
+     * @param e element deserialized from this entry
+     */
+    void hit(Element e) {
+        hitCount++;
+        expiry = e.getExpirationTime();
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.FrontEndCacheTier;
+
+/**
+ * Segment implementation used in {@link OffHeapStore}.
+ * <p>
+ * The segment extends ReentrantReadWriteLock to allow read locking on read operations. Entries are only ever
+ * read under the read lock and freed under the write lock, so a region of the storage area can never be reused
+ * while a reader is still deserializing from it.
+ */
+final class OffHeapSegment extends ReentrantReadWriteLock {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAXIMUM_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    /**
+     * Count of entries in this segment.
+     */
+    volatile int count;
+
+    /**
+     * Mod-count used to track concurrent modifications when doing size calculations.
+     */
+    int modCount;
+
+    private final OffHeapStore store;
+    private final RegisteredEventListeners cacheEventNotificationService;
+
+    private OffHeapEntry[] table;
+    private int threshold;
+
+    /**
+     * Create a segment with the given initial capacity.
+     *
+     * @param initialCapacity initial capacity of the segment
+     * @param store store owning this segment
+     * @param cacheEventNotificationService service used to fire eviction events
+     */
+    OffHeapSegment(int initialCapacity, OffHeapStore store, RegisteredEventListeners cacheEventNotificationService) {
+        this.store = store;
+        this.cacheEventNotificationService = cacheEventNotificationService;
+        this.table = new OffHeapEntry[initialCapacity];
+        this.threshold = (int) (table.length * LOAD_FACTOR);
+    }
+
+    private OffHeapEntry find(Object key, int hash) {
+        OffHeapEntry e = table[hash & (table.length - 1)];
+        while (e != null && (e.hash != hash || !key.equals(e.key))) {
+            e = e.next;
+        }
+        return e;
+    }
+
+    /**
+     * Get the element mapped to this key (or null if there is no mapping for this key)
+     *
+     * @param key key to lookup
+     * @param hash spread-hash for this key
+     * @return mapped element
+     */
+    Element get(Object key, int hash) {
+        readLock().lock();
+        try {
+            if (count != 0) {
+                OffHeapEntry e = find(key, hash);
+                if (e != null) {
+                    store.hit();
+                    Element element = store.decode(e);
+                    e.hit(element);
+                    return element;
+                }
+            }
+            store.miss();
+            return null;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the element mapped to this key without updating any statistics
+     *
+     * @param key key to lookup
+     * @param hash spread-hash for this key
+     * @return mapped element
+     */
+    Element getQuiet(Object key, int hash) {
+        readLock().lock();
+        try {
+            if (count != 0) {
+                OffHeapEntry e = find(key, hash);
+                if (e != null) {
+                    return store.decode(e);
+                }
+            }
+            return null;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Return true if this segment contains a mapping for this key
+     *
+     * @param key key to check for
+     * @param hash spread-hash for key
+     * @return <code>true</code> if there is a mapping for this key
+     */
+    boolean containsKey(Object key, int hash) {
+        readLock().lock();
+        try {
+            return count != 0 && find(key, hash) != null;
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Install the supplied encoded entry, replacing (and freeing) any existing mapping without decoding it.
+     *
+     * @param encoded encoded entry to install
+     * @return <code>true</code> if there was no previous mapping for this key
+     */
+    boolean install(OffHeapEntry encoded) {
+        writeLock().lock();
+        try {
+            OffHeapEntry existing = find(encoded.key, encoded.hash);
+            if (existing == null) {
+                link(encoded);
+                return true;
+            } else {
+                swap(existing, encoded);
+                return false;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the supplied encoded mapping.
+     * <p>
+     * If <code>onlyIfAbsent</code> is set then the mapping will only be added if no element is currently mapped to
+     * that key, otherwise the supplied entry is freed.
+     *
+     * @param encoded encoded entry to install
+     * @param onlyIfAbsent if true does not replace existing mappings
+     * @return previous element mapped to this key
+     */
+    Element put(OffHeapEntry encoded, boolean onlyIfAbsent) {
+        writeLock().lock();
+        try {
+            OffHeapEntry existing = find(encoded.key, encoded.hash);
+            if (existing == null) {
+                link(encoded);
+                return null;
+            } else {
+                Element old = store.decode(existing);
+                if (onlyIfAbsent) {
+                    store.free(encoded);
+                } else {
+                    swap(existing, encoded);
+                }
+                return old;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the entry for this key only if currently mapped to an element equal to <code>oldElement</code>.
+     *
+     * @param oldElement expected element
+     * @param encoded encoded entry to install
+     * @param comparator the comparator to use to compare values
+     * @return <code>true</code> on a successful replace
+     */
+    boolean replace(Element oldElement, OffHeapEntry encoded, ElementValueComparator comparator) {
+        writeLock().lock();
+        try {
+            OffHeapEntry existing = find(encoded.key, encoded.hash);
+            if (existing != null && comparator.equals(oldElement, store.decode(existing))) {
+                swap(existing, encoded);
+                return true;
+            } else {
+                store.free(encoded);
+                return false;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the entry for this key only if currently mapped to some element.
+     *
+     * @param encoded encoded entry to install
+     * @return previous element mapped to this key
+     */
+    Element replace(OffHeapEntry encoded) {
+        writeLock().lock();
+        try {
+            OffHeapEntry existing = find(encoded.key, encoded.hash);
+            if (existing != null) {
+                Element old = store.decode(existing);
+                swap(existing, encoded);
+                return old;
+            } else {
+                store.free(encoded);
+                return null;
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the mapping for this key, if its value matches the supplied element (when one is given).
+     *
+     * @param key key to remove
+     * @param hash spread-hash for the key
+     * @param expect optional element to match against
+     * @param comparator comparator used to match the element
+     * @return the removed element, or null if nothing was removed
+     */
+    Element remove(Object key, int hash, Element expect, ElementValueComparator comparator) {
+        writeLock().lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+            OffHeapEntry e = find(key, hash);
+            if (e == null) {
+                return null;
+            }
+            Element old = store.decode(e);
+            if (expect != null && !comparator.equals(expect, old)) {
+                return null;
+            }
+            unlink(e);
+            store.free(e);
+            return old;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the mapping for this key without decoding it.
+     *
+     * @param key key to remove
+     * @param hash spread-hash for the key
+     */
+    void removeNoReturn(Object key, int hash) {
+        writeLock().lock();
+        try {
+            if (count != 0) {
+                OffHeapEntry e = find(key, hash);
+                if (e != null) {
+                    unlink(e);
+                    store.free(e);
+                }
+            }
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the mapping if it is still the supplied entry. Unlike {@link #remove(Object, int, Element, ElementValueComparator)}
+     * this does referential comparison and gives up if the segment lock is contended.
+     *
+     * @param key key to match against
+     * @param hash spread-hash for the key
+     * @param expect optional entry to match against
+     * @param notify whether to fire an eviction event
+     * @return the evicted element, or null if nothing was evicted
+     */
+    Element evict(Object key, int hash, OffHeapEntry expect, boolean notify) {
+        if (!writeLock().tryLock()) {
+            return null;
+        }
+        Element evicted = null;
+        try {
+            OffHeapEntry e = find(key, hash);
+            if (e != null && (expect == null || expect == e)) {
+                evicted = store.decode(e);
+                FrontEndCacheTier frontEndCacheTier = cacheEventNotificationService.getFrontEndCacheTier();
+                if (frontEndCacheTier == null || frontEndCacheTier.isEvictionCandidate(evicted)) {
+                    unlink(e);
+                    store.free(e);
+                } else {
+                    evicted = null;
+                }
+            }
+            return evicted;
+        } finally {
+            writeLock().unlock();
+            if (notify && evicted != null) {
+                cacheEventNotificationService.notifyElementEvicted(evicted, false);
+            }
+        }
+    }
+
+    /**
+     * Remove and free all entries in this segment.
+     */
+    void clear() {
+        writeLock().lock();
+        try {
+            for (OffHeapEntry head : table) {
+                for (OffHeapEntry e = head; e != null; e = e.next) {
+                    store.free(e);
+                }
+            }
+            table = new OffHeapEntry[table.length];
+            ++modCount;
+            count = 0;
+        } finally {
+            writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a random sample of this segment's entries to the supplied collection.
+     *
+     * @param sampleSize number of entries wanted in the collection
+     * @param sampled collection in which to place the entries
+     * @param seed random seed for the selection
+     */
+    void addRandomSample(int sampleSize, Collection<OffHeapEntry> sampled, int seed) {
+        readLock().lock();
+        try {
+            if (count == 0) {
+                return;
+            }
+            final OffHeapEntry[] tab = table;
+            final int tableStart = seed & (tab.length - 1);
+            int tableIndex = tableStart;
+            do {
+                for (OffHeapEntry e = tab[tableIndex]; e != null; e = e.next) {
+                    sampled.add(e);
+                }
+                if (sampled.size() >= sampleSize) {
+                    return;
+                }
+                tableIndex = (tableIndex + 1) & (tab.length - 1);
+            } while (tableIndex != tableStart);
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Add all entries that expired before the given time to the supplied collection.
+     *
+     * @param now current time
+     * @param expired collection in which to place the entries
+     */
+    void addExpired(long now, Collection<OffHeapEntry> expired) {
+        readLock().lock();
+        try {
+            for (OffHeapEntry head : table) {
+                for (OffHeapEntry e = head; e != null; e = e.next) {
+                    if (e.getExpirationTime() < now) {
+                        expired.add(e);
+                    }
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    /**
+     * Add all keys mapped in this segment to the supplied collection.
+     *
+     * @param keys collection in which to place the keys
+     */
+    void addKeys(Collection<Object> keys) {
+        readLock().lock();
+        try {
+            for (OffHeapEntry head : table) {
+                for (OffHeapEntry e = head; e != null; e = e.next) {
+                    keys.add(e.key);
+                }
+            }
+        } finally {
+            readLock().unlock();
+        }
+    }
+
+    private void link(OffHeapEntry encoded) {
+        if (count + 1 > threshold) {
+            rehash();
+        }
+        int index = encoded.hash & (table.length - 1);
+        encoded.next = table[index];
+        table[index] = encoded;
+        ++modCount;
+        count = count + 1;
+    }
+
+    private void unlink(OffHeapEntry e) {
+        int index = e.hash & (table.length - 1);
+        if (table[index] == e) {
+            table[index] = e.next;
+        } else {
+            OffHeapEntry p = table[index];
+            while (p.next != e) {
+                p = p.next;
+            }
+            p.next = e.next;
+        }
+        e.next = null;
+        ++modCount;
+        count = count - 1;
+    }
+
+    private void swap(OffHeapEntry existing, OffHeapEntry replacement) {
+        int index = existing.hash & (table.length - 1);
+        replacement.next = existing.next;
+        if (table[index] == existing) {
+            table[index] = replacement;
+        } else {
+            OffHeapEntry p = table[index];
+            while (p.next != existing) {
+                p = p.next;
+            }
+            p.next = replacement;
+        }
+        existing.next = null;
+        store.free(existing);
+    }
+
+    private void rehash() {
+        OffHeapEntry[] oldTable = table;
+        int oldCapacity = oldTable.length;
+        if (oldCapacity >= MAXIMUM_CAPACITY) {
+            return;
+        }
+        OffHeapEntry[] newTable = new OffHeapEntry[oldCapacity << 1];
+        int sizeMask = newTable.length - 1;
+        for (OffHeapEntry head : oldTable) {
+            OffHeapEntry e = head;
+            while (e != null) {
+                OffHeapEntry next = e.next;
+                int index = e.hash & sizeMask;
+                e.next = newTable[index];
+                newTable[index] = e;
+                e = next;
+            }
+        }
+        table = newTable;
+        threshold = (int) (newTable.length * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.store.disk.ods.FileAllocationTree;
+import net.sf.ehcache.store.disk.ods.Region;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded area of memory outside the Java heap, handing out regions with C-like alloc/free semantics.
+ * <p>
+ * Memory is reserved lazily in fixed-size chunks of direct {@link ByteBuffer}s, so an empty store costs nothing.
+ * Free space in each chunk is tracked by its own {@link FileAllocationTree} - the same AA-tree used for the disk
+ * store data file - which keeps allocation logarithmic and coalesces adjacent free regions.
+ * <p>
+ * Addresses encode the chunk index in their upper 32 bits and the offset within the chunk in the lower 32 bits.
+ * The total capacity is limited by {@code -XX:MaxDirectMemorySize} as well as by the configured maximum size.
+ */
+final class OffHeapStorageArea {
+
+    /**
+     * Default size of the direct buffers backing this area.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapStorageArea.class.getName());
+
+    private static final int OFFSET_BITS = 32;
+    private static final long OFFSET_MASK = 0xffffffffL;
+
+    private final long maxSize;
+    private final int chunkSize;
+    private final int maxChunks;
+    private final AtomicLong occupied = new AtomicLong();
+
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * Create a storage area able to hold up to {@code maxSize} bytes.
+     *
+     * @param maxSize maximum number of bytes reserved by this area
+     */
+    OffHeapStorageArea(long maxSize) {
+        this(maxSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a storage area able to hold up to {@code maxSize} bytes, reserved in chunks of {@code chunkSize} bytes.
+     *
+     * @param maxSize maximum number of bytes reserved by this area
+     * @param chunkSize size of the individual direct buffers
+     */
+    OffHeapStorageArea(long maxSize, int chunkSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Off-heap storage size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.chunkSize = (int) Math.min(chunkSize, maxSize);
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, (maxSize + this.chunkSize - 1) / this.chunkSize);
+    }
+
+    /**
+     * Allocate a region of the given size.
+     *
+     * @param size number of bytes required
+     * @return the address of the region, or {@code -1} if no free region of that size is available
+     */
+    long allocate(int size) {
+        if (size > chunkSize) {
+            return -1;
+        }
+        Chunk[] current = chunks;
+        for (int i = 0; i < current.length; i++) {
+            long offset = current[i].allocate(size);
+            if (offset >= 0) {
+                occupied.addAndGet(size);
+                return address(i, offset);
+            }
+        }
+        return allocateInNewChunk(size, current.length);
+    }
+
+    private synchronized long allocateInNewChunk(int size, int seen) {
+        Chunk[] current = chunks;
+        for (int i = seen; i < current.length; i++) {
+            long offset = current[i].allocate(size);
+            if (offset >= 0) {
+                occupied.addAndGet(size);
+                return address(i, offset);
+            }
+        }
+        if (current.length >= maxChunks) {
+            return -1;
+        }
+        int index = current.length;
+        int newChunkSize = (int) Math.min(chunkSize, maxSize - ((long) index * chunkSize));
+        if (newChunkSize < size) {
+            return -1;
+        }
+        Chunk[] grown = new Chunk[index + 1];
+        System.arraycopy(current, 0, grown, 0, index);
+        try {
+            grown[index] = new Chunk(newChunkSize);
+        } catch (OutOfMemoryError e) {
+            LOG.warn("Could not reserve {} bytes of direct memory, consider raising -XX:MaxDirectMemorySize", newChunkSize);
+            return -1;
+        }
+        long offset = grown[index].allocate(size);
+        chunks = grown;
+        occupied.addAndGet(size);
+        return address(index, offset);
+    }
+
+    /**
+     * Release the region at the given address.
+     *
+     * @param address address of the region
+     * @param size size of the region
+     */
+    void free(long address, int size) {
+        chunkFor(address).free(offsetOf(address), size);
+        occupied.addAndGet(-size);
+    }
+
+    /**
+     * Copy the given bytes into the region at the given address.
+     *
+     * @param address address of the region
+     * @param data source array
+     * @param length number of bytes to copy from the start of the array
+     */
+    void write(long address, byte[] data, int length) {
+        ByteBuffer view = chunkFor(address).buffer.duplicate();
+        view.position((int) offsetOf(address));
+        view.put(data, 0, length);
+    }
+
+    /**
+     * Return a read-only view of the region at the given address.
+     * <p>
+     * The view is only valid for as long as the region remains allocated.
+     *
+     * @param address address of the region
+     * @param size size of the region
+     * @return a buffer positioned over the region
+     */
+    ByteBuffer read(long address, int size) {
+        ByteBuffer view = chunkFor(address).buffer.asReadOnlyBuffer();
+        int offset = (int) offsetOf(address);
+        view.limit(offset + size).position(offset);
+        return view;
+    }
+
+    /**
+     * Release all memory reserved by this area.
+     * <p>
+     * The direct buffers are returned to the operating system once they are garbage collected. No address handed out
+     * before this call may be used afterwards.
+     */
+    synchronized void destroy() {
+        chunks = new Chunk[0];
+        occupied.set(0);
+    }
+
+    /**
+     * Return the number of bytes currently handed out by this area.
+     *
+     * @return the number of allocated bytes
+     */
+    long getOccupiedSize() {
+        return occupied.get();
+    }
+
+    /**
+     * Return the number of bytes of direct memory currently reserved by this area.
+     *
+     * @return the number of reserved bytes
+     */
+    long getReservedSize() {
+        long reserved = 0;
+        for (Chunk chunk : chunks) {
+            reserved += chunk.buffer.capacity();
+        }
+        return reserved;
+    }
+
+    /**
+     * Return the largest region this area could ever allocate.
+     *
+     * @return the maximum allocation size
+     */
+    int getMaximumAllocationSize() {
+        return chunkSize;
+    }
+
+    private Chunk chunkFor(long address) {
+        return chunks[(int) (address >>> OFFSET_BITS)];
+    }
+
+    private static long offsetOf(long address) {
+        return address & OFFSET_MASK;
+    }
+
+    private static long address(int chunk, long offset) {
+        return ((long) chunk << OFFSET_BITS) | offset;
+    }
+
+    /**
+     * A single direct buffer and the tree tracking its free space.
+     */
+    private static final class Chunk {
+
+        private final ByteBuffer buffer;
+        private final FileAllocationTree allocator;
+
+        private Chunk(int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+            this.allocator = new FileAllocationTree(size, null);
+        }
+
+        private long allocate(int size) {
+            try {
+                return allocator.alloc(size).start();
+            } catch (IllegalArgumentException e) {
+                return -1;
+            }
+        }
+
+        private void free(long offset, int size) {
+            allocator.free(new Region(offset, offset + size - 1));
+        }
+    }
+}
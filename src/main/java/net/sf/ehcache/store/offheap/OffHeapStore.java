@@ -0,0 +1,845 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.store.offheap;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.PinningConfiguration;
+import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import net.sf.ehcache.event.RegisteredEventListeners;
+import net.sf.ehcache.pool.OffHeapPoolableStore;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.PoolAccessor;
+import net.sf.ehcache.serialization.BufferPool;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.store.AbstractStore;
+import net.sf.ehcache.store.ElementValueComparator;
+import net.sf.ehcache.store.Policy;
+import net.sf.ehcache.store.TierableStore;
+import net.sf.ehcache.store.disk.StoreUpdateException;
+import net.sf.ehcache.util.ByteBufferInputStream;
+import net.sf.ehcache.util.ratestatistics.AtomicRateStatistic;
+import net.sf.ehcache.util.ratestatistics.RateStatistic;
+import net.sf.ehcache.writer.CacheWriterManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A store keeping serialized elements in direct {@link java.nio.ByteBuffer}s outside the Java heap.
+ * <p>
+ * Only keys and a small per-mapping record are kept on heap, which allows caches far larger than the heap
+ * without adding to garbage collection pressure. Elements are serialized when stored and deserialized on every
+ * read, so this store is intended to be fronted by a {@link net.sf.ehcache.store.MemoryStore} holding the hot set.
+ * <p>
+ * Off-heap usage is bounded by the pool this store is created with, and by {@code -XX:MaxDirectMemorySize}.
+ */
+public final class OffHeapStore extends AbstractStore implements TierableStore, OffHeapPoolableStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapStore.class.getName());
+
+    private static final int FFFFCD7D = 0xffffcd7d;
+    private static final int FIFTEEN = 15;
+    private static final int TEN = 10;
+    private static final int THREE = 3;
+    private static final int SIX = 6;
+    private static final int FOURTEEN = 14;
+    private static final int SIXTEEN = 16;
+
+    private static final int RETRIES_BEFORE_LOCK = 2;
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int DEFAULT_SEGMENT_COUNT = 64;
+    private static final int SAMPLE_SIZE = 30;
+    private static final int MAX_EVICTION_RATIO = 5;
+    private static final int MAX_ALLOCATION_ATTEMPTS = 8;
+
+    private final OffHeapStorageArea storage;
+    private final Random rndm = new Random();
+    private final OffHeapSegment[] segments;
+    private final int segmentShift;
+    private final AtomicReference<Status> status = new AtomicReference<Status>(Status.STATUS_UNINITIALISED);
+    private final boolean tierPinned;
+    private final RegisteredEventListeners eventService;
+    private final Serializer serializer;
+    private final RateStatistic hitRate = new AtomicRateStatistic(1000, TimeUnit.MILLISECONDS);
+    private final RateStatistic missRate = new AtomicRateStatistic(1000, TimeUnit.MILLISECONDS);
+
+    private volatile PoolAccessor onHeapPoolAccessor;
+    private volatile PoolAccessor offHeapPoolAccessor;
+
+    private OffHeapStore(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        this.segments = new OffHeapSegment[DEFAULT_SEGMENT_COUNT];
+        this.segmentShift = Integer.numberOfLeadingZeros(segments.length - 1);
+        this.eventService = cache.getCacheEventNotificationService();
+        this.serializer = cache.getCacheConfiguration().getSerializer();
+        this.onHeapPoolAccessor = onHeapPool.createPoolAccessor(this,
+            SizeOfPolicyConfiguration.resolveMaxDepth(cache),
+            SizeOfPolicyConfiguration.resolveBehavior(cache).equals(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT));
+        this.offHeapPoolAccessor = offHeapPool.createPoolAccessor(this, new OffHeapSizeOfEngine());
+        this.storage = new OffHeapStorageArea(offHeapPool.getMaxSize());
+
+        for (int i = 0; i < this.segments.length; ++i) {
+            this.segments[i] = new OffHeapSegment(DEFAULT_INITIAL_CAPACITY, this, eventService);
+        }
+
+        PinningConfiguration pinningConfiguration = cache.getCacheConfiguration().getPinningConfiguration();
+        this.tierPinned = pinningConfiguration != null
+                && (pinningConfiguration.getStore() == PinningConfiguration.Store.INCACHE
+                    || pinningConfiguration.getStore() == PinningConfiguration.Store.LOCALMEMORY);
+        this.status.set(Status.STATUS_ALIVE);
+    }
+
+    /**
+     * Creates an off-heap store for the given cache.
+     *
+     * @param cache cache that fronts this store
+     * @param onHeapPool pool to track heap usage
+     * @param offHeapPool pool to track off-heap usage, its maximum size bounds the memory reserved by this store
+     * @return a fully initialized store
+     */
+    public static OffHeapStore create(Ehcache cache, Pool onHeapPool, Pool offHeapPool) {
+        if (offHeapPool.getMaxSize() <= 0) {
+            throw new CacheException("Cache " + cache.getName() + " must be configured with a positive maxBytesLocalOffHeap");
+        }
+        return new OffHeapStore(cache, onHeapPool, offHeapPool);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void unpinAll() {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isPinned(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setPinned(Object key, boolean pinned) {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void fill(Element e) {
+        put(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean removeIfNotPinned(final Object key) {
+        return !tierPinned && remove(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isTierPinned() {
+        return tierPinned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set getPresentPinnedKeys() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean put(Element element) {
+        if (element == null) {
+            return false;
+        }
+        OffHeapEntry encoded = encode(element);
+        if (encoded == null) {
+            removeNoReturn(element.getObjectKey());
+            return true;
+        }
+        return segmentFor(encoded.hash).install(encoded);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean putWithWriter(Element element, CacheWriterManager writerManager) {
+        boolean newPut = put(element);
+        if (writerManager != null) {
+            try {
+                writerManager.put(element);
+            } catch (RuntimeException e) {
+                throw new StoreUpdateException(e, !newPut);
+            }
+        }
+        return newPut;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element get(Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element getQuiet(Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).getQuiet(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getKeys() {
+        List<Object> keys = new ArrayList<Object>(getSize());
+        for (OffHeapSegment s : segments) {
+            s.addKeys(keys);
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).remove(key, hash, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeNoReturn(Object key) {
+        if (key != null) {
+            int hash = hash(key.hashCode());
+            segmentFor(hash).removeNoReturn(key, hash);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeWithWriter(Object key, CacheWriterManager writerManager) {
+        Element removed = remove(key);
+        if (writerManager != null) {
+            writerManager.remove(new CacheEntry(key, removed));
+        }
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        for (OffHeapSegment s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element putIfAbsent(Element element) throws NullPointerException {
+        OffHeapEntry encoded = encode(element);
+        if (encoded == null) {
+            return null;
+        }
+        return segmentFor(encoded.hash).put(encoded, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element removeElement(Element element, ElementValueComparator comparator) throws NullPointerException {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).remove(key, hash, element, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean replace(Element old, Element element, ElementValueComparator comparator)
+            throws NullPointerException, IllegalArgumentException {
+        OffHeapEntry encoded = encode(element);
+        if (encoded == null) {
+            return removeElement(old, comparator) != null;
+        }
+        return segmentFor(encoded.hash).replace(old, encoded, comparator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Element replace(Element element) throws NullPointerException {
+        OffHeapEntry encoded = encode(element);
+        if (encoded == null) {
+            return remove(element.getObjectKey());
+        }
+        return segmentFor(encoded.hash).replace(encoded);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose() {
+        if (status.compareAndSet(Status.STATUS_ALIVE, Status.STATUS_SHUTDOWN)) {
+            onHeapPoolAccessor.unlink();
+            offHeapPoolAccessor.unlink();
+            storage.destroy();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        final OffHeapSegment[] segs = this.segments;
+        long size = -1;
+        // Try a few times to get accurate count. On failure due to
+        // continuous async changes in table, resort to locking.
+        for (int k = 0; k < RETRIES_BEFORE_LOCK; ++k) {
+            size = volatileSize(segs);
+            if (size >= 0) {
+                break;
+            }
+        }
+        if (size < 0) {
+            // Resort to locking all segments
+            size = lockedSize(segs);
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        } else {
+            return (int) size;
+        }
+    }
+
+    private static long volatileSize(OffHeapSegment[] segs) {
+        int[] mc = new int[segs.length];
+        long check = 0;
+        long sum = 0;
+        int mcsum = 0;
+        for (int i = 0; i < segs.length; ++i) {
+            sum += segs[i].count;
+            mc[i] = segs[i].modCount;
+            mcsum += mc[i];
+        }
+        if (mcsum != 0) {
+            for (int i = 0; i < segs.length; ++i) {
+                check += segs[i].count;
+                if (mc[i] != segs[i].modCount) {
+                    return -1;
+                }
+            }
+        }
+        if (check == sum) {
+            return sum;
+        } else {
+            return -1;
+        }
+    }
+
+    private static long lockedSize(OffHeapSegment[] segs) {
+        long size = 0;
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().lock();
+        }
+        for (OffHeapSegment seg : segs) {
+            size += seg.count;
+        }
+        for (OffHeapSegment seg : segs) {
+            seg.readLock().unlock();
+        }
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getInMemorySize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOffHeapSize() {
+        return getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getOnDiskSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTerracottaClusteredSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getInMemorySizeInBytes() {
+        long size = onHeapPoolAccessor.getSize();
+        if (size < 0) {
+            return 0;
+        } else {
+            return size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOffHeapSizeInBytes() {
+        long size = offHeapPoolAccessor.getSize();
+        if (size < 0) {
+            return storage.getOccupiedSize();
+        } else {
+            return size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getOnDiskSizeInBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Status getStatus() {
+        return status.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(Object key) {
+        int hash = hash(key.hashCode());
+        return segmentFor(hash).containsKey(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOnDisk(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyOffHeap(Object key) {
+        return containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKeyInMemory(Object key) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void expireElements() {
+        long now = System.currentTimeMillis();
+        List<OffHeapEntry> expired = new ArrayList<OffHeapEntry>();
+        for (OffHeapSegment s : segments) {
+            s.addExpired(now, expired);
+        }
+        for (OffHeapEntry entry : expired) {
+            Element element = segmentFor(entry.hash).evict(entry.key, entry.hash, entry, false);
+            if (element != null && eventService.hasCacheEventListeners()) {
+                eventService.notifyElementExpiry(element, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void flush() throws IOException {
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean bufferFull() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Policy getInMemoryEvictionPolicy() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setInMemoryEvictionPolicy(Policy policy) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getInternalContext() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getMBean() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean evictFromOnHeap(int count, long size) {
+        // evicting from off-heap also frees up heap
+        return evict(count) == count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean evictFromOnDisk(int count, long size) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean evictFromOffHeap(int count, long size) {
+        return evict(count) == count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateDiskHitRate() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateDiskMissRate() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateDiskCountSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateDiskByteSize() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateHeapHitRate() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateHeapMissRate() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateHeapCountSize() {
+        return getInMemorySize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateHeapByteSize() {
+        return getInMemorySizeInBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateOffHeapHitRate() {
+        return hitRate.getRate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public float getApproximateOffHeapMissRate() {
+        return missRate.getRate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateOffHeapCountSize() {
+        return getOffHeapSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getApproximateOffHeapByteSize() {
+        return getOffHeapSizeInBytes();
+    }
+
+    /**
+     * Return the number of bytes of direct memory currently reserved by this store.
+     * <p>
+     * This may exceed {@link #getOffHeapSizeInBytes()} as direct memory is reserved in large chunks.
+     *
+     * @return the number of reserved bytes
+     */
+    public long getReservedOffHeapSizeInBytes() {
+        return storage.getReservedSize();
+    }
+
+    /**
+     * Evict a number of the least frequently hit entries, chosen by sampling.
+     *
+     * @param count number of entries to evict
+     * @return number of entries actually evicted
+     */
+    int evict(int count) {
+        int evicted = 0;
+        for (int attempts = 0; evicted < count && attempts < count * MAX_EVICTION_RATIO; attempts++) {
+            OffHeapEntry target = selectEvictionTarget();
+            if (target == null) {
+                break;
+            } else if (segmentFor(target.hash).evict(target.key, target.hash, target, true) != null) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private OffHeapEntry selectEvictionTarget() {
+        List<OffHeapEntry> sample = new ArrayList<OffHeapEntry>(SAMPLE_SIZE);
+        int randomHash = rndm.nextInt();
+        final int segmentStart = randomHash >>> segmentShift;
+        int segmentIndex = segmentStart;
+        do {
+            segments[segmentIndex].addRandomSample(SAMPLE_SIZE, sample, randomHash);
+            if (sample.size() >= SAMPLE_SIZE) {
+                break;
+            }
+            segmentIndex = (segmentIndex + 1) & (segments.length - 1);
+        } while (segmentIndex != segmentStart);
+
+        OffHeapEntry target = null;
+        for (OffHeapEntry e : sample) {
+            if (target == null || e.getHitCount() < target.getHitCount()) {
+                target = e;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Serialize the element into a newly allocated off-heap region.
+     * <p>
+     * This is called outside of any segment lock as it may trigger eviction. If the element cannot be stored it
+     * is reported as evicted, and {@code null} is returned.
+     *
+     * @param element element to encode
+     * @return the installable entry, or null if the element could not be stored
+     */
+    private OffHeapEntry encode(Element element) {
+        BufferPool.Buffer buffer = BufferPool.getDefault().acquire();
+        try {
+            return encode(element, buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private OffHeapEntry encode(Element element, BufferPool.Buffer buffer) {
+        Object key = element.getObjectKey();
+        int hash = hash(key.hashCode());
+
+        try {
+            serializer.serialize(element, buffer);
+        } catch (IOException e) {
+            throw new CacheException("Element " + key + " could not be serialized for off-heap storage", e);
+        }
+        final byte[] bytes = buffer.getBuffer();
+        final int length = buffer.size();
+
+        OffHeapEntry encoded = new OffHeapEntry(key, hash, length, element);
+        if (offHeapPoolAccessor.add(key, null, encoded, tierPinned) < 0) {
+            LOG.debug("put failed to add {} off heap", key);
+            eventService.notifyElementEvicted(element, false);
+            return null;
+        }
+
+        long address = storage.allocate(length);
+        for (int attempts = 0; address < 0 && attempts < MAX_ALLOCATION_ATTEMPTS; attempts++) {
+            if (evict(1) == 0 && length > storage.getMaximumAllocationSize()) {
+                break;
+            }
+            address = storage.allocate(length);
+        }
+        if (address < 0) {
+            LOG.debug("put failed to allocate {} bytes off heap for {}", length, key);
+            offHeapPoolAccessor.delete(length);
+            eventService.notifyElementEvicted(element, false);
+            return null;
+        }
+        storage.write(address, bytes, length);
+        encoded.address = address;
+
+        long heapSize = onHeapPoolAccessor.add(key, encoded, null, tierPinned);
+        if (heapSize < 0) {
+            LOG.debug("put failed to add {} on heap", key);
+            storage.free(address, length);
+            offHeapPoolAccessor.delete(length);
+            eventService.notifyElementEvicted(element, false);
+            return null;
+        }
+        encoded.onHeapSize = heapSize;
+        return encoded;
+    }
+
+    /**
+     * Deserialize the element stored for this entry. Must be called with the owning segment lock held.
+     *
+     * @param entry entry to decode
+     * @return the stored element
+     */
+    Element decode(OffHeapEntry entry) {
+        try {
+            return (Element) serializer.deserialize(new ByteBufferInputStream(storage.read(entry.address, entry.size)));
+        } catch (IOException e) {
+            throw new CacheException("Failed to read off-heap element for key " + entry.key, e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException("Failed to read off-heap element for key " + entry.key, e);
+        }
+    }
+
+    /**
+     * Release the memory used by this entry. Must be called with the owning segment write lock held.
+     *
+     * @param entry entry to free
+     */
+    void free(OffHeapEntry entry) {
+        storage.free(entry.address, entry.size);
+        offHeapPoolAccessor.delete(entry.size);
+        onHeapPoolAccessor.delete(entry.onHeapSize);
+    }
+
+    /**
+     * Record an off-heap hit.
+     */
+    void hit() {
+        hitRate.event();
+    }
+
+    /**
+     * Record an off-heap miss.
+     */
+    void miss() {
+        missRate.event();
+    }
+
+    private static int hash(int hash) {
+        int spread = hash;
+        spread += (spread << FIFTEEN ^ FFFFCD7D);
+        spread ^= spread >>> TEN;
+        spread += (spread << THREE);
+        spread ^= spread >>> SIX;
+        spread += (spread << 2) + (spread << FOURTEEN);
+        return (spread ^ spread >>> SIXTEEN);
+    }
+
+    private OffHeapSegment segmentFor(int hash) {
+        return segments[hash >>> segmentShift];
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream reading the remaining bytes of a {@link ByteBuffer}.
+ * <p>
+ * This allows direct and mapped buffers to be handed straight to a deserializer without first copying them into a
+ * heap byte array. The stream consumes the buffer it is given, callers sharing a buffer should pass a
+ * {@link ByteBuffer#duplicate() duplicate} view.
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    private static final int BYTE_MASK = 0xff;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Create a stream over the remaining bytes of the given buffer.
+     *
+     * @param buffer buffer to read from
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() {
+        if (buffer.hasRemaining()) {
+            return buffer.get() & BYTE_MASK;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int count = Math.min(len, buffer.remaining());
+        if (count == 0) {
+            return -1;
+        }
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -17,17 +17,16 @@
 package net.sf.ehcache.util.counter;
 
 import java.io.Serializable;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A simple counter implementation
+ * A simple counter implementation, backed by a {@link StripedLongAdder} so that concurrent updates do not contend
  * 
  * @author <a href="mailto:asanoujam@terracottatech.com">Abhishek Sanoujam</a>
  * @since 1.7
  * 
  */
 public class CounterImpl implements Counter, Serializable {
-    private AtomicLong value;
+    private final StripedLongAdder value;
 
     /**
      * Default Constructor
@@ -42,56 +41,73 @@ public class CounterImpl implements Counter, Serializable {
      * @param initialValue
      */
     public CounterImpl(long initialValue) {
-        this.value = new AtomicLong(initialValue);
+        this.value = new StripedLongAdder(initialValue);
     }
 
     /**
      * {@inheritDoc}
      */
     public long increment() {
-        return value.incrementAndGet();
+        value.increment();
+        return value.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long decrement() {
-        return value.decrementAndGet();
+        value.decrement();
+        return value.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long getAndSet(long newValue) {
-        return value.getAndSet(newValue);
+        long previous = value.sumThenReset();
+        value.add(newValue);
+        return previous;
     }
 
     /**
      * {@inheritDoc}
      */
     public long getValue() {
-        return value.get();
+        return value.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long increment(long amount) {
-        return value.addAndGet(amount);
+        value.add(amount);
+        return value.sum();
     }
 
     /**
      * {@inheritDoc}
      */
     public long decrement(long amount) {
-        return value.addAndGet(amount * -1);
+        value.add(amount * -1);
+        return value.sum();
+    }
+
+    /**
+     * Adds the given amount to the counter without reading the result back. Prefer this to {@link #increment(long)}
+     * on hot paths, as computing the value after the update requires summing every stripe of the counter.
+     *
+     * @param amount the amount to add, which may be negative
+     */
+    public void add(long amount) {
+        value.add(amount);
     }
 
     /**
      * {@inheritDoc}
      */
     public void setValue(long newValue) {
-        value.set(newValue);
+        value.reset();
+        value.add(newValue);
     }
 
 }
@@ -0,0 +1,217 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.util.counter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long sum that many threads can update without contending on a single memory location.
+ * <p>
+ * Updates go to a base value until a compare-and-set on it fails, at which point the adder spreads updates
+ * over an array of cache line padded cells, one cell per thread hash. The array grows up to the number of
+ * processors as contention is seen. Reading the value sums the base and every cell, so this type suits
+ * counters that are written far more often than they are read, such as statistics.
+ * <p>
+ * The value returned by {@link #sum()} is exact when there are no concurrent updates; otherwise it includes some
+ * subset of the concurrent updates.
+ *
+ * @since 2.6
+ */
+public class StripedLongAdder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_CELLS;
+
+    static {
+        int cells = 1;
+        while (cells < Runtime.getRuntime().availableProcessors()) {
+            cells <<= 1;
+        }
+        MAX_CELLS = cells;
+    }
+
+    private static final AtomicInteger PROBE_SEED = new AtomicInteger();
+
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            int seed = PROBE_SEED.getAndAdd(0x9e3779b9);
+            return new int[] {seed == 0 ? 1 : seed};
+        }
+    };
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile Cell[] cells;
+
+    /**
+     * Create an adder with an initial sum of zero.
+     */
+    public StripedLongAdder() {
+        //
+    }
+
+    /**
+     * Create an adder with the given initial sum.
+     *
+     * @param initialValue the initial sum
+     */
+    public StripedLongAdder(long initialValue) {
+        base.set(initialValue);
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @param x the value to add
+     */
+    public void add(long x) {
+        Cell[] as = cells;
+        if (as == null) {
+            long b = base.get();
+            if (base.compareAndSet(b, b + x)) {
+                return;
+            }
+            as = expand(null);
+        }
+        int[] probe = PROBE.get();
+        Cell cell = as[probe[0] & (as.length - 1)];
+        long v = cell.get();
+        if (!cell.compareAndSet(v, v + x)) {
+            // another thread shares this cell: move to a different one next time and add cells if we can
+            probe[0] = rehash(probe[0]);
+            if (as.length < MAX_CELLS) {
+                expand(as);
+            }
+            cell.addAndGet(x);
+        }
+    }
+
+    /**
+     * Equivalent to {@code add(1)}.
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * Equivalent to {@code add(-1)}.
+     */
+    public void decrement() {
+        add(-1L);
+    }
+
+    /**
+     * Returns the current sum.
+     *
+     * @return the sum
+     */
+    public long sum() {
+        long sum = base.get();
+        Cell[] as = cells;
+        if (as != null) {
+            for (Cell cell : as) {
+                sum += cell.get();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the sum to zero. Updates concurrent with the reset may or may not be lost.
+     */
+    public void reset() {
+        base.set(0L);
+        Cell[] as = cells;
+        if (as != null) {
+            for (Cell cell : as) {
+                cell.set(0L);
+            }
+        }
+    }
+
+    /**
+     * Returns the current sum and resets it to zero. Every update is counted either in the returned sum or in
+     * the sum following the reset, never in both and never in neither.
+     *
+     * @return the sum before the reset
+     */
+    public long sumThenReset() {
+        long sum = base.getAndSet(0L);
+        Cell[] as = cells;
+        if (as != null) {
+            for (Cell cell : as) {
+                sum += cell.getAndSet(0L);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    private synchronized Cell[] expand(Cell[] current) {
+        Cell[] as = cells;
+        if (as == current && (as == null || as.length < MAX_CELLS)) {
+            int length = as == null ? Math.min(2, MAX_CELLS) : as.length << 1;
+            Cell[] grown = new Cell[length];
+            int i = 0;
+            if (as != null) {
+                // existing cells are carried over, so no update made to them is lost
+                System.arraycopy(as, 0, grown, 0, as.length);
+                i = as.length;
+            }
+            for (; i < length; i++) {
+                grown[i] = new Cell();
+            }
+            cells = grown;
+            return grown;
+        }
+        return as;
+    }
+
+    private static int rehash(int h) {
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+
+    /**
+     * An atomic long padded out to its own cache line.
+     */
+    private static final class Cell extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        private long p1;
+        private long p2;
+        private long p3;
+        private long p4;
+        private long p5;
+        private long p6;
+        private long p7;
+    }
+}
@@ -16,6 +16,8 @@
 
 package net.sf.ehcache.util.counter.sampled;
 
+import net.sf.ehcache.util.counter.StripedLongAdder;
+
 /**
  * An implementation of {@link SampledRateCounter}
  * 
@@ -27,8 +29,8 @@ public class SampledRateCounterImpl extends SampledCounterImpl implements Sample
 
     private static final String OPERATION_NOT_SUPPORTED_MSG = "This operation is not supported. Use SampledCounter Or Counter instead";
 
-    private long numeratorValue;
-    private long denominatorValue;
+    private final StripedLongAdder numeratorValue = new StripedLongAdder();
+    private final StripedLongAdder denominatorValue = new StripedLongAdder();
 
     /**
      * Constructor accepting the config
@@ -43,56 +45,67 @@ public class SampledRateCounterImpl extends SampledCounterImpl implements Sample
      * {@inheritDoc}
      */
     public synchronized void setValue(long numerator, long denominator) {
-        this.numeratorValue = numerator;
-        this.denominatorValue = denominator;
+        setNumeratorValue(numerator);
+        setDenominatorValue(denominator);
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized void increment(long numerator, long denominator) {
-        this.numeratorValue += numerator;
-        this.denominatorValue += denominator;
+    public void increment(long numerator, long denominator) {
+        numeratorValue.add(numerator);
+        denominatorValue.add(denominator);
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized void decrement(long numerator, long denominator) {
-        this.numeratorValue -= numerator;
-        this.denominatorValue -= denominator;
+    public void decrement(long numerator, long denominator) {
+        numeratorValue.add(-numerator);
+        denominatorValue.add(-denominator);
     }
 
     /**
      * {@inheritDoc}
      */
     public synchronized void setDenominatorValue(long newValue) {
-        this.denominatorValue = newValue;
+        denominatorValue.reset();
+        denominatorValue.add(newValue);
     }
 
     /**
      * {@inheritDoc}
      */
     public synchronized void setNumeratorValue(long newValue) {
-        this.numeratorValue = newValue;
+        numeratorValue.reset();
+        numeratorValue.add(newValue);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getValue() {
-        return denominatorValue == 0 ? 0 : (numeratorValue / denominatorValue);
+    public long getValue() {
+        if (denominatorValue == null) {
+            // sampled from the super constructor, before the adders are assigned
+            return 0;
+        }
+        long denominator = denominatorValue.sum();
+        return denominator == 0 ? 0 : (numeratorValue.sum() / denominator);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getAndReset() {
-        long prevVal = getValue();
-        setValue(0, 0);
-        return prevVal;
+    public long getAndReset() {
+        if (denominatorValue == null) {
+            // sampled from the super constructor, before the adders are assigned
+            return 0;
+        }
+        long numerator = numeratorValue.sumThenReset();
+        long denominator = denominatorValue.sumThenReset();
+        return denominator == 0 ? 0 : (numerator / denominator);
     }
 
     // ====== unsupported operations. These operations need multiple params for
@@ -113,6 +126,14 @@ public class SampledRateCounterImpl extends SampledCounterImpl implements Sample
         throw new UnsupportedOperationException(OPERATION_NOT_SUPPORTED_MSG);
     }
 
+    /**
+     * throws {@link UnsupportedOperationException}
+     */
+    @Override
+    public void add(long amount) {
+        throw new UnsupportedOperationException(OPERATION_NOT_SUPPORTED_MSG);
+    }
+
     /**
      * throws {@link UnsupportedOperationException}
      */
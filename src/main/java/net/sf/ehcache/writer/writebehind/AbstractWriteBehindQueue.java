@@ -17,8 +17,11 @@
 package net.sf.ehcache.writer.writebehind;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -125,6 +128,16 @@ public abstract class AbstractWriteBehindQueue implements WriteBehind {
    */
   protected abstract void reinsertUnprocessedItems(List<SingleOperation> operations);
 
+  /**
+   * Called once operations have left the queue for good: they were handed to the cache writer, thrown away after
+   * exhausting their retries, or dropped by the operations filter. Does nothing by default.
+   *
+   * @param operations the processed operations, only valid for the duration of the call
+   */
+  protected void itemsProcessed(List<SingleOperation> operations) {
+      // no-op
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -346,7 +359,14 @@ public abstract class AbstractWriteBehindQueue implements WriteBehind {
   private void filterQuarantined(List<SingleOperation> quarantined) {
       OperationsFilter operationsFilter = this.filter;
       if (operationsFilter != null) {
+          final List<SingleOperation> unfiltered = new ArrayList<SingleOperation>(quarantined);
           operationsFilter.filter(quarantined, CastingOperationConverter.getInstance());
+          if (quarantined.size() < unfiltered.size()) {
+              final Set<SingleOperation> kept = Collections.newSetFromMap(new IdentityHashMap<SingleOperation, Boolean>());
+              kept.addAll(quarantined);
+              unfiltered.removeAll(kept);
+              itemsProcessed(unfiltered);
+          }
       }
   }
 
@@ -412,6 +432,7 @@ public abstract class AbstractWriteBehindQueue implements WriteBehind {
       }
 
       // remove the batched items
+      itemsProcessed(quarantined.subList(0, batchSize));
       for (int i = 0; i < batchSize; i++) {
           quarantined.remove(0);
       }
@@ -455,6 +476,7 @@ public abstract class AbstractWriteBehindQueue implements WriteBehind {
               }
           }
 
+          itemsProcessed(Collections.singletonList(item));
           quarantined.remove(0);
       }
   }
@@ -0,0 +1,94 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package net.sf.ehcache.writer.writebehind;
+
+/**
+ * Chooses how many operations a write-behind queue hands to the {@code CacheWriter} at once, and how long it lets
+ * operations accumulate first, from the backlog and the writer latency it observes.
+ * <p>
+ * Both values stay within what the cache writer configuration allows: the batch size between 1 and the configured
+ * write batch size, the delay between the minimum and maximum write delays. The batch size doubles whenever the
+ * backlog left after a batch is at least a full batch, so a queue falling behind quickly moves to the largest
+ * batches, and the delay then drops to the minimum so that the backlog is written without waiting. The batch size
+ * is halved when a batch took longer than the maximum write delay, as the writer is then struggling with batches
+ * that large, and grows back by a quarter per batch once the writer keeps up again. While the queue keeps up,
+ * operations accumulate for the maximum write delay, as configured.
+ */
+final class AdaptiveBatcher {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final int maxBatchSize;
+    private final long minDelay;
+    private final long maxDelay;
+
+    private volatile int batchSize;
+    private volatile long delay;
+
+    /**
+     * Create a batcher starting with the largest batches and longest delay.
+     *
+     * @param maxBatchSize the configured write batch size
+     * @param minDelay the minimum write delay in milliseconds
+     * @param maxDelay the maximum write delay in milliseconds
+     */
+    AdaptiveBatcher(int maxBatchSize, long minDelay, long maxDelay) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.minDelay = minDelay;
+        this.maxDelay = Math.max(minDelay, maxDelay);
+        this.batchSize = this.maxBatchSize;
+        this.delay = this.maxDelay;
+    }
+
+    /**
+     * Adapt to a completed batch. Must only be called by the processing thread.
+     *
+     * @param latencyNanos the time the writer took for the batch
+     * @param backlog the number of operations still waiting
+     */
+    void batchCompleted(long latencyNanos, long backlog) {
+        double latency = latencyNanos / NANOS_PER_MILLI;
+
+        int current = batchSize;
+        boolean behind = backlog >= current;
+        if (latency > maxDelay && current > 1) {
+            batchSize = Math.max(1, current / 2);
+        } else if (behind) {
+            batchSize = (int) Math.min(maxBatchSize, current * 2L);
+        } else if (current < maxBatchSize) {
+            batchSize = Math.min(maxBatchSize, current + Math.max(1, current / 4));
+        }
+        delay = behind ? minDelay : maxDelay;
+    }
+
+    /**
+     * Return the number of operations to hand to the writer at once.
+     *
+     * @return the batch size
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Return how long, in milliseconds, operations may accumulate before an incomplete batch is written.
+     *
+     * @return the delay
+     */
+    long getDelay() {
+        return delay;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.writer.writebehind;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * Producers link a new node with one atomic swap of the head and never wait on each other or on the consumer. Only
+ * the one consumer thread may call {@link #poll()}. An element whose producer swapped the head but has not linked
+ * its node yet is not visible to the consumer: {@code poll} returns {@code null} until it is.
+ *
+ * @param <E> the type of the elements
+ */
+final class MpscQueue<E> {
+
+    private final AtomicReference<Node<E>> head;
+    private Node<E> tail;
+
+    /**
+     * Create an empty queue.
+     */
+    MpscQueue() {
+        Node<E> stub = new Node<E>(null);
+        this.head = new AtomicReference<Node<E>>(stub);
+        this.tail = stub;
+    }
+
+    /**
+     * Append an element. May be called by any thread.
+     *
+     * @param element the element, not null
+     */
+    void offer(E element) {
+        Node<E> node = new Node<E>(element);
+        Node<E> previous = head.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Remove the oldest element. Must only be called by the consumer thread.
+     *
+     * @return the oldest element, or {@code null} if none is visible
+     */
+    E poll() {
+        Node<E> next = tail.next;
+        if (next == null) {
+            return null;
+        }
+        E element = next.element;
+        next.element = null;
+        tail = next;
+        return element;
+    }
+
+    /**
+     * A queue node. The node the consumer last polled stays as the stub the next one is linked to.
+     */
+    private static final class Node<E> {
+        private E element;
+        private volatile Node<E> next;
+
+        Node(E element) {
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package net.sf.ehcache.writer.writebehind;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.serialization.Serializer;
+import net.sf.ehcache.serialization.Serializers;
+import net.sf.ehcache.writer.writebehind.operations.DeleteOperation;
+import net.sf.ehcache.writer.writebehind.operations.SingleOperation;
+import net.sf.ehcache.writer.writebehind.operations.WriteOperation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File-backed record of the operations waiting in a {@link WriteBehindQueue}, so that they survive the JVM dying
+ * before the cache writer saw them.
+ * <p>
+ * The journal is a series of append-only segment files. Every queued operation is appended as a checksummed record
+ * carrying a sequence number, with a single write so that a killed process leaves at worst a torn final record. Once
+ * operations are processed a checkpoint record holding the lowest sequence number still outstanding is appended, and
+ * segments lying wholly below it are deleted. Records reach the operating system as they are appended, and are forced
+ * to the storage device at most every {@value #SYNC_INTERVAL} milliseconds and whenever processed operations are
+ * checkpointed.
+ * <p>
+ * Replay returns the operations from the last checkpoint onwards in the order they were queued. Operations that were
+ * processed out of order after that checkpoint are replayed too: the cache writer sees every operation at least once.
+ */
+final class WriteBehindJournal {
+
+    /**
+     * Size above which the journal moves on to a new segment.
+     */
+    static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Longest time, in milliseconds, appended records may stay unforced while operations keep being queued.
+     */
+    static final long SYNC_INTERVAL = 1000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindJournal.class.getName());
+
+    private static final String SUFFIX = ".wbj";
+    private static final int SEQUENCE_DIGITS = 16;
+    private static final int HEX = 16;
+
+    private static final int MAGIC = 0xEC4CB0B1;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte WRITE = 1;
+    private static final byte DELETE = 2;
+    private static final byte CHECKPOINT = 3;
+
+    private static final int CHECKPOINT_SIZE = 1 + 8;
+    private static final int OPERATION_SIZE = 1 + 8 + 8;
+
+    private final File directory;
+    private final String prefix;
+    private final Serializer serializer;
+    private final int codec;
+    private final long segmentSize;
+    private final CRC32 crc = new CRC32();
+
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private final Map<SingleOperation, Long> pending = new IdentityHashMap<SingleOperation, Long>();
+    private final TreeSet<Long> outstanding = new TreeSet<Long>();
+
+    private FileChannel channel;
+    private long nextSequence;
+    private long checkpoint;
+    private long lastSync;
+    private boolean dirty;
+
+    /**
+     * Create a journal whose segments are named after the given prefix in the given directory. Nothing is read or
+     * written until {@link #open()} is called.
+     *
+     * @param directory the directory holding the segments
+     * @param prefix the file name prefix of the segments
+     * @param serializer the serializer used for keys and elements
+     * @param segmentSize the size above which a new segment is started
+     */
+    WriteBehindJournal(File directory, String prefix, Serializer serializer, long segmentSize) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.serializer = serializer;
+        this.codec = serializer.getClass().getName().hashCode();
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Replay the operations left over by a previous run and open the journal for appending.
+     * <p>
+     * The replayed operations stay outstanding in the journal until they are reported as processed.
+     *
+     * @return the operations still to be processed, in the order they were queued
+     * @throws IOException if the segments cannot be read or a new one cannot be created
+     */
+    synchronized List<SingleOperation> open() throws IOException {
+        if (channel != null) {
+            return new ArrayList<SingleOperation>();
+        }
+        directory.mkdirs();
+
+        Map<Long, SingleOperation> operations = new LinkedHashMap<Long, SingleOperation>();
+        long maxSequence = -1;
+        for (Segment segment : findSegments()) {
+            Reader reader = new Reader(segment);
+            try {
+                reader.replay(operations);
+            } finally {
+                reader.close();
+            }
+            segments.add(segment);
+            maxSequence = Math.max(maxSequence, Math.max(segment.lastSequence, segment.firstSequence));
+        }
+
+        List<SingleOperation> replayed = new ArrayList<SingleOperation>();
+        for (Map.Entry<Long, SingleOperation> e : operations.entrySet()) {
+            if (e.getKey() >= checkpoint) {
+                pending.put(e.getValue(), e.getKey());
+                outstanding.add(e.getKey());
+                replayed.add(e.getValue());
+            }
+        }
+        // past the first sequence of every segment, so the new segment never reuses the file of an existing one
+        nextSequence = Math.max(maxSequence + 1, checkpoint);
+        startSegment();
+        deleteProcessedSegments();
+        if (!replayed.isEmpty()) {
+            LOG.info("Replaying {} write-behind operations from journal {}", replayed.size(), new File(directory, prefix));
+        }
+        return replayed;
+    }
+
+    private List<Segment> findSegments() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return firstSequence(name) >= 0;
+            }
+        });
+        List<Segment> found = new ArrayList<Segment>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                found.add(new Segment(file, firstSequence(file.getName())));
+            }
+        }
+        return found;
+    }
+
+    private long firstSequence(String name) {
+        int start = prefix.length() + 1;
+        if (name.length() != start + SEQUENCE_DIGITS + SUFFIX.length() || !name.startsWith(prefix + ".") || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(start, start + SEQUENCE_DIGITS), HEX);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private File segmentFile(long firstSequence) {
+        String digits = Long.toHexString(firstSequence);
+        StringBuilder name = new StringBuilder(prefix).append('.');
+        for (int i = digits.length(); i < SEQUENCE_DIGITS; i++) {
+            name.append('0');
+        }
+        return new File(directory, name.append(digits).append(SUFFIX).toString());
+    }
+
+    private void startSegment() throws IOException {
+        Segment segment = new Segment(segmentFile(nextSequence), nextSequence);
+        RandomAccessFile file = new RandomAccessFile(segment.file, "rw");
+        FileChannel created = file.getChannel();
+        try {
+            file.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(codec).flip();
+            write(created, header);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+        channel = created;
+        segments.add(segment);
+        dirty = true;
+    }
+
+    /**
+     * Record a queued operation.
+     *
+     * @param operation the operation
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void append(SingleOperation operation) throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal " + new File(directory, prefix) + " is not open");
+        }
+        long sequence = nextSequence;
+        write(channel, record(encode(operation, sequence)));
+        nextSequence++;
+        pending.put(operation, sequence);
+        outstanding.add(sequence);
+        segments.getLast().lastSequence = sequence;
+        dirty = true;
+
+        if (channel.size() >= segmentSize) {
+            startSegment();
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastSync >= SYNC_INTERVAL) {
+            channel.force(false);
+            dirty = false;
+            lastSync = now;
+        }
+    }
+
+    /**
+     * Record that the given operations were processed, checkpointing the journal if the oldest outstanding operation
+     * changed. Failures are logged: at worst the operations are replayed once more.
+     *
+     * @param operations the processed operations
+     */
+    void processed(Collection<SingleOperation> operations) {
+        FileChannel toSync;
+        synchronized (this) {
+            for (SingleOperation operation : operations) {
+                Long sequence = pending.remove(operation);
+                if (sequence != null) {
+                    outstanding.remove(sequence);
+                }
+            }
+            long mark = outstanding.isEmpty() ? nextSequence : outstanding.first();
+            if (channel == null || mark <= checkpoint) {
+                return;
+            }
+            try {
+                ByteBuffer payload = ByteBuffer.allocate(CHECKPOINT_SIZE);
+                payload.put(CHECKPOINT).putLong(mark);
+                write(channel, record(payload.array()));
+                checkpoint = mark;
+                deleteProcessedSegments();
+            } catch (IOException e) {
+                LOG.warn("Could not checkpoint write-behind journal {} : {}", new File(directory, prefix), e.getMessage());
+                return;
+            }
+            toSync = dirty ? channel : null;
+            dirty = false;
+            lastSync = System.currentTimeMillis();
+        }
+        if (toSync != null) {
+            try {
+                toSync.force(false);
+            } catch (ClosedChannelException e) {
+                // the segment was forced when it was closed
+            } catch (IOException e) {
+                LOG.warn("Could not force write-behind journal {} : {}", new File(directory, prefix), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteProcessedSegments() {
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == segments.getLast() || segment.lastSequence >= checkpoint
+                    || segment.file.equals(segments.getLast().file)) {
+                return;
+            }
+            if (!segment.file.delete() && segment.file.exists()) {
+                LOG.warn("Could not delete processed write-behind journal segment {}", segment.file);
+                return;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Close the journal. If every operation was processed the segments are deleted.
+     *
+     * @throws IOException on error
+     */
+    synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        if (outstanding.isEmpty()) {
+            for (Segment segment : segments) {
+                if (!segment.file.delete() && segment.file.exists()) {
+                    LOG.warn("Could not delete processed write-behind journal segment {}", segment.file);
+                }
+            }
+        }
+        segments.clear();
+        pending.clear();
+        outstanding.clear();
+    }
+
+    /**
+     * Return the number of segment files the journal currently spans.
+     *
+     * @return the number of segments
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Return the number of recorded operations not yet reported as processed.
+     *
+     * @return the number of outstanding operations
+     */
+    synchronized int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    private byte[] encode(SingleOperation operation, long sequence) throws IOException {
+        if (operation instanceof WriteOperation) {
+            byte[] element = Serializers.toBytes(serializer, ((WriteOperation) operation).getElement());
+            ByteBuffer payload = ByteBuffer.allocate(OPERATION_SIZE + element.length);
+            payload.put(WRITE).putLong(sequence).putLong(operation.getCreationTime()).put(element);
+            return payload.array();
+        } else if (operation instanceof DeleteOperation) {
+            CacheEntry entry = ((DeleteOperation) operation).getEntry();
+            byte[] key = Serializers.toBytes(serializer, entry.getKey());
+            byte[] element = entry.getElement() == null ? new byte[0] : Serializers.toBytes(serializer, entry.getElement());
+            ByteBuffer payload = ByteBuffer.allocate(OPERATION_SIZE + 4 + key.length + element.length);
+            payload.put(DELETE).putLong(sequence).putLong(operation.getCreationTime()).putInt(key.length).put(key).put(element);
+            return payload.array();
+        } else {
+            throw new IOException("Cannot journal operations of type " + operation.getClass().getName());
+        }
+    }
+
+    private SingleOperation decode(byte type, ByteBuffer payload) throws IOException, ClassNotFoundException {
+        long creationTime = payload.getLong();
+        if (type == WRITE) {
+            return new WriteOperation((Element) deserialize(payload, payload.remaining()), creationTime);
+        } else {
+            Object key = deserialize(payload, payload.getInt());
+            Element element = payload.hasRemaining() ? (Element) deserialize(payload, payload.remaining()) : null;
+            return new DeleteOperation(new CacheEntry(key, element), creationTime);
+        }
+    }
+
+    private Object deserialize(ByteBuffer payload, int length) throws IOException, ClassNotFoundException {
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return Serializers.fromBytes(serializer, bytes);
+    }
+
+    private ByteBuffer record(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A segment file, the sequence number it was started at and the highest sequence number recorded in it.
+     */
+    private static final class Segment {
+        private final File file;
+        private final long firstSequence;
+        private long lastSequence;
+
+        Segment(File file, long firstSequence) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    /**
+     * Sequential reader of the records of one segment.
+     */
+    private final class Reader {
+        private final Segment segment;
+        private final DataInputStream in;
+        private final CRC32 checksum = new CRC32();
+
+        Reader(Segment segment) throws IOException {
+            this.segment = segment;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        }
+
+        /**
+         * Add the operations of the segment to the given map and advance the checkpoint, stopping at the end of the
+         * segment or the first torn or corrupt record.
+         */
+        void replay(Map<Long, SingleOperation> operations) throws IOException {
+            long remaining = segment.file.length();
+            try {
+                if (remaining < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    LOG.warn("Ignoring write-behind journal segment {} : not a journal", segment.file);
+                    return;
+                }
+                if (in.readInt() != codec) {
+                    LOG.warn("Ignoring write-behind journal segment {} : written with a different serializer", segment.file);
+                    return;
+                }
+                remaining -= HEADER_SIZE;
+                while (remaining >= RECORD_HEADER_SIZE) {
+                    int length = in.readInt();
+                    int expected = in.readInt();
+                    if (length < CHECKPOINT_SIZE || length > remaining - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    checksum.reset();
+                    checksum.update(bytes, 0, length);
+                    if ((int) checksum.getValue() != expected) {
+                        break;
+                    }
+                    remaining -= RECORD_HEADER_SIZE + length;
+                    apply(ByteBuffer.wrap(bytes), operations);
+                }
+            } catch (EOFException e) {
+                // torn tail
+            }
+            if (remaining > 0) {
+                LOG.warn("Discarding {} bytes of torn or corrupt records from the end of write-behind journal segment {}",
+                        remaining, segment.file);
+            }
+        }
+
+        private void apply(ByteBuffer payload, Map<Long, SingleOperation> operations) {
+            byte type = payload.get();
+            if (type == CHECKPOINT) {
+                checkpoint = Math.max(checkpoint, payload.getLong());
+                return;
+            }
+            if ((type != WRITE && type != DELETE) || payload.remaining() < OPERATION_SIZE - 1) {
+                return;
+            }
+            long sequence = payload.getLong();
+            segment.lastSequence = Math.max(segment.lastSequence, sequence);
+            try {
+                operations.put(sequence, decode(type, payload));
+            } catch (Exception e) {
+                LOG.error("Dropping write-behind operation " + sequence + " of journal segment " + segment.file
+                        + " that could not be read back", e);
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
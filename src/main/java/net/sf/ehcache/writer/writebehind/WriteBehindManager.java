@@ -43,6 +43,11 @@ public class WriteBehindManager implements CacheWriterManager {
       } else if (cache.getCacheConfiguration().getPersistenceConfiguration() != null &&
               cache.getCacheConfiguration().getPersistenceConfiguration().getStrategy() == Strategy.LOCALRESTARTABLE) {
         writeBehind = cache.getCacheManager().getFeaturesManager().createWriteBehind(cache);
+      } else if (cache.getCacheConfiguration().getCacheWriterConfiguration().getWriteBehindJournal()) {
+        if (cache.getCacheManager() == null) {
+          throw new CacheException("The write-behind journal of cache " + cache.getName() + " requires it to belong to a CacheManager");
+        }
+        writeBehind = new WriteBehindQueueManager(cache.getCacheConfiguration(), cache.getCacheManager().getDiskStorePathManager());
       } else {
         writeBehind = new WriteBehindQueueManager(cache.getCacheConfiguration());
       }
@@ -96,4 +101,16 @@ public class WriteBehindManager implements CacheWriterManager {
     public long getQueueSize() {
         return writeBehind.getQueueSize();
     }
+
+    /**
+     * Gets how far behind the writer is: the age, in milliseconds, of the oldest operation not yet written.
+     * Only known for local write-behind queues.
+     * @return the lag, {@code 0} if no operation is waiting or the lag isn't known
+     */
+    public long getLag() {
+        if (writeBehind instanceof WriteBehindQueueManager) {
+            return ((WriteBehindQueueManager) writeBehind).getLag();
+        }
+        return 0;
+    }
 }
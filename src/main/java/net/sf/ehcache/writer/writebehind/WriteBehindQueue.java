@@ -15,21 +15,82 @@
  */
 package net.sf.ehcache.writer.writebehind;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.writer.CacheWriter;
+import net.sf.ehcache.writer.writebehind.operations.DeleteOperation;
 import net.sf.ehcache.writer.writebehind.operations.SingleOperation;
+import net.sf.ehcache.writer.writebehind.operations.SingleOperationType;
+import net.sf.ehcache.writer.writebehind.operations.WriteOperation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * An implementation of write behind with a queue that is kept in non durable local heap.
+ * An implementation of write behind with a queue that is kept in local heap, optionally backed by a
+ * {@link WriteBehindJournal} so that queued operations survive a restart.
+ * <p>
+ * Producers never take a lock: an operation is appended to a lock-free {@link MpscQueue} after reserving a ticket
+ * on a single counter, and the processing thread is only unparked when it waits for that many operations. The
+ * processing thread drains the queue, lets operations accumulate as the write delays and the
+ * {@link AdaptiveBatcher} dictate, filters them, enforces the rate limit and hands them to the {@code CacheWriter}.
+ * The ticket counter also lets {@link #stop()} wait for operations whose producer passed the started check but
+ * had not appended yet.
  *
  * @author Geert Bevin
  * @version $Id$
  */
-class WriteBehindQueue extends AbstractWriteBehindQueue {
+class WriteBehindQueue implements WriteBehind {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueue.class.getName());
+
+    private static final int MS_IN_SEC = 1000;
+    private static final long STOPPING_POLL_MILLIS = 1;
+
+    private static final int NEW = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPING = 2;
+    private static final int STOPPED = 3;
+
+    private final String cacheName;
+    private final WriteBehindJournal journal;
+    private final long minWriteDelayMs;
+    private final int rateLimitPerSecond;
+    private final boolean writeBatching;
+    private final int retryAttempts;
+    private final int retryAttemptDelaySeconds;
+    private final AdaptiveBatcher batcher;
+    private final Semaphore slots;
+    private final Thread processingThread;
 
-    private List<SingleOperation> waiting = new ArrayList<SingleOperation>();
+    private final MpscQueue<SingleOperation> queue = new MpscQueue<SingleOperation>();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong undrainedSince = new AtomicLong();
+
+    private volatile int state = NEW;
+    private volatile long wakeAt = Long.MAX_VALUE;
+    private volatile long processed;
+    private volatile long oldestPending;
+    private volatile OperationsFilter filter;
+
+    private CacheWriter cacheWriter;
+    private List<SingleOperation> replayed = Collections.emptyList();
 
     /**
      * Construct a simple list backed write behind queue.
@@ -37,31 +98,454 @@ class WriteBehindQueue extends AbstractWriteBehindQueue {
      * @param config
      */
     WriteBehindQueue(CacheConfiguration config) {
-        super(config);
+        this(config, null);
+    }
+
+    /**
+     * Construct a list backed write behind queue recording its operations in the given journal.
+     *
+     * @param config the configuration for the queue
+     * @param journal the journal, or {@code null} to keep operations in heap only
+     */
+    WriteBehindQueue(CacheConfiguration config, WriteBehindJournal journal) {
+        this.cacheName = config.getName();
+        this.journal = journal;
+
+        // making a copy of the configuration locally to ensure that it will not be changed at runtime
+        final CacheWriterConfiguration cacheWriterConfig = config.getCacheWriterConfiguration();
+        this.minWriteDelayMs = cacheWriterConfig.getMinWriteDelay() * MS_IN_SEC;
+        this.rateLimitPerSecond = cacheWriterConfig.getRateLimitPerSecond();
+        this.writeBatching = cacheWriterConfig.getWriteBatching() && cacheWriterConfig.getWriteBatchSize() > 0;
+        this.retryAttempts = cacheWriterConfig.getRetryAttempts();
+        this.retryAttemptDelaySeconds = cacheWriterConfig.getRetryAttemptDelaySeconds();
+        this.batcher = new AdaptiveBatcher(cacheWriterConfig.getWriteBatchSize(), minWriteDelayMs,
+                cacheWriterConfig.getMaxWriteDelay() * MS_IN_SEC);
+        int maxQueueSize = cacheWriterConfig.getWriteBehindMaxQueueSize();
+        this.slots = maxQueueSize > 0 ? new Semaphore(maxQueueSize) : null;
+
+        this.processingThread = new Thread(new ProcessingThread(), cacheName + " write-behind");
+        this.processingThread.setDaemon(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Operations left in the journal by a previous run are queued ahead of any new ones.
+     */
+    public synchronized void start(CacheWriter writer) {
+        if (state != NEW) {
+            throw new CacheException("The write-behind queue for cache '" + cacheName + "' can't be started more than once");
+        }
+        if (journal != null) {
+            try {
+                replayed = journal.open();
+            } catch (IOException e) {
+                throw new CacheException("Could not open the write-behind journal for cache '" + cacheName + "'", e);
+            }
+            enqueued.set(replayed.size());
+        }
+        this.cacheWriter = writer;
+        this.state = STARTED;
+        processingThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setOperationsFilter(OperationsFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(Element element) {
+        WriteOperation operation = new WriteOperation(element);
+        if (!enqueue(operation)) {
+            throw new CacheException("The element '" + element + "' couldn't be added through the write-behind queue for cache '"
+                    + cacheName + "' since it's not started.");
+        }
     }
 
-    @Override
-    protected List<SingleOperation> quarantineItems() {
-        List<SingleOperation> quarantined = waiting;
-        waiting = new ArrayList<SingleOperation>();
-        return quarantined;
+    /**
+     * {@inheritDoc}
+     */
+    public void delete(CacheEntry entry) {
+        DeleteOperation operation = new DeleteOperation(entry);
+        if (!enqueue(operation)) {
+            throw new CacheException("The entry for key '" + entry.getKey() + "' couldn't be deleted through the write-behind "
+                    + "queue for cache '" + cacheName + "' since it's not started.");
+        }
+    }
+
+    private boolean enqueue(SingleOperation operation) {
+        if (state != STARTED) {
+            return false;
+        }
+        acquireSlot();
+        if (journal != null) {
+            try {
+                journal.append(operation);
+            } catch (IOException e) {
+                releaseSlots(1);
+                throw new CacheException("Could not record " + operation.getType() + " of key '" + operation.getKey()
+                        + "' in the write-behind journal for cache '" + cacheName + "'", e);
+            }
+        }
+        // the ticket is taken before checking the state again, so that a stopping queue waits for this operation
+        long ticket = enqueued.incrementAndGet();
+        if (state != STARTED) {
+            enqueued.decrementAndGet();
+            releaseSlots(1);
+            if (journal != null) {
+                journal.processed(Collections.singletonList(operation));
+            }
+            return false;
+        }
+        queue.offer(operation);
+        if (undrainedSince.get() == 0) {
+            undrainedSince.compareAndSet(0, operation.getCreationTime());
+        }
+        if (ticket >= wakeAt) {
+            LockSupport.unpark(processingThread);
+        }
+        return true;
+    }
+
+    private void acquireSlot() {
+        if (slots != null) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CacheException("Interrupted while waiting for room in the write-behind queue for cache '" + cacheName + "'", e);
+            }
+        }
+    }
+
+    private void releaseSlots(int count) {
+        if (slots != null && count > 0) {
+            slots.release(count);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for all queued operations to be processed.
+     */
+    public void stop() throws CacheException {
+        synchronized (this) {
+            if (state == NEW || state == STOPPED) {
+                return;
+            }
+            state = STOPPING;
+        }
+        LockSupport.unpark(processingThread);
+        if (Thread.currentThread() != processingThread) {
+            try {
+                processingThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CacheException(e);
+            }
+        }
+        closeJournal();
     }
 
-    @Override
-    protected void addItem(SingleOperation operation) {
-        waiting.add(operation);
+    private synchronized void closeJournal() {
+        state = STOPPED;
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new CacheException("Could not close the write-behind journal for cache '" + cacheName + "'", e);
+            }
+        }
     }
 
-    @Override
+    /**
+     * Gets the best estimate for items in the queue still awaiting processing.
+     * Not including elements currently processed
+     *
+     * @return the amount of elements still awaiting processing.
+     */
     public long getQueueSize() {
-        return waiting.size();
+        return Math.max(0, enqueued.get() - processed);
     }
 
-    @Override
-    protected void reinsertUnprocessedItems(List<SingleOperation> operations) {
-        List<SingleOperation> newQueue = new ArrayList<SingleOperation>(operations);
-        newQueue.addAll(waiting);
-        waiting = newQueue;
+    /**
+     * Return how far behind the writer is: the age, in milliseconds, of the oldest operation not yet written.
+     *
+     * @return the lag, {@code 0} if no operation is waiting
+     */
+    long getLag() {
+        long oldest = oldestPending;
+        long undrained = undrainedSince.get();
+        if (oldest == 0 || (undrained != 0 && undrained < oldest)) {
+            oldest = undrained;
+        }
+        return oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
     }
 
+    /**
+     * Return the number of operations currently handed to the writer at once.
+     *
+     * @return the batch size, {@code 1} without write batching
+     */
+    int getBatchSize() {
+        return writeBatching ? batcher.getBatchSize() : 1;
+    }
+
+    /**
+     * Return how long, in milliseconds, operations currently accumulate before an incomplete batch is written.
+     *
+     * @return the write delay
+     */
+    long getWriteDelay() {
+        return writeBatching ? batcher.getDelay() : minWriteDelayMs;
+    }
+
+    /**
+     * Thread that continuously drains and processes the queue until it is stopped and empty.
+     */
+    private final class ProcessingThread implements Runnable {
+
+        private final List<SingleOperation> buffer = new ArrayList<SingleOperation>();
+        private long drained;
+        private int unslotted;
+        private long lastWorkDone = System.currentTimeMillis();
+
+        public void run() {
+            try {
+                // replayed operations were never given a slot, nor counted as drained
+                buffer.addAll(replayed);
+                drained = replayed.size();
+                unslotted = replayed.size();
+                replayed = Collections.emptyList();
+                while (true) {
+                    drain();
+                    boolean stopping = state != STARTED;
+                    if (buffer.isEmpty()) {
+                        oldestPending = 0;
+                        long tickets = enqueued.get();
+                        if (stopping && drained == tickets) {
+                            return;
+                        } else if (drained < tickets) {
+                            // a producer took its ticket and is about to link its operation
+                            Thread.yield();
+                        } else {
+                            await(drained + 1, stopping ? STOPPING_POLL_MILLIS : 0);
+                        }
+                        continue;
+                    }
+                    oldestPending = buffer.get(0).getCreationTime();
+                    long waitMillis = stopping ? 0 : accumulationWait();
+                    if (waitMillis > 0) {
+                        continue;
+                    }
+                    filterBuffer();
+                    if (buffer.isEmpty()) {
+                        continue;
+                    }
+                    int batchSize = writeBatching ? Math.min(batcher.getBatchSize(), buffer.size()) : buffer.size();
+                    if (rateLimited(batchSize)) {
+                        continue;
+                    }
+                    process(batchSize);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Write-behind processing for cache '" + cacheName + "' stopped, dropping " + buffer.size()
+                        + " queued operations", e);
+            } catch (Error e) {
+                LOG.error("Write-behind processing for cache '" + cacheName + "' stopped, dropping " + buffer.size()
+                        + " queued operations", e);
+                throw e;
+            } finally {
+                state = state == STARTED ? STOPPING : state;
+            }
+        }
+
+        private void drain() {
+            undrainedSince.set(0);
+            for (SingleOperation operation = queue.poll(); operation != null; operation = queue.poll()) {
+                buffer.add(operation);
+                drained++;
+            }
+        }
+
+        /**
+         * Wait if the operations should accumulate some more, returning the time waited for.
+         */
+        private long accumulationWait() {
+            long age = System.currentTimeMillis() - buffer.get(0).getCreationTime();
+            if (age < minWriteDelayMs) {
+                await(Long.MAX_VALUE, minWriteDelayMs - age);
+                return minWriteDelayMs - age;
+            }
+            if (writeBatching) {
+                int missing = batcher.getBatchSize() - buffer.size();
+                long delay = batcher.getDelay();
+                if (missing > 0 && age < delay) {
+                    await(drained + missing, delay - age);
+                    return delay - age;
+                }
+            }
+            return 0;
+        }
+
+        private boolean rateLimited(int batchSize) {
+            if (!writeBatching || rateLimitPerSecond <= 0) {
+                return false;
+            }
+            long wait = (long) batchSize * MS_IN_SEC / rateLimitPerSecond - (System.currentTimeMillis() - lastWorkDone);
+            if (wait <= 0) {
+                return false;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(processingThread.getName() + " : processing " + batchSize + " batch items would exceed the rate limit of "
+                        + rateLimitPerSecond + ", waiting " + wait + "ms");
+            }
+            await(Long.MAX_VALUE, wait);
+            return true;
+        }
+
+        private void await(long wakeAtTicket, long timeoutMillis) {
+            wakeAt = wakeAtTicket;
+            try {
+                if (enqueued.get() < wakeAtTicket) {
+                    if (timeoutMillis > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+                    } else if (state == STARTED) {
+                        LockSupport.park(this);
+                    }
+                }
+            } finally {
+                wakeAt = Long.MAX_VALUE;
+            }
+        }
+
+        private void filterBuffer() {
+            OperationsFilter operationsFilter = filter;
+            if (operationsFilter == null) {
+                return;
+            }
+            final List<SingleOperation> unfiltered = new ArrayList<SingleOperation>(buffer);
+            operationsFilter.filter(buffer, CastingOperationConverter.getInstance());
+            if (buffer.size() < unfiltered.size()) {
+                final Set<SingleOperation> kept = Collections.newSetFromMap(new IdentityHashMap<SingleOperation, Boolean>());
+                kept.addAll(buffer);
+                unfiltered.removeAll(kept);
+                completed(unfiltered);
+            }
+        }
+
+        private void process(int batchSize) {
+            List<SingleOperation> batch = new ArrayList<SingleOperation>(buffer.subList(0, batchSize));
+            buffer.subList(0, batchSize).clear();
+            processed += batchSize;
+            releaseSlotsOf(batchSize);
+            lastWorkDone = System.currentTimeMillis();
+
+            long start = System.nanoTime();
+            if (writeBatching) {
+                processBatchedOperations(batch);
+            } else {
+                processSingleOperations(batch);
+            }
+            long latency = System.nanoTime() - start;
+            if (journal != null) {
+                journal.processed(batch);
+            }
+            drain();
+            if (writeBatching) {
+                batcher.batchCompleted(latency, buffer.size());
+            }
+            if (minWriteDelayMs > 0 && !(writeBatching && buffer.size() >= batcher.getBatchSize())) {
+                // like the minimum write delay for each operation, this avoids churning through tiny batches: unless
+                // new operations arrive, wait for that long before the next pass
+                await(enqueued.get() + 1, minWriteDelayMs);
+            }
+        }
+
+        private void releaseSlotsOf(int count) {
+            int skipped = Math.min(unslotted, count);
+            unslotted -= skipped;
+            releaseSlots(count - skipped);
+        }
+
+        private void completed(List<SingleOperation> operations) {
+            processed += operations.size();
+            releaseSlotsOf(operations.size());
+            if (journal != null) {
+                journal.processed(operations);
+            }
+        }
+    }
+
+    private void processBatchedOperations(List<SingleOperation> batch) {
+        // create batches that are separated by operation type
+        final Map<SingleOperationType, List<SingleOperation>> separatedItemsPerType =
+                new TreeMap<SingleOperationType, List<SingleOperation>>();
+        for (SingleOperation item : batch) {
+            List<SingleOperation> itemsPerType = separatedItemsPerType.get(item.getType());
+            if (null == itemsPerType) {
+                itemsPerType = new ArrayList<SingleOperation>();
+                separatedItemsPerType.put(item.getType(), itemsPerType);
+            }
+            itemsPerType.add(item);
+        }
+
+        // execute the batch operations
+        for (List<SingleOperation> itemsPerType : separatedItemsPerType.values()) {
+            int executionsLeft = retryAttempts + 1;
+            while (executionsLeft-- > 0) {
+                try {
+                    itemsPerType.get(0).createBatchOperation(itemsPerType).performBatchOperation(cacheWriter);
+                    break;
+                } catch (final RuntimeException e) {
+                    if (executionsLeft <= 0) {
+                        for (SingleOperation singleOperation : itemsPerType) {
+                            singleOperation.throwAway(cacheWriter, e);
+                        }
+                    } else {
+                        retryLater(e, executionsLeft);
+                    }
+                }
+            }
+        }
+    }
+
+    private void processSingleOperations(List<SingleOperation> operations) {
+        for (SingleOperation item : operations) {
+            int executionsLeft = retryAttempts + 1;
+            while (executionsLeft-- > 0) {
+                try {
+                    item.performSingleOperation(cacheWriter);
+                    break;
+                } catch (final RuntimeException e) {
+                    if (executionsLeft <= 0) {
+                        try {
+                            item.throwAway(cacheWriter, e);
+                        } catch (RuntimeException runtimeException) {
+                            LOG.warn("Throwing key '" + item.getKey() + "' away triggered an Exception!", runtimeException);
+                        }
+                    } else {
+                        retryLater(e, executionsLeft);
+                    }
+                }
+            }
+        }
+    }
+
+    private void retryLater(RuntimeException e, int executionsLeft) {
+        LOG.warn("Exception while processing write behind queue, retrying in " + retryAttemptDelaySeconds
+                + " seconds, " + executionsLeft + " retries left : " + e.getMessage());
+        try {
+            Thread.sleep(retryAttemptDelaySeconds * MS_IN_SEC);
+        } catch (InterruptedException e1) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
 }
@@ -18,11 +18,13 @@ package net.sf.ehcache.writer.writebehind;
 
 import net.sf.ehcache.CacheEntry;
 import net.sf.ehcache.CacheException;
+import net.sf.ehcache.DiskStorePathManager;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.CacheWriterConfiguration;
 import net.sf.ehcache.writer.CacheWriter;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -62,6 +64,17 @@ public class WriteBehindQueueManager implements WriteBehind {
       this(config, new WriteBehindQueueFactory());
     }
 
+    /**
+     * Create a new write behind queue manager whose queues record their operations in journals kept in the given
+     * disk store path, as requested by {@link net.sf.ehcache.config.CacheWriterConfiguration#getWriteBehindJournal}.
+     *
+     * @param config the configuration for the queue
+     * @param diskStorePathManager the disk store path the journals are written to
+     */
+    public WriteBehindQueueManager(CacheConfiguration config, DiskStorePathManager diskStorePathManager) {
+      this(config, new JournaledWriteBehindQueueFactory(diskStorePathManager));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -80,28 +93,26 @@ public class WriteBehindQueueManager implements WriteBehind {
      * {@inheritDoc}
      */
     public void write(final Element element) {
-        readLock.lock();
-        try {
-            getQueue(element.getKey()).write(element);
-        } finally {
-            readLock.unlock();
-        }
+        // the queues are fixed at construction and check their own state, writers don't share any lock
+        getQueue(element.getKey()).write(element);
     }
 
     private WriteBehind getQueue(final Object key) {
-        return queues.get(Math.abs(key.hashCode() % queues.size()));
+        if (queues.size() == 1) {
+            return queues.get(0);
+        }
+        // spread the hash so that keys differing only in their high bits don't all land on the same queue
+        int hash = key.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return queues.get((hash & Integer.MAX_VALUE) % queues.size());
     }
 
     /**
      * {@inheritDoc}
      */
     public void delete(final CacheEntry entry) {
-        readLock.lock();
-        try {
-            getQueue(entry.getKey()).delete(entry);
-        } finally {
-            readLock.unlock();
-        }
+        getQueue(entry.getKey()).delete(entry);
     }
 
     /**
@@ -148,6 +159,27 @@ public class WriteBehindQueueManager implements WriteBehind {
         return size;
     }
 
+    /**
+     * Gets how far behind the writer is: the age, in milliseconds, of the oldest operation not yet written by any of
+     * the local queues.
+     *
+     * @return the lag, {@code 0} if no operation is waiting
+     */
+    public long getLag() {
+        long lag = 0;
+        readLock.lock();
+        try {
+            for (WriteBehind queue : queues) {
+                if (queue instanceof WriteBehindQueue) {
+                    lag = Math.max(lag, ((WriteBehindQueue) queue).getLag());
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return lag;
+    }
+
     /**
      * Factory used to create write behind queues.
      */
@@ -163,4 +195,22 @@ public class WriteBehindQueueManager implements WriteBehind {
         return new WriteBehindQueue(config);
       }
     }
+
+    /**
+     * Factory creating write behind queues backed by a journal per stripe.
+     */
+    private static class JournaledWriteBehindQueueFactory extends WriteBehindQueueFactory {
+      private final DiskStorePathManager diskStorePathManager;
+
+      JournaledWriteBehindQueueFactory(DiskStorePathManager diskStorePathManager) {
+        this.diskStorePathManager = diskStorePathManager;
+      }
+
+      @Override
+      protected WriteBehind createQueue(int index, CacheConfiguration config) {
+        File base = diskStorePathManager.getFile(config.getName(), "_writebehind" + index);
+        return new WriteBehindQueue(config, new WriteBehindJournal(base.getParentFile(), base.getName(), config.getSerializer(),
+                WriteBehindJournal.DEFAULT_SEGMENT_SIZE));
+      }
+    }
 }
@@ -139,6 +139,7 @@ public class NonstopTestUtil extends TestCase {
         skipMethods.add("unregisterCacheWriter");
         skipMethods.add("setDisabled");
         skipMethods.add("getWithLoader");
+        skipMethods.add("getAsync");
         skipMethods.add("getAllWithLoader");
         skipMethods.add("loadAll");
         skipMethods.add("clone");
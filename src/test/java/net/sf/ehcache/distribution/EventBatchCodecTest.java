@@ -0,0 +1,99 @@
+package net.sf.ehcache.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serialization.JavaSerializer;
+
+import org.junit.Test;
+
+public class EventBatchCodecTest {
+
+    @Test
+    public void testRoundTripKeepsElementMetadata() throws Exception {
+        Element element = new Element("key", "value", 42L, 1000L, 2000L, 7L, false, 60, 30, 1500L);
+        List<RmiEventMessage> messages = Arrays.asList(
+                new RmiEventMessage(null, RmiEventType.PUT, null, element),
+                new RmiEventMessage(null, RmiEventType.REMOVE, "removed", null),
+                new RmiEventMessage(null, RmiEventType.REMOVE_ALL, null, null),
+                new RmiEventMessage(null, RmiEventType.PUT, null, new Element(-1, null)));
+
+        List<RmiEventMessage> decoded = EventBatchCodec.decode(EventBatchCodec.encode(messages, new JavaSerializer(), -1));
+        assertEquals(4, decoded.size());
+
+        Element copy = decoded.get(0).getElement();
+        assertEquals(RmiEventType.PUT, decoded.get(0).getType());
+        assertEquals("key", copy.getObjectKey());
+        assertEquals("value", copy.getObjectValue());
+        assertEquals(42L, copy.getVersion());
+        assertEquals(1000L, copy.getCreationTime());
+        assertEquals(2000L, copy.getLastAccessTime());
+        assertEquals(1500L, copy.getLastUpdateTime());
+        assertEquals(7L, copy.getHitCount());
+        assertEquals(false, copy.usesCacheDefaultLifespan());
+        assertEquals(60, copy.getTimeToLive());
+        assertEquals(30, copy.getTimeToIdle());
+
+        assertEquals(RmiEventType.REMOVE, decoded.get(1).getType());
+        assertEquals("removed", decoded.get(1).getSerializableKey());
+        assertEquals(RmiEventType.REMOVE_ALL, decoded.get(2).getType());
+        assertEquals(-1, decoded.get(3).getElement().getObjectKey());
+        assertNull(decoded.get(3).getElement().getObjectValue());
+    }
+
+    @Test
+    public void testLargeBatchesAreCompressed() throws Exception {
+        List<RmiEventMessage> messages = new ArrayList<RmiEventMessage>();
+        for (int i = 0; i < 100; i++) {
+            char[] value = new char[1000];
+            Arrays.fill(value, (char) ('a' + i % 26));
+            messages.add(new RmiEventMessage(null, RmiEventType.PUT, null, new Element(i, new String(value))));
+        }
+        byte[] plain = EventBatchCodec.encode(messages, new JavaSerializer(), -1);
+        byte[] compressed = EventBatchCodec.encode(messages, new JavaSerializer(), EventBatchCodec.DEFAULT_COMPRESSION_THRESHOLD);
+        assertTrue(compressed.length * 10 < plain.length);
+
+        List<RmiEventMessage> decoded = EventBatchCodec.decode(compressed);
+        assertEquals(100, decoded.size());
+        assertEquals(messages.get(99).getElement().getObjectValue(), decoded.get(99).getElement().getObjectValue());
+
+        // below the threshold the batch is left as is
+        List<RmiEventMessage> small = messages.subList(0, 1);
+        assertEquals(EventBatchCodec.encode(small, new JavaSerializer(), -1).length,
+                EventBatchCodec.encode(small, new JavaSerializer(), 1 << 20).length);
+    }
+
+    @Test
+    public void testCorruptBatchesAreRejected() throws Exception {
+        List<RmiEventMessage> messages = Arrays.asList(new RmiEventMessage(null, RmiEventType.PUT, null, new Element("k", "v")));
+        byte[] batch = EventBatchCodec.encode(messages, new JavaSerializer(), -1);
+
+        byte[] unknownVersion = batch.clone();
+        unknownVersion[4] = (byte) (EventBatchCodec.FORMAT_VERSION + 1);
+        assertRejected(unknownVersion);
+
+        byte[] notABatch = batch.clone();
+        notABatch[0]++;
+        assertRejected(notABatch);
+
+        assertRejected(Arrays.copyOf(batch, batch.length - 3));
+    }
+
+    private static void assertRejected(byte[] batch) throws ClassNotFoundException {
+        try {
+            EventBatchCodec.decode(batch);
+            fail("decoded a corrupt batch");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Map;
@@ -99,5 +100,16 @@ public class EventMessageTest {
         assertEquals(RmiEventType.PUT, eventMessage2.getType());
     }
 
+    /**
+     * The serialized form must stay readable by peers running earlier versions.
+     */
+    @Test
+    public void testSerializedFormIsCompatibleWithEarlierVersions() {
+        ObjectStreamClass descriptor = ObjectStreamClass.lookup(RmiEventMessage.class);
+        assertEquals(-6838027855576772339L, descriptor.getSerialVersionUID());
+        assertEquals(Element.class, descriptor.getField("element").getType());
+        assertEquals(RmiEventType.class, descriptor.getField("type").getType());
+    }
+
 
 }
@@ -0,0 +1,86 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.Configuration;
+
+/**
+ * An RMI peer provider listing whatever peers a test put in its list, for every cache.
+ */
+final class FixedPeerProvider implements CacheManagerPeerProvider {
+
+    private final List<CachePeer> peers;
+
+    /**
+     * Creates a provider listing the given peers, as they are when caches ask for them.
+     *
+     * @param peers the peers, which the test may change at any time
+     */
+    FixedPeerProvider(List<CachePeer> peers) {
+        this.peers = peers;
+    }
+
+    /**
+     * Creates a cache manager whose RMI peer provider lists the given peers.
+     *
+     * @param name  the name of the cache manager
+     * @param peers the peers, which the test may change at any time
+     * @return the cache manager
+     */
+    static CacheManager cacheManager(String name, List<CachePeer> peers) {
+        final CacheManagerPeerProvider provider = new FixedPeerProvider(peers);
+        return new CacheManager(new Configuration().name(name)) {
+            {
+                cacheManagerPeerProviders.put("RMI", provider);
+            }
+        };
+    }
+
+    public void registerPeer(String nodeId) {
+        // no-op
+    }
+
+    public void unregisterPeer(String nodeId) {
+        // no-op
+    }
+
+    public List listRemoteCachePeers(Ehcache cache) throws CacheException {
+        return new ArrayList<CachePeer>(peers);
+    }
+
+    public void init() {
+        // no-op
+    }
+
+    public void dispose() throws CacheException {
+        // no-op
+    }
+
+    public long getTimeForClusterToForm() {
+        return 0;
+    }
+
+    public String getScheme() {
+        return "RMI";
+    }
+}
@@ -0,0 +1,377 @@
+package net.sf.ehcache.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RMIAsynchronousCacheReplicatorTest {
+
+    private final List<CachePeer> peers = new CopyOnWriteArrayList<CachePeer>();
+    private CacheManager manager;
+    private Ehcache cache;
+
+    @Before
+    public void setUp() {
+        manager = FixedPeerProvider.cacheManager("RMIAsynchronousCacheReplicatorTest", peers);
+        manager.addCache(new Cache(new CacheConfiguration("replicated", 100)));
+        cache = manager.getCache("replicated");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testEventsOnTheSameKeyAreCoalesced() throws Exception {
+        RecordingPeer peer = new RecordingPeer("peer");
+        peers.add(peer);
+        RMIAsynchronousCacheReplicator replicator = replicator(60000, 16);
+        for (int i = 0; i < 10; i++) {
+            replicator.notifyElementUpdated(cache, new Element("hot", i));
+        }
+        replicator.notifyElementPut(cache, new Element("removed", "value"));
+        replicator.notifyElementRemoved(cache, new Element("removed", null));
+        replicator.notifyElementPut(cache, new Element("other", "value"));
+        assertEquals(3, replicator.getPendingEventCount());
+        assertEquals(10, replicator.getCoalescedEventCount());
+        replicator.dispose();
+
+        List<RmiEventMessage> messages = peer.messages();
+        assertEquals(3, messages.size());
+        assertEquals(RmiEventType.PUT, messages.get(0).getType());
+        assertEquals(9, messages.get(0).getElement().getObjectValue());
+        assertEquals(RmiEventType.REMOVE, messages.get(1).getType());
+        assertEquals("removed", messages.get(1).getSerializableKey());
+        assertEquals("other", messages.get(2).getElement().getObjectKey());
+    }
+
+    @Test
+    public void testRemoveAllSupersedesPendingEvents() throws Exception {
+        RecordingPeer peer = new RecordingPeer("peer");
+        peers.add(peer);
+        RMIAsynchronousCacheReplicator replicator = replicator(60000, 16);
+        replicator.notifyElementPut(cache, new Element("a", "1"));
+        replicator.notifyElementPut(cache, new Element("b", "2"));
+        replicator.notifyRemoveAll(cache);
+        replicator.notifyElementPut(cache, new Element("a", "3"));
+        replicator.dispose();
+
+        List<RmiEventMessage> messages = peer.messages();
+        assertEquals(2, messages.size());
+        assertEquals(RmiEventType.REMOVE_ALL, messages.get(0).getType());
+        assertEquals("3", messages.get(1).getElement().getObjectValue());
+        assertEquals(2, replicator.getCoalescedEventCount());
+    }
+
+    @Test
+    public void testSlowPeerDoesNotHoldUpOthers() throws Exception {
+        RecordingPeer slow = new RecordingPeer("slow");
+        slow.release = new CountDownLatch(1);
+        RecordingPeer fast = new RecordingPeer("fast");
+        peers.add(slow);
+        peers.add(fast);
+        RMIAsynchronousCacheReplicator replicator = replicator(20, 2);
+
+        for (int i = 0; i < 20; i++) {
+            replicator.notifyElementPut(cache, new Element(i, i));
+            Thread.sleep(40);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fast.messages().size() < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, fast.messages().size());
+        assertTrue(slow.messages().isEmpty());
+
+        PeerReplicationStatistics slowStatistics = statistics(replicator, "slow");
+        assertTrue(slowStatistics.getLag() > 0);
+        assertEquals(2, slowStatistics.getQueuedBatches());
+        assertTrue(slowStatistics.getBackloggedMessages() > 0);
+        assertEquals(0, statistics(replicator, "fast").getLag());
+        assertEquals(20, statistics(replicator, "fast").getSentMessages());
+
+        slow.release.countDown();
+        replicator.dispose();
+        List<RmiEventMessage> messages = slow.messages();
+        assertEquals(20, messages.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, messages.get(i).getElement().getObjectKey());
+        }
+        assertEquals(0, statistics(replicator, "slow").getBackloggedMessages());
+    }
+
+    @Test
+    public void testBackloggedEventsAreCoalesced() throws Exception {
+        RecordingPeer slow = new RecordingPeer("backlogged");
+        slow.release = new CountDownLatch(1);
+        peers.add(slow);
+        RMIAsynchronousCacheReplicator replicator = replicator(20, 1);
+
+        replicator.notifyElementPut(cache, new Element("first", 0));
+        awaitSends(slow, 1);
+        replicator.notifyElementPut(cache, new Element("queued", 0));
+        awaitQueued(replicator, "backlogged", 1);
+        for (int i = 0; i < 10; i++) {
+            replicator.notifyElementPut(cache, new Element("hot", i));
+            Thread.sleep(40);
+        }
+        replicator.notifyElementRemoved(cache, new Element("queued", null));
+        Thread.sleep(200);
+
+        PeerReplicationStatistics statistics = statistics(replicator, "backlogged");
+        assertEquals(2, statistics.getBackloggedMessages());
+        assertTrue(statistics.getCoalescedMessages() > 0);
+
+        slow.release.countDown();
+        replicator.dispose();
+        List<RmiEventMessage> messages = slow.messages();
+        assertEquals(4, messages.size());
+        assertEquals("first", messages.get(0).getElement().getObjectKey());
+        assertEquals("queued", messages.get(1).getElement().getObjectKey());
+        assertEquals(9, messages.get(2).getElement().getObjectValue());
+        assertEquals(RmiEventType.REMOVE, messages.get(3).getType());
+    }
+
+    @Test
+    public void testPeersOnTheSameNodeShareASenderThread() throws Exception {
+        RecordingPeer first = new RecordingPeer("//shared:40001/first", "//shared:40001");
+        RecordingPeer second = new RecordingPeer("//shared:40001/second", "//shared:40001");
+        CountDownLatch release = new CountDownLatch(1);
+        first.release = release;
+        second.release = release;
+        peers.add(first);
+        peers.add(second);
+        RMIAsynchronousCacheReplicator replicator = replicator(20, 16);
+        RMIAsynchronousCacheReplicator other = replicator(20, 16);
+        replicator.notifyElementPut(cache, new Element("a", "1"));
+        other.notifyElementPut(cache, new Element("b", "2"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (first.sends.get() + second.sends.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertEquals(1, first.sends.get() + second.sends.get());
+        int senderThreads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Replication Thread for //shared:40001")) {
+                senderThreads++;
+            }
+        }
+        assertEquals(1, senderThreads);
+
+        release.countDown();
+        replicator.dispose();
+        other.dispose();
+        assertEquals(2, first.messages().size());
+        assertEquals(2, second.messages().size());
+
+        // the thread ends with the last sender using it, rather than lingering for the keep alive
+        deadline = System.currentTimeMillis() + 5000;
+        while (senderThreads > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            senderThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("Replication Thread for //shared:40001")) {
+                    senderThreads++;
+                }
+            }
+        }
+        assertEquals(0, senderThreads);
+    }
+
+    @Test
+    public void testDepartedPeerIsRetired() throws Exception {
+        RecordingPeer first = new RecordingPeer("first");
+        peers.add(first);
+        RMIAsynchronousCacheReplicator replicator = replicator(20, 16);
+        replicator.notifyElementPut(cache, new Element("a", "1"));
+        while (first.messages().isEmpty()) {
+            Thread.sleep(10);
+        }
+        peers.clear();
+        RecordingPeer second = new RecordingPeer("second");
+        peers.add(second);
+        replicator.notifyElementPut(cache, new Element("b", "2"));
+        replicator.dispose();
+
+        assertEquals(1, first.messages().size());
+        assertEquals(1, second.messages().size());
+        assertEquals(1, replicator.getPeerStatistics().size());
+        assertEquals(1, statistics(replicator, "second").getSentMessages());
+    }
+
+    @Test
+    public void testReturningPeerKeepsItsDrainingSender() throws Exception {
+        RecordingPeer returning = new RecordingPeer("returning");
+        returning.release = new CountDownLatch(1);
+        peers.add(returning);
+        RMIAsynchronousCacheReplicator replicator = replicator(20, 16);
+        replicator.notifyElementPut(cache, new Element("a", "1"));
+        awaitSends(returning, 1);
+        replicator.notifyElementPut(cache, new Element("b", "2"));
+        awaitQueued(replicator, "returning", 1);
+
+        peers.clear();
+        replicator.notifyElementPut(cache, new Element("missed", "3"));
+        Thread.sleep(200);
+        peers.add(returning);
+        replicator.notifyElementPut(cache, new Element("c", "4"));
+        awaitQueued(replicator, "returning", 2);
+
+        returning.release.countDown();
+        replicator.dispose();
+        List<RmiEventMessage> messages = returning.messages();
+        assertEquals(3, messages.size());
+        assertEquals("a", messages.get(0).getElement().getObjectKey());
+        assertEquals("b", messages.get(1).getElement().getObjectKey());
+        assertEquals("c", messages.get(2).getElement().getObjectKey());
+        assertEquals(1, replicator.getPeerStatistics().size());
+        assertEquals(3, statistics(replicator, "returning").getSentMessages());
+    }
+
+    @Test
+    public void testBinaryFormatIsUsedWhenThePeerSupportsIt() throws Exception {
+        RecordingPeer legacy = new RecordingPeer("legacy");
+        BinaryRecordingPeer binary = new BinaryRecordingPeer("binary");
+        peers.add(legacy);
+        peers.add(binary);
+        RMIAsynchronousCacheReplicator replicator = replicator(60000, 16);
+        replicator.notifyElementPut(cache, new Element("a", "1"));
+        replicator.notifyElementRemoved(cache, new Element("b", null));
+        replicator.dispose();
+
+        assertEquals(2, legacy.messages().size());
+        assertEquals(0, statistics(replicator, "legacy").getSentBytes());
+        List<RmiEventMessage> messages = binary.messages();
+        assertEquals(2, messages.size());
+        assertEquals("1", messages.get(0).getElement().getObjectValue());
+        assertEquals("b", messages.get(1).getSerializableKey());
+        assertEquals(1, binary.batches);
+        assertTrue(statistics(replicator, "binary").getSentBytes() > 0);
+    }
+
+    private RMIAsynchronousCacheReplicator replicator(int interval, int peerQueueSize) throws InterruptedException {
+        RMIAsynchronousCacheReplicator replicator = new RMIAsynchronousCacheReplicator(true, true, true, true, true,
+                interval, 1000, peerQueueSize, EventBatchCodec.DEFAULT_COMPRESSION_THRESHOLD);
+        // let the replication thread find the queue empty and start its first interval
+        Thread.sleep(100);
+        return replicator;
+    }
+
+    private static void awaitSends(RecordingPeer peer, int sends) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (peer.sends.get() < sends && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(sends, peer.sends.get());
+    }
+
+    private static void awaitQueued(RMIAsynchronousCacheReplicator replicator, String peer, int batches)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (statistics(replicator, peer).getQueuedBatches() < batches && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(batches, statistics(replicator, peer).getQueuedBatches());
+    }
+
+    private static PeerReplicationStatistics statistics(RMIAsynchronousCacheReplicator replicator, String peer) {
+        for (PeerReplicationStatistics statistics : replicator.getPeerStatistics()) {
+            if (peer.equals(statistics.getPeer())) {
+                return statistics;
+            }
+        }
+        throw new AssertionError("No statistics for " + peer);
+    }
+
+    /**
+     * Records the messages sent to it, optionally blocking until released.
+     */
+    private static class RecordingPeer extends StubCachePeer {
+
+        private final List<RmiEventMessage> received = Collections.synchronizedList(new ArrayList<RmiEventMessage>());
+        private final AtomicInteger sends = new AtomicInteger();
+        private volatile CountDownLatch release = new CountDownLatch(0);
+
+        RecordingPeer(String url) {
+            this(url, url);
+        }
+
+        RecordingPeer(String url, String urlBase) {
+            super("replicated", url, urlBase);
+        }
+
+        void received(List<RmiEventMessage> eventMessages) {
+            received.addAll(eventMessages);
+        }
+
+        List<RmiEventMessage> messages() {
+            synchronized (received) {
+                return new ArrayList<RmiEventMessage>(received);
+            }
+        }
+
+        @Override
+        public void send(List eventMessages) throws RemoteException {
+            sends.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteException("interrupted", e);
+            }
+            for (Object message : eventMessages) {
+                received.add((RmiEventMessage) message);
+            }
+        }
+    }
+
+    /**
+     * Records the messages sent to it in the binary format.
+     */
+    private static final class BinaryRecordingPeer extends RecordingPeer implements EventBatchCachePeer {
+
+        private volatile int batches;
+
+        BinaryRecordingPeer(String url) {
+            super(url);
+        }
+
+        public int getEventBatchFormatVersion() {
+            return EventBatchCodec.FORMAT_VERSION;
+        }
+
+        public void sendEventBatch(byte[] eventBatch) throws RemoteException {
+            try {
+                received(EventBatchCodec.decode(eventBatch));
+                batches++;
+            } catch (Exception e) {
+                throw new RemoteException("undecodable batch", e);
+            }
+        }
+
+        @Override
+        public void send(List eventMessages) {
+            throw new AssertionError("binary peer sent serialized messages");
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package net.sf.ehcache.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.util.MemoryEfficientByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RMIBootstrapCacheLoaderStreamingTest {
+
+    private static final int ELEMENTS = 2000;
+    private static final String VALUE = new String(new char[1000]).replace('\0', 'A');
+
+    private final List<CachePeer> peers = new CopyOnWriteArrayList<CachePeer>();
+    private final Map<Object, Element> remoteElements = new ConcurrentHashMap<Object, Element>();
+    private final AtomicInteger concurrentFetches = new AtomicInteger();
+    private final AtomicInteger mostConcurrentFetches = new AtomicInteger();
+    private CacheManager manager;
+    private Ehcache cache;
+
+    @Before
+    public void setUp() {
+        manager = FixedPeerProvider.cacheManager("RMIBootstrapCacheLoaderStreamingTest", peers);
+        manager.addCache(new Cache(new CacheConfiguration("bootstrapped", ELEMENTS * 2)));
+        cache = manager.getCache("bootstrapped");
+        for (int i = 0; i < ELEMENTS; i++) {
+            remoteElements.put(i, new Element(i, VALUE + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testStreamsFromAllPeersInAdaptiveChunks() throws Exception {
+        StreamingPeer first = new StreamingPeer("first");
+        StreamingPeer second = new StreamingPeer("second");
+        peers.add(first);
+        peers.add(second);
+        new RMIBootstrapCacheLoader(false, 50000, 3).load(cache);
+
+        assertEquals(ELEMENTS, cache.getSize());
+        assertEquals(VALUE + (ELEMENTS - 1), cache.get(ELEMENTS - 1).getObjectValue());
+        assertTrue(first.chunkSizes.size() > 1);
+        assertTrue(second.chunkSizes.size() > 1);
+        assertTrue(first.keyPages.get() + second.keyPages.get() > 1);
+        assertTrue(first.keyPages.get() == 0 || second.keyPages.get() == 0);
+
+        List<Integer> chunkSizes = new ArrayList<Integer>(first.chunkSizes);
+        chunkSizes.addAll(second.chunkSizes);
+        Collections.sort(chunkSizes);
+        // the first chunks are small, the others sized for 50KB of ~1KB elements
+        assertEquals(16, (int) chunkSizes.get(0));
+        assertTrue(chunkSizes.get(chunkSizes.size() - 1) > 30);
+        assertTrue(chunkSizes.get(chunkSizes.size() - 1) <= 50);
+        assertTrue(mostConcurrentFetches.get() <= 3);
+    }
+
+    @Test
+    public void testChunkFailingOnAnotherPeerIsFetchedFromTheKeySource() throws Exception {
+        StreamingPeer failing = new StreamingPeer("failing");
+        StreamingPeer working = new StreamingPeer("working");
+        failing.failChunksUnlessKeySource = true;
+        peers.add(failing);
+        peers.add(working);
+        // the key source is chosen at random
+        for (int i = 0; i < 20 && failing.failures.get() == 0; i++) {
+            cache.removeAll();
+            failing.keyPages.set(0);
+            new RMIBootstrapCacheLoader(false, 50000, 2).load(cache);
+            assertEquals(ELEMENTS, cache.getSize());
+        }
+        assertTrue(failing.failures.get() > 0);
+    }
+
+    @Test
+    public void testOlderPeersAreBootstrappedFromWithAllKeys() throws Exception {
+        peers.add(new LegacyPeer("legacy"));
+        new RMIBootstrapCacheLoader(false, 50000).load(cache);
+        assertEquals(ELEMENTS, cache.getSize());
+    }
+
+    @Test
+    public void testRMICachePeerPagesKeysThroughACursor() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            cache.put(new Element(i, "value" + i));
+        }
+        RMICachePeer peer = new RMICachePeer(cache, "localhost", 40000, 0, 2000);
+        try {
+            Set<Object> keys = new HashSet<Object>();
+            KeyPage page = peer.getKeyPage(0, 100);
+            int pages = 1;
+            keys.addAll(page.getKeys());
+            while (!page.isLast()) {
+                page = peer.getKeyPage(page.getCursor(), 100);
+                keys.addAll(page.getKeys());
+                pages++;
+            }
+            assertEquals(3, pages);
+            assertEquals(250, keys.size());
+
+            try {
+                peer.getKeyPage(12345, 100);
+                fail();
+            } catch (RemoteException e) {
+                // unknown cursor
+            }
+
+            List elements = deserialize(peer.getSerializedElements(new ArrayList<Object>(Collections.singletonList(7))));
+            assertEquals(1, elements.size());
+            assertEquals("value7", ((Element) elements.get(0)).getObjectValue());
+        } finally {
+            UnicastRemoteObject.unexportObject(peer, true);
+        }
+    }
+
+    @Test
+    public void testRMICachePeerCursorsWalkTheStoreInPlace() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            cache.put(new Element(i, "value" + i));
+        }
+        RMICachePeer peer = new RMICachePeer(cache, "localhost", 40000, 0, 2000);
+        try {
+            KeyPage page = peer.getKeyPage(0, 100);
+            assertEquals(100, page.getKeys().size());
+            cache.removeAll();
+            // a copy of the keys would still hold the other 150, the store's iterator only the bucket it is in
+            page = peer.getKeyPage(page.getCursor(), 100);
+            assertTrue(page.getKeys().size() < 10);
+            assertTrue(page.isLast());
+        } finally {
+            UnicastRemoteObject.unexportObject(peer, true);
+        }
+    }
+
+    @Test
+    public void testRMICachePeerBoundsOpenCursors() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            cache.put(new Element(i, "value" + i));
+        }
+        RMICachePeer peer = new RMICachePeer(cache, "localhost", 40000, 0, 2000);
+        try {
+            for (int i = 0; i < 16; i++) {
+                assertTrue(!peer.getKeyPage(0, 1).isLast());
+            }
+            try {
+                peer.getKeyPage(0, 1);
+                fail();
+            } catch (RemoteException e) {
+                // too many open cursors
+            }
+            // a cursor read to its end is closed
+            assertTrue(peer.getKeyPage(1, 100).isLast());
+            assertTrue(!peer.getKeyPage(0, 1).isLast());
+        } finally {
+            UnicastRemoteObject.unexportObject(peer, true);
+        }
+    }
+
+    private static List deserialize(byte[] serialized) throws IOException, ClassNotFoundException {
+        return (List) new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+    }
+
+    /**
+     * Serves the remote elements of the test through the bulk methods of {@link CachePeer}.
+     */
+    private class LegacyPeer extends StubCachePeer {
+
+        LegacyPeer(String url) {
+            super("bootstrapped", url);
+        }
+
+        @Override
+        public List getKeys() {
+            return new ArrayList<Object>(remoteElements.keySet());
+        }
+
+        @Override
+        public Element getQuiet(Serializable key) {
+            return remoteElements.get(key);
+        }
+
+        @Override
+        public List getElements(List keys) throws RemoteException {
+            List<Element> elements = new ArrayList<Element>();
+            for (Object key : keys) {
+                Element element = remoteElements.get(key);
+                if (element != null) {
+                    elements.add(element);
+                }
+            }
+            return elements;
+        }
+    }
+
+    /**
+     * Serves the remote elements of the test through a key cursor, recording the chunks it is asked for.
+     */
+    private final class StreamingPeer extends LegacyPeer implements BootstrapCachePeer {
+
+        private static final int NO_CURSOR = 0;
+        private final AtomicInteger keyPages = new AtomicInteger();
+        private final List<Integer> chunkSizes = new CopyOnWriteArrayList<Integer>();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean failChunksUnlessKeySource;
+        private volatile List<Object> cursorKeys;
+
+        StreamingPeer(String url) {
+            super(url);
+        }
+
+        public KeyPage getKeyPage(long cursor, int maximumKeys) {
+            keyPages.incrementAndGet();
+            if (cursor == NO_CURSOR) {
+                cursorKeys = getKeys();
+            }
+            int from = (int) Math.max(0, cursor - 1);
+            int to = Math.min(cursorKeys.size(), from + maximumKeys);
+            return new KeyPage(to == cursorKeys.size() ? NO_CURSOR : to + 1, new ArrayList<Object>(cursorKeys.subList(from, to)));
+        }
+
+        public byte[] getSerializedElements(List keys) throws RemoteException {
+            int concurrent = concurrentFetches.incrementAndGet();
+            for (int most = mostConcurrentFetches.get(); concurrent > most
+                    && !mostConcurrentFetches.compareAndSet(most, concurrent);) {
+                most = mostConcurrentFetches.get();
+            }
+            try {
+                if (failChunksUnlessKeySource && keyPages.get() == 0) {
+                    failures.incrementAndGet();
+                    throw new RemoteException("unavailable");
+                }
+                chunkSizes.add(keys.size());
+                Thread.sleep(1);
+                return MemoryEfficientByteArrayOutputStream.serialize((Serializable) getElements(keys)).getBytes();
+            } catch (IOException e) {
+                throw new RemoteException("unserializable", e);
+            } catch (InterruptedException e) {
+                throw new RemoteException("interrupted", e);
+            } finally {
+                concurrentFetches.decrementAndGet();
+            }
+        }
+    }
+}
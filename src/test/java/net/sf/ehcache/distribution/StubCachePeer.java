@@ -0,0 +1,106 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.distribution;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import net.sf.ehcache.Element;
+
+/**
+ * A {@link CachePeer} for tests which only knows its URLs, and throws {@link UnsupportedOperationException} from the
+ * operations that subclasses do not implement.
+ */
+class StubCachePeer implements CachePeer {
+
+    private final String name;
+    private final String url;
+    private final String urlBase;
+
+    /**
+     * Creates a peer of the given cache, alone on its node.
+     *
+     * @param name the name of the cache
+     * @param url  the URL of the peer, which is also its GUID and URL base
+     */
+    StubCachePeer(String name, String url) {
+        this(name, url, url);
+    }
+
+    /**
+     * Creates a peer of the given cache.
+     *
+     * @param name    the name of the cache
+     * @param url     the URL of the peer, which is also its GUID
+     * @param urlBase the URL of the node of the peer
+     */
+    StubCachePeer(String name, String url, String urlBase) {
+        this.name = name;
+        this.url = url;
+        this.urlBase = urlBase;
+    }
+
+    public void put(Element element) throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean remove(Serializable key) throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void removeAll() throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void send(List eventMessages) throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public List getKeys() throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public Element getQuiet(Serializable key) throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public List getElements(List keys) throws RemoteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getGuid() {
+        return url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUrlBase() {
+        return urlBase;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
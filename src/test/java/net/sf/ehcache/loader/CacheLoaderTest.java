@@ -19,7 +19,9 @@ package net.sf.ehcache.loader;
 
 import net.sf.ehcache.AbstractCacheTest;
 import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
 import net.sf.ehcache.config.CacheConfiguration;
@@ -32,13 +34,25 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:gluck@gregluck.com">Greg Luck</a>
@@ -102,6 +116,108 @@ public class CacheLoaderTest {
         assertTrue(cachedObjects.containsKey(3));
     }
 
+    @Test
+    public void testGetAllWithLoaderLoadsInBatches() {
+        Cache cache = new Cache(new CacheConfiguration("batchLoaderCache", 1000).cacheLoaderBatchSize(10));
+        manager.addCache(cache);
+        BatchRecordingLoader loader = new BatchRecordingLoader(null);
+        cache.registerCacheLoader(loader);
+        cache.put(new Element(0, "cached"));
+
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 96; i++) {
+            keys.add(i);
+        }
+        Map values = cache.getAllWithLoader(keys, null);
+
+        assertEquals(96, values.size());
+        assertEquals("cached", values.get(0));
+        for (int i = 1; i < 96; i++) {
+            assertEquals("loaded-" + i, values.get(i));
+        }
+        assertEquals(10, loader.batches.size());
+        for (Integer batchSize : loader.batches) {
+            assertTrue(batchSize <= 10);
+        }
+        assertEquals(96, cache.getSize());
+        assertEquals("loaded-95", cache.get(95).getObjectValue());
+    }
+
+    @Test
+    public void testConcurrentGetAllWithLoaderLoadsEachKeyOnce() throws Exception {
+        final Cache cache = new Cache(new CacheConfiguration("dedupLoaderCache", 1000));
+        manager.addCache(cache);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchRecordingLoader loader = new BatchRecordingLoader(release);
+        cache.registerCacheLoader(loader);
+
+        final int callers = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(callers);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Map>> futures = new ArrayList<Future<Map>>();
+            for (int c = 0; c < callers; c++) {
+                final int offset = c * 10;
+                futures.add(executor.submit(new Callable<Map>() {
+                    public Map call() throws Exception {
+                        List<Integer> keys = new ArrayList<Integer>();
+                        for (int i = offset; i < offset + 50; i++) {
+                            keys.add(i);
+                        }
+                        barrier.await();
+                        return cache.getAllWithLoader(keys, null);
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (int c = 0; c < callers; c++) {
+                Map values = futures.get(c).get();
+                assertEquals(50, values.size());
+                for (int i = c * 10; i < c * 10 + 50; i++) {
+                    assertEquals("loaded-" + i, values.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (AtomicInteger count : loader.loads.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(80, loader.loads.size());
+    }
+
+    @Test
+    public void testGetAllWithLoaderSkipsNullKeys() {
+        Cache cache = new Cache(new CacheConfiguration("nullKeyLoaderCache", 100).cacheLoaderBatchSize(2).timeoutMillis(5000));
+        manager.addCache(cache);
+        BatchRecordingLoader loader = new BatchRecordingLoader(null);
+        cache.registerCacheLoader(loader);
+
+        Map values = cache.getAllWithLoader(Arrays.asList(1, null, 2, 3), null);
+        assertEquals(4, values.size());
+        assertTrue(values.containsKey(null));
+        assertNull(values.get(null));
+        assertEquals("loaded-3", values.get(3));
+        assertEquals(3, loader.loads.size());
+
+        cache.removeAll();
+        assertEquals("loaded-1", cache.getAllWithLoader(Arrays.asList(1), null).get(1));
+    }
+
+    @Test
+    public void testGetAllWithLoaderException() {
+        Cache cache = new Cache(new CacheConfiguration("exceptionLoaderCache", 100));
+        manager.addCache(cache);
+        cache.registerCacheLoader(new ExceptionThrowingLoader());
+        try {
+            cache.getAllWithLoader(Arrays.asList("key1", "key2"), null);
+            fail();
+        } catch (CacheException e) {
+            //expected
+        }
+    }
+
     @Test
     public void testLoaderChainNullFirst() {
         Cache cache = manager.getCache("NullLoaderFirstCache");
@@ -190,4 +306,45 @@ public class CacheLoaderTest {
         //just test it does not blow up
         manager.addCache("clonedCache");
     }
+
+    /**
+     * Records the size of every loadAll batch and how many times each key got loaded
+     */
+    private static class BatchRecordingLoader extends CountingCacheLoader {
+
+        private final List<Integer> batches = new ArrayList<Integer>();
+        private final ConcurrentHashMap<Object, AtomicInteger> loads = new ConcurrentHashMap<Object, AtomicInteger>();
+        private final CountDownLatch release;
+
+        BatchRecordingLoader(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Map loadAll(Collection keys) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new CacheException(e);
+                }
+            }
+            synchronized (batches) {
+                batches.add(keys.size());
+            }
+            Map<Object, Object> result = new HashMap<Object, Object>();
+            for (Object key : keys) {
+                AtomicInteger count = new AtomicInteger();
+                AtomicInteger previous = loads.putIfAbsent(key, count);
+                (previous == null ? count : previous).incrementAndGet();
+                result.put(key, "loaded-" + key);
+            }
+            return result;
+        }
+
+        @Override
+        public CacheLoader clone(Ehcache cache) throws CloneNotSupportedException {
+            throw new CloneNotSupportedException();
+        }
+    }
 }
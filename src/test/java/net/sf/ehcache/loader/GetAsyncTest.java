@@ -0,0 +1,158 @@
+package net.sf.ehcache.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.LoaderTimeoutException;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.constructs.blocking.BlockingCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GetAsyncTest {
+
+    private CacheManager manager;
+    private Cache cache;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("GetAsyncTest"));
+        cache = new Cache(new CacheConfiguration("async", 100));
+        manager.addCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        LatchedLoader loader = new LatchedLoader();
+        List<Future<Element>> futures = new ArrayList<Future<Element>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(cache.getAsync("key", loader, null));
+        }
+        for (Future<Element> future : futures) {
+            assertSame(futures.get(0), future);
+        }
+        assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+        assertEquals(false, futures.get(0).isDone());
+
+        loader.release.countDown();
+        assertEquals("value-key", futures.get(0).get(5, TimeUnit.SECONDS).getObjectValue());
+        assertEquals(1, loader.loads.get());
+        assertEquals("value-key", cache.get("key").getObjectValue());
+
+        Future<Element> hit = cache.getAsync("key", loader, null);
+        assertTrue(hit.isDone());
+        assertEquals("value-key", hit.get().getObjectValue());
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void testLoadInProgressDoesNotBlockOtherKeys() throws Exception {
+        cache.put(new Element("cached", "value"));
+        LatchedLoader loader = new LatchedLoader();
+        Future<Element> slow = cache.getAsync("slow", loader, null);
+        assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+
+        Future<Element> cached = cache.getAsync("cached", loader, null);
+        assertTrue(cached.isDone());
+        assertEquals("value", cached.get().getObjectValue());
+        assertEquals(false, slow.isDone());
+        loader.release.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testTimedOutLoadIsReleased() throws Exception {
+        cache.getCacheConfiguration().setCacheLoaderTimeoutMillis(200);
+        LatchedLoader loader = new LatchedLoader();
+        Future<Element> first = cache.getAsync("key", loader, null);
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof LoaderTimeoutException);
+        }
+
+        Future<Element> second = cache.getAsync("key", loader, null);
+        assertNotSame(first, second);
+        loader.release.countDown();
+        assertEquals("value-key", second.get(5, TimeUnit.SECONDS).getObjectValue());
+    }
+
+    @Test
+    public void testFailedLoadIsRetried() throws Exception {
+        LatchedLoader loader = new LatchedLoader();
+        loader.release.countDown();
+        loader.failures.set(1);
+        try {
+            cache.getAsync("key", loader, null).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CacheException);
+        }
+        assertNull(cache.get("key"));
+
+        assertEquals("value-key", cache.getAsync("key", loader, null).get(5, TimeUnit.SECONDS).getObjectValue());
+        assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void testNoLoaderGivesNull() throws Exception {
+        Future<Element> future = cache.getAsync("key", null, null);
+        assertTrue(future.isDone());
+        assertNull(future.get());
+    }
+
+    @Test(expected = CacheException.class)
+    public void testNotAppropriateForBlockingCache() {
+        new BlockingCache(cache).getAsync("key", new LatchedLoader(), null);
+    }
+
+    /**
+     * Counts its loads, which wait until released and may fail.
+     */
+    private static final class LatchedLoader extends CountingCacheLoader {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Object load(Object key) throws CacheException {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new CacheException(e);
+            }
+            if (failures.getAndDecrement() > 0) {
+                throw new CacheException("failed load of " + key);
+            }
+            return "value-" + key;
+        }
+    }
+}
@@ -79,7 +79,7 @@ import org.slf4j.LoggerFactory;
 public class ManagementServiceTest extends AbstractCacheTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(ManagementServiceTest.class.getName());
-    private static final int OBJECTS_IN_TEST_EHCACHE = 46;
+    private static final int OBJECTS_IN_TEST_EHCACHE = 58;
     private MBeanServer mBeanServer;
 
 
@@ -149,7 +149,7 @@ public class ManagementServiceTest extends AbstractCacheTest {
         ManagementService.registerMBeans(manager, mBeanServer, true, true, true, true, true);
         assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE));
         manager.addCache("new cache");
-        assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE + 3));
+        assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE + 4));
         manager.removeCache("sampleCache1");
         assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE));
     }
@@ -165,7 +165,7 @@ public class ManagementServiceTest extends AbstractCacheTest {
         Configuration configuration = ConfigurationFactory.parseConfiguration(file).name("cm-2");
         net.sf.ehcache.CacheManager secondCacheManager = new net.sf.ehcache.CacheManager(configuration);
         ManagementService.registerMBeans(secondCacheManager, mBeanServer, true, true, true, true, true);
-        assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE + 19));
+        assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE + 22));
         secondCacheManager.shutdown();
         assertThat(mBeanServer.queryNames(new ObjectName("net.sf.ehcache:*"), null), hasSize(OBJECTS_IN_TEST_EHCACHE));
     }
@@ -6,11 +6,13 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Alex Snaps
@@ -82,6 +84,100 @@ public class ObjectGraphWalkerTest {
     assertThat(walker.walk(MAX_SIZEOF_DEPTH, false), is(0L));
   }
 
+  @Test
+  public void testVisitsSharedAndCyclicReferencesOnce() {
+    Node a = new Node();
+    Node b = new Node();
+    Node c = new Node();
+    a.left = b;
+    a.right = c;
+    b.left = c;
+    c.left = a;
+    c.right = c;
+
+    ObjectGraphWalker walker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, a), is(3L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, a, b, c, a), is(3L));
+  }
+
+  @Test
+  public void testWalksLargeArraysRepeatedly() {
+    Object[] array = new Object[100000];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = new Object();
+    }
+    array[0] = new int[] {1, 2, 3};
+
+    ObjectGraphWalker walker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+    assertThat(walker.walk(Integer.MAX_VALUE, false, (Object) array), is(100001L));
+    assertThat(walker.walk(Integer.MAX_VALUE, false, (Object) array), is(100001L));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, new Node()), is(1L));
+  }
+
+  @Test
+  public void testCachesShallowSizesOfNonArrayTypes() {
+    final AtomicInteger visits = new AtomicInteger();
+    ObjectGraphWalker walker = new ObjectGraphWalker(new ObjectGraphWalker.Visitor() {
+      public long visit(final Object object) {
+        visits.incrementAndGet();
+        return 10;
+      }
+    }, new PassThroughFilter(), true);
+
+    Object[] array = new Object[] {new Node(), new Node(), new Node()};
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, (Object) array), is(40L));
+    assertThat(visits.get(), is(2));
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, (Object) new Object[] {new Node()}), is(20L));
+    assertThat(visits.get(), is(3));
+  }
+
+  @Test
+  public void testVisitorMayWalkFromWithinAWalk() {
+    final ObjectGraphWalker inner = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+    final Node nested = new Node();
+    nested.left = new Node();
+    ObjectGraphWalker walker = new ObjectGraphWalker(new ObjectGraphWalker.Visitor() {
+      public long visit(final Object object) {
+        return inner.walk(MAX_SIZEOF_DEPTH, false, nested);
+      }
+    }, new PassThroughFilter());
+
+    Node root = new Node();
+    root.left = new Node();
+    root.right = new Node();
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, root), is(6L));
+  }
+
+  @Test
+  public void testAbortsWhenMaxDepthExceeded() {
+    Node root = new Node();
+    Node node = root;
+    for (int i = 0; i < 10; i++) {
+      node.left = new Node();
+      node = node.left;
+    }
+
+    ObjectGraphWalker walker = new ObjectGraphWalker(new CountingVisitor(), new PassThroughFilter());
+    try {
+      walker.walk(5, true, root);
+      fail();
+    } catch (MaxDepthExceededException e) {
+      assertThat(e.getMeasuredSize(), is(5L));
+    }
+    assertThat(walker.walk(MAX_SIZEOF_DEPTH, false, root), is(11L));
+  }
+
+  private static class CountingVisitor implements ObjectGraphWalker.Visitor {
+    public long visit(final Object object) {
+      return 1;
+    }
+  }
+
+  private static class Node {
+    private Node left;
+    private Node right;
+  }
+
   public class SomeInnerClass {
 
     private int      value;
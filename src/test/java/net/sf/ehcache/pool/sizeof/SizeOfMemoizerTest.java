@@ -0,0 +1,166 @@
+package net.sf.ehcache.pool.sizeof;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.pool.sizeof.annotations.FixedSizeOf;
+import net.sf.ehcache.pool.sizeof.annotations.FunctionSizeOf;
+import net.sf.ehcache.pool.sizeof.filter.PassThroughFilter;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SizeOfMemoizerTest {
+
+    @Test
+    public void testFixedSizeTypeIsOnlyWalkedOnce() {
+        final AtomicInteger visits = new AtomicInteger();
+        ObjectGraphWalker walker = new ObjectGraphWalker(new ObjectGraphWalker.Visitor() {
+            public long visit(Object object) {
+                visits.incrementAndGet();
+                return 8;
+            }
+        }, new PassThroughFilter(), false, new SizeOfMemoizer(), null);
+
+        assertThat(walker.walk(1000, false, new Fixed()), is(32L));
+        assertThat(visits.get(), is(4));
+        assertThat(walker.walk(1000, false, new Fixed(), new Fixed()), is(64L));
+        assertThat(visits.get(), is(4));
+        assertThat(walker.walk(1000, false, new Referrer(new Fixed())), is(40L));
+        assertThat(visits.get(), is(5));
+    }
+
+    @Test
+    public void testSelfReferencingFixedSizeType() {
+        ObjectGraphWalker.Visitor visitor = new ObjectGraphWalker.Visitor() {
+            public long visit(Object object) {
+                return 8;
+            }
+        };
+        Node first = new Node(null);
+        Node second = new Node(first);
+        first.next = second;
+        ObjectGraphWalker walker = new ObjectGraphWalker(visitor, new PassThroughFilter(), false, new SizeOfMemoizer(), null);
+        assertThat(walker.walk(1000, false, first), is(16L));
+        assertThat(walker.walk(1000, false, new Node(null)), is(16L));
+
+        Node chain = null;
+        for (int i = 0; i < 20000; i++) {
+            chain = new Node(chain);
+        }
+        walker = new ObjectGraphWalker(visitor, new PassThroughFilter(), false, new SizeOfMemoizer(), null);
+        assertThat(walker.walk(100000, false, new Referrer(chain)), is(8L + 20000 * 8L));
+    }
+
+    @Test
+    public void testFunctionSizedType() {
+        SizeOf sizeOf = new ReflectionSizeOf(new PassThroughFilter(), true);
+        Sized sized = new Sized(new byte[1024]);
+        long expected = sizeOf.sizeOf(sized) + sizeOf.sizeOf(sized.bytes);
+        assertThat(sizeOf.deepSizeOf(1000, true, sized).getCalculated(), is(expected));
+        assertThat(sizeOf.deepSizeOf(1000, true, new Referrer(sized)).getCalculated(), is(expected + sizeOf.sizeOf(new Referrer(null))));
+    }
+
+    @Test
+    public void testAnnotationInheritance() {
+        SizeOfMemoizer memoizer = new SizeOfMemoizer();
+        assertThat(memoizer.isFixedSize(Fixed.class), is(true));
+        assertThat(memoizer.isFixedSize(FixedSubclass.class), is(false));
+        assertThat(memoizer.isFixedSize(InheritedFixedSubclass.class), is(true));
+        assertThat(memoizer.getSizeFunction(Sized.class), notNullValue());
+        assertThat(memoizer.getSizeFunction(Fixed.class), nullValue());
+    }
+
+    @Test
+    public void testResourceDeclaredTypes() throws IOException {
+        File resource = File.createTempFile("SizeOfMemoizerTest", ".memoization");
+        try {
+            FileWriter writer = new FileWriter(resource);
+            try {
+                writer.write("# fixed\n");
+                writer.write(Referrer.class.getName() + "\n");
+                writer.write(FixedSubclass.class.getName() + " = " + SizedFunction.class.getName() + "\n");
+            } finally {
+                writer.close();
+            }
+
+            SizeOfMemoizer memoizer = new SizeOfMemoizer(resource.toURI().toURL());
+            assertThat(memoizer.isFixedSize(Referrer.class), is(true));
+            assertThat(memoizer.isFixedSize(Fixed.class), is(true));
+            assertThat(memoizer.getSizeFunction(FixedSubclass.class), notNullValue());
+            assertThat(memoizer.getSizeFunction(Referrer.class), nullValue());
+
+            writer = new FileWriter(resource);
+            try {
+                writer.write(Referrer.class.getName() + " = " + Fixed.class.getName() + "\n");
+            } finally {
+                writer.close();
+            }
+            try {
+                new SizeOfMemoizer(resource.toURI().toURL());
+                fail();
+            } catch (CacheException e) {
+                // expected
+            }
+        } finally {
+            resource.delete();
+        }
+    }
+
+    @FixedSizeOf
+    public static class Fixed {
+        private final Object one = new Object();
+        private final Object two = new Object();
+        private final Object[] three = new Object[0];
+    }
+
+    public static class FixedSubclass extends Fixed {
+    }
+
+    @FixedSizeOf(inherited = true)
+    public static class InheritedFixed {
+    }
+
+    public static class InheritedFixedSubclass extends InheritedFixed {
+    }
+
+    @FunctionSizeOf(SizedFunction.class)
+    public static class Sized {
+        private final byte[] bytes;
+
+        Sized(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static class SizedFunction implements SizeFunction<Sized> {
+        public long sizeOf(Sized instance, SizeOf sizeOf) {
+            return sizeOf.sizeOf(instance) + sizeOf.sizeOf(instance.bytes);
+        }
+    }
+
+    @FixedSizeOf
+    public static class Node {
+        private Node next;
+
+        Node(Node next) {
+            this.next = next;
+        }
+    }
+
+    public static class Referrer {
+        private final Object reference;
+
+        Referrer(Object reference) {
+            this.reference = reference;
+        }
+    }
+}
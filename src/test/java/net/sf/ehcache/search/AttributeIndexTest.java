@@ -0,0 +1,166 @@
+package net.sf.ehcache.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.SearchAttribute.IndexType;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.search.expression.Criteria;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AttributeIndexTest {
+
+    private CacheManager manager;
+    private Cache indexed;
+    private Cache scanned;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("AttributeIndexTest"));
+        indexed = createCache("indexed", true);
+        scanned = createCache("scanned", false);
+        for (int i = 0; i < 500; i++) {
+            Person person = new Person((i % 2 == 0 ? "Name-" : "NAME-") + (i % 50), i % 90, i % 3 == 0 ? Gender.FEMALE : Gender.MALE,
+                    "dept-" + (i % 7));
+            indexed.put(new Element(i, person));
+            scanned.put(new Element(i, person));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testIndexedQueriesMatchFullScan() {
+        Attribute<Integer> age = indexed.getSearchAttribute("age");
+        Attribute<String> name = indexed.getSearchAttribute("name");
+        Attribute<Gender> gender = indexed.getSearchAttribute("gender");
+        Attribute<String> dept = indexed.getSearchAttribute("department");
+
+        assertSameResults(age.eq(42));
+        assertSameResults(age.between(10, 20));
+        assertSameResults(age.between(10, 20, false, true));
+        assertSameResults(age.between(30, 10));
+        assertSameResults(age.gt(80));
+        assertSameResults(age.le(3));
+        assertSameResults(name.eq("name-7"));
+        assertSameResults(name.in(new HashSet<String>(Arrays.asList("NAME-1", "name-2", "nobody"))));
+        assertSameResults(gender.eq(Gender.FEMALE).and(age.lt(30)));
+        assertSameResults(age.ge(50).or(name.eq("name-3")));
+        assertSameResults(age.ge(50).or(dept.eq("dept-3")));
+        assertSameResults(age.ge(50).and(dept.eq("dept-3")));
+        assertSameResults(age.ne(5).and(age.lt(10)));
+        assertSameResults(age.lt(10).not());
+        assertSameResults(dept.ilike("dept-1*").and(gender.eq(Gender.MALE)));
+    }
+
+    @Test
+    public void testNegatedRangesMatchElementsWithoutTheAttribute() {
+        Attribute<String> dept = indexed.getSearchAttribute("department");
+        Attribute<Integer> age = indexed.getSearchAttribute("age");
+        for (int i = 500; i < 520; i++) {
+            Person person = new Person("no-dept-" + i, i % 90, Gender.MALE, null);
+            indexed.put(new Element(i, person));
+            scanned.put(new Element(i, person));
+        }
+
+        assertTrue(keys(scanned, dept.gt("dept-3").not()).contains(510));
+        assertSameResults(dept.gt("dept-3").not());
+        assertSameResults(dept.le("dept-1").not());
+        assertSameResults(dept.between("dept-2", "dept-4").not());
+        assertSameResults(dept.between("dept-2", "dept-4").not().and(age.lt(30)));
+        assertSameResults(dept.lt("dept-2").not().or(age.eq(7)));
+        assertSameResults(dept.ge("dept-5").not().not());
+    }
+
+    @Test
+    public void testIndexesFollowUpdatesAndRemovals() {
+        Attribute<Integer> age = indexed.getSearchAttribute("age");
+        for (int i = 0; i < 100; i++) {
+            Person person = new Person("moved-" + i, 200 + i, Gender.MALE);
+            indexed.put(new Element(i, person));
+            scanned.put(new Element(i, person));
+        }
+        for (int i = 100; i < 200; i++) {
+            indexed.remove(i);
+            scanned.remove(i);
+        }
+        Person replacement = new Person("replaced", 300, Gender.FEMALE);
+        indexed.replace(new Element(250, replacement));
+        scanned.replace(new Element(250, replacement));
+
+        assertSameResults(age.ge(200));
+        assertSameResults(age.between(0, 100));
+        assertEquals(101, indexed.createQuery().includeKeys().addCriteria(age.ge(200)).execute().size());
+
+        indexed.removeAll();
+        assertEquals(0, indexed.createQuery().includeKeys().addCriteria(age.ge(0)).execute().size());
+        indexed.put(new Element("k", new Person("back", 7, Gender.MALE)));
+        assertEquals(1, indexed.createQuery().includeKeys().addCriteria(age.eq(7)).execute().size());
+    }
+
+    @Test
+    public void testEvictedElementsAreNotReturned() {
+        Cache bounded = new Cache(searchableConfiguration("bounded", true).maxEntriesLocalHeap(100));
+        manager.addCache(bounded);
+        for (int i = 0; i < 5000; i++) {
+            bounded.put(new Element(i, new Person("p" + i, i % 10, Gender.MALE)));
+        }
+        Results results = bounded.createQuery().includeKeys().addCriteria(bounded.getSearchAttribute("age").eq(3)).execute();
+        assertTrue(results.size() <= 100);
+        for (Result result : results.all()) {
+            assertEquals(3, ((Person) bounded.get(result.getKey()).getObjectValue()).getAge());
+        }
+    }
+
+    @Test
+    public void testIndexTypeConfiguration() {
+        SearchAttribute attribute = new SearchAttribute().name("age");
+        assertEquals(IndexType.NONE, attribute.getIndexType());
+        attribute.setIndex("Sorted");
+        assertEquals(IndexType.SORTED, attribute.getIndexType());
+        assertEquals(IndexType.HASH, attribute.index(IndexType.HASH).getIndexType());
+    }
+
+    private void assertSameResults(Criteria criteria) {
+        assertEquals(keys(scanned, criteria), keys(indexed, criteria));
+    }
+
+    private static Set<Object> keys(Cache cache, Criteria criteria) {
+        Set<Object> keys = new HashSet<Object>();
+        for (Result result : cache.createQuery().includeKeys().addCriteria(criteria).execute().all()) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    private Cache createCache(String name, boolean indexes) {
+        Cache cache = new Cache(searchableConfiguration(name, indexes));
+        manager.addCache(cache);
+        return cache;
+    }
+
+    private static CacheConfiguration searchableConfiguration(String name, boolean indexes) {
+        return new CacheConfiguration(name, 0).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age").index(indexes ? IndexType.SORTED : IndexType.NONE))
+            .searchAttribute(new SearchAttribute().name("name").index(indexes ? IndexType.HASH : IndexType.NONE))
+            .searchAttribute(new SearchAttribute().name("gender").index(indexes ? IndexType.HASH : IndexType.NONE))
+            .searchAttribute(new SearchAttribute().name("department").index(indexes ? IndexType.SORTED : IndexType.NONE)));
+    }
+}
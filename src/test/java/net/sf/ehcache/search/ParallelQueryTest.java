@@ -0,0 +1,126 @@
+package net.sf.ehcache.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Person.Gender;
+import net.sf.ehcache.store.MemoryOnlyStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelQueryTest {
+
+    private CacheManager manager;
+    private Cache sequential;
+    private Cache parallel;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("ParallelQueryTest"));
+        sequential = createCache("sequential");
+        System.setProperty(MemoryOnlyStore.PARALLEL_QUERY_THRESHOLD_PROPERTY, "0");
+        try {
+            parallel = createCache("parallel");
+        } finally {
+            System.clearProperty(MemoryOnlyStore.PARALLEL_QUERY_THRESHOLD_PROPERTY);
+        }
+        for (int i = 0; i < 5000; i++) {
+            Person person = new Person("name-" + i, i % 97, i % 3 == 0 ? Gender.FEMALE : Gender.MALE, "dept-" + (i % 11));
+            sequential.put(new Element(i, person));
+            parallel.put(new Element(i, person));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testTopNMatchesSequentialExecution() {
+        Attribute<Integer> age = parallel.getSearchAttribute("age");
+        Attribute<String> name = parallel.getSearchAttribute("name");
+        List<Object> expected = rows(sequential.createQuery().includeKeys().addCriteria(age.gt(10))
+            .addOrderBy(age, Direction.DESCENDING).addOrderBy(name, Direction.ASCENDING).maxResults(25).execute());
+        List<Object> actual = rows(parallel.createQuery().includeKeys().addCriteria(age.gt(10))
+            .addOrderBy(age, Direction.DESCENDING).addOrderBy(name, Direction.ASCENDING).maxResults(25).execute());
+        assertEquals(25, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testUnorderedResultsMatchSequentialExecution() {
+        Attribute<Integer> age = parallel.getSearchAttribute("age");
+        assertEquals(new HashSet<Object>(rows(sequential.createQuery().includeKeys().addCriteria(age.between(20, 30)).execute())),
+            new HashSet<Object>(rows(parallel.createQuery().includeKeys().addCriteria(age.between(20, 30)).execute())));
+
+        Results limited = parallel.createQuery().includeKeys().addCriteria(age.lt(50)).maxResults(40).execute();
+        assertEquals(40, limited.size());
+        for (Result result : limited.all()) {
+            assertTrue(((Person) parallel.get(result.getKey()).getObjectValue()).getAge() < 50);
+        }
+        assertEquals(0, parallel.createQuery().includeKeys().addCriteria(age.lt(50)).maxResults(0).execute().size());
+    }
+
+    @Test
+    public void testAggregatorsAreMerged() {
+        Attribute<Integer> age = parallel.getSearchAttribute("age");
+        List<Object> expected = sequential.createQuery().addCriteria(age.ge(5))
+            .includeAggregator(age.count(), age.sum(), age.average(), age.min(), age.max()).execute().all().get(0).getAggregatorResults();
+        List<Object> actual = parallel.createQuery().addCriteria(age.ge(5))
+            .includeAggregator(age.count(), age.sum(), age.average(), age.min(), age.max()).execute().all().get(0).getAggregatorResults();
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testGroupsAreMerged() {
+        Attribute<Integer> age = parallel.getSearchAttribute("age");
+        Attribute<Gender> gender = parallel.getSearchAttribute("gender");
+        Attribute<String> department = parallel.getSearchAttribute("department");
+        assertEquals(groups(sequential, age, gender, department), groups(parallel, age, gender, department));
+    }
+
+    private static Map<Object, Object> groups(Cache cache, Attribute<Integer> age, Attribute<Gender> gender, Attribute<String> department) {
+        Map<Object, Object> groups = new HashMap<Object, Object>();
+        Results results = cache.createQuery().includeAttribute(gender, department).addGroupBy(gender, department)
+            .includeAggregator(age.count(), age.sum(), age.max()).addCriteria(age.lt(60)).execute();
+        for (Result result : results.all()) {
+            groups.put(result.getAttribute(gender) + "/" + result.getAttribute(department), result.getAggregatorResults());
+        }
+        assertEquals(22, groups.size());
+        return groups;
+    }
+
+    private static List<Object> rows(Results results) {
+        List<Object> keys = new ArrayList<Object>();
+        for (Result result : results.all()) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    private Cache createCache(String name) {
+        Cache cache = new Cache(new CacheConfiguration(name, 0).searchable(new Searchable()
+            .searchAttribute(new SearchAttribute().name("age"))
+            .searchAttribute(new SearchAttribute().name("name"))
+            .searchAttribute(new SearchAttribute().name("gender"))
+            .searchAttribute(new SearchAttribute().name("department"))));
+        manager.addCache(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,131 @@
+package net.sf.ehcache.search.attribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.AccessibleObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PropertyAccessorsTest {
+
+    private static final String GENERATED_PREFIX = PropertyAccessor.class.getName() + "$Generated";
+
+    @Test
+    public void testPublicMembers() throws Exception {
+        Bean bean = new Bean();
+        assertEquals(42, PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("getAge")).get(bean));
+        assertEquals(Boolean.TRUE, PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("isActive")).get(bean));
+        assertEquals("bean", PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("getName")).get(bean));
+        assertEquals(2.5d, PropertyAccessors.forField(Bean.class, Bean.class.getField("weight")).get(bean));
+        assertEquals('x', PropertyAccessors.forField(Bean.class, Bean.class.getField("initial")).get(bean));
+        assertNull(PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("touch")).get(bean));
+    }
+
+    @Test
+    public void testPublicMembersAreReadByAGeneratedAccessor() throws Exception {
+        Object caller = PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("getCaller")).get(new Bean());
+        assertTrue(String.valueOf(caller), String.valueOf(caller).startsWith(GENERATED_PREFIX));
+
+        caller = PropertyAccessors.forMethod(Hidden.class, Hidden.class.getMethod("getCaller")).get(new Hidden());
+        assertFalse(String.valueOf(caller), String.valueOf(caller).startsWith(GENERATED_PREFIX));
+    }
+
+    @Test
+    public void testInterfaceMethod() throws Exception {
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        PropertyAccessor accessor = PropertyAccessors.forMethod(ArrayList.class, List.class.getMethod("size"));
+        assertEquals(1, accessor.get(list));
+    }
+
+    @Test
+    public void testNonPublicMembersUseReflection() throws Exception {
+        Bean bean = new Bean();
+        assertEquals(7L, PropertyAccessors.forField(Bean.class, accessible(Bean.class.getDeclaredField("secret"))).get(bean));
+        assertEquals(7L, PropertyAccessors.forMethod(Bean.class, accessible(Bean.class.getDeclaredMethod("getSecret"))).get(bean));
+        assertEquals(3, PropertyAccessors.forMethod(Hidden.class, Hidden.class.getMethod("getValue")).get(new Hidden()));
+    }
+
+    @Test
+    public void testExceptionsPropagate() throws Exception {
+        try {
+            PropertyAccessors.forMethod(Bean.class, Bean.class.getMethod("getBroken")).get(new Bean());
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        try {
+            PropertyAccessors.forMethod(Bean.class, accessible(Bean.class.getDeclaredMethod("getPrivateBroken"))).get(new Bean());
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        // the extractors make resolved members accessible before asking for an accessor
+        member.setAccessible(true);
+        return member;
+    }
+
+    public static class Bean {
+        public double weight = 2.5d;
+        public char initial = 'x';
+        private final long secret = 7L;
+
+        public int getAge() {
+            return 42;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public String getName() {
+            return "bean";
+        }
+
+        public void touch() {
+            // nothing
+        }
+
+        public String getCaller() {
+            return caller();
+        }
+
+        public Object getBroken() {
+            throw new IllegalStateException("broken");
+        }
+
+        private long getSecret() {
+            return secret;
+        }
+
+        private Object getPrivateBroken() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    static class Hidden {
+        public int getValue() {
+            return 3;
+        }
+
+        public String getCaller() {
+            return caller();
+        }
+    }
+
+    /**
+     * The class which called the method calling this one
+     */
+    private static String caller() {
+        return new Throwable().getStackTrace()[2].getClassName();
+    }
+}
@@ -0,0 +1,191 @@
+package net.sf.ehcache.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementIdHelper;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.CopyStrategyConfiguration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.distribution.RmiEventMessage;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.store.compound.ReadWriteCopyStrategy;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
+import net.sf.ehcache.store.disk.DiskStoreHelper;
+
+import org.junit.Test;
+
+public class FastSerializerTest {
+
+    private final FastSerializer serializer = new FastSerializer();
+
+    @Test
+    public void testCommonTypesRoundTrip() throws Exception {
+        Object[] values = {null, "", "café 中", 42, -7L, (short) 3, (byte) -1, 'x', true, 1.5f, 2.25d,
+            new ArrayList<String>(Arrays.asList("a", "b"))};
+        for (Object value : values) {
+            assertEquals(value, roundTrip(value));
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) roundTrip(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testCommonTypesAreSmallerThanJavaSerialization() throws Exception {
+        for (Object value : new Object[] {"key-1", 1, 1L, new byte[16]}) {
+            assertTrue(Serializers.toBytes(serializer, value).length < Serializers.toBytes(new JavaSerializer(), value).length);
+        }
+    }
+
+    @Test
+    public void testElementRoundTrip() throws Exception {
+        Element element = new Element("key", 12L, 3L, 1000L, 2000L, 5L, false, 60, 30, 1500L);
+        ElementIdHelper.setId(element, 99);
+        Element copy = (Element) roundTrip(element);
+        assertEquals("key", copy.getObjectKey());
+        assertEquals(12L, copy.getObjectValue());
+        assertEquals(3L, copy.getVersion());
+        assertEquals(1000L, copy.getCreationTime());
+        assertEquals(2000L, copy.getLastAccessTime());
+        assertEquals(5L, copy.getHitCount());
+        assertFalse(copy.usesCacheDefaultLifespan());
+        assertEquals(60, copy.getTimeToLive());
+        assertEquals(30, copy.getTimeToIdle());
+        assertEquals(1500L, copy.getLastUpdateTime());
+        assertEquals(99, ElementIdHelper.getId(copy));
+
+        Element plain = (Element) roundTrip(new Element(1, "one"));
+        assertFalse(plain.isLifespanSet());
+        assertTrue(plain.usesCacheDefaultLifespan());
+        assertFalse(ElementIdHelper.hasId(plain));
+    }
+
+    @Test
+    public void testExternalizableRoundTrip() throws Exception {
+        Point point = (Point) roundTrip(new Point(3, 4));
+        assertEquals(3, point.x);
+        assertEquals(4, point.y);
+    }
+
+    @Test(expected = NotSerializableException.class)
+    public void testNonSerializableIsRejected() throws Exception {
+        roundTrip(new Object());
+    }
+
+    @Test
+    public void testBufferPoolReusesBuffers() {
+        BufferPool pool = new BufferPool(1, 1024);
+        BufferPool.Buffer buffer = pool.acquire();
+        buffer.write(new byte[100], 0, 100);
+        buffer.release();
+        assertEquals(1, pool.getPooledCount());
+        BufferPool.Buffer reused = pool.acquire();
+        assertEquals(0, reused.size());
+        assertEquals(0, pool.getPooledCount());
+
+        BufferPool.Buffer large = pool.acquire();
+        assertNotSame(reused, large);
+        large.write(new byte[2048], 0, 2048);
+        large.release();
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void testCopyStrategyGetterDoesNotReconfigureTheStrategy() throws Exception {
+        ReadWriteSerializationCopyStrategy strategy = new ReadWriteSerializationCopyStrategy(serializer);
+        CopyStrategyConfiguration copyStrategy = new CopyStrategyConfiguration();
+        copyStrategy.setCopyStrategyInstance(strategy);
+        CacheConfiguration java = new CacheConfiguration("java", 10);
+        java.addCopyStrategy(copyStrategy);
+
+        assertSame(strategy, java.getCopyStrategy());
+        byte[] copied = (byte[]) strategy.copyForWrite(new Element("key", "value")).getObjectValue();
+        assertTrue(copied.length < Serializers.toBytes(new JavaSerializer(), "value").length);
+    }
+
+    @Test
+    public void testInstantiatedCopyStrategyUsesTheCacheSerializer() throws Exception {
+        CacheConfiguration fast = new CacheConfiguration("fast", 10).serializer(FastSerializer.class.getName());
+        ReadWriteCopyStrategy<Element> strategy = fast.getCopyStrategy();
+        byte[] copied = (byte[]) strategy.copyForWrite(new Element("key", "value")).getObjectValue();
+        assertArrayEquals(Serializers.toBytes(serializer, "value"), copied);
+    }
+
+    @Test
+    public void testCacheUsesConfiguredSerializer() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("FastSerializerTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("fast", 10).overflowToDisk(true).copyOnRead(true).copyOnWrite(true)
+                .serializer(FastSerializer.class.getName()));
+            manager.addCache(cache);
+            assertTrue(cache.getCacheConfiguration().getSerializer() instanceof FastSerializer);
+            for (int i = 0; i < 200; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 200; i++) {
+                assertEquals("value-" + i, cache.get(i).getObjectValue());
+            }
+
+            RmiEventMessage message = new RmiEventMessage(cache, RmiEventType.PUT, null, new Element("key", "value"));
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bout);
+            oos.writeObject(message);
+            oos.close();
+            RmiEventMessage received = (RmiEventMessage) new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+            assertEquals("value", received.getElement().getObjectValue());
+            assertEquals(RmiEventType.PUT, received.getType());
+            assertNull(received.getSerializableKey());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private Object roundTrip(Object value) throws IOException, ClassNotFoundException {
+        return Serializers.fromBytes(serializer, Serializers.toBytes(serializer, value));
+    }
+
+    public static class Point implements Externalizable {
+        private int x;
+        private int y;
+
+        public Point() {
+        }
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+        }
+
+        public void readExternal(ObjectInput in) throws IOException {
+            x = in.readInt();
+            y = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.sf.ehcache.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.management.sampled.CacheSamplerImpl;
+import net.sf.ehcache.management.sampled.SampledCache;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousHighest = -1;
+        for (int i = 0; i < 600; i++) {
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals(i, LatencyHistogram.indexOf(previousHighest + 1));
+            assertEquals(i, LatencyHistogram.indexOf(highest));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.recordValue(value * 1000);
+        }
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(100000000L, histogram.getMaxValue());
+        assertWithin(50000000L, histogram.getValueAtPercentile(50));
+        assertWithin(99000000L, histogram.getValueAtPercentile(99));
+        assertWithin(99900000L, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000000L, histogram.getValueAtPercentile(100));
+
+        histogram.recordValue(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecordingIsNotLost() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.recordValue(1000);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800000, histogram.getTotalCount());
+        assertWithin(1000, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testGetLatenciesAreRecordedByTier() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("LatencyHistogramTierTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("tiers", 1).overflowToDisk(true).statistics(true));
+            manager.addCache(cache);
+            LiveCacheStatistics statistics = cache.getLiveCacheStatistics();
+
+            cache.get("absent");
+            assertTiers(statistics, false, false, true);
+
+            cache.clearStatistics();
+            cache.put(new Element("first", "value"));
+            cache.get("first");
+            assertTiers(statistics, true, false, false);
+
+            cache.put(new Element("second", "value"));
+            String onDisk = cache.isElementInMemory("first") ? "second" : "first";
+            assertTrue(cache.isElementOnDisk(onDisk));
+            cache.clearStatistics();
+            cache.get(onDisk);
+            assertTiers(statistics, false, true, false);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheRecordsLatencies() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("LatencyHistogramTest"));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("latencies", 1000).statistics(true));
+            manager.addCache(cache);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, i));
+                cache.get(i);
+                cache.get(-i - 1);
+            }
+            LiveCacheStatistics statistics = cache.getLiveCacheStatistics();
+            assertTrue(statistics.getLatencyPercentileNanos("GET_HEAP_HIT", 99) > 0);
+            assertTrue(statistics.getLatencyPercentileNanos("GET_MISS", 99) > 0);
+            assertTrue(statistics.getLatencyPercentileNanos("PUT", 99) > 0);
+            assertEquals(0, statistics.getLatencyPercentileNanos("GET_DISK_HIT", 99));
+            try {
+                statistics.getLatencyPercentileNanos("GET", 99);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            Map<String, Long> percentiles = new CacheSamplerImpl(cache).getCacheLatencyPercentiles();
+            assertEquals(CacheOperationLatency.values().length * 3, percentiles.size());
+            assertTrue(percentiles.get("PUT_P50") <= percentiles.get("PUT_P99"));
+            assertTrue(percentiles.get("PUT_P99") <= percentiles.get("PUT_P999"));
+
+            MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+            ObjectName name = new ObjectName("net.sf.ehcache:type=SampledCache,name=latencies");
+            mBeanServer.registerMBean(new SampledCache(cache), name);
+            Object put = mBeanServer.invoke(name, "getLatencyPercentileNanos", new Object[] {"PUT", 99d},
+                    new String[] {String.class.getName(), double.class.getName()});
+            assertTrue((Long) put > 0);
+
+            cache.clearStatistics();
+            assertEquals(0, statistics.getLatencyPercentileNanos("PUT", 99));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private static void assertTiers(LiveCacheStatistics statistics, boolean heap, boolean disk, boolean miss) {
+        assertEquals(heap, statistics.getLatencyPercentileNanos("GET_HEAP_HIT", 100) > 0);
+        assertEquals(disk, statistics.getLatencyPercentileNanos("GET_DISK_HIT", 100) > 0);
+        assertEquals(miss, statistics.getLatencyPercentileNanos("GET_MISS", 100) > 0);
+        assertEquals(0, statistics.getLatencyPercentileNanos("GET_OFFHEAP_HIT", 100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 16);
+    }
+}
@@ -0,0 +1,126 @@
+package net.sf.ehcache.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExpiryIndexTest {
+
+    private CacheManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("ExpiryIndexTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testExpiredElementsAreRemovedFromHeapWithoutAccess() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("heap", 1000).timeToLiveSeconds(1).expiryIndex(true));
+        manager.addCache(cache);
+        ExpiryCounter expired = new ExpiryCounter();
+        cache.getCacheEventNotificationService().registerListener(expired);
+        for (int i = 0; i < 100; i++) {
+            cache.put(new Element(i, "value"));
+        }
+        cache.put(new Element("eternal", "value", true, 0, 0));
+
+        awaitSize(cache, 1, 5000);
+        assertEquals(1, cache.getSize());
+        assertEquals(100, expired.count.get());
+    }
+
+    @Test
+    public void testUpdatedElementsAreRescheduled() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("updated", 1000).timeToLiveSeconds(2).expiryIndex(true));
+        manager.addCache(cache);
+        cache.put(new Element("key", "first"));
+        Thread.sleep(1500);
+        cache.put(new Element("key", "second"));
+        Thread.sleep(1500);
+        assertEquals(1, cache.getSize());
+        assertEquals("second", cache.getQuiet("key").getObjectValue());
+        awaitSize(cache, 0, 5000);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testExpiredElementsAreRemovedFromDisk() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("disk", 1).overflowToDisk(true).timeToLiveSeconds(1).expiryIndex(true)
+            .diskExpiryThreadIntervalSeconds(3600));
+        manager.addCache(cache);
+        for (int i = 0; i < 50; i++) {
+            cache.put(new Element(i, "value"));
+        }
+        awaitSize(cache, 0, 8000);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testExpiringElementsIsNotAnAccess() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("quiet", 1000).expiryIndex(true));
+        MemoryStore store = MemoryStore.create(cache, new UnboundedPool());
+        for (int i = 0; i < 100; i++) {
+            store.put(new Element(i, "value", false, 0, 1));
+        }
+        store.put(new Element("eternal", "value", true, 0, 0));
+        Thread.sleep(2000);
+
+        store.expireElements();
+        assertEquals(1, store.getSize());
+        assertEquals(0f, store.getApproximateHeapHitRate(), 0f);
+        assertEquals(0f, store.getApproximateHeapMissRate(), 0f);
+    }
+
+    @Test
+    public void testClockEvictedElementsLeaveTheIndex() {
+        Cache cache = new Cache(new CacheConfiguration("clock", 100).memoryStoreEvictionPolicy("CLOCK").expiryIndex(true));
+        MemoryStore store = MemoryStore.create(cache, new UnboundedPool());
+        for (int i = 0; i < 10000; i++) {
+            store.put(new Element(i, "value", false, 0, 3600));
+        }
+
+        assertTrue("size " + store.getSize(), store.getSize() <= 100);
+        assertEquals(store.getSize(), store.getExpiryIndexSize());
+    }
+
+    private static void awaitSize(Ehcache cache, int size, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (cache.getSize() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue("size " + cache.getSize(), cache.getSize() == size);
+    }
+
+    /**
+     * Counts expiry notifications.
+     */
+    private static final class ExpiryCounter extends CacheEventListenerAdapter {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void notifyElementExpired(Ehcache cache, Element element) {
+            count.incrementAndGet();
+        }
+    }
+}
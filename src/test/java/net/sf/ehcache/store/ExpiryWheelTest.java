@@ -0,0 +1,108 @@
+package net.sf.ehcache.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ExpiryWheelTest {
+
+    private static final long START = 1000000;
+    private static final Object VALUE = new Object();
+
+    @Test
+    public void testKeysAreReturnedOnceTheyExpire() {
+        ExpiryWheel wheel = new ExpiryWheel(1000, START);
+        wheel.schedule("a", VALUE, START + 1500);
+        wheel.schedule("b", VALUE, START + 70000);
+        wheel.schedule("c", VALUE, START + 5000000);
+        wheel.schedule("eternal", VALUE, Long.MAX_VALUE);
+        assertEquals(3, wheel.size());
+
+        assertEquals(Collections.emptyList(), wheel.advance(START + 1500));
+        assertEquals(Collections.<Object>singletonList("a"), wheel.advance(START + 2000));
+        assertEquals(Collections.emptyList(), wheel.advance(START + 70999));
+        assertEquals(Collections.<Object>singletonList("b"), wheel.advance(START + 71000));
+        assertEquals(Collections.emptyList(), wheel.advance(START + 5000999));
+        assertEquals(Collections.<Object>singletonList("c"), wheel.advance(START + 5001000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduledAndCancelledKeys() {
+        ExpiryWheel wheel = new ExpiryWheel(1000, START);
+        wheel.schedule("moved", VALUE, START + 1000);
+        wheel.schedule("moved", VALUE, START + 100000);
+        wheel.schedule("cancelled", VALUE, START + 1000);
+        wheel.cancel("cancelled", "another value");
+        assertEquals(2, wheel.size());
+        wheel.cancel("cancelled", VALUE);
+        wheel.schedule("late", VALUE, START - 5000);
+        assertEquals(2, wheel.size());
+
+        assertEquals(Collections.<Object>singletonList("late"), wheel.advance(START + 10000));
+        assertEquals(Collections.<Object>singletonList("moved"), wheel.advance(START + 101000));
+
+        wheel.schedule("cleared", VALUE, START + 200000);
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertEquals(Collections.emptyList(), wheel.advance(START + 300000));
+    }
+
+    @Test
+    public void testKeysBeyondTheLastWheel() {
+        ExpiryWheel wheel = new ExpiryWheel(1, START);
+        long expiry = START + (1L << 25);
+        wheel.schedule("far", VALUE, expiry);
+        assertEquals(Collections.emptyList(), wheel.advance(expiry));
+        assertEquals(Collections.<Object>singletonList("far"), wheel.advance(expiry + 1));
+    }
+
+    @Test
+    public void testAgainstReference() {
+        Random random = new Random(42);
+        long tick = 10;
+        ExpiryWheel wheel = new ExpiryWheel(tick, START);
+        // key -> {deadline tick, tick it fires at}
+        Map<Integer, long[]> expected = new HashMap<Integer, long[]>();
+        long now = START;
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < 20; i++) {
+                int key = random.nextInt(5000);
+                if (random.nextInt(10) == 0) {
+                    wheel.cancel(key, VALUE);
+                    expected.remove(key);
+                } else {
+                    long expiry = now + (1L << random.nextInt(22)) + random.nextInt(100) - 50;
+                    wheel.schedule(key, VALUE, expiry);
+                    long deadline = expiry / tick + 1;
+                    long[] previous = expected.get(key);
+                    if (previous == null || previous[0] != deadline) {
+                        expected.put(key, new long[] {deadline, Math.max(deadline, now / tick + 1)});
+                    }
+                }
+            }
+            now += random.nextInt(200);
+
+            Set<Object> due = new HashSet<Object>(wheel.advance(now));
+            for (Iterator<Map.Entry<Integer, long[]>> it = expected.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Integer, long[]> entry = it.next();
+                boolean shouldFire = now / tick >= entry.getValue()[1];
+                assertEquals("key " + entry.getKey() + " at " + now, shouldFire, due.remove(entry.getKey()));
+                if (shouldFire) {
+                    it.remove();
+                }
+            }
+            assertEquals(Collections.emptySet(), due);
+        }
+        assertEquals(expected.size(), wheel.size());
+    }
+}
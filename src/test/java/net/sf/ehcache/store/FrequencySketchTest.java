@@ -0,0 +1,65 @@
+package net.sf.ehcache.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testCountsAccesses() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        assertEquals(0, sketch.frequency("key"));
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment("key");
+            assertEquals(i, sketch.frequency("key"));
+        }
+        assertEquals(0, sketch.frequency("other"));
+    }
+
+    @Test
+    public void testCountersSaturate() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key");
+        }
+        assertEquals(15, sketch.frequency("key"));
+    }
+
+    @Test
+    public void testCountersAreHalvedAfterTheSample() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("hot");
+        }
+        // 160 increments per sample
+        for (int i = 0; i < 152; i++) {
+            sketch.increment(-i - 1);
+        }
+        assertEquals(4, sketch.frequency("hot"));
+    }
+
+    @Test
+    public void testEstimatesStayCloseForManyKeys() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment(i);
+            if (i % 10 == 0) {
+                for (int j = 0; j < 5; j++) {
+                    sketch.increment(i);
+                }
+            }
+        }
+        int overestimated = 0;
+        for (int i = 0; i < 1000; i++) {
+            int expected = i % 10 == 0 ? 6 : 1;
+            int frequency = sketch.frequency(i);
+            assertTrue(frequency >= expected);
+            if (frequency > expected) {
+                overestimated++;
+            }
+        }
+        assertTrue("overestimated " + overestimated, overestimated < 50);
+    }
+}
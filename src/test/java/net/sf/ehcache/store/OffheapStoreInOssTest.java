@@ -19,7 +19,9 @@ package net.sf.ehcache.store;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -31,14 +33,34 @@ public class OffheapStoreInOssTest {
 
     @Test
     public void testOffheapInOss() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("OffheapStoreInOssTest"));
         try {
-            CacheManager manager = CacheManager.create();
             Cache cache = new Cache(new CacheConfiguration("test", 1).overflowToOffHeap(true).maxMemoryOffHeap("1M"));
             manager.addCache(cache);
+            cache.put(new Element("key1", "value1"));
+            cache.put(new Element("key2", "value2"));
+            Assert.assertEquals("value1", cache.get("key1").getObjectValue());
+            Assert.assertEquals("value2", cache.get("key2").getObjectValue());
+            Assert.assertEquals(2, cache.getOffHeapStoreSize());
+            Assert.assertTrue(cache.calculateOffHeapSize() > 0);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testOffheapWithDiskOverflowInOss() throws Exception {
+        CacheManager manager = new CacheManager(new Configuration().name("OffheapStoreInOssTest"));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("test", 1).overflowToOffHeap(true).maxMemoryOffHeap("1M")
+                .overflowToDisk(true));
+            manager.addCache(cache);
             Assert.fail();
         } catch (CacheException e) {
             // expected
-            Assert.assertTrue(e.getMessage().contains("You must use an enterprise version of Ehcache"));
+            Assert.assertTrue(e.getMessage().contains("off-heap and to disk"));
+        } finally {
+            manager.shutdown();
         }
     }
 }
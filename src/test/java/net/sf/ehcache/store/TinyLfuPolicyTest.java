@@ -0,0 +1,187 @@
+package net.sf.ehcache.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays synthetic access traces through caches read through on a miss, comparing hit ratios with LRU.
+ */
+public class TinyLfuPolicyTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TinyLfuPolicyTest.class);
+
+    private static final int CAPACITY = 100;
+
+    private CacheManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("TinyLfuPolicyTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testPolicyIsSelectedByName() {
+        assertEquals(MemoryStoreEvictionPolicy.TINYLFU, MemoryStoreEvictionPolicy.fromString("tinylfu"));
+        Cache cache = cache("named", MemoryStoreEvictionPolicy.TINYLFU);
+        assertEquals(TinyLfuPolicy.NAME, cache.getMemoryStoreEvictionPolicy().getName());
+    }
+
+    @Test
+    public void testScanDoesNotFlushTheWorkingSet() {
+        double lruRatio = replayScan(cache("scanLru", MemoryStoreEvictionPolicy.LRU));
+        double tinyLfuRatio = replayScan(cache("scanTinyLfu", MemoryStoreEvictionPolicy.TINYLFU));
+        LOG.info("Working set hit ratio during a scan: LRU {}, TINYLFU {}", lruRatio, tinyLfuRatio);
+        assertTrue("LRU " + lruRatio, lruRatio < 0.05);
+        assertTrue("TINYLFU " + tinyLfuRatio, tinyLfuRatio > 0.9);
+    }
+
+    @Test
+    public void testZipfTraceWithScans() {
+        double lruRatio = replayZipfWithScans(cache("zipfLru", MemoryStoreEvictionPolicy.LRU));
+        double tinyLfuRatio = replayZipfWithScans(cache("zipfTinyLfu", MemoryStoreEvictionPolicy.TINYLFU));
+        LOG.info("Zipf with scans hit ratio: LRU {}, TINYLFU {}", lruRatio, tinyLfuRatio);
+        assertTrue("LRU " + lruRatio + ", TINYLFU " + tinyLfuRatio, tinyLfuRatio > lruRatio + 0.05);
+    }
+
+    @Test
+    public void testRejectedElementsAreEvicted() {
+        Cache cache = cache("rejected", MemoryStoreEvictionPolicy.TINYLFU);
+        final AtomicInteger evicted = new AtomicInteger();
+        cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyElementEvicted(Ehcache cache, Element element) {
+                evicted.incrementAndGet();
+            }
+        });
+        for (int round = 0; round < 3; round++) {
+            for (int key = 0; key < CAPACITY; key++) {
+                access(cache, key);
+            }
+        }
+        cache.put(new Element("once", "value"));
+        assertEquals(CAPACITY, cache.getSize());
+        assertEquals(null, cache.get("once"));
+        assertEquals(1, evicted.get());
+    }
+
+    @Test
+    public void testRejectedElementsStayOnDisk() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("overflow", 10).overflowToDisk(true)
+            .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.TINYLFU));
+        manager.addCache(cache);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 10; key++) {
+                access(cache, key);
+            }
+        }
+        for (int key = 0; key < 100; key++) {
+            access(cache, "cold-" + key);
+        }
+        for (int key = 0; key < 10; key++) {
+            assertTrue(cache.isElementInMemory(key));
+        }
+        for (int key = 0; key < 100; key++) {
+            assertNotNull(cache.get("cold-" + key));
+        }
+    }
+
+    private Cache cache(String name, MemoryStoreEvictionPolicy policy) {
+        Cache cache = new Cache(new CacheConfiguration(name, CAPACITY).memoryStoreEvictionPolicy(policy));
+        manager.addCache(cache);
+        return cache;
+    }
+
+    private static double replayScan(Cache cache) {
+        int workingSet = CAPACITY / 2;
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < workingSet; key++) {
+                access(cache, key);
+            }
+        }
+        // the working set stays in use while a batch scans keys never seen again
+        int hits = 0;
+        int requests = 0;
+        for (int i = 0; i < 100 * CAPACITY; i++) {
+            access(cache, "scan-" + i);
+            if (i % 4 == 0) {
+                requests++;
+                if (access(cache, requests % workingSet)) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / requests;
+    }
+
+    private static double replayZipfWithScans(Cache cache) {
+        Random random = new Random(42);
+        double[] cdf = zipf(10 * CAPACITY, 0.9);
+        int hits = 0;
+        int requests = 0;
+        int scanned = 0;
+        for (int i = 0; i < 200000; i++) {
+            if (i % 10000 < 2000) {
+                // a batch scanning keys never seen again
+                access(cache, "scan-" + scanned++);
+            } else {
+                requests++;
+                if (access(cache, sample(cdf, random))) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / requests;
+    }
+
+    private static boolean access(Cache cache, Object key) {
+        if (cache.get(key) != null) {
+            return true;
+        }
+        cache.put(new Element(key, "value"));
+        return false;
+    }
+
+    private static double[] zipf(int keys, double skew) {
+        double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+    }
+}
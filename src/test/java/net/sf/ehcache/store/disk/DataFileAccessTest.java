@@ -0,0 +1,130 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataFileAccessTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DataFileAccessTest", ".data");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRandomAccessFileRoundTrip() throws IOException {
+        roundTrip(new DataFileAccess.RandomAccessFileAccess(file, 3));
+    }
+
+    @Test
+    public void testFileChannelRoundTrip() throws IOException {
+        roundTrip(new DataFileAccess.FileChannelAccess(file));
+    }
+
+    @Test
+    public void testMappedRoundTrip() throws IOException {
+        roundTrip(new DataFileAccess.MappedAccess(file, 1024));
+    }
+
+    @Test
+    public void testMappedTruncatesToLogicalLengthOnClose() throws IOException {
+        DataFileAccess access = new DataFileAccess.MappedAccess(file, 1024);
+        access.write("key", 0, new byte[100], 100);
+        assertEquals(100, access.length());
+        access.close();
+        assertEquals(100, file.length());
+    }
+
+    @Test
+    public void testFileChannelSurvivesInterruptedReader() throws IOException {
+        DataFileAccess access = new DataFileAccess.FileChannelAccess(file);
+        try {
+            access.write("key", 0, new byte[] {1, 2, 3}, 3);
+            Thread.currentThread().interrupt();
+            try {
+                read(access, 0, 3);
+            } catch (IOException e) {
+                // expected, the interrupt closes the channel
+            } finally {
+                Thread.interrupted();
+            }
+            assertArrayEquals(new byte[] {1, 2, 3}, read(access, 0, 3));
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void testDiskStoreWithEachAccessMode() {
+        for (DiskAccessMode mode : DiskAccessMode.values()) {
+            CacheManager manager = new CacheManager(new Configuration().name("DataFileAccessTest")
+                .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+            try {
+                Cache cache = new Cache(new CacheConfiguration("access-" + mode, 10).overflowToDisk(true).diskAccessMode(mode));
+                manager.addCache(cache);
+                for (int i = 0; i < 500; i++) {
+                    cache.put(new Element(i, "value-" + i));
+                }
+                for (int i = 0; i < 500; i++) {
+                    assertEquals(mode.name(), "value-" + i, cache.get(i).getObjectValue());
+                }
+            } finally {
+                manager.shutdown();
+            }
+        }
+    }
+
+    private static void roundTrip(DataFileAccess access) throws IOException {
+        try {
+            byte[] first = new byte[1500];
+            byte[] second = new byte[700];
+            for (int i = 0; i < first.length; i++) {
+                first[i] = (byte) i;
+            }
+            for (int i = 0; i < second.length; i++) {
+                second[i] = (byte) -i;
+            }
+            access.write("a", 0, first, first.length);
+            access.write("b", 2000, second, second.length);
+
+            assertArrayEquals(first, read(access, 0, first.length));
+            assertArrayEquals(second, read(access, 2000, second.length));
+            assertEquals(2700, access.length());
+
+            access.setLength(1500);
+            assertEquals(1500, access.length());
+        } finally {
+            access.close();
+        }
+    }
+
+    private static byte[] read(DataFileAccess access, long position, int size) throws IOException {
+        byte[] data = new byte[size];
+        InputStream in = access.read("key", position, size);
+        new DataInputStream(in).readFully(data);
+        return data;
+    }
+}
@@ -0,0 +1,126 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheConfiguration.DiskAccessMode;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.store.disk.ods.FileAllocationTree;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskGroupWriterTest {
+
+    private static final int THREADS = 8;
+    private static final int RECORDS = 200;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DiskGroupWriterTest", ".data");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testConcurrentWritesWithRandomAccessFile() throws Exception {
+        concurrentWrites(new DataFileAccess.RandomAccessFileAccess(file, 4));
+    }
+
+    @Test
+    public void testConcurrentWritesWithFileChannel() throws Exception {
+        concurrentWrites(new DataFileAccess.FileChannelAccess(file));
+    }
+
+    @Test
+    public void testConcurrentWritesWithMappedFile() throws Exception {
+        concurrentWrites(new DataFileAccess.MappedAccess(file, 4096));
+    }
+
+    @Test
+    public void testDiskStoreWithSeveralWriterThreads() {
+        CacheManager manager = new CacheManager(new Configuration().name("DiskGroupWriterTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("writers", 10).overflowToDisk(true)
+                .diskAccessMode(DiskAccessMode.FILE_CHANNEL).diskWriterThreads(4));
+            manager.addCache(cache);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value-" + i, cache.get(i).getObjectValue());
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private void concurrentWrites(DataFileAccess access) throws Exception {
+        final DiskGroupWriter writer = new DiskGroupWriter(new FileAllocationTree(Long.MAX_VALUE, access.getAllocatorFile()), access);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<long[]>() {
+                    public long[] call() throws IOException {
+                        long[] positions = new long[RECORDS];
+                        for (int i = 0; i < RECORDS; i++) {
+                            byte[] data = record(thread, i);
+                            positions[i] = writer.write(data, data.length);
+                        }
+                        return positions;
+                    }
+                }));
+            }
+            for (int t = 0; t < THREADS; t++) {
+                long[] positions = futures.get(t).get();
+                for (int i = 0; i < RECORDS; i++) {
+                    byte[] expected = record(t, i);
+                    byte[] actual = new byte[expected.length];
+                    new DataInputStream(access.read("key", positions[i], actual.length)).readFully(actual);
+                    assertArrayEquals(expected, actual);
+                }
+            }
+            assertEquals(THREADS * RECORDS, writer.getElementCount());
+            assertEquals(0, writer.getQueueDepth());
+            assertTrue(writer.getFileWriteCount() <= writer.getElementCount());
+            assertTrue(writer.getGroupCount() <= writer.getElementCount());
+            assertTrue(writer.getLargestGroupSize() >= 1 && writer.getLargestGroupSize() <= DiskGroupWriter.MAX_GROUP_SIZE);
+        } finally {
+            executor.shutdown();
+            access.close();
+        }
+    }
+
+    private static byte[] record(int thread, int index) {
+        byte[] data = new byte[10 + (index % 50)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (thread * 31 + index + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,217 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskIndexLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DiskIndexLogTest", ".index");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReplayAppliesRemovals() throws IOException {
+        DiskIndexLog log = new DiskIndexLog(file, 0);
+        assertTrue(log.replay().isEmpty());
+        log.put(0, 10, 1, 100, new byte[] {1});
+        log.put(10, 20, 2, 200, new byte[] {2});
+        log.remove(0, 10);
+        log.put(0, 5, 3, 300, new byte[] {3});
+        log.close();
+
+        List<DiskIndexLog.Entry> entries = new ArrayList<DiskIndexLog.Entry>(new DiskIndexLog(file, 0).replay());
+        assertEquals(2, entries.size());
+        assertEquals(10, entries.get(0).getPosition());
+        assertEquals(20, entries.get(0).getSize());
+        assertEquals(2, entries.get(0).getHitCount());
+        assertEquals(200, entries.get(0).getExpiry());
+        assertArrayEquals(new byte[] {2}, entries.get(0).getKey());
+        assertEquals(0, entries.get(1).getPosition());
+        assertEquals(5, entries.get(1).getSize());
+    }
+
+    @Test
+    public void testTornTailIsDiscarded() throws IOException {
+        DiskIndexLog log = new DiskIndexLog(file, 0);
+        log.replay();
+        log.put(0, 10, 0, 0, new byte[] {1});
+        log.put(10, 10, 0, 0, new byte[] {2});
+        log.close();
+
+        long intact = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // half of a record, as left by a process killed mid-append
+            raf.setLength(intact - 5);
+        } finally {
+            raf.close();
+        }
+
+        log = new DiskIndexLog(file, 0);
+        assertEquals(1, log.replay().size());
+        log.put(20, 10, 0, 0, new byte[] {3});
+        log.close();
+        assertEquals(2, new DiskIndexLog(file, 0).replay().size());
+    }
+
+    @Test
+    public void testCompactionKeepsLiveRecords() throws IOException {
+        DiskIndexLog log = new DiskIndexLog(file, 0);
+        log.replay();
+        for (int i = 0; i < DiskIndexLog.COMPACTION_THRESHOLD; i++) {
+            log.put(i * 10, 10, 0, 0, new byte[] {(byte) i});
+            if (i % 4 != 0) {
+                log.remove(i * 10, 10);
+            }
+        }
+        assertTrue(log.requestCompaction());
+        long before = file.length();
+        log.compact();
+        assertTrue(file.length() < before);
+        assertEquals(DiskIndexLog.COMPACTION_THRESHOLD / 4, log.getRecordCount());
+        log.remove(0, 10);
+        log.close();
+        assertEquals(DiskIndexLog.COMPACTION_THRESHOLD / 4 - 1, new DiskIndexLog(file, 0).replay().size());
+    }
+
+    @Test
+    public void testPersistentCacheSurvivesUncleanShutdown() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "DiskIndexLogTest");
+        directory.mkdirs();
+        CacheManager manager = createManager(directory);
+        File dataFile;
+        File indexFile;
+        byte[] data;
+        byte[] index;
+        try {
+            Cache cache = manager.getCache("persistent");
+            cache.removeAll();
+            for (int i = 0; i < 100; i++) {
+                cache.put(new Element(i, "value-" + i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+            for (int i = 0; i < 10; i++) {
+                cache.remove(i);
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+            dataFile = new File(directory, "persistent.data");
+            indexFile = new File(directory, "persistent.index");
+            data = read(dataFile);
+            index = read(indexFile);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            manager.shutdown();
+        }
+
+        // restore the files as they were before the orderly shutdown
+        write(dataFile, data);
+        write(indexFile, index);
+
+        manager = createManager(directory);
+        try {
+            Cache cache = manager.getCache("persistent");
+            assertEquals(90, cache.getSize());
+            for (int i = 0; i < 10; i++) {
+                assertNull(cache.get(i));
+            }
+            for (int i = 10; i < 100; i++) {
+                assertEquals("value-" + i, cache.get(i).getObjectValue());
+            }
+            cache.removeAll();
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testLargeIndexLoadsInParallel() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "DiskIndexLogTest");
+        directory.mkdirs();
+        CacheManager manager = createManager(directory);
+        try {
+            Cache cache = manager.getCache("persistent");
+            cache.removeAll();
+            for (int i = 0; i < 20000; i++) {
+                cache.put(new Element(i, i));
+            }
+            DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        } finally {
+            manager.shutdown();
+        }
+
+        manager = createManager(directory);
+        try {
+            Cache cache = manager.getCache("persistent");
+            assertEquals(20000, cache.getSize());
+            for (int i = 0; i < 20000; i += 97) {
+                assertEquals(i, cache.get(i).getObjectValue());
+            }
+            cache.removeAll();
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private static CacheManager createManager(File directory) {
+        return new CacheManager(new Configuration().name("DiskIndexLogTest")
+            .diskStore(new DiskStoreConfiguration().path(directory.getAbsolutePath()))
+            .cache(new CacheConfiguration("persistent", 10).overflowToDisk(true).diskPersistent(true)));
+    }
+
+    private static byte[] read(File f) throws IOException {
+        byte[] content = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        try {
+            int read = 0;
+            while (read < content.length) {
+                read += in.read(content, read, content.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private static void write(File f, byte[] content) throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskStoreCompactionTest {
+
+    private static final int ELEMENTS = 500;
+
+    private CacheManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("DiskStoreCompactionTest")
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testCompactionShrinksFragmentedDataFile() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("compaction", 1).overflowToDisk(true));
+        manager.addCache(cache);
+        for (int i = 0; i < ELEMENTS; i++) {
+            cache.put(new Element(i, value(i)));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        for (int i = 0; i < ELEMENTS; i += 2) {
+            cache.remove(i);
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        DiskStoreStatisticsMBean statistics = (DiskStoreStatisticsMBean) cache.getStoreMBean();
+        long fileSize = statistics.getDataFileSize();
+        float fragmentation = statistics.getFragmentationRatio();
+        assertTrue(fragmentation > 0.3f);
+
+        assertTrue(statistics.compact() > 0);
+        assertEquals(1, statistics.getCompactionCount());
+        assertTrue(statistics.getRelocatedByteCount() > 0);
+        assertTrue(statistics.getDataFileSize() < fileSize);
+        assertTrue(statistics.getFragmentationRatio() < fragmentation);
+
+        for (int i = 0; i < ELEMENTS; i++) {
+            if (i % 2 == 0) {
+                assertNull(cache.get(i));
+            } else {
+                assertArrayEquals(value(i), (byte[]) cache.get(i).getObjectValue());
+            }
+        }
+    }
+
+    @Test
+    public void testRelocatedElementsSurviveUpdates() throws Exception {
+        Cache cache = new Cache(new CacheConfiguration("updates", 1).overflowToDisk(true));
+        manager.addCache(cache);
+        for (int i = 0; i < ELEMENTS; i++) {
+            cache.put(new Element(i, value(i)));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        for (int i = 0; i < ELEMENTS / 2; i++) {
+            cache.remove(i);
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        ((DiskStoreStatisticsMBean) cache.getStoreMBean()).compact();
+        for (int i = ELEMENTS / 2; i < ELEMENTS; i += 3) {
+            cache.put(new Element(i, value(i + 1)));
+        }
+        DiskStoreHelper.flushAllEntriesToDisk(cache).get();
+
+        assertEquals(ELEMENTS / 2, cache.getSize());
+        for (int i = ELEMENTS / 2; i < ELEMENTS; i++) {
+            byte[] expected = (i - ELEMENTS / 2) % 3 == 0 ? value(i + 1) : value(i);
+            assertArrayEquals(expected, (byte[]) cache.get(i).getObjectValue());
+        }
+    }
+
+    private static byte[] value(int i) {
+        byte[] value = new byte[100 + (i * 37) % 900];
+        Arrays.fill(value, (byte) i);
+        return value;
+    }
+}
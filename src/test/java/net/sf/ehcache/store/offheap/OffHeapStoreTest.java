@@ -0,0 +1,117 @@
+package net.sf.ehcache.store.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.pool.Pool;
+import net.sf.ehcache.pool.impl.FromLargestCacheOffHeapPoolEvictor;
+import net.sf.ehcache.pool.impl.StrictlyBoundedPool;
+import net.sf.ehcache.pool.impl.UnboundedPool;
+import net.sf.ehcache.store.DefaultElementValueComparator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapStoreTest {
+
+    private static final int OFF_HEAP_SIZE = 64 * 1024;
+
+    private final static DefaultElementValueComparator COMPARATOR = new DefaultElementValueComparator(new CacheConfiguration()
+        .copyOnRead(true).copyOnWrite(false));
+
+    private CacheManager cacheManager;
+    private Cache cache;
+    private Pool offHeapPool;
+    private OffHeapStore store;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("OffHeapStoreTest"));
+        cache = new Cache(new CacheConfiguration().name("offHeapCache").maxEntriesLocalHeap(100).eternal(true));
+        cacheManager.addCache(cache);
+        offHeapPool = new StrictlyBoundedPool(OFF_HEAP_SIZE, new FromLargestCacheOffHeapPoolEvictor(), null);
+        store = OffHeapStore.create(cache, new UnboundedPool(), offHeapPool);
+    }
+
+    @After
+    public void tearDown() {
+        store.dispose();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        assertTrue(store.put(new Element("key", "value")));
+        assertFalse(store.put(new Element("key", "value2")));
+        assertEquals("value2", store.get("key").getObjectValue());
+        assertTrue(store.containsKeyOffHeap("key"));
+        assertEquals(1, store.getOffHeapSize());
+        assertEquals(offHeapPool.getSize(), store.getOffHeapSizeInBytes());
+
+        assertEquals("value2", store.remove("key").getObjectValue());
+        assertNull(store.get("key"));
+        assertEquals(0, store.getOffHeapSize());
+        assertEquals(0, store.getOffHeapSizeInBytes());
+    }
+
+    @Test
+    public void testAtomicOperations() {
+        assertNull(store.putIfAbsent(new Element("key", "value")));
+        assertEquals("value", store.putIfAbsent(new Element("key", "other")).getObjectValue());
+
+        assertFalse(store.replace(new Element("key", "other"), new Element("key", "value2"), COMPARATOR));
+        assertTrue(store.replace(new Element("key", "value"), new Element("key", "value2"), COMPARATOR));
+        assertEquals("value2", store.replace(new Element("key", "value3")).getObjectValue());
+        assertNull(store.replace(new Element("absent", "value")));
+
+        assertNull(store.removeElement(new Element("key", "value2"), COMPARATOR));
+        assertEquals("value3", store.removeElement(new Element("key", "value3"), COMPARATOR).getObjectValue());
+        assertEquals(0, store.getSize());
+        assertEquals(0, store.getOffHeapSizeInBytes());
+    }
+
+    @Test
+    public void testEvictsWhenFull() {
+        for (int i = 0; i < 1000; i++) {
+            store.put(new Element(i, new byte[512]));
+        }
+        assertTrue(store.getSize() < 1000);
+        assertTrue(store.getSize() > 0);
+        assertTrue(store.getOffHeapSizeInBytes() <= OFF_HEAP_SIZE);
+        assertEquals(store.getSize(), store.getKeys().size());
+    }
+
+    @Test
+    public void testRemoveAllFreesMemory() {
+        for (int i = 0; i < 50; i++) {
+            store.put(new Element(i, "value" + i));
+        }
+        assertEquals(50, store.getSize());
+        store.removeAll();
+        assertEquals(0, store.getSize());
+        assertEquals(0, store.getOffHeapSizeInBytes());
+        assertEquals(0, offHeapPool.getSize());
+        assertTrue(store.put(new Element("key", "value")));
+        assertEquals("value", store.get("key").getObjectValue());
+    }
+
+    @Test
+    public void testExpireElements() throws Exception {
+        Element element = new Element("key", "value");
+        element.setTimeToLive(1);
+        store.put(element);
+        store.put(new Element("eternal", "value"));
+        Thread.sleep(1100);
+        store.expireElements();
+        assertFalse(store.containsKey("key"));
+        assertTrue(store.containsKey("eternal"));
+    }
+}
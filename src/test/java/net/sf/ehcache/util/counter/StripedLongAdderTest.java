@@ -0,0 +1,113 @@
+package net.sf.ehcache.util.counter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.util.counter.sampled.SampledRateCounterConfig;
+import net.sf.ehcache.util.counter.sampled.SampledRateCounterImpl;
+
+import org.junit.Test;
+
+public class StripedLongAdderTest {
+
+    private static final int THREADS = 8;
+    private static final int INCREMENTS = 100000;
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        final StripedLongAdder adder = new StripedLongAdder(5);
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        barrier.await();
+                        for (int i = 0; i < INCREMENTS; i++) {
+                            adder.increment();
+                        }
+                        adder.add(-1);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5L + THREADS * (INCREMENTS - 1L), adder.sum());
+    }
+
+    @Test
+    public void testSumThenResetDrainsEveryUpdateOnce() throws Exception {
+        final StripedLongAdder adder = new StripedLongAdder();
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        barrier.await();
+                        for (int i = 0; i < INCREMENTS; i++) {
+                            adder.add(2);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            barrier.await();
+            long drained = 0;
+            for (int i = 0; i < 100; i++) {
+                drained += adder.sumThenReset();
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            drained += adder.sumThenReset();
+            assertEquals(2L * THREADS * INCREMENTS, drained);
+            assertEquals(0L, adder.sum());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCounterSemantics() {
+        CounterImpl counter = new CounterImpl(10);
+        assertEquals(11, counter.increment());
+        assertEquals(14, counter.increment(3));
+        assertEquals(13, counter.decrement());
+        counter.add(7);
+        assertEquals(20, counter.getValue());
+        assertEquals(20, counter.getAndSet(4));
+        assertEquals(2, counter.decrement(2));
+        counter.setValue(-3);
+        assertEquals(-3, counter.getValue());
+    }
+
+    @Test
+    public void testSampledRateCounter() {
+        SampledRateCounterImpl counter = new SampledRateCounterImpl(new SampledRateCounterConfig(1, 10, true));
+        counter.increment(30, 2);
+        counter.increment(10, 2);
+        assertEquals(10, counter.getValue());
+        counter.decrement(10, 2);
+        assertEquals(15, counter.getValue());
+        assertEquals(15, counter.getAndReset());
+        assertEquals(0, counter.getValue());
+        counter.setValue(9, 3);
+        assertEquals(3, counter.getValue());
+        counter.shutdown();
+    }
+}
@@ -0,0 +1,58 @@
+package net.sf.ehcache.writer.writebehind;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveBatcherTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testStartsWithConfiguredLimits() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(100, 1000, 5000);
+        assertEquals(100, batcher.getBatchSize());
+        assertEquals(5000, batcher.getDelay());
+    }
+
+    @Test
+    public void testSlowWriterShrinksBatchesAndRecovers() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(100, 1000, 5000);
+        batcher.batchCompleted(SLOW, 0);
+        assertEquals(50, batcher.getBatchSize());
+        batcher.batchCompleted(SLOW, 0);
+        assertEquals(25, batcher.getBatchSize());
+        for (int i = 0; i < 10; i++) {
+            batcher.batchCompleted(SLOW, 0);
+        }
+        assertEquals(1, batcher.getBatchSize());
+
+        for (int i = 0; i < 100; i++) {
+            batcher.batchCompleted(FAST, 0);
+        }
+        assertEquals(100, batcher.getBatchSize());
+        assertEquals(5000, batcher.getDelay());
+    }
+
+    @Test
+    public void testBacklogGrowsBatchesAndDropsDelay() {
+        AdaptiveBatcher batcher = new AdaptiveBatcher(100, 1000, 5000);
+        batcher.batchCompleted(SLOW, 0);
+        batcher.batchCompleted(SLOW, 0);
+        assertEquals(25, batcher.getBatchSize());
+
+        batcher.batchCompleted(FAST, 1000);
+        assertEquals(50, batcher.getBatchSize());
+        assertEquals(1000, batcher.getDelay());
+        batcher.batchCompleted(FAST, 1000);
+        batcher.batchCompleted(FAST, 1000);
+        assertEquals(100, batcher.getBatchSize());
+
+        batcher.batchCompleted(FAST, 10);
+        assertEquals(100, batcher.getBatchSize());
+        assertEquals(5000, batcher.getDelay());
+    }
+}
@@ -0,0 +1,276 @@
+package net.sf.ehcache.writer.writebehind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.serialization.JavaSerializer;
+import net.sf.ehcache.writer.AbstractCacheWriter;
+import net.sf.ehcache.writer.writebehind.operations.DeleteOperation;
+import net.sf.ehcache.writer.writebehind.operations.SingleOperation;
+import net.sf.ehcache.writer.writebehind.operations.WriteOperation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindJournalTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("WriteBehindJournalTest", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void testReplayReturnsUnprocessedOperationsInOrder() throws IOException {
+        WriteBehindJournal journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        assertTrue(journal.open().isEmpty());
+        SingleOperation first = new WriteOperation(new Element("a", "1"), 10);
+        SingleOperation second = new WriteOperation(new Element("b", "2"), 20);
+        SingleOperation third = new DeleteOperation(new CacheEntry("a", null), 30);
+        journal.append(first);
+        journal.append(second);
+        journal.append(third);
+        journal.processed(Collections.singletonList(first));
+        journal.close();
+
+        journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        List<SingleOperation> replayed = journal.open();
+        assertEquals(2, replayed.size());
+        assertEquals("b", replayed.get(0).getKey());
+        assertEquals("2", ((WriteOperation) replayed.get(0)).getElement().getObjectValue());
+        assertEquals(20, replayed.get(0).getCreationTime());
+        assertEquals("a", replayed.get(1).getKey());
+        assertNull(((DeleteOperation) replayed.get(1)).getEntry().getElement());
+        assertEquals(30, replayed.get(1).getCreationTime());
+
+        journal.processed(replayed);
+        journal.close();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testUnprocessedOperationSurvivesRepeatedReopening() throws IOException {
+        WriteBehindJournal journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        assertTrue(journal.open().isEmpty());
+        journal.append(new WriteOperation(new Element("a", "1"), 10));
+        journal.close();
+
+        for (int run = 0; run < 3; run++) {
+            journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+            List<SingleOperation> replayed = journal.open();
+            assertEquals(1, replayed.size());
+            assertEquals("1", ((WriteOperation) replayed.get(0)).getElement().getObjectValue());
+            journal.close();
+        }
+
+        journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        journal.processed(journal.open());
+        journal.append(new WriteOperation(new Element("b", "2"), 20));
+        journal.close();
+
+        journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        List<SingleOperation> replayed = journal.open();
+        assertEquals(1, replayed.size());
+        assertEquals("2", ((WriteOperation) replayed.get(0)).getElement().getObjectValue());
+        journal.close();
+    }
+
+    @Test
+    public void testTornTailIsDiscarded() throws IOException {
+        WriteBehindJournal journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        journal.open();
+        journal.append(new WriteOperation(new Element("a", "1")));
+        journal.append(new WriteOperation(new Element("b", "2")));
+        journal.close();
+
+        File segment = directory.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            // half of a record, as left by a process killed mid-append
+            raf.setLength(raf.length() - 5);
+        } finally {
+            raf.close();
+        }
+
+        journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        List<SingleOperation> replayed = journal.open();
+        assertEquals(1, replayed.size());
+        assertEquals("a", replayed.get(0).getKey());
+        journal.append(new WriteOperation(new Element("c", "3")));
+        journal.close();
+        assertEquals(2, journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE).open().size());
+    }
+
+    @Test
+    public void testProcessedSegmentsAreDeleted() throws IOException {
+        WriteBehindJournal journal = journal(directory, 1024);
+        journal.open();
+        List<SingleOperation> operations = new ArrayList<SingleOperation>();
+        for (int i = 0; i < 200; i++) {
+            SingleOperation operation = new WriteOperation(new Element(i, "value-" + i));
+            operations.add(operation);
+            journal.append(operation);
+        }
+        int segments = journal.getSegmentCount();
+        assertTrue(segments > 5);
+        assertEquals(segments, directory.list().length);
+
+        journal.processed(operations.subList(0, 100));
+        assertTrue(journal.getSegmentCount() < segments);
+        assertEquals(journal.getSegmentCount(), directory.list().length);
+        assertEquals(100, journal.getOutstandingCount());
+
+        // out of order completion leaves the oldest operation outstanding
+        journal.processed(operations.subList(101, 200));
+        assertEquals(1, journal.getOutstandingCount());
+        journal.close();
+
+        List<SingleOperation> replayed = journal(directory, 1024).open();
+        assertEquals(100, replayed.size());
+        assertEquals(100, replayed.get(0).getKey());
+    }
+
+    @Test
+    public void testQueueReplaysOperationsLeftByDeadProcess() throws IOException {
+        CacheConfiguration config = new CacheConfiguration("journaled", 10).cacheWriter(new CacheWriterConfiguration()
+            .writeMode(CacheWriterConfiguration.WriteMode.WRITE_BEHIND).minWriteDelay(0).writeBehindJournal(true));
+        BlockingWriter writer = new BlockingWriter();
+        WriteBehindQueue queue = new WriteBehindQueue(config, journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE));
+        queue.start(writer);
+        for (int i = 0; i < 10; i++) {
+            queue.write(new Element(i, "value-" + i));
+        }
+        queue.delete(new CacheEntry(3, null));
+
+        // the files as they are while the writer is stuck on the first operation
+        File copy = new File(directory, "copy");
+        copy.mkdirs();
+        for (File f : directory.listFiles()) {
+            if (f.isFile()) {
+                copy(f, new File(copy, f.getName()));
+            }
+        }
+
+        writer.release.countDown();
+        queue.stop();
+        assertEquals(11, writer.operations.size());
+        assertEquals(Arrays.asList("copy"), Arrays.asList(directory.list()));
+
+        BlockingWriter replayWriter = new BlockingWriter();
+        replayWriter.release.countDown();
+        queue = new WriteBehindQueue(config, journal(copy, WriteBehindJournal.DEFAULT_SEGMENT_SIZE));
+        queue.start(replayWriter);
+        queue.stop();
+        assertEquals(writer.operations, replayWriter.operations);
+        assertEquals(0, copy.list().length);
+    }
+
+    @Test
+    public void testCoalescedOperationsAreCheckpointed() throws IOException {
+        CacheConfiguration config = new CacheConfiguration("coalesced", 10).cacheWriter(new CacheWriterConfiguration()
+            .writeMode(CacheWriterConfiguration.WriteMode.WRITE_BEHIND).minWriteDelay(0).writeCoalescing(true)
+            .writeBehindJournal(true));
+        BlockingWriter writer = new BlockingWriter();
+        WriteBehindJournal journal = journal(directory, WriteBehindJournal.DEFAULT_SEGMENT_SIZE);
+        WriteBehindQueue queue = new WriteBehindQueue(config, journal);
+        queue.setOperationsFilter(new CoalesceKeysFilter());
+        queue.start(writer);
+        queue.write(new Element("first", "value"));
+        for (int i = 0; i < 10; i++) {
+            queue.write(new Element("key", "value-" + i));
+        }
+        writer.release.countDown();
+        queue.stop();
+        assertTrue(writer.operations.size() < 11);
+        assertEquals("write key=value-9", writer.operations.get(writer.operations.size() - 1));
+        assertEquals(0, journal.getOutstandingCount());
+        assertEquals(0, directory.list().length);
+    }
+
+    private static WriteBehindJournal journal(File directory, long segmentSize) {
+        return new WriteBehindJournal(directory, "test_writebehind0", new JavaSerializer(), segmentSize);
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Records operations, blocking until released.
+     */
+    private static final class BlockingWriter extends AbstractCacheWriter {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> operations = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void write(Element element) throws CacheException {
+            await();
+            operations.add("write " + element.getObjectKey() + "=" + element.getObjectValue());
+        }
+
+        @Override
+        public void delete(CacheEntry entry) throws CacheException {
+            await();
+            operations.add("delete " + entry.getKey());
+        }
+
+        private void await() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new CacheException(e);
+            }
+        }
+    }
+}
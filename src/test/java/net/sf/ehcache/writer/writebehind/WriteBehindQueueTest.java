@@ -0,0 +1,186 @@
+package net.sf.ehcache.writer.writebehind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.writer.AbstractCacheWriter;
+
+import org.junit.Test;
+
+public class WriteBehindQueueTest {
+
+    @Test
+    public void testConcurrentProducersAreAllWrittenOnStop() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(config(writer().writeBatching(true).writeBatchSize(50)));
+        RecordingWriter writer = new RecordingWriter();
+        queue.start(writer);
+
+        final int producers = 8;
+        final int perProducer = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.write(new Element(producer + "-" + i, i));
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        queue.stop();
+
+        assertEquals(producers * perProducer, writer.written.size());
+        assertEquals(producers * perProducer, new HashSet<Object>(writer.written).size());
+        assertEquals(0, queue.getQueueSize());
+        assertEquals(0, queue.getLag());
+        assertTrue(writer.largestBatch.get() > 1);
+        assertTrue(writer.largestBatch.get() <= 50);
+    }
+
+    @Test
+    public void testQueueSizeAndLagWhileWriterIsBlocked() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(config(writer().writeBatching(true).writeBatchSize(1)));
+        RecordingWriter writer = new RecordingWriter();
+        writer.release = new CountDownLatch(1);
+        queue.start(writer);
+        for (int i = 0; i < 5; i++) {
+            queue.write(new Element(i, i));
+        }
+        queue.delete(new CacheEntry(0, null));
+        writer.blocked.await();
+        Thread.sleep(50);
+
+        // the first write is with the writer, the others are waiting
+        assertEquals(5, queue.getQueueSize());
+        assertTrue(queue.getLag() >= 50);
+
+        writer.release.countDown();
+        queue.stop();
+        assertEquals(5, writer.written.size());
+        assertEquals(Collections.<Object>singletonList(0), writer.deleted);
+        assertEquals(0, queue.getQueueSize());
+    }
+
+    @Test
+    public void testBoundedQueueBlocksProducers() throws Exception {
+        final WriteBehindQueue queue = new WriteBehindQueue(config(writer().writeBehindMaxQueueSize(2)));
+        RecordingWriter writer = new RecordingWriter();
+        writer.release = new CountDownLatch(1);
+        queue.start(writer);
+        queue.write(new Element(0, 0));
+        writer.blocked.await();
+        queue.write(new Element(1, 1));
+        queue.write(new Element(2, 2));
+
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                queue.write(new Element(3, 3));
+                written.countDown();
+            }
+        };
+        producer.start();
+        Thread.sleep(200);
+        assertEquals(1, written.getCount());
+
+        writer.release.countDown();
+        producer.join();
+        queue.stop();
+        assertEquals(4, writer.written.size());
+    }
+
+    @Test(expected = CacheException.class)
+    public void testWriteAfterStopFails() {
+        WriteBehindQueue queue = new WriteBehindQueue(config(writer()));
+        queue.start(new RecordingWriter());
+        queue.stop();
+        queue.write(new Element("key", "value"));
+    }
+
+    private static CacheWriterConfiguration writer() {
+        return new CacheWriterConfiguration().writeMode(CacheWriterConfiguration.WriteMode.WRITE_BEHIND).minWriteDelay(0)
+            .maxWriteDelay(1);
+    }
+
+    private static CacheConfiguration config(CacheWriterConfiguration writerConfig) {
+        return new CacheConfiguration("writeBehindQueue", 10).cacheWriter(writerConfig);
+    }
+
+    /**
+     * Records written and deleted keys, optionally blocking until released.
+     */
+    private static final class RecordingWriter extends AbstractCacheWriter {
+        private final List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+        private final List<Object> deleted = Collections.synchronizedList(new ArrayList<Object>());
+        private final AtomicInteger largestBatch = new AtomicInteger();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Override
+        public void write(Element element) throws CacheException {
+            await();
+            written.add(element.getObjectKey());
+        }
+
+        @Override
+        public void writeAll(Collection<Element> elements) throws CacheException {
+            int size = elements.size();
+            for (int largest = largestBatch.get(); size > largest && !largestBatch.compareAndSet(largest, size);) {
+                largest = largestBatch.get();
+            }
+            for (Element element : elements) {
+                write(element);
+            }
+        }
+
+        @Override
+        public void deleteAll(Collection<CacheEntry> entries) throws CacheException {
+            for (CacheEntry entry : entries) {
+                delete(entry);
+            }
+        }
+
+        @Override
+        public void delete(CacheEntry entry) throws CacheException {
+            await();
+            deleted.add(entry.getKey());
+        }
+
+        private void await() {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new CacheException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv} and reports, per benchmark, the change of the candidate
+ * against the baseline.
+ * <p>
+ * A benchmark regressed when its score moved in the wrong direction (down for throughput, up for time based modes) by
+ * more than the threshold percentage and the two error intervals do not overlap. The exit status is 1 when any
+ * benchmark regressed, so that the comparison can gate a build.
+ * <p>
+ * Usage: {@code BenchmarkComparison baseline.csv candidate.csv [thresholdPercent]}
+ */
+public final class BenchmarkComparison {
+
+    /**
+     * The default regression threshold, in percent.
+     */
+    public static final double DEFAULT_THRESHOLD = 5;
+
+    private static final String THROUGHPUT = "thrpt";
+
+    private BenchmarkComparison() {
+        // static only
+    }
+
+    /**
+     * Compare the given result files.
+     *
+     * @param args the baseline file, the candidate file and optionally the threshold in percent
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BenchmarkComparison baseline.csv candidate.csv [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> candidate = read(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-80s %20s %20s %9s", "Benchmark", "Baseline", "Candidate", "Change"));
+        for (Map.Entry<String, Result> entry : candidate.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format("%-80s %20s %20s %9s", entry.getKey(), "-", after, "new"));
+                continue;
+            }
+            double change = (after.score - before.score) / before.score * 100;
+            boolean regressed = after.isRegressionOf(before, threshold);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-80s %20s %20s %8.1f%%%s", entry.getKey(), before, after, change,
+                    regressed ? " REGRESSION" : ""));
+        }
+        for (String key : baseline.keySet()) {
+            if (!candidate.containsKey(key)) {
+                System.out.println(String.format("%-80s %20s %20s %9s", key, baseline.get(key), "-", "missing"));
+            }
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * Read a JMH csv result file, keyed on benchmark, mode, threads and parameters.
+     *
+     * @param file the file to read
+     * @return the results in file order
+     * @throws IOException if the file cannot be read
+     */
+    static Map<String, Result> read(String file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                return results;
+            }
+            List<String> header = parse(line);
+            int benchmark = header.indexOf("Benchmark");
+            int mode = header.indexOf("Mode");
+            int threads = header.indexOf("Threads");
+            int score = header.indexOf("Score");
+            int error = header.indexOf("Score Error (99.9%)");
+            int unit = header.indexOf("Unit");
+            if (benchmark < 0 || mode < 0 || score < 0) {
+                throw new IOException(file + " is not a JMH csv result file");
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                List<String> fields = parse(line);
+                StringBuilder key = new StringBuilder(fields.get(benchmark)).append(" ").append(fields.get(mode));
+                if (threads >= 0) {
+                    key.append(" t=").append(fields.get(threads));
+                }
+                for (int i = unit + 1; unit >= 0 && i < header.size() && i < fields.size(); i++) {
+                    if (fields.get(i).length() > 0) {
+                        key.append(" ").append(header.get(i).replace("Param: ", "")).append("=").append(fields.get(i));
+                    }
+                }
+                double scoreError = error < 0 ? 0 : parseDouble(fields.get(error));
+                results.put(key.toString(), new Result(fields.get(mode), parseDouble(fields.get(score)), scoreError));
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    /**
+     * Split a csv line, honouring double quoted fields.
+     *
+     * @param line the line
+     * @return the fields
+     */
+    static List<String> parse(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static double parseDouble(String value) {
+        if (value.length() == 0 || "NaN".equals(value)) {
+            return 0;
+        }
+        // some locales write a decimal comma, which JMH then quotes
+        return Double.parseDouble(value.replace(',', '.'));
+    }
+
+    /**
+     * The score of one benchmark.
+     */
+    static final class Result {
+
+        private final String mode;
+        private final double score;
+        private final double error;
+
+        Result(String mode, double score, double error) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+        }
+
+        boolean isRegressionOf(Result baseline, double threshold) {
+            double change = (score - baseline.score) / baseline.score * 100;
+            boolean worse = THROUGHPUT.equals(mode) ? change < -threshold : change > threshold;
+            boolean overlapping = score - error <= baseline.score + baseline.error && baseline.score - baseline.error <= score + error;
+            return worse && !overlapping;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f +- %.3f", score, error);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads and writes of a memory-only cache holding half the key space, so that about half of the uniform reads miss
+ * and writes of new keys evict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CacheBenchmark {
+
+    @Param({"false", "true"})
+    private boolean statistics;
+
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Create and fill the cache.
+     */
+    @Setup
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("CacheBenchmark").updateCheck(false));
+        cache = new Cache(new CacheConfiguration("cache", Keys.KEY_SPACE / 2).statistics(statistics));
+        manager.addCache(cache);
+        for (long key = 0; key < Keys.KEY_SPACE / 2; key++) {
+            cache.put(new Element(key, "value-" + key));
+        }
+    }
+
+    /**
+     * Dispose of the cache.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * @param keys the keys of the thread
+     * @return the element read
+     */
+    @Benchmark
+    public Element get(Keys keys) {
+        return cache.get(keys.next());
+    }
+
+    /**
+     * @param keys the keys of the thread
+     */
+    @Benchmark
+    public void put(Keys keys) {
+        Long key = keys.next();
+        cache.put(new Element(key, key));
+    }
+
+    /**
+     * @param keys the keys of the thread
+     * @return the element already mapped
+     */
+    @Benchmark
+    public Element putIfAbsent(Keys keys) {
+        Long key = keys.next();
+        return cache.putIfAbsent(new Element(key, key));
+    }
+}
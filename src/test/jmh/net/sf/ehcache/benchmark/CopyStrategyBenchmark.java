@@ -0,0 +1,79 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.store.compound.ReadWriteSerializationCopyStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copies made by the {@link ReadWriteSerializationCopyStrategy} of caches with copyOnRead or copyOnWrite.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CopyStrategyBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    private int payload;
+
+    private ReadWriteSerializationCopyStrategy strategy;
+    private Element element;
+    private Element stored;
+
+    /**
+     * Create the strategy and the elements to copy.
+     */
+    @Setup
+    public void setUp() {
+        strategy = new ReadWriteSerializationCopyStrategy();
+        element = new Element("key", new byte[payload]);
+        stored = strategy.copyForWrite(element);
+    }
+
+    /**
+     * @return the stored copy
+     */
+    @Benchmark
+    public Element copyForWrite() {
+        return strategy.copyForWrite(element);
+    }
+
+    /**
+     * @return the copy handed to the reader
+     */
+    @Benchmark
+    public Element copyForRead() {
+        return strategy.copyForRead(stored);
+    }
+}
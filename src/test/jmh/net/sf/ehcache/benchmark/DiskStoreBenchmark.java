@@ -0,0 +1,104 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of a cache with a small heap in front of a disk store holding every key, so that most reads fault an element
+ * in from disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DiskStoreBenchmark {
+
+    private static final int HEAP_ENTRIES = 100;
+    private static final int VALUE_SIZE = 1024;
+    private static final long FLUSH_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+    @Param({"false", "true"})
+    private boolean statistics;
+
+    private CacheManager manager;
+    private Cache cache;
+
+    /**
+     * Create the cache and wait until every key is written to disk.
+     *
+     * @throws InterruptedException if interrupted while waiting for the disk writes
+     */
+    @Setup
+    public void setUp() throws InterruptedException {
+        manager = new CacheManager(new Configuration().name("DiskStoreBenchmark").updateCheck(false)
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir"))));
+        cache = new Cache(new CacheConfiguration("cache", HEAP_ENTRIES).overflowToDisk(true).maxEntriesLocalDisk(Keys.KEY_SPACE)
+            .statistics(statistics));
+        manager.addCache(cache);
+        for (long key = 0; key < Keys.KEY_SPACE; key++) {
+            cache.put(new Element(key, new byte[VALUE_SIZE]));
+        }
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+        while (cache.calculateOnDiskSize() < (long) Keys.KEY_SPACE * VALUE_SIZE) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new CacheException("Disk store still writing after " + FLUSH_TIMEOUT + "ms");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Dispose of the cache.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * @param keys the keys of the thread
+     * @return the element read
+     */
+    @Benchmark
+    public Element get(Keys keys) {
+        return cache.get(keys.next());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The keys a benchmark thread accesses, drawn in advance from the distribution chosen by the {@code distribution}
+ * parameter: {@code uniform} over the key space, or {@code zipf}, skewed towards the low keys as real workloads are.
+ */
+@State(Scope.Thread)
+public class Keys {
+
+    /**
+     * The number of distinct keys.
+     */
+    public static final int KEY_SPACE = 20000;
+
+    private static final int DRAWS = 1 << 16;
+    private static final double SKEW = 0.9;
+
+    @Param({"uniform", "zipf"})
+    private String distribution;
+
+    private final Long[] keys = new Long[DRAWS];
+    private int cursor;
+
+    /**
+     * Draw the keys, with a different seed per thread.
+     */
+    @Setup
+    public void draw() {
+        Random random = new Random(Thread.currentThread().getId());
+        if ("uniform".equals(distribution)) {
+            for (int i = 0; i < DRAWS; i++) {
+                keys[i] = Long.valueOf(random.nextInt(KEY_SPACE));
+            }
+        } else if ("zipf".equals(distribution)) {
+            double[] cdf = new double[KEY_SPACE];
+            double sum = 0;
+            for (int i = 0; i < KEY_SPACE; i++) {
+                sum += 1 / Math.pow(i + 1, SKEW);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < DRAWS; i++) {
+                int found = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                keys[i] = Long.valueOf(found >= 0 ? found : Math.min(-found - 1, KEY_SPACE - 1));
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown key distribution " + distribution);
+        }
+    }
+
+    /**
+     * Return the next key.
+     *
+     * @return the key
+     */
+    public Long next() {
+        return keys[cursor++ & (DRAWS - 1)];
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.attribute.AttributeExtractor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Equality queries on an extracted attribute of a searchable memory-only cache, each matching one group in
+ * {@link #GROUPS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SearchBenchmark {
+
+    private static final int GROUPS = 100;
+
+    @Param({"false", "true"})
+    private boolean statistics;
+
+    private CacheManager manager;
+    private Ehcache cache;
+    private Attribute<Long> group;
+
+    /**
+     * Create and fill the cache.
+     */
+    @Setup
+    public void setUp() {
+        Searchable searchable = new Searchable()
+            .searchAttribute(new SearchAttribute().name("group").className(GroupExtractor.class.getName()));
+        manager = new CacheManager(new Configuration().name("SearchBenchmark").updateCheck(false)
+            .cache(new CacheConfiguration("cache", Keys.KEY_SPACE).statistics(statistics).searchable(searchable)));
+        cache = manager.getEhcache("cache");
+        group = cache.getSearchAttribute("group");
+        for (long key = 0; key < Keys.KEY_SPACE; key++) {
+            cache.put(new Element(key, "value-" + key));
+        }
+    }
+
+    /**
+     * Dispose of the cache.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * @param keys the keys of the thread
+     * @return the number of keys found
+     */
+    @Benchmark
+    public int query(Keys keys) {
+        return cache.createQuery().addCriteria(group.eq(keys.next() % GROUPS)).includeKeys().execute().size();
+    }
+
+    /**
+     * Extracts the group of an element from its key.
+     */
+    public static final class GroupExtractor implements AttributeExtractor {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object attributeFor(Element element, String attributeName) {
+            return (Long) element.getObjectKey() % GROUPS;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.pool.impl.DefaultSizeOfEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sizing of a single mapping by the {@link DefaultSizeOfEngine}, as done on every put into a byte-sized tier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SizeOfBenchmark {
+
+    private static final int GRAPH_NODES = 32;
+
+    @Param({"string", "bytes", "graph"})
+    private String shape;
+
+    private DefaultSizeOfEngine engine;
+    private Object key;
+    private Object value;
+
+    /**
+     * Create the engine and the mapping to size.
+     */
+    @Setup
+    public void setUp() {
+        engine = new DefaultSizeOfEngine(1000, false);
+        key = "key-1";
+        if ("string".equals(shape)) {
+            value = "a value of a few dozen characters, as often cached";
+        } else if ("bytes".equals(shape)) {
+            value = new byte[1024];
+        } else if ("graph".equals(shape)) {
+            Map<String, List<Integer>> graph = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < GRAPH_NODES; i++) {
+                List<Integer> list = new ArrayList<Integer>();
+                for (int j = 0; j < i; j++) {
+                    list.add(Integer.valueOf(j * 1000));
+                }
+                graph.put("node-" + i, list);
+            }
+            value = graph;
+        } else {
+            throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    /**
+     * @return the size of the mapping
+     */
+    @Benchmark
+    public long sizeOf() {
+        return engine.sizeOf(key, value, null).getCalculated();
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.CacheEntry;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.CacheWriterConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.writer.AbstractCacheWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes through a write-behind cache whose writer does nothing, measuring the cost of queueing a write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WriteBehindBenchmark {
+
+    private static final int MAX_QUEUE_SIZE = 100000;
+
+    @Param({"false", "true"})
+    private boolean statistics;
+
+    private CacheManager manager;
+    private Ehcache cache;
+
+    /**
+     * Create the cache and register its writer.
+     */
+    @Setup
+    public void setUp() {
+        CacheWriterConfiguration writer = new CacheWriterConfiguration().writeMode(CacheWriterConfiguration.WriteMode.WRITE_BEHIND)
+            .maxWriteDelay(1).writeBatching(true).writeBatchSize(1000).writeBehindMaxQueueSize(MAX_QUEUE_SIZE);
+        manager = new CacheManager(new Configuration().name("WriteBehindBenchmark").updateCheck(false)
+            .cache(new CacheConfiguration("cache", Keys.KEY_SPACE).statistics(statistics).cacheWriter(writer)));
+        cache = manager.getEhcache("cache");
+        cache.registerCacheWriter(new NoOpWriter());
+    }
+
+    /**
+     * Dispose of the cache, draining the queue.
+     */
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * @param keys the keys of the thread
+     */
+    @Benchmark
+    public void putWithWriter(Keys keys) {
+        Long key = keys.next();
+        cache.putWithWriter(new Element(key, key));
+    }
+
+    /**
+     * Discards everything written to it.
+     */
+    private static final class NoOpWriter extends AbstractCacheWriter {
+
+        @Override
+        public void write(Element element) throws CacheException {
+            // no-op
+        }
+
+        @Override
+        public void writeAll(Collection<Element> elements) throws CacheException {
+            // no-op
+        }
+
+        @Override
+        public void delete(CacheEntry entry) throws CacheException {
+            // no-op
+        }
+
+        @Override
+        public void deleteAll(Collection<CacheEntry> entries) throws CacheException {
+            // no-op
+        }
+    }
+}
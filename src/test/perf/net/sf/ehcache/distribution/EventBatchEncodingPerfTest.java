@@ -0,0 +1,136 @@
+package net.sf.ehcache.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.StopWatch;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.distribution.RmiEventMessage.RmiEventType;
+import net.sf.ehcache.serialization.JavaSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the bytes on the wire and the CPU time of replicating batches of events as serialized
+ * {@link RmiEventMessage}s, which is what {@link CachePeer#send(List)} marshals, and in the binary event batch format,
+ * with and without compression.
+ */
+public class EventBatchEncodingPerfTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatchEncodingPerfTest.class.getName());
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int ROUNDS = 50;
+
+    private CacheManager manager;
+    private Cache cache;
+
+    @Before
+    public void setUp() {
+        manager = new CacheManager(new Configuration().name("EventBatchEncodingPerfTest"));
+        manager.addCache(new Cache(new CacheConfiguration("replicated", 10)));
+        cache = manager.getCache("replicated");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testSmallValues() throws Exception {
+        compare("small values", batch(16));
+    }
+
+    @Test
+    public void testLargeTextValues() throws Exception {
+        compare("4KB text values", batch(4096));
+    }
+
+    private List<RmiEventMessage> batch(int valueSize) {
+        Random random = new Random(valueSize);
+        String[] words = {"cache", "element", "replication", "peer", "ehcache", "value", "key", "batch"};
+        List<RmiEventMessage> messages = new ArrayList<RmiEventMessage>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (i % 10 == 9) {
+                messages.add(new RmiEventMessage(cache, RmiEventType.REMOVE, "key-" + i, null));
+            } else {
+                StringBuilder value = new StringBuilder(valueSize);
+                while (value.length() < valueSize) {
+                    value.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                messages.add(new RmiEventMessage(cache, RmiEventType.PUT, null, new Element("key-" + i, value.toString())));
+            }
+        }
+        return messages;
+    }
+
+    private void compare(String description, List<RmiEventMessage> messages) throws Exception {
+        JavaSerializer serializer = new JavaSerializer();
+        // warm up, and check that every format gets the batch across
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(BATCH_SIZE, deserialize(serialize(messages)).size());
+            assertEquals(BATCH_SIZE, EventBatchCodec.decode(EventBatchCodec.encode(messages, serializer, -1)).size());
+            assertEquals(BATCH_SIZE, EventBatchCodec.decode(EventBatchCodec.encode(messages, serializer, 0)).size());
+        }
+
+        int serializedBytes = serialize(messages).length;
+        int binaryBytes = EventBatchCodec.encode(messages, serializer, -1).length;
+        int compressedBytes = EventBatchCodec.encode(messages, serializer, 0).length;
+
+        StopWatch stopWatch = new StopWatch();
+        for (int i = 0; i < ROUNDS; i++) {
+            deserialize(serialize(messages));
+        }
+        long serializedTime = stopWatch.getElapsedTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            EventBatchCodec.decode(EventBatchCodec.encode(messages, serializer, -1));
+        }
+        long binaryTime = stopWatch.getElapsedTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            EventBatchCodec.decode(EventBatchCodec.encode(messages, serializer, 0));
+        }
+        long compressedTime = stopWatch.getElapsedTime();
+
+        LOG.info(description + ", " + BATCH_SIZE + " events per batch, encode and decode time for " + ROUNDS + " batches:");
+        LOG.info("  serialized messages: " + serializedBytes + " bytes, " + serializedTime + "ms");
+        LOG.info("  binary:              " + binaryBytes + " bytes, " + binaryTime + "ms");
+        LOG.info("  binary, compressed:  " + compressedBytes + " bytes, " + compressedTime + "ms");
+        assertTrue(binaryBytes < serializedBytes);
+        assertTrue(compressedBytes < binaryBytes);
+    }
+
+    private static byte[] serialize(List<RmiEventMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new ArrayList<RmiEventMessage>(messages));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<?> deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (List<?>) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
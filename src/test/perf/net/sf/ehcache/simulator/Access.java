@@ -0,0 +1,99 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+/**
+ * One access of a cache trace.
+ */
+public final class Access {
+
+    /**
+     * What an access does.
+     */
+    public static enum Operation {
+        /**
+         * Read the key, loading it into the cache on a miss
+         */
+        GET,
+        /**
+         * Write the key
+         */
+        PUT,
+        /**
+         * Remove the key
+         */
+        REMOVE
+    }
+
+    private final long time;
+    private final String cache;
+    private final Object key;
+    private final int size;
+    private final Operation operation;
+
+    /**
+     * Create an access.
+     *
+     * @param time the time of the access in milliseconds, relative to the start of the trace
+     * @param cache the name of the cache accessed, or null for the only cache of the simulation
+     * @param key the key accessed
+     * @param size the size in bytes of the value loaded or written
+     * @param operation the operation
+     */
+    public Access(long time, String cache, Object key, int size, Operation operation) {
+        this.time = time;
+        this.cache = cache;
+        this.key = key;
+        this.size = size;
+        this.operation = operation;
+    }
+
+    /**
+     * @return the time of the access in milliseconds, relative to the start of the trace
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the name of the cache accessed, or null for the only cache of the simulation
+     */
+    public String getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the key accessed
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * @return the size in bytes of the value loaded or written
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads a trace in a compact binary format, for traces too large for CSV.
+ * <p>
+ * The format is a header, the int {@code 0x45485452} followed by a version byte, then one record per access: the
+ * operation ordinal as a byte, the time as a long, the cache name in modified UTF-8 (empty for the only cache), the
+ * key as a long and the size as an int. Keys read are {@code Long}s; {@link #write(Trace, OutputStream)} converts
+ * other keys to a 64 bit hash of their string form.
+ */
+public class BinaryTrace implements Trace {
+
+    private static final int MAGIC = 0x45485452;
+    private static final int VERSION = 1;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final DataInputStream in;
+
+    /**
+     * Read a trace.
+     *
+     * @param in the trace
+     * @throws IOException if the header is missing
+     */
+    public BinaryTrace(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != MAGIC) {
+            throw new IOException("Not a binary trace");
+        }
+        int version = this.in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary trace version " + version);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Access next() throws IOException {
+        int operation = in.read();
+        if (operation < 0) {
+            return null;
+        }
+        try {
+            long time = in.readLong();
+            String cache = in.readUTF();
+            long key = in.readLong();
+            int size = in.readInt();
+            return new Access(time, cache.length() == 0 ? null : cache, key, size, Access.Operation.values()[operation]);
+        } catch (EOFException e) {
+            throw new IOException("Truncated binary trace", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Write a trace in the binary format.
+     *
+     * @param trace the trace to write, which is read to its end but not closed
+     * @param out the stream to write to, which is flushed but not closed
+     * @return the number of accesses written
+     * @throws IOException if the trace cannot be read or written
+     */
+    public static long write(Trace trace, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        long count = 0;
+        for (Access access = trace.next(); access != null; access = trace.next()) {
+            data.writeByte(access.getOperation().ordinal());
+            data.writeLong(access.getTime());
+            data.writeUTF(access.getCache() == null ? "" : access.getCache());
+            data.writeLong(toLong(access.getKey()));
+            data.writeInt(access.getSize());
+            count++;
+        }
+        data.flush();
+        return count;
+    }
+
+    private static long toLong(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        String text = String.valueOf(key);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
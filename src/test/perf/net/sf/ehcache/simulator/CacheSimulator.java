@@ -0,0 +1,133 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.config.ConfigurationFactory;
+
+/**
+ * Replays a trace through the caches of one or more ehcache.xml configurations and prints a report comparing them.
+ * <p>
+ * Usage: {@code CacheSimulator <trace> <ehcache.xml>...} where the trace is a file, CSV if its name ends in
+ * {@code .csv} and in the binary format otherwise, or a synthetic trace:
+ * <ul>
+ * <li>{@code zipf:<keys>:<skew>:<reads>[:<size>]}
+ * <li>{@code loop:<keys>:<reads>[:<size>]}
+ * <li>{@code scan:<keys>[:<size>]}
+ * </ul>
+ * {@code CacheSimulator convert <trace> <file>} writes a trace in the binary format.
+ *
+ * @see CsvTrace
+ * @see BinaryTrace
+ */
+public final class CacheSimulator {
+
+    private static final int DEFAULT_SIZE = 100;
+    private static final long SEED = 42;
+
+    private CacheSimulator() {
+        // main only
+    }
+
+    /**
+     * Run the simulator.
+     *
+     * @param args the trace and the configurations
+     * @throws IOException if a trace or configuration cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && "convert".equals(args[0])) {
+            Trace trace = open(args[1]);
+            OutputStream out = new FileOutputStream(args[2]);
+            try {
+                System.out.println(BinaryTrace.write(trace, out) + " accesses written to " + args[2]);
+            } finally {
+                out.close();
+                trace.close();
+            }
+        } else if (args.length >= 2) {
+            List<SimulationResult> results = new ArrayList<SimulationResult>();
+            for (int i = 1; i < args.length; i++) {
+                File file = new File(args[i]);
+                Trace trace = open(args[0]);
+                try {
+                    results.addAll(new Simulation(file.getName(), ConfigurationFactory.parseConfiguration(file)).run(trace));
+                } finally {
+                    trace.close();
+                }
+            }
+            report(results, System.out);
+        } else {
+            System.err.println("Usage: CacheSimulator <trace> <ehcache.xml>... | CacheSimulator convert <trace> <file>");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print results as a table, one row per simulation and cache.
+     *
+     * @param results the results
+     * @param out where to print
+     */
+    public static void report(List<SimulationResult> results, PrintStream out) {
+        out.println(SimulationResult.header());
+        for (SimulationResult result : results) {
+            out.println(result);
+        }
+    }
+
+    /**
+     * Open a trace file, or generate a synthetic trace, from its description on the command line.
+     *
+     * @param description a file name or synthetic trace description
+     * @return the trace
+     * @throws IOException if the trace file cannot be opened
+     */
+    public static Trace open(String description) throws IOException {
+        String[] fields = description.split(":");
+        try {
+            if ("zipf".equals(fields[0]) && (fields.length == 4 || fields.length == 5)) {
+                return SyntheticTraces.zipf(null, Integer.parseInt(fields[1]), Double.parseDouble(fields[2]),
+                        Long.parseLong(fields[3]), size(fields, 4), SEED);
+            } else if ("loop".equals(fields[0]) && (fields.length == 3 || fields.length == 4)) {
+                return SyntheticTraces.loop(null, Integer.parseInt(fields[1]), Long.parseLong(fields[2]), size(fields, 3));
+            } else if ("scan".equals(fields[0]) && (fields.length == 2 || fields.length == 3)) {
+                return SyntheticTraces.scan(null, 0, Long.parseLong(fields[1]), size(fields, 2));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid synthetic trace " + description, e);
+        }
+        if (description.endsWith(".csv")) {
+            return new CsvTrace(new FileReader(description));
+        } else {
+            return new BinaryTrace(new FileInputStream(description));
+        }
+    }
+
+    private static int size(String[] fields, int index) {
+        return fields.length > index ? Integer.parseInt(fields[index]) : DEFAULT_SIZE;
+    }
+}
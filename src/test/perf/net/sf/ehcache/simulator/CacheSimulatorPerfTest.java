@@ -0,0 +1,168 @@
+package net.sf.ehcache.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares configurations on synthetic traces with the simulator, and checks the simulator itself.
+ */
+public class CacheSimulatorPerfTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheSimulatorPerfTest.class);
+
+    private static final int KEYS = 10000;
+    private static final int CAPACITY = 500;
+
+    @Test
+    public void testEvictionPoliciesOnZipfWithScans() throws Exception {
+        List<SimulationResult> results = new ArrayList<SimulationResult>();
+        for (MemoryStoreEvictionPolicy policy : new MemoryStoreEvictionPolicy[] {MemoryStoreEvictionPolicy.LRU,
+            MemoryStoreEvictionPolicy.LFU, MemoryStoreEvictionPolicy.FIFO, MemoryStoreEvictionPolicy.CLOCK,
+            MemoryStoreEvictionPolicy.TINYLFU}) {
+            Configuration configuration = new Configuration().cache(new CacheConfiguration("cache", CAPACITY)
+                .memoryStoreEvictionPolicy(policy));
+            results.addAll(new Simulation(policy.toString(), configuration).run(zipfWithScans()));
+        }
+        report(results);
+
+        for (SimulationResult result : results) {
+            assertEquals(results.get(0).getReads(), result.getReads());
+            assertTrue(result.getHits() > 0);
+        }
+        assertTrue(hitRatio(results, "TINYLFU") > hitRatio(results, "LRU"));
+    }
+
+    @Test
+    public void testHeapSizing() throws Exception {
+        List<SimulationResult> results = new ArrayList<SimulationResult>();
+        for (int kilobytes : new int[] {64, 256, 1024}) {
+            Configuration configuration = new Configuration().cache(new CacheConfiguration().name("cache")
+                .maxBytesLocalHeap(kilobytes, MemoryUnit.KILOBYTES));
+            results.addAll(new Simulation(kilobytes + "KB", configuration).run(SyntheticTraces.zipf(null, KEYS, 0.9, 50000,
+                    100, 1)));
+        }
+        report(results);
+
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i).getHitRatio() > results.get(i - 1).getHitRatio());
+            assertTrue(results.get(i).getInMemoryBytes() > results.get(i - 1).getInMemoryBytes());
+        }
+    }
+
+    @Test
+    public void testPoolEvictors() throws Exception {
+        // a cache read repeatedly and a cache scanned share the heap, through one pool or two
+        Configuration shared = new Configuration().maxBytesLocalHeap(256, MemoryUnit.KILOBYTES)
+            .cache(new CacheConfiguration().name("hot"))
+            .cache(new CacheConfiguration().name("scanned"));
+        Configuration split = new Configuration()
+            .cache(new CacheConfiguration().name("hot").maxBytesLocalHeap(128, MemoryUnit.KILOBYTES))
+            .cache(new CacheConfiguration().name("scanned").maxBytesLocalHeap(128, MemoryUnit.KILOBYTES));
+        List<SimulationResult> results = new ArrayList<SimulationResult>();
+        results.addAll(new Simulation("BalancedAccess", shared).run(hotAndScanned()));
+        results.addAll(new Simulation("FromLargestCache", split).run(hotAndScanned()));
+        report(results);
+
+        assertEquals(4, results.size());
+        for (SimulationResult result : results) {
+            assertTrue(result.getReads() > 0);
+            if ("scanned".equals(result.getCache())) {
+                assertEquals(0, result.getHits());
+                assertTrue(result.getEvictions() > 0);
+            } else {
+                assertTrue(result.getHits() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testHeapAndDisk() throws Exception {
+        Configuration configuration = new Configuration()
+            .diskStore(new DiskStoreConfiguration().path(System.getProperty("java.io.tmpdir")))
+            .cache(new CacheConfiguration("cache", 100).overflowToDisk(true).maxElementsOnDisk(2000));
+        List<SimulationResult> results = new Simulation("heap+disk", configuration).run(SyntheticTraces.zipf(null, KEYS, 0.9,
+                20000, 100, 1));
+        report(results);
+
+        SimulationResult result = results.get(0);
+        assertTrue(result.getHitRatio() > 0.3);
+        assertTrue(result.getOnDiskBytes() > 0);
+    }
+
+    @Test
+    public void testExpiryFollowsTheVirtualClock() throws Exception {
+        // the trace spans a minute, replayed in milliseconds
+        StringBuilder csv = new StringBuilder("# time,cache,key,size\n");
+        for (int second = 0; second < 60; second++) {
+            csv.append(second * 1000).append(",,key,10\n");
+        }
+        Configuration configuration = new Configuration().cache(new CacheConfiguration("cache", 10).timeToLiveSeconds(5));
+        SimulationResult result = new Simulation("ttl", configuration).run(new CsvTrace(new StringReader(csv.toString())))
+            .get(0);
+
+        assertEquals(60, result.getReads());
+        // loaded at 0s, 6s, 12s... and read from the cache in between
+        assertEquals(9, result.getExpirations());
+        assertEquals(50, result.getHits());
+    }
+
+    @Test
+    public void testBinaryTraceRoundTrip() throws Exception {
+        String csv = "0,a,1,10\n5,b,key,20,put\n7,,2,0,remove\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(3, BinaryTrace.write(new CsvTrace(new StringReader(csv)), bytes));
+
+        Trace csvTrace = new CsvTrace(new StringReader(csv));
+        Trace binaryTrace = new BinaryTrace(new ByteArrayInputStream(bytes.toByteArray()));
+        for (Access expected = csvTrace.next(); expected != null; expected = csvTrace.next()) {
+            Access actual = binaryTrace.next();
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getCache(), actual.getCache());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getOperation(), actual.getOperation());
+        }
+        assertEquals(null, binaryTrace.next());
+    }
+
+    private static Trace zipfWithScans() {
+        return SyntheticTraces.interleave(1000, SyntheticTraces.zipf(null, KEYS, 0.9, 100000, 100, 1),
+            SyntheticTraces.scan(null, KEYS, 20000, 100));
+    }
+
+    private static Trace hotAndScanned() {
+        return SyntheticTraces.interleave(10, SyntheticTraces.zipf("hot", 2000, 0.9, 30000, 100, 1),
+            SyntheticTraces.scan("scanned", 0, 30000, 100));
+    }
+
+    private static double hitRatio(List<SimulationResult> results, String simulation) {
+        for (SimulationResult result : results) {
+            if (simulation.equals(result.getSimulation())) {
+                return result.getHitRatio();
+            }
+        }
+        throw new AssertionError("No simulation " + simulation);
+    }
+
+    private static void report(List<SimulationResult> results) {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        CacheSimulator.report(results, new PrintStream(report));
+        LOG.info("Simulation results\n{}", report);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace with one access per line: {@code time,cache,key,size[,operation]}.
+ * <p>
+ * The time is in milliseconds from the start of the trace, an empty cache name stands for the only cache of the
+ * simulation, keys are strings and the operation is one of GET (the default), PUT and REMOVE. Empty lines and lines
+ * starting with {@code #} are skipped.
+ */
+public class CsvTrace implements Trace {
+
+    private final BufferedReader reader;
+    private int line;
+
+    /**
+     * Read a trace.
+     *
+     * @param reader the trace
+     */
+    public CsvTrace(Reader reader) {
+        this.reader = new BufferedReader(reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Access next() throws IOException {
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line++;
+            text = text.trim();
+            if (text.length() == 0 || text.startsWith("#")) {
+                continue;
+            }
+            String[] fields = text.split(",");
+            if (fields.length < 4 || fields.length > 5) {
+                throw new IOException("Line " + line + " is not time,cache,key,size[,operation]: " + text);
+            }
+            try {
+                String cache = fields[1].trim();
+                Access.Operation operation = fields.length == 5 ? Access.Operation.valueOf(fields[4].trim().toUpperCase())
+                        : Access.Operation.GET;
+                return new Access(Long.parseLong(fields[0].trim()), cache.length() == 0 ? null : cache, fields[2].trim(),
+                        Integer.parseInt(fields[3].trim()), operation);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + line + " is not time,cache,key,size[,operation]: " + text, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+}
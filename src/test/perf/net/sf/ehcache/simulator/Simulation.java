@@ -0,0 +1,206 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.DefaultElementEvictionData;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ElementEvictionData;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Replays a trace through the caches of a configuration and measures how they fare.
+ * <p>
+ * The caches are real: a {@link CacheManager} is created from the configuration, so the memory and disk stores,
+ * eviction policies and pool evictors are those the configuration selects in production. Reads missing the cache load
+ * the key, putting a value of the recorded size.
+ * <p>
+ * Time is virtual. The clock follows the times recorded in the trace from the moment the replay starts, and is stamped
+ * on the elements as their creation and last access times, so that recency-based eviction and expiry see the trace's
+ * own pace however fast it is replayed. Expiry is applied when an expired element is read, as the stores compare
+ * expiration times to the real clock, which the virtual clock stays ahead of as long as the replay is faster than the
+ * trace.
+ */
+public class Simulation {
+
+    private final String name;
+    private final Configuration configuration;
+
+    /**
+     * Create a simulation. As caches are created from the configuration, it must not be used by another simulation.
+     *
+     * @param name the name of the simulation, for reports
+     * @param configuration the configuration of the cache manager and caches simulated
+     */
+    public Simulation(String name, Configuration configuration) {
+        this.name = name;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Replay a trace.
+     *
+     * @param trace the trace, read to its end but not closed
+     * @return the results, one per cache of the configuration
+     * @throws IOException if the trace cannot be read
+     * @throws IllegalArgumentException if the trace accesses a cache not in the configuration
+     */
+    public List<SimulationResult> run(Trace trace) throws IOException {
+        if (configuration.getName() == null) {
+            configuration.setName("simulation-" + name);
+        }
+        CacheManager manager = new CacheManager(configuration);
+        try {
+            Map<String, Ehcache> caches = new LinkedHashMap<String, Ehcache>();
+            Map<Ehcache, SimulationResult> results = new LinkedHashMap<Ehcache, SimulationResult>();
+            for (String cacheName : manager.getCacheNames()) {
+                Ehcache cache = manager.getEhcache(cacheName);
+                final SimulationResult result = new SimulationResult(name, cacheName);
+                cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+                    @Override
+                    public void notifyElementEvicted(Ehcache cache, Element element) {
+                        result.evicted();
+                    }
+                });
+                caches.put(cacheName, cache);
+                results.put(cache, result);
+            }
+            Ehcache onlyCache = caches.size() == 1 ? caches.values().iterator().next() : null;
+
+            VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+            long operations = 0;
+            long start = System.nanoTime();
+            for (Access access = trace.next(); access != null; access = trace.next()) {
+                clock.advanceTo(access.getTime());
+                Ehcache cache = access.getCache() == null ? onlyCache : caches.get(access.getCache());
+                if (cache == null) {
+                    throw new IllegalArgumentException("No cache " + (access.getCache() == null ? "named in access " + operations
+                            : access.getCache()) + " in simulation " + name);
+                }
+                replay(access, cache, results.get(cache), clock);
+                operations++;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            for (Map.Entry<Ehcache, SimulationResult> entry : results.entrySet()) {
+                Ehcache cache = entry.getKey();
+                entry.getValue().finish(cache.calculateInMemorySize(), cache.calculateOnDiskSize(), operations, elapsed);
+            }
+            return new ArrayList<SimulationResult>(results.values());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private static void replay(Access access, Ehcache cache, SimulationResult result, VirtualClock clock) {
+        Object key = access.getKey();
+        switch (access.getOperation()) {
+            case GET:
+                Element element = cache.get(key);
+                if (element != null && clock.now() > element.getExpirationTime()) {
+                    cache.remove(key);
+                    result.expired();
+                    element = null;
+                }
+                if (element != null) {
+                    result.read(true);
+                    touch(element, clock);
+                } else {
+                    result.read(false);
+                    put(access, cache, result, clock);
+                }
+                break;
+            case PUT:
+                put(access, cache, result, clock);
+                break;
+            case REMOVE:
+                cache.remove(key);
+                result.removed();
+                break;
+            default:
+                throw new AssertionError(access.getOperation());
+        }
+    }
+
+    private static void put(Access access, Ehcache cache, SimulationResult result, VirtualClock clock) {
+        Element element = new Element(access.getKey(), new byte[access.getSize()]);
+        element.setElementEvictionData(new VirtualEvictionData(clock, clock.now()));
+        cache.put(element);
+        result.wrote();
+    }
+
+    private static void touch(Element element, VirtualClock clock) {
+        ElementEvictionData data = element.getElementEvictionData();
+        if (!(data instanceof VirtualEvictionData)) {
+            // read back from disk
+            element.setElementEvictionData(new VirtualEvictionData(clock, data.getCreationTime()));
+        }
+        element.getElementEvictionData().updateLastAccessTime(clock.now(), element);
+    }
+
+    /**
+     * The clock of a simulation, in milliseconds.
+     */
+    private static final class VirtualClock {
+        private final long origin;
+        private volatile long now;
+
+        VirtualClock(long origin) {
+            this.origin = origin;
+            this.now = origin;
+        }
+
+        void advanceTo(long traceTime) {
+            // interleaved traces may go back in time a little
+            now = Math.max(now, origin + traceTime);
+        }
+
+        long now() {
+            return now;
+        }
+    }
+
+    /**
+     * Eviction data stamped with the virtual clock rather than the real one.
+     */
+    private static final class VirtualEvictionData extends DefaultElementEvictionData {
+        private final VirtualClock clock;
+
+        VirtualEvictionData(VirtualClock clock, long creationTime) {
+            super(creationTime, clock.now());
+            this.clock = clock;
+        }
+
+        @Override
+        public void updateLastAccessTime(long time, Element element) {
+            super.updateLastAccessTime(clock.now(), element);
+        }
+
+        @Override
+        public void resetLastAccessTime(Element element) {
+            super.updateLastAccessTime(clock.now(), element);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a simulation measured for one cache.
+ */
+public final class SimulationResult {
+
+    private final String simulation;
+    private final String cache;
+    private long reads;
+    private long hits;
+    private long writes;
+    private long removes;
+    private final AtomicLong evictions = new AtomicLong();
+    private long expirations;
+    private long inMemoryBytes;
+    private long onDiskBytes;
+    private long elapsedNanos;
+    private long operations;
+
+    /**
+     * Create an empty result.
+     *
+     * @param simulation the name of the simulation
+     * @param cache the name of the cache
+     */
+    SimulationResult(String simulation, String cache) {
+        this.simulation = simulation;
+        this.cache = cache;
+    }
+
+    void read(boolean hit) {
+        reads++;
+        if (hit) {
+            hits++;
+        }
+    }
+
+    void wrote() {
+        writes++;
+    }
+
+    void removed() {
+        removes++;
+    }
+
+    /**
+     * Count an eviction, which may be notified by a thread of the disk store.
+     */
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    void expired() {
+        expirations++;
+    }
+
+    void finish(long inMemory, long onDisk, long totalOperations, long nanos) {
+        this.inMemoryBytes = inMemory;
+        this.onDiskBytes = onDisk;
+        this.operations = totalOperations;
+        this.elapsedNanos = nanos;
+    }
+
+    /**
+     * @return the name of the simulation
+     */
+    public String getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * @return the name of the cache
+     */
+    public String getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the number of reads
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    /**
+     * @return the number of reads which found the key
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of reads which found the key, 0 without reads
+     */
+    public double getHitRatio() {
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    /**
+     * @return the number of writes, loads after a miss included
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return the number of removes
+     */
+    public long getRemoves() {
+        return removes;
+    }
+
+    /**
+     * @return the number of elements evicted from the cache
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of elements found expired on the virtual clock
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return the size of the cache on heap at the end of the simulation
+     */
+    public long getInMemoryBytes() {
+        return inMemoryBytes;
+    }
+
+    /**
+     * @return the size of the cache on disk at the end of the simulation
+     */
+    public long getOnDiskBytes() {
+        return onDiskBytes;
+    }
+
+    /**
+     * @return the accesses to all the caches of the simulation per second of replay
+     */
+    public double getOperationsPerSecond() {
+        return elapsedNanos == 0 ? 0 : operations * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the header of the rows formatted by {@link #toString()}
+     */
+    public static String header() {
+        return String.format("%-24s %-16s %10s %8s %10s %10s %10s %12s %12s %12s", "simulation", "cache", "reads", "hit%",
+                "evictions", "expired", "writes", "heap bytes", "disk bytes", "ops/s");
+    }
+
+    /**
+     * @return the result as a row of a report
+     */
+    @Override
+    public String toString() {
+        return String.format("%-24s %-16s %10d %8.2f %10d %10d %10d %12d %12d %12.0f", simulation, cache, reads, getHitRatio() * 100,
+                evictions.get(), expirations, writes, inMemoryBytes, onDiskBytes, getOperationsPerSecond());
+    }
+}
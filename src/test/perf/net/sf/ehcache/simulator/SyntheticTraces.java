@@ -0,0 +1,171 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generators of synthetic traces, one read per millisecond on keys numbered from 0.
+ */
+public final class SyntheticTraces {
+
+    private SyntheticTraces() {
+        // static factory methods only
+    }
+
+    /**
+     * Reads drawn from a Zipf distribution: key {@code k} is read in proportion to {@code 1 / (k + 1)^skew}.
+     *
+     * @param cache the cache read, or null for the only cache
+     * @param keys the number of distinct keys
+     * @param skew the skew, typically between 0.5 and 1.2
+     * @param reads the number of reads
+     * @param size the size of the values in bytes
+     * @param seed the seed of the random draws, for reproducible traces
+     * @return the trace
+     */
+    public static Trace zipf(String cache, int keys, double skew, long reads, int size, long seed) {
+        final double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+        final Random random = new Random(seed);
+        return new GeneratedTrace(cache, reads, size) {
+            @Override
+            long key(long index) {
+                int found = Arrays.binarySearch(cdf, random.nextDouble());
+                return found >= 0 ? found : Math.min(-found - 1, cdf.length - 1);
+            }
+        };
+    }
+
+    /**
+     * Reads of keys never read again, as a batch job scanning a table would.
+     *
+     * @param cache the cache read, or null for the only cache
+     * @param firstKey the first key read, chosen away from the keys of other traces
+     * @param keys the number of keys read
+     * @param size the size of the values in bytes
+     * @return the trace
+     */
+    public static Trace scan(String cache, final long firstKey, long keys, int size) {
+        return new GeneratedTrace(cache, keys, size) {
+            @Override
+            long key(long index) {
+                return firstKey + index;
+            }
+        };
+    }
+
+    /**
+     * Reads of the same keys over and over in the same order, the worst case of LRU when they do not all fit.
+     *
+     * @param cache the cache read, or null for the only cache
+     * @param keys the number of keys in the loop
+     * @param reads the number of reads
+     * @param size the size of the values in bytes
+     * @return the trace
+     */
+    public static Trace loop(String cache, final int keys, long reads, int size) {
+        return new GeneratedTrace(cache, reads, size) {
+            @Override
+            long key(long index) {
+                return index % keys;
+            }
+        };
+    }
+
+    /**
+     * Interleave traces, taking a number of accesses from each in turn until they all end. The accesses keep the times
+     * of their traces.
+     *
+     * @param runLength the number of accesses taken from a trace at a time
+     * @param traces the traces to interleave
+     * @return the trace
+     */
+    public static Trace interleave(final int runLength, final Trace... traces) {
+        return new Trace() {
+            private final boolean[] ended = new boolean[traces.length];
+            private int current;
+            private int taken;
+
+            public Access next() throws IOException {
+                for (int tried = 0; tried <= traces.length; tried++) {
+                    if (!ended[current]) {
+                        Access access = traces[current].next();
+                        if (access != null) {
+                            if (++taken >= runLength) {
+                                taken = 0;
+                                current = (current + 1) % traces.length;
+                            }
+                            return access;
+                        }
+                        ended[current] = true;
+                    }
+                    taken = 0;
+                    current = (current + 1) % traces.length;
+                }
+                return null;
+            }
+
+            public void close() throws IOException {
+                for (Trace trace : traces) {
+                    trace.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * A trace of generated reads.
+     */
+    private abstract static class GeneratedTrace implements Trace {
+
+        private final String cache;
+        private final long length;
+        private final int size;
+        private long index;
+
+        GeneratedTrace(String cache, long length, int size) {
+            this.cache = cache;
+            this.length = length;
+            this.size = size;
+        }
+
+        abstract long key(long index);
+
+        public Access next() {
+            if (index >= length) {
+                return null;
+            }
+            Access access = new Access(index, cache, key(index), size, Access.Operation.GET);
+            index++;
+            return access;
+        }
+
+        public void close() {
+            // nothing to release
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ *  Copyright Terracotta, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.sf.ehcache.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of cache accesses, read from a file or generated.
+ */
+public interface Trace extends Closeable {
+
+    /**
+     * Return the next access.
+     *
+     * @return the next access, or null at the end of the trace
+     * @throws IOException if the trace cannot be read
+     */
+    Access next() throws IOException;
+}
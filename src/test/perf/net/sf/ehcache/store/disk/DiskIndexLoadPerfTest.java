@@ -0,0 +1,122 @@
+package net.sf.ehcache.store.disk;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.StopWatch;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures how long a persistent disk store takes to load its index on restart, compared to reading the same
+ * entries in the Java serialization format the index used previously.
+ */
+public class DiskIndexLoadPerfTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskIndexLoadPerfTest.class.getName());
+
+    private static final int ENTRIES = 500000;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "DiskIndexLoadPerfTest");
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRestartTime() throws Exception {
+        CacheManager manager = createManager();
+        try {
+            Cache cache = manager.getCache("persistent");
+            for (int i = 0; i < ENTRIES; i++) {
+                cache.put(new Element("key-" + i, i));
+            }
+            PerfDiskStoreHelper.flushAllEntriesToDisk(cache).get();
+        } finally {
+            manager.shutdown();
+        }
+
+        File legacy = new File(directory, "legacy.index");
+        writeLegacyIndex(legacy);
+        StopWatch stopWatch = new StopWatch();
+        int legacyCount = readLegacyIndex(legacy);
+        long legacyTime = stopWatch.getElapsedTime();
+        assertEquals(ENTRIES, legacyCount);
+
+        stopWatch.getElapsedTime();
+        manager = createManager();
+        try {
+            Cache cache = manager.getCache("persistent");
+            long restartTime = stopWatch.getElapsedTime();
+            assertEquals(ENTRIES, cache.getSize());
+            LOG.info("Loaded " + ENTRIES + " entries: binary index restart " + restartTime + "ms, reading the legacy serialized index "
+                    + legacyTime + "ms (before any store insertion)");
+            cache.removeAll();
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    private CacheManager createManager() {
+        return new CacheManager(new Configuration().name("DiskIndexLoadPerfTest")
+            .diskStore(new DiskStoreConfiguration().path(directory.getAbsolutePath()))
+            .cache(new CacheConfiguration("persistent", 1000).overflowToDisk(true).diskPersistent(true)));
+    }
+
+    private static void writeLegacyIndex(File file) throws Exception {
+        ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (int i = 0; i < ENTRIES; i++) {
+                String key = "key-" + i;
+                oos.writeObject(key);
+                oos.writeObject(new DiskStorageFactory.DiskMarker(null, i * 100L, 100, key, 0, Long.MAX_VALUE));
+            }
+        } finally {
+            oos.close();
+        }
+    }
+
+    private static int readLegacyIndex(File file) throws Exception {
+        Map<Object, Object> index = new HashMap<Object, Object>();
+        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                index.put(ois.readObject(), ois.readObject());
+            }
+        } catch (EOFException e) {
+            return index.size();
+        } finally {
+            ois.close();
+        }
+    }
+}